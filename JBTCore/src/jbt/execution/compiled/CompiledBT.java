@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jbt.model.core.ModelTask;
+import jbt.model.task.composite.ModelParallel;
+import jbt.model.task.composite.ModelParallel.ParallelPolicy;
+import jbt.model.task.composite.ModelRandomSelector;
+import jbt.model.task.composite.ModelRandomSequence;
+import jbt.model.task.composite.ModelSelector;
+import jbt.model.task.composite.ModelSequence;
+import jbt.model.task.decorator.ModelHierarchicalContextManager;
+import jbt.model.task.decorator.ModelInverter;
+import jbt.model.task.decorator.ModelLimit;
+import jbt.model.task.decorator.ModelRepeat;
+import jbt.model.task.decorator.ModelSafeContextManager;
+import jbt.model.task.decorator.ModelSafeOutputContextManager;
+import jbt.model.task.decorator.ModelSucceeder;
+import jbt.model.task.decorator.ModelUntilFail;
+import jbt.model.task.leaf.ModelFailure;
+import jbt.model.task.leaf.ModelLeaf;
+import jbt.model.task.leaf.ModelPerformInterruption;
+import jbt.model.task.leaf.ModelSubtreeLookup;
+import jbt.model.task.leaf.ModelSuccess;
+import jbt.model.task.leaf.ModelWait;
+
+/**
+ * A CompiledBT is a behaviour tree (a ModelTask) that has been compiled into a flat,
+ * struct-of-arrays representation that can be run by a {@link CompiledBTExecutor}.
+ * <p>
+ * The nodes of the tree are numbered in depth-first order, the root being node 0. For each node,
+ * the CompiledBT stores an opcode that tells what kind of task it is, the index of its parent, the
+ * indices of its children (stored contiguously in a single array) and its parameters (the
+ * duration of a wait task, the maximum number of runs of a limit decorator, the policy of a
+ * parallel task, and so on). By doing so, a CompiledBTExecutor runs the tree with a single
+ * interpreter loop over these arrays, instead of through the graph of ExecutionTask objects that
+ * the BTExecutor uses.
+ * <p>
+ * Leaves other than the built-in ones (success, failure and wait) are not compiled. Instead, they
+ * are run by the ExecutionTask that their ModelTask creates (
+ * {@link ModelTask#createExecutor(jbt.execution.core.BTExecutor, jbt.execution.core.ExecutionTask)}
+ * ), just like the BTExecutor does. Therefore, user-defined actions and conditions can be run by
+ * a CompiledBTExecutor without any change.
+ * <p>
+ * Not every tree can be compiled. Only the following ModelTask classes are supported (subclasses of
+ * them are not, since they may override the way they are run): ModelSequence, ModelSelector,
+ * ModelRandomSequence, ModelRandomSelector, ModelParallel, ModelRepeat, ModelUntilFail,
+ * ModelInverter, ModelSucceeder, ModelLimit, ModelHierarchicalContextManager,
+ * ModelSafeContextManager, ModelSafeOutputContextManager, ModelSuccess, ModelFailure and ModelWait,
+ * as well as any other ModelLeaf except for ModelSubtreeLookup and ModelPerformInterruption. Static
+ * and dynamic priority lists and interrupters are not supported. Guards are ignored, just as the
+ * BTExecutor ignores them for all tasks except for the children of priority lists.
+ * {@link #isSupported(ModelTask)} tells whether a tree can be compiled.
+ * <p>
+ * A CompiledBT is immutable, so it can be shared by all the CompiledBTExecutor objects that run the
+ * same tree. Note that changes to the ModelTask it was compiled from are not reflected on it.
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ */
+public final class CompiledBT {
+	/** Opcode for a leaf that is run by its own ExecutionTask. */
+	static final int LEAF = 0;
+	/** Opcode for ModelSuccess. */
+	static final int SUCCESS = 1;
+	/** Opcode for ModelFailure. */
+	static final int FAILURE = 2;
+	/** Opcode for ModelWait. Its parameter is the duration, in milliseconds. */
+	static final int WAIT = 3;
+	/** Opcode for ModelSequence. */
+	static final int SEQUENCE = 4;
+	/** Opcode for ModelSelector. */
+	static final int SELECTOR = 5;
+	/** Opcode for ModelRandomSequence. */
+	static final int RANDOM_SEQUENCE = 6;
+	/** Opcode for ModelRandomSelector. */
+	static final int RANDOM_SELECTOR = 7;
+	/** Opcode for ModelParallel with the sequence policy. */
+	static final int PARALLEL_SEQUENCE = 8;
+	/** Opcode for ModelParallel with the selector policy. */
+	static final int PARALLEL_SELECTOR = 9;
+	/** Opcode for ModelRepeat. */
+	static final int REPEAT = 10;
+	/** Opcode for ModelUntilFail. */
+	static final int UNTIL_FAIL = 11;
+	/** Opcode for ModelInverter. */
+	static final int INVERTER = 12;
+	/** Opcode for ModelSucceeder. */
+	static final int SUCCEEDER = 13;
+	/** Opcode for ModelLimit. Its parameter is the maximum number of runs. */
+	static final int LIMIT = 14;
+	/** Opcode for ModelHierarchicalContextManager. */
+	static final int HIERARCHICAL_CONTEXT = 15;
+	/** Opcode for ModelSafeContextManager. */
+	static final int SAFE_CONTEXT = 16;
+	/**
+	 * Opcode for ModelSafeOutputContextManager. Its output variables are stored in
+	 * {@link #outputVariables} and {@link #outputSlots}.
+	 */
+	static final int SAFE_OUTPUT_CONTEXT = 17;
+
+	/** The ModelTask this CompiledBT was compiled from. */
+	final ModelTask root;
+	/** Number of nodes of the tree. */
+	final int numNodes;
+	/** Opcode of each node. */
+	final int[] opcodes;
+	/** Index of the parent of each node, or -1 for the root. */
+	final int[] parents;
+	/**
+	 * Index, within {@link #children}, where the children of each node start. The children of node
+	 * <i>i</i> are those between <code>childOffsets[i]</code> and <code>childOffsets[i+1]</code>
+	 * (not included), so this array has {@link #numNodes} + 1 elements.
+	 */
+	final int[] childOffsets;
+	/** Indices of the children of all the nodes, stored contiguously. */
+	final int[] children;
+	/** Numeric parameter of each node, or 0 if it has none. */
+	final long[] params;
+	/** The ModelTask of each node. */
+	final ModelTask[] models;
+	/** Output variables of each ModelSafeOutputContextManager node, and null for the rest. */
+	final List<List<String>> outputVariables;
+	/** Slots of the {@link #outputVariables} of each node, and null where those are null. */
+	final int[][] outputSlots;
+	/** Index of the node of each ModelTask of the tree. */
+	private final Map<ModelTask, Integer> nodeIndices;
+
+	/**
+	 * Creates a CompiledBT from the lists filled by {@link #compile(ModelTask)}.
+	 */
+	private CompiledBT(ModelTask root, List<ModelTask> nodes, List<Integer> parents) {
+		this.root = root;
+		this.numNodes = nodes.size();
+		this.opcodes = new int[this.numNodes];
+		this.parents = new int[this.numNodes];
+		this.childOffsets = new int[this.numNodes + 1];
+		this.children = new int[Math.max(0, this.numNodes - 1)];
+		this.params = new long[this.numNodes];
+		this.models = nodes.toArray(new ModelTask[this.numNodes]);
+		this.outputVariables = new ArrayList<List<String>>(this.numNodes);
+		this.outputSlots = new int[this.numNodes][];
+		this.nodeIndices = new IdentityHashMap<ModelTask, Integer>();
+
+		for (int i = 0; i < this.numNodes; i++) {
+			this.nodeIndices.put(this.models[i], i);
+			this.outputVariables.add(null);
+		}
+
+		/*
+		 * Group the children by parent. Since nodes are numbered in depth-first order, the
+		 * children of each node keep their original order.
+		 */
+		int[] numChildren = new int[this.numNodes];
+		for (int i = 1; i < this.numNodes; i++) {
+			this.parents[i] = parents.get(i);
+			numChildren[this.parents[i]]++;
+		}
+		this.parents[0] = -1;
+
+		for (int i = 0; i < this.numNodes; i++) {
+			this.childOffsets[i + 1] = this.childOffsets[i] + numChildren[i];
+		}
+
+		int[] nextChild = new int[this.numNodes];
+		for (int i = 1; i < this.numNodes; i++) {
+			int parent = this.parents[i];
+			this.children[this.childOffsets[parent] + nextChild[parent]++] = i;
+		}
+
+		for (int i = 0; i < this.numNodes; i++) {
+			setOpcode(i, this.models[i]);
+		}
+	}
+
+	/**
+	 * Compiles the behaviour tree whose root is <code>root</code>.
+	 *
+	 * @param root
+	 *            the root of the tree to compile.
+	 * @return the compiled tree.
+	 * @throws IllegalArgumentException
+	 *             if the tree cannot be compiled (see {@link #isSupported(ModelTask)}).
+	 */
+	public static CompiledBT compile(ModelTask root) {
+		if (root == null) {
+			throw new IllegalArgumentException("The input ModelTask cannot be null");
+		}
+
+		ModelTask unsupported = findUnsupportedTask(root);
+		if (unsupported != null) {
+			throw new IllegalArgumentException("The tree cannot be compiled, since it contains a "
+					+ unsupported.getClass().getCanonicalName());
+		}
+
+		List<ModelTask> nodes = new ArrayList<ModelTask>();
+		List<Integer> parents = new ArrayList<Integer>();
+		addNodes(root, -1, nodes, parents);
+		return new CompiledBT(root, nodes, parents);
+	}
+
+	/**
+	 * Returns true if the behaviour tree whose root is <code>root</code> can be compiled, and false
+	 * otherwise. See {@link CompiledBT} for the list of supported tasks.
+	 *
+	 * @param root
+	 *            the root of the tree.
+	 * @return true if the tree can be compiled, and false otherwise.
+	 */
+	public static boolean isSupported(ModelTask root) {
+		return findUnsupportedTask(root) == null;
+	}
+
+	/**
+	 * Returns the ModelTask this CompiledBT was compiled from.
+	 *
+	 * @return the ModelTask this CompiledBT was compiled from.
+	 */
+	public ModelTask getBehaviourTree() {
+		return this.root;
+	}
+
+	/**
+	 * Returns the number of nodes of the compiled tree.
+	 *
+	 * @return the number of nodes of the compiled tree.
+	 */
+	public int getNumNodes() {
+		return this.numNodes;
+	}
+
+	/**
+	 * Returns the index of the node of <code>task</code>, or -1 if it is not part of the compiled
+	 * tree.
+	 */
+	int getNodeIndex(ModelTask task) {
+		Integer index = this.nodeIndices.get(task);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the first task of the tree whose root is <code>task</code> that cannot be compiled,
+	 * or null if all of them can be compiled.
+	 */
+	private static ModelTask findUnsupportedTask(ModelTask task) {
+		if (opcodeOf(task) == -1) {
+			return task;
+		}
+
+		for (ModelTask child : task.getChildren()) {
+			ModelTask unsupported = findUnsupportedTask(child);
+			if (unsupported != null) {
+				return unsupported;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds <code>task</code> and all the tasks below it to <code>nodes</code>, in depth-first
+	 * order, and their parents' indices to <code>parents</code>.
+	 */
+	private static void addNodes(ModelTask task, int parent, List<ModelTask> nodes,
+			List<Integer> parents) {
+		int index = nodes.size();
+		nodes.add(task);
+		parents.add(parent);
+
+		for (ModelTask child : task.getChildren()) {
+			addNodes(child, index, nodes, parents);
+		}
+	}
+
+	/**
+	 * Sets the opcode and the parameters of node <code>i</code>, whose ModelTask is
+	 * <code>task</code>.
+	 */
+	private void setOpcode(int i, ModelTask task) {
+		int opcode = opcodeOf(task);
+		this.opcodes[i] = opcode;
+
+		if (opcode == WAIT) {
+			this.params[i] = ((ModelWait) task).getDuration();
+		} else if (opcode == LIMIT) {
+			this.params[i] = ((ModelLimit) task).getMaxNumTimes();
+		} else if (opcode == SAFE_OUTPUT_CONTEXT) {
+			this.outputVariables.set(i, ((ModelSafeOutputContextManager) task)
+					.getOutputVariables());
+			this.outputSlots[i] = ((ModelSafeOutputContextManager) task).getOutputSlots();
+		}
+	}
+
+	/**
+	 * Returns the opcode for <code>task</code>, or -1 if it cannot be compiled.
+	 */
+	private static int opcodeOf(ModelTask task) {
+		Class<?> c = task.getClass();
+
+		if (c == ModelSuccess.class) {
+			return SUCCESS;
+		} else if (c == ModelFailure.class) {
+			return FAILURE;
+		} else if (c == ModelWait.class) {
+			return WAIT;
+		} else if (c == ModelSequence.class) {
+			return SEQUENCE;
+		} else if (c == ModelSelector.class) {
+			return SELECTOR;
+		} else if (c == ModelRandomSequence.class) {
+			return RANDOM_SEQUENCE;
+		} else if (c == ModelRandomSelector.class) {
+			return RANDOM_SELECTOR;
+		} else if (c == ModelParallel.class) {
+			if (((ModelParallel) task).getPolicy() == ParallelPolicy.SEQUENCE_POLICY) {
+				return PARALLEL_SEQUENCE;
+			}
+			return PARALLEL_SELECTOR;
+		} else if (c == ModelRepeat.class) {
+			return REPEAT;
+		} else if (c == ModelUntilFail.class) {
+			return UNTIL_FAIL;
+		} else if (c == ModelInverter.class) {
+			return INVERTER;
+		} else if (c == ModelSucceeder.class) {
+			return SUCCEEDER;
+		} else if (c == ModelLimit.class) {
+			return LIMIT;
+		} else if (c == ModelHierarchicalContextManager.class) {
+			return HIERARCHICAL_CONTEXT;
+		} else if (c == ModelSafeContextManager.class) {
+			return SAFE_CONTEXT;
+		} else if (c == ModelSafeOutputContextManager.class) {
+			return SAFE_OUTPUT_CONTEXT;
+		} else if (task instanceof ModelLeaf && !(task instanceof ModelSubtreeLookup)
+				&& !(task instanceof ModelPerformInterruption)) {
+			return LEAF;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import jbt.execution.context.BasicContext;
+import jbt.execution.core.IContext;
+
+/**
+ * A CompiledBTClass is a {@link CompiledBT} together with the subclass of
+ * {@link CompiledBTExecutor} that {@link CompiledBTGenerator} has generated for it. The generated
+ * class runs that particular tree with specialized code, and can only be used along with the
+ * CompiledBT it was generated for, so executors must be created through
+ * {@link #createExecutor(IContext)}.
+ * <p>
+ * Just like the CompiledBT, a CompiledBTClass is immutable and can be shared by all the entities
+ * that run the same tree.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class CompiledBTClass {
+	/** The compiled tree. */
+	private final CompiledBT tree;
+	/** Constructor of the generated class, which receives the tree and the context. */
+	private final Constructor<? extends CompiledBTExecutor> constructor;
+
+	/**
+	 * Creates a CompiledBTClass.
+	 * 
+	 * @param tree
+	 *            the compiled tree.
+	 * @param constructor
+	 *            the constructor of the class generated for <code>tree</code>.
+	 */
+	CompiledBTClass(CompiledBT tree, Constructor<? extends CompiledBTExecutor> constructor) {
+		this.tree = tree;
+		this.constructor = constructor;
+	}
+
+	/**
+	 * Returns the compiled tree.
+	 * 
+	 * @return the compiled tree.
+	 */
+	public CompiledBT getCompiledTree() {
+		return this.tree;
+	}
+
+	/**
+	 * Returns the class that has been generated for the tree.
+	 * 
+	 * @return the class that has been generated for the tree.
+	 */
+	public Class<? extends CompiledBTExecutor> getExecutorClass() {
+		return this.constructor.getDeclaringClass();
+	}
+
+	/**
+	 * Creates an executor that runs the tree with a given context.
+	 * 
+	 * @param context
+	 *            the context of the tree.
+	 * @return an executor that runs the tree.
+	 */
+	public CompiledBTExecutor createExecutor(IContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("The input IContext cannot be null");
+		}
+
+		try {
+			return this.constructor.newInstance(this.tree, context);
+		} catch (InstantiationException e) {
+			throw new RuntimeException("Could not create the executor", e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Could not create the executor", e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Could not create the executor", e.getCause());
+		}
+	}
+
+	/**
+	 * Creates an executor that runs the tree. A new empty context is created for the tree.
+	 * 
+	 * @return an executor that runs the tree.
+	 */
+	public CompiledBTExecutor createExecutor() {
+		return createExecutor(new BasicContext());
+	}
+}
@@ -0,0 +1,1105 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jbt.exception.IllegalReturnStatusException;
+import jbt.exception.NotTickableException;
+import jbt.execution.context.BasicContext;
+import jbt.execution.context.HierarchicalContext;
+import jbt.execution.context.SafeContext;
+import jbt.execution.context.SafeOutputContext;
+import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.ExecutionTask.Status;
+import jbt.execution.core.IBTExecutor;
+import jbt.execution.core.IContext;
+import jbt.execution.core.IObservableContext;
+import jbt.model.core.ModelTask;
+import jbt.util.TimerWheel;
+
+/**
+ * CompiledBTExecutor is an {@link IBTExecutor} that runs a behaviour tree that has been compiled
+ * into a {@link CompiledBT}.
+ * <p>
+ * Instead of creating a graph of ExecutionTask objects that notify each other through
+ * TaskEvents, as the BTExecutor does, a CompiledBTExecutor keeps the runtime state of every node
+ * of the tree (status, active child, context and so on) in arrays indexed by the node's index in
+ * the CompiledBT, and runs the tree with a single interpreter loop that switches on the opcode of
+ * each node. The semantics are exactly those of the BTExecutor: tasks are spawned, ticked and
+ * terminated in the same order, the list of tickable tasks is updated in the same way (insertions
+ * and removals requested during a tick are processed at the end of it, so a task that is spawned
+ * in a tick is not ticked until the next one), and the termination of a task is immediately
+ * notified to its parent, which is ticked right away.
+ * <p>
+ * Leaves that are not built into the CompiledBT (actions, conditions and any other ModelLeaf) are
+ * run by the ExecutionTask that their ModelTask creates, so they behave exactly as they do when
+ * run by a BTExecutor. Such ExecutionTask objects are managed by an internal BTExecutor that
+ * forwards their requests to the CompiledBTExecutor. Note that these leaves have no parent
+ * ExecutionTask (see {@link ExecutionTask#getParent()}), although their position is the one they
+ * would occupy in a BTExecutor.
+ * <p>
+ * A CompiledBT can be shared by any number of CompiledBTExecutor objects, so trees that are run by
+ * many entities need to be compiled just once.
+ *
+ * @see BTExecutorFactory
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ */
+public class CompiledBTExecutor implements IBTExecutor {
+	/** Generation of the requests made by ExecutionTask objects that are no longer in use. */
+	static final int STALE_GENERATION = -1;
+
+	/** The compiled tree that is being run. */
+	private final CompiledBT tree;
+	/** The root context of the tree. */
+	private final IContext context;
+	/** The root context of the tree if it is an IObservableContext, or null otherwise. */
+	private final IObservableContext observableContext;
+	/** Whether the changes of the context are dispatched at the end of every tick. */
+	private boolean contextChangeDispatch = true;
+	/** The BTExecutor that manages the ExecutionTask objects of the non-compiled leaves. */
+	private final LeafHost leafHost;
+	/** Random number generator for the random sequences and selectors. */
+	private final Random random;
+	/** Flag indicating whether the root of the tree has not been spawned yet. */
+	private boolean firstTimeTicked;
+
+	/*
+	 * Runtime state of the nodes. Every time a node is spawned, a new instance of its task starts
+	 * running. Only the state of the latest instance of each node is kept. The state that is
+	 * specific to some kinds of nodes is protected, so that generated subclasses (see
+	 * CompiledBTGenerator) can access it directly.
+	 */
+
+	/**
+	 * Number of instances of each node that have been created so far. It is used to tell requests
+	 * made by the current instance of a node from those made by previous ones.
+	 */
+	private final int[] generations;
+	/** Status of each node. Not used for non-compiled leaves. */
+	protected final Status[] statuses;
+	/** Flag indicating whether each node has been spawned. */
+	private final boolean[] spawned;
+	/** Flag indicating whether each node has been terminated. */
+	private final boolean[] terminated;
+	/** Context of each node. */
+	protected final IContext[] contexts;
+	/**
+	 * For sequences, selectors and their random variants, the index of the active child. For
+	 * limit decorators, 1 if the child has been spawned and 0 otherwise.
+	 */
+	protected final int[] activeChildren;
+	/** Number of times that the child of each limit decorator has been run so far. */
+	protected final int[] runs;
+	/** Starting time of each wait task, as measured by {@link System#nanoTime()}. */
+	private final long[] startTimes;
+	/** Order in which the children of each random sequence and selector are run. Lazily created. */
+	private final int[][] orders;
+	/** ExecutionTask of each non-compiled leaf. */
+	private final ExecutionTask[] leafTasks;
+	/** Timer of each sleeping node (see {@link #sleepUntil(int, long)}). Lazily created. */
+	private final NodeTimer[] nodeTimers;
+	/**
+	 * Wheel that keeps the timers of the sleeping nodes and non-compiled leaves. Lazily created.
+	 */
+	private TimerWheel timers;
+
+	/*
+	 * List of tickable nodes. Just like ExecutionTaskSet, it is an insertion-ordered array where
+	 * removals leave holes (-1).
+	 */
+
+	/** Nodes in the list of tickable nodes. */
+	private int[] tickableNodes;
+	/** Generation of the instance of each node in {@link #tickableNodes}. */
+	private int[] tickableGenerations;
+	/** Number of positions of {@link #tickableNodes} in use, including holes. */
+	private int numTickable;
+	/** Number of holes in {@link #tickableNodes}. */
+	private int numTickableHoles;
+	/** Slot that each node occupies in {@link #tickableNodes}, or -1. */
+	private final int[] tickableSlots;
+
+	/*
+	 * Pending requests of insertion into and removal from the list of tickable nodes. A request
+	 * that has been canceled has its node set to -1.
+	 */
+
+	/** Nodes whose insertion has been requested. */
+	private int[] insertionNodes;
+	/** Generation of the instance of each node in {@link #insertionNodes}. */
+	private int[] insertionGenerations;
+	/** Number of pending insertions. */
+	private int numInsertions;
+	/** Nodes whose removal has been requested. */
+	private int[] removalNodes;
+	/** Generation of the instance of each node in {@link #removalNodes}. */
+	private int[] removalGenerations;
+	/** Number of pending removals. */
+	private int numRemovals;
+
+	/**
+	 * Creates a CompiledBTExecutor that runs a compiled behaviour tree with a given context.
+	 *
+	 * @param tree
+	 *            the compiled behaviour tree to run.
+	 * @param context
+	 *            the context of the tree.
+	 */
+	public CompiledBTExecutor(CompiledBT tree, IContext context) {
+		if (tree == null) {
+			throw new IllegalArgumentException("The input CompiledBT cannot be null");
+		}
+
+		if (context == null) {
+			throw new IllegalArgumentException("The input IContext cannot be null");
+		}
+
+		this.tree = tree;
+		this.context = context;
+		this.observableContext = context instanceof IObservableContext ? (IObservableContext) context
+				: null;
+		this.leafHost = new LeafHost(this, tree.root, context);
+		this.random = new Random();
+		this.firstTimeTicked = true;
+
+		int numNodes = tree.numNodes;
+		this.generations = new int[numNodes];
+		this.statuses = new Status[numNodes];
+		this.spawned = new boolean[numNodes];
+		this.terminated = new boolean[numNodes];
+		this.contexts = new IContext[numNodes];
+		this.activeChildren = new int[numNodes];
+		this.runs = new int[numNodes];
+		this.startTimes = new long[numNodes];
+		this.orders = new int[numNodes][];
+		this.leafTasks = new ExecutionTask[numNodes];
+		this.nodeTimers = new NodeTimer[numNodes];
+
+		this.tickableNodes = new int[16];
+		this.tickableGenerations = new int[16];
+		this.tickableSlots = new int[numNodes];
+		Arrays.fill(this.tickableSlots, -1);
+
+		this.insertionNodes = new int[16];
+		this.insertionGenerations = new int[16];
+		this.removalNodes = new int[16];
+		this.removalGenerations = new int[16];
+	}
+
+	/**
+	 * Creates a CompiledBTExecutor that runs a compiled behaviour tree. A new empty context is
+	 * created for the tree.
+	 *
+	 * @param tree
+	 *            the compiled behaviour tree to run.
+	 */
+	public CompiledBTExecutor(CompiledBT tree) {
+		this(tree, new BasicContext());
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.IBTExecutor#tick()
+	 */
+	public void tick() {
+		Status currentStatus = this.getStatus();
+
+		/* We only tick if the tree has not finished yet or if it has not started running. */
+		if (currentStatus == Status.RUNNING || currentStatus == Status.UNINITIALIZED) {
+			if (this.timers != null && !this.timers.isEmpty()) {
+				this.timers.advance(System.nanoTime());
+			}
+
+			this.leafHost.processLeafInvocations();
+			processInsertionsAndRemovals();
+
+			if (this.firstTimeTicked) {
+				create(0);
+				spawn(0, this.context);
+				this.firstTimeTicked = false;
+			} else {
+				/*
+				 * Nodes whose entry belongs to a previous instance have been respawned during this
+				 * tick, and the instance in the list has been terminated, so it is not ticked.
+				 */
+				int numToTick = this.numTickable;
+				for (int i = 0; i < numToTick; i++) {
+					int node = this.tickableNodes[i];
+					if (node != -1 && this.tickableGenerations[i] == this.generations[node]) {
+						tickNode(node);
+					}
+				}
+			}
+
+			processInsertionsAndRemovals();
+		}
+
+		if (this.contextChangeDispatch && this.observableContext != null) {
+			this.observableContext.dispatchChanges();
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.IBTExecutor#terminate()
+	 */
+	public void terminate() {
+		if (!this.firstTimeTicked) {
+			terminateNode(0);
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.IBTExecutor#getBehaviourTree()
+	 */
+	public ModelTask getBehaviourTree() {
+		return this.tree.root;
+	}
+
+	/**
+	 * Returns the compiled tree that this CompiledBTExecutor is running.
+	 *
+	 * @return the compiled tree that this CompiledBTExecutor is running.
+	 */
+	public CompiledBT getCompiledTree() {
+		return this.tree;
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.IBTExecutor#getStatus()
+	 */
+	public Status getStatus() {
+		if (this.firstTimeTicked) {
+			return Status.UNINITIALIZED;
+		} else {
+			return statusOf(0);
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.IBTExecutor#getRootContext()
+	 */
+	public IContext getRootContext() {
+		return this.context;
+	}
+
+	/**
+	 * Sets whether the changes of the context of the tree are dispatched at the end of every tick,
+	 * just like {@link jbt.execution.core.BTExecutor#setContextChangeDispatch(boolean)}.
+	 *
+	 * @param contextChangeDispatch
+	 *            true to dispatch the changes of the context at the end of every tick, and false
+	 *            otherwise.
+	 */
+	public void setContextChangeDispatch(boolean contextChangeDispatch) {
+		this.contextChangeDispatch = contextChangeDispatch;
+	}
+
+	/**
+	 * Returns true if the changes of the context are dispatched at the end of every tick (see
+	 * {@link #setContextChangeDispatch(boolean)}), and false otherwise.
+	 *
+	 * @return true if the changes of the context are dispatched at the end of every tick.
+	 */
+	public boolean isContextChangeDispatch() {
+		return this.contextChangeDispatch;
+	}
+
+	/**
+	 * Creates a new instance of <code>node</code>, which will be spawned afterwards. For
+	 * non-compiled leaves, this creates their ExecutionTask.
+	 *
+	 * @param node
+	 *            the node to create.
+	 */
+	protected final void create(int node) {
+		this.generations[node]++;
+		this.spawned[node] = false;
+		this.terminated[node] = false;
+		this.statuses[node] = Status.UNINITIALIZED;
+
+		if (this.tree.opcodes[node] == CompiledBT.LEAF) {
+			this.leafTasks[node] = this.tree.models[node].createExecutor(this.leafHost, null);
+		}
+	}
+
+	/**
+	 * Spawns the current instance of <code>node</code>. This is the equivalent to
+	 * {@link ExecutionTask#spawn(IContext)}.
+	 *
+	 * @param node
+	 *            the node to spawn.
+	 * @param context
+	 *            the context of the node.
+	 */
+	protected final void spawn(int node, IContext context) {
+		this.contexts[node] = context;
+
+		if (this.tree.opcodes[node] == CompiledBT.LEAF) {
+			int previousNode = this.leafHost.enter(node);
+			this.leafTasks[node].spawn(context);
+			this.leafHost.enter(previousNode);
+			return;
+		}
+
+		this.spawned[node] = true;
+		this.statuses[node] = Status.RUNNING;
+		internalSpawn(node, context);
+	}
+
+	/**
+	 * Spawns the current instance of <code>node</code>, which is not a non-compiled leaf, once its
+	 * common state has been initialized. This is the equivalent to the
+	 * <code>internalSpawn()</code> method of the ExecutionTask of the node.
+	 *
+	 * @param node
+	 *            the node to spawn.
+	 * @param context
+	 *            the context of the node.
+	 */
+	protected void internalSpawn(int node, IContext context) {
+		switch (this.tree.opcodes[node]) {
+		case CompiledBT.SUCCESS:
+		case CompiledBT.FAILURE:
+			requestInsertion(node);
+			break;
+		case CompiledBT.WAIT:
+			spawnWait(node, this.tree.params[node]);
+			break;
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.SELECTOR:
+			this.activeChildren[node] = 0;
+			spawnChild(node, 0, context);
+			break;
+		case CompiledBT.RANDOM_SEQUENCE:
+		case CompiledBT.RANDOM_SELECTOR:
+			shuffleOrder(node);
+			this.activeChildren[node] = 0;
+			spawnChild(node, this.orders[node][0], context);
+			break;
+		case CompiledBT.PARALLEL_SEQUENCE:
+		case CompiledBT.PARALLEL_SELECTOR: {
+			/* First, create all the children. Then, spawn them all. */
+			int first = this.tree.childOffsets[node];
+			int last = this.tree.childOffsets[node + 1];
+			for (int i = first; i < last; i++) {
+				create(this.tree.children[i]);
+			}
+			for (int i = first; i < last; i++) {
+				spawn(this.tree.children[i], context);
+			}
+			break;
+		}
+		case CompiledBT.REPEAT:
+		case CompiledBT.UNTIL_FAIL:
+		case CompiledBT.INVERTER:
+		case CompiledBT.SUCCEEDER:
+			spawnChild(node, 0, context);
+			break;
+		case CompiledBT.LIMIT:
+			if (this.runs[node] < this.tree.params[node]) {
+				this.runs[node]++;
+				this.activeChildren[node] = 1;
+				spawnChild(node, 0, context);
+			} else {
+				this.activeChildren[node] = 0;
+				requestInsertion(node);
+			}
+			break;
+		case CompiledBT.HIERARCHICAL_CONTEXT:
+		case CompiledBT.SAFE_CONTEXT:
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			spawnChild(node, 0, createChildContext(node, context));
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + this.tree.opcodes[node]);
+		}
+	}
+
+	/**
+	 * Creates the context that a context manager passes to its child.
+	 *
+	 * @param node
+	 *            the context manager.
+	 * @param context
+	 *            the context of the context manager.
+	 * @return the context of the child of <code>node</code>.
+	 */
+	protected final IContext createChildContext(int node, IContext context) {
+		switch (this.tree.opcodes[node]) {
+		case CompiledBT.HIERARCHICAL_CONTEXT: {
+			HierarchicalContext newContext = new HierarchicalContext();
+			newContext.setParent(context);
+			return newContext;
+		}
+		case CompiledBT.SAFE_CONTEXT:
+			return new SafeContext(context);
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			return new SafeOutputContext(context, this.tree.outputVariables.get(node),
+					this.tree.outputSlots[node]);
+		default:
+			throw new IllegalArgumentException("Node " + node + " is not a context manager");
+		}
+	}
+
+	/**
+	 * Ticks the current instance of <code>node</code>, and if it finishes, ticks its parent. This is
+	 * the equivalent to {@link ExecutionTask#tick()} followed by the notification of the
+	 * termination of the task to its parent.
+	 *
+	 * @return the status of the node after being ticked.
+	 */
+	private Status tickNode(int node) {
+		Status newStatus;
+
+		if (this.tree.opcodes[node] == CompiledBT.LEAF) {
+			int previousNode = this.leafHost.enter(node);
+			newStatus = this.leafTasks[node].tick();
+			this.leafHost.enter(previousNode);
+
+			/* A terminated task does not notify its parent. */
+			if (newStatus == Status.RUNNING || newStatus == Status.TERMINATED) {
+				return newStatus;
+			}
+		} else {
+			if (!this.spawned[node]) {
+				throw new NotTickableException(
+						"The task cannot be ticked. It must be spawned first.");
+			}
+
+			if (this.terminated[node]) {
+				return Status.TERMINATED;
+			}
+
+			newStatus = internalTick(node);
+
+			if (newStatus == Status.TERMINATED || newStatus == Status.UNINITIALIZED) {
+				throw new IllegalReturnStatusException(newStatus.toString()
+						+ " cannot be returned by ExecutionTask.internalTick()");
+			}
+
+			this.statuses[node] = newStatus;
+
+			if (newStatus == Status.RUNNING) {
+				return newStatus;
+			}
+
+			requestRemoval(node, this.generations[node]);
+		}
+
+		int parent = this.tree.parents[node];
+		if (parent != -1) {
+			tickNode(parent);
+		}
+
+		return newStatus;
+	}
+
+	/**
+	 * Computes the new status of <code>node</code>, which has been spawned and not terminated. This
+	 * is the equivalent to the <code>internalTick()</code> method of the ExecutionTask of the node.
+	 *
+	 * @param node
+	 *            the node to tick. It is not a non-compiled leaf.
+	 * @return the new status of the node.
+	 */
+	protected Status internalTick(int node) {
+		switch (this.tree.opcodes[node]) {
+		case CompiledBT.SUCCESS:
+			return Status.SUCCESS;
+		case CompiledBT.FAILURE:
+			return Status.FAILURE;
+		case CompiledBT.WAIT:
+			return tickWait(node, this.tree.params[node]);
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.RANDOM_SEQUENCE: {
+			Status childStatus = statusOf(activeChild(node));
+			if (childStatus == Status.RUNNING) {
+				return Status.RUNNING;
+			} else if (childStatus == Status.SUCCESS) {
+				return spawnNextChild(node) ? Status.RUNNING : Status.SUCCESS;
+			} else {
+				return Status.FAILURE;
+			}
+		}
+		case CompiledBT.SELECTOR:
+		case CompiledBT.RANDOM_SELECTOR: {
+			Status childStatus = statusOf(activeChild(node));
+			if (childStatus == Status.RUNNING) {
+				return Status.RUNNING;
+			} else if (childStatus == Status.SUCCESS) {
+				return Status.SUCCESS;
+			} else {
+				return spawnNextChild(node) ? Status.RUNNING : Status.FAILURE;
+			}
+		}
+		case CompiledBT.PARALLEL_SEQUENCE: {
+			boolean oneRunning = false;
+			for (int i = this.tree.childOffsets[node]; i < this.tree.childOffsets[node + 1]; i++) {
+				Status childStatus = statusOf(this.tree.children[i]);
+				if (childStatus == Status.RUNNING) {
+					oneRunning = true;
+				} else if (childStatus == Status.FAILURE || childStatus == Status.TERMINATED) {
+					terminateChildren(node);
+					return Status.FAILURE;
+				}
+			}
+			return oneRunning ? Status.RUNNING : Status.SUCCESS;
+		}
+		case CompiledBT.PARALLEL_SELECTOR: {
+			boolean oneRunning = false;
+			for (int i = this.tree.childOffsets[node]; i < this.tree.childOffsets[node + 1]; i++) {
+				Status childStatus = statusOf(this.tree.children[i]);
+				if (childStatus == Status.SUCCESS) {
+					terminateChildren(node);
+					return Status.SUCCESS;
+				} else if (childStatus == Status.RUNNING) {
+					oneRunning = true;
+				}
+			}
+			return oneRunning ? Status.RUNNING : Status.FAILURE;
+		}
+		case CompiledBT.REPEAT:
+			if (statusOf(child(node, 0)) != Status.RUNNING) {
+				spawnChild(node, 0, this.contexts[node]);
+			}
+			return Status.RUNNING;
+		case CompiledBT.UNTIL_FAIL: {
+			Status childStatus = statusOf(child(node, 0));
+			if (childStatus == Status.FAILURE || childStatus == Status.TERMINATED) {
+				return Status.SUCCESS;
+			}
+			if (childStatus == Status.SUCCESS) {
+				spawnChild(node, 0, this.contexts[node]);
+			}
+			return Status.RUNNING;
+		}
+		case CompiledBT.INVERTER: {
+			Status childStatus = statusOf(child(node, 0));
+			if (childStatus == Status.RUNNING) {
+				return Status.RUNNING;
+			} else if (childStatus == Status.FAILURE || childStatus == Status.TERMINATED) {
+				return Status.SUCCESS;
+			} else {
+				return Status.FAILURE;
+			}
+		}
+		case CompiledBT.SUCCEEDER:
+			return statusOf(child(node, 0)) == Status.RUNNING ? Status.RUNNING : Status.SUCCESS;
+		case CompiledBT.LIMIT:
+			return this.activeChildren[node] == 1 ? statusOf(child(node, 0)) : Status.FAILURE;
+		case CompiledBT.HIERARCHICAL_CONTEXT:
+		case CompiledBT.SAFE_CONTEXT:
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			return statusOf(child(node, 0));
+		default:
+			throw new IllegalStateException("Unknown opcode " + this.tree.opcodes[node]);
+		}
+	}
+
+	/**
+	 * Terminates the current instance of <code>node</code>. This is the equivalent to
+	 * {@link ExecutionTask#terminate()}.
+	 *
+	 * @param node
+	 *            the node to terminate.
+	 */
+	protected final void terminateNode(int node) {
+		if (this.tree.opcodes[node] == CompiledBT.LEAF) {
+			int previousNode = this.leafHost.enter(node);
+			this.leafTasks[node].terminate();
+			this.leafHost.enter(previousNode);
+			return;
+		}
+
+		if (!this.spawned[node]) {
+			throw new RuntimeException("Cannot terminate a task that has not been spawned yet.");
+		}
+
+		if (!this.terminated[node]) {
+			this.terminated[node] = true;
+			this.statuses[node] = Status.TERMINATED;
+			cancelSleep(node);
+			requestRemoval(node, this.generations[node]);
+			internalTerminate(node);
+		}
+	}
+
+	/**
+	 * Terminates the children of <code>node</code>, which has just been terminated. This is the
+	 * equivalent to the <code>internalTerminate()</code> method of the ExecutionTask of the node.
+	 *
+	 * @param node
+	 *            the node that has been terminated. It is not a non-compiled leaf.
+	 */
+	protected void internalTerminate(int node) {
+		switch (this.tree.opcodes[node]) {
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.SELECTOR:
+		case CompiledBT.RANDOM_SEQUENCE:
+		case CompiledBT.RANDOM_SELECTOR:
+			terminateNode(activeChild(node));
+			break;
+		case CompiledBT.PARALLEL_SEQUENCE:
+		case CompiledBT.PARALLEL_SELECTOR:
+			terminateChildren(node);
+			break;
+		case CompiledBT.LIMIT:
+			if (this.activeChildren[node] == 1) {
+				terminateNode(child(node, 0));
+			}
+			break;
+		case CompiledBT.REPEAT:
+		case CompiledBT.UNTIL_FAIL:
+		case CompiledBT.INVERTER:
+		case CompiledBT.SUCCEEDER:
+		case CompiledBT.HIERARCHICAL_CONTEXT:
+		case CompiledBT.SAFE_CONTEXT:
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			terminateNode(child(node, 0));
+			break;
+		default:
+			/* Built-in leaves have nothing to terminate. */
+			break;
+		}
+	}
+
+	/**
+	 * Terminates all the children of <code>node</code>.
+	 */
+	private void terminateChildren(int node) {
+		for (int i = this.tree.childOffsets[node]; i < this.tree.childOffsets[node + 1]; i++) {
+			terminateNode(this.tree.children[i]);
+		}
+	}
+
+	/**
+	 * Spawns a wait node, which sleeps until its duration is over. This is the equivalent to the
+	 * <code>internalSpawn()</code> method of ExecutionWait.
+	 *
+	 * @param node
+	 *            the wait node.
+	 * @param duration
+	 *            the duration of the wait, in milliseconds.
+	 */
+	protected final void spawnWait(int node, long duration) {
+		this.startTimes[node] = System.nanoTime();
+		sleepUntil(node, this.startTimes[node] + duration * 1000000);
+	}
+
+	/**
+	 * Ticks a wait node. This is the equivalent to the <code>internalTick()</code> method of
+	 * ExecutionWait.
+	 *
+	 * @param node
+	 *            the wait node.
+	 * @param duration
+	 *            the duration of the wait, in milliseconds.
+	 * @return {@link Status#SUCCESS} if the node has waited long enough, and
+	 *         {@link Status#RUNNING} otherwise.
+	 */
+	protected final Status tickWait(int node, long duration) {
+		long estimatedTime = System.nanoTime() - this.startTimes[node];
+		if ((estimatedTime / 1000000.0) >= duration) {
+			return Status.SUCCESS;
+		}
+		sleepUntil(node, this.startTimes[node] + duration * 1000000);
+		return Status.RUNNING;
+	}
+
+	/**
+	 * Makes the current instance of <code>node</code> sleep until a given time. This is the
+	 * equivalent to {@link ExecutionTask#sleepUntil(long)}: the node leaves the list of tickable
+	 * nodes, and it is inserted back in the first tick after <code>deadline</code>.
+	 *
+	 * @param node
+	 *            the node that sleeps. It is not a non-compiled leaf.
+	 * @param deadline
+	 *            the time when the node must be ticked again, in nanoseconds, as returned by
+	 *            {@link System#nanoTime()}.
+	 */
+	protected final void sleepUntil(int node, long deadline) {
+		NodeTimer timer = this.nodeTimers[node];
+		if (timer == null) {
+			timer = new NodeTimer(node);
+			this.nodeTimers[node] = timer;
+		}
+
+		int generation = this.generations[node];
+		cancelInsertion(node, generation);
+		requestRemoval(node, generation);
+		timer.generation = generation;
+		getTimerWheel().schedule(timer, deadline);
+	}
+
+	/**
+	 * Cancels the wakeup of <code>node</code>, if it is sleeping.
+	 */
+	private void cancelSleep(int node) {
+		if (this.nodeTimers[node] != null && this.timers != null) {
+			this.timers.cancel(this.nodeTimers[node]);
+		}
+	}
+
+	/**
+	 * Returns the TimerWheel of the sleeping nodes and non-compiled leaves. This method is used by
+	 * the {@link LeafHost}.
+	 */
+	TimerWheel getTimerWheel() {
+		if (this.timers == null) {
+			this.timers = new TimerWheel();
+		}
+		return this.timers;
+	}
+
+	/**
+	 * Timer that inserts a node back into the list of tickable nodes when it expires.
+	 *
+	 * @author Ricardo Juan Palma Durán
+	 *
+	 */
+	private final class NodeTimer extends TimerWheel.Timer {
+		/** The node that is sleeping. */
+		private final int node;
+		/** The generation of the instance of the node that is sleeping. */
+		private int generation;
+
+		private NodeTimer(int node) {
+			this.node = node;
+		}
+
+		protected void expired() {
+			cancelRemoval(this.node, this.generation);
+			requestInsertion(this.node, this.generation);
+		}
+	}
+
+	/**
+	 * Returns the status of the current instance of <code>node</code>.
+	 *
+	 * @param node
+	 *            the node whose status is returned.
+	 * @return the status of the node.
+	 */
+	protected final Status statusOf(int node) {
+		if (this.tree.opcodes[node] == CompiledBT.LEAF) {
+			return this.leafTasks[node].getStatus();
+		}
+		return this.statuses[node];
+	}
+
+	/**
+	 * Returns the <code>index</code>-th child of <code>node</code>.
+	 */
+	private int child(int node, int index) {
+		return this.tree.children[this.tree.childOffsets[node] + index];
+	}
+
+	/**
+	 * Returns the active child of a sequence, selector, random sequence or random selector.
+	 */
+	private int activeChild(int node) {
+		int index = this.activeChildren[node];
+		if (this.orders[node] != null) {
+			index = this.orders[node][index];
+		}
+		return child(node, index);
+	}
+
+	/**
+	 * Creates and spawns the <code>index</code>-th child of <code>node</code>.
+	 */
+	private void spawnChild(int node, int index, IContext context) {
+		createAndSpawn(child(node, index), context);
+	}
+
+	/**
+	 * Creates a new instance of <code>node</code> and spawns it.
+	 *
+	 * @param node
+	 *            the node to create and spawn.
+	 * @param context
+	 *            the context of the node.
+	 */
+	protected final void createAndSpawn(int node, IContext context) {
+		create(node);
+		spawn(node, context);
+	}
+
+	/**
+	 * Spawns the child that comes after the active child of a sequence, selector, random sequence
+	 * or random selector. Returns false if the active child is the last one, in which case nothing
+	 * is done.
+	 */
+	private boolean spawnNextChild(int node) {
+		int numChildren = this.tree.childOffsets[node + 1] - this.tree.childOffsets[node];
+		if (this.activeChildren[node] == numChildren - 1) {
+			return false;
+		}
+
+		this.activeChildren[node]++;
+		int index = this.activeChildren[node];
+		if (this.orders[node] != null) {
+			index = this.orders[node][index];
+		}
+		spawnChild(node, index, this.contexts[node]);
+		return true;
+	}
+
+	/**
+	 * Randomly shuffles the order in which the children of a random sequence or selector are run.
+	 */
+	private void shuffleOrder(int node) {
+		int[] order = this.orders[node];
+		if (order == null) {
+			order = new int[this.tree.childOffsets[node + 1] - this.tree.childOffsets[node]];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			this.orders[node] = order;
+		}
+
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = this.random.nextInt(i + 1);
+			int aux = order[i];
+			order[i] = order[j];
+			order[j] = aux;
+		}
+	}
+
+	/**
+	 * Requests the insertion of the current instance of <code>node</code> into the list of tickable
+	 * nodes.
+	 *
+	 * @param node
+	 *            the node to insert.
+	 */
+	protected final void requestInsertion(int node) {
+		requestInsertion(node, this.generations[node]);
+	}
+
+	/**
+	 * Requests the insertion of the instance of generation <code>generation</code> of
+	 * <code>node</code> into the list of tickable nodes. As in the BTExecutor, the insertion is
+	 * delayed until the current tick finishes.
+	 */
+	void requestInsertion(int node, int generation) {
+		if (this.numInsertions == this.insertionNodes.length) {
+			this.insertionNodes = Arrays.copyOf(this.insertionNodes, this.numInsertions * 2);
+			this.insertionGenerations = Arrays.copyOf(this.insertionGenerations,
+					this.numInsertions * 2);
+		}
+		this.insertionNodes[this.numInsertions] = node;
+		this.insertionGenerations[this.numInsertions] = generation;
+		this.numInsertions++;
+	}
+
+	/**
+	 * Requests the removal of the instance of generation <code>generation</code> of
+	 * <code>node</code> from the list of tickable nodes. As in the BTExecutor, the removal is
+	 * delayed until the current tick finishes. {@link #STALE_GENERATION} stands for any instance
+	 * other than the current one.
+	 */
+	void requestRemoval(int node, int generation) {
+		if (this.numRemovals == this.removalNodes.length) {
+			this.removalNodes = Arrays.copyOf(this.removalNodes, this.numRemovals * 2);
+			this.removalGenerations = Arrays.copyOf(this.removalGenerations,
+					this.numRemovals * 2);
+		}
+		this.removalNodes[this.numRemovals] = node;
+		this.removalGenerations[this.numRemovals] = generation;
+		this.numRemovals++;
+	}
+
+	/**
+	 * Cancels the pending insertion of the instance of generation <code>generation</code> of
+	 * <code>node</code>.
+	 */
+	void cancelInsertion(int node, int generation) {
+		cancelRequest(this.insertionNodes, this.insertionGenerations, this.numInsertions, node,
+				generation);
+	}
+
+	/**
+	 * Cancels the pending removal of the instance of generation <code>generation</code> of
+	 * <code>node</code>.
+	 */
+	void cancelRemoval(int node, int generation) {
+		cancelRequest(this.removalNodes, this.removalGenerations, this.numRemovals, node,
+				generation);
+	}
+
+	/**
+	 * Cancels the requests of a list of pending requests that match <code>node</code> and
+	 * <code>generation</code>.
+	 */
+	private static void cancelRequest(int[] nodes, int[] generations, int numRequests, int node,
+			int generation) {
+		for (int i = 0; i < numRequests; i++) {
+			if (nodes[i] == node && generations[i] == generation) {
+				nodes[i] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Processes the pending insertions and removals into and from the list of tickable nodes. Just
+	 * as in the BTExecutor, insertions are processed in the order they were requested, and all of
+	 * them are processed before the removals.
+	 */
+	private void processInsertionsAndRemovals() {
+		for (int i = 0; i < this.numInsertions; i++) {
+			int node = this.insertionNodes[i];
+			int generation = this.insertionGenerations[i];
+
+			/*
+			 * Instances that have already been replaced by a newer one have finished or been
+			 * terminated, so they have a pending removal too.
+			 */
+			if (node == -1 || generation != this.generations[node]) {
+				continue;
+			}
+
+			int slot = this.tickableSlots[node];
+			if (slot != -1) {
+				if (this.tickableGenerations[slot] == generation) {
+					continue;
+				}
+				/*
+				 * The entry belongs to a previous instance of the node, which has a pending removal,
+				 * so it can be removed right away.
+				 */
+				removeTickableSlot(slot);
+			}
+
+			addTickable(node, generation);
+		}
+		this.numInsertions = 0;
+
+		for (int i = 0; i < this.numRemovals; i++) {
+			int node = this.removalNodes[i];
+			if (node == -1) {
+				continue;
+			}
+
+			int slot = this.tickableSlots[node];
+			if (slot != -1) {
+				int generation = this.removalGenerations[i];
+				int slotGeneration = this.tickableGenerations[slot];
+				if (generation == slotGeneration
+						|| (generation == STALE_GENERATION && slotGeneration != this.generations[node])) {
+					removeTickableSlot(slot);
+				}
+			}
+		}
+		this.numRemovals = 0;
+
+		if (this.numTickableHoles > (this.numTickable >>> 1)) {
+			compactTickable();
+		}
+	}
+
+	/**
+	 * Adds an instance of <code>node</code> at the end of the list of tickable nodes.
+	 */
+	private void addTickable(int node, int generation) {
+		if (this.numTickable == this.tickableNodes.length) {
+			if (this.numTickableHoles > 0) {
+				compactTickable();
+			}
+			if (this.numTickable == this.tickableNodes.length) {
+				this.tickableNodes = Arrays.copyOf(this.tickableNodes, this.numTickable * 2);
+				this.tickableGenerations = Arrays.copyOf(this.tickableGenerations,
+						this.numTickable * 2);
+			}
+		}
+
+		this.tickableNodes[this.numTickable] = node;
+		this.tickableGenerations[this.numTickable] = generation;
+		this.tickableSlots[node] = this.numTickable;
+		this.numTickable++;
+	}
+
+	/**
+	 * Removes the entry at position <code>slot</code> of the list of tickable nodes.
+	 */
+	private void removeTickableSlot(int slot) {
+		this.tickableSlots[this.tickableNodes[slot]] = -1;
+		this.tickableNodes[slot] = -1;
+
+		if (slot == this.numTickable - 1) {
+			this.numTickable--;
+		} else {
+			this.numTickableHoles++;
+		}
+	}
+
+	/**
+	 * Reclaims the holes of the list of tickable nodes, preserving the order of the entries.
+	 */
+	private void compactTickable() {
+		int next = 0;
+		for (int i = 0; i < this.numTickable; i++) {
+			int node = this.tickableNodes[i];
+			if (node != -1) {
+				this.tickableNodes[next] = node;
+				this.tickableGenerations[next] = this.tickableGenerations[i];
+				this.tickableSlots[node] = next;
+				next++;
+			}
+		}
+		Arrays.fill(this.tickableNodes, next, this.numTickable, -1);
+		this.numTickable = next;
+		this.numTickableHoles = 0;
+	}
+
+	/**
+	 * Returns the node whose current or previous ExecutionTask is <code>task</code>, or -1 if
+	 * <code>task</code> is not a leaf of the compiled tree. This method is used by the
+	 * {@link LeafHost}.
+	 */
+	int getLeafNode(ExecutionTask task, int currentNode) {
+		if (currentNode != -1 && this.leafTasks[currentNode] == task) {
+			return currentNode;
+		}
+		return this.tree.getNodeIndex(task.getModelTask());
+	}
+
+	/**
+	 * Returns the generation of <code>task</code>, which is the ExecutionTask of
+	 * <code>node</code>, or {@link #STALE_GENERATION} if it is not the current one. This method is
+	 * used by the {@link LeafHost}.
+	 */
+	int getLeafGeneration(int node, ExecutionTask task) {
+		return this.leafTasks[node] == task ? this.generations[node] : STALE_GENERATION;
+	}
+
+	/**
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "[Root: " + this.tree.root.getClass().getSimpleName() + ", Status: "
+				+ this.getStatus() + "]";
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+/**
+ * Exception that is thrown when there is any error when generating or compiling the executor class
+ * of a {@link CompiledBT}.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class CompiledBTGenerationException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public CompiledBTGenerationException(String message) {
+		super(message);
+	}
+
+	public CompiledBTGenerationException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
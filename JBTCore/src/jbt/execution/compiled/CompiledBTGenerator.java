@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import jbt.execution.core.IContext;
+
+/**
+ * CompiledBTGenerator generates, compiles and loads a specialized subclass of
+ * {@link CompiledBTExecutor} for a {@link CompiledBT}.
+ * <p>
+ * A CompiledBTExecutor interprets the opcodes of the CompiledBT every time a node is spawned,
+ * ticked or terminated. The class generated by this CompiledBTGenerator, on the other hand,
+ * contains a method for spawning, ticking and terminating each node of the tree, where the
+ * control flow of sequences, selectors, parallels and decorators is written out as straight-line
+ * code, and the indices of the children and the parameters of the nodes are constants. Leaves are
+ * run just as in the CompiledBTExecutor. Random sequences and random selectors are not
+ * specialized, so they are run by the CompiledBTExecutor's interpreter. Since every tree gets its
+ * own class, the code that runs it is monomorphic, which makes it easier for the JIT compiler to
+ * optimize.
+ * <p>
+ * The source code of the class is compiled in memory with the Java compiler of the platform (see
+ * {@link ToolProvider#getSystemJavaCompiler()}), which is only available when running on a JDK.
+ * {@link #isCompilerAvailable()} tells whether it is.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class CompiledBTGenerator {
+	/** Package of the generated classes. */
+	private static final String PACKAGE_NAME = "jbt.execution.compiled";
+	/** Prefix of the name of the generated classes. */
+	private static final String CLASS_NAME_PREFIX = "GeneratedBTExecutor";
+	/** Number of classes generated so far, used to give them unique names. */
+	private static int numGeneratedClasses = 0;
+
+	/**
+	 * Returns true if there is a Java compiler available in this platform, and false otherwise.
+	 * 
+	 * @return true if there is a Java compiler available in this platform, and false otherwise.
+	 */
+	public static boolean isCompilerAvailable() {
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	/**
+	 * Generates, compiles and loads the executor class of a compiled tree.
+	 * 
+	 * @param tree
+	 *            the compiled tree.
+	 * @return the compiled tree along with its executor class.
+	 * @throws CompiledBTGenerationException
+	 *             if there is no Java compiler available or if the generated code cannot be
+	 *             compiled or loaded.
+	 */
+	public static CompiledBTClass compile(CompiledBT tree) throws CompiledBTGenerationException {
+		if (tree == null) {
+			throw new IllegalArgumentException("The input CompiledBT cannot be null");
+		}
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new CompiledBTGenerationException(
+					"There is no Java compiler available in this platform");
+		}
+
+		String className = nextClassName();
+		String qualifiedName = PACKAGE_NAME + "." + className;
+		String source = generateSource(tree, className);
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		MemoryFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(
+				diagnostics, null, null));
+
+		List<String> options = new ArrayList<String>();
+		options.add("-classpath");
+		options.add(getClassPath());
+
+		List<JavaFileObject> sources = Collections.<JavaFileObject> singletonList(new SourceFile(
+				qualifiedName, source));
+
+		Boolean success;
+		try {
+			success = compiler.getTask(null, fileManager, diagnostics, options, null, sources)
+					.call();
+		} catch (RuntimeException e) {
+			throw new CompiledBTGenerationException("Could not compile " + qualifiedName, e);
+		}
+
+		if (success == null || !success.booleanValue()) {
+			StringBuilder message = new StringBuilder("Could not compile " + qualifiedName + ":");
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				message.append("\n" + diagnostic.getMessage(null));
+			}
+			throw new CompiledBTGenerationException(message.toString());
+		}
+
+		try {
+			ClassLoader loader = new MemoryClassLoader(CompiledBTExecutor.class.getClassLoader(),
+					fileManager.classes);
+			Constructor<? extends CompiledBTExecutor> constructor = loader.loadClass(
+					qualifiedName).asSubclass(CompiledBTExecutor.class).getConstructor(
+					CompiledBT.class, IContext.class);
+			return new CompiledBTClass(tree, constructor);
+		} catch (Exception e) {
+			throw new CompiledBTGenerationException("Could not load " + qualifiedName, e);
+		} catch (LinkageError e) {
+			throw new CompiledBTGenerationException("Could not load " + qualifiedName, e);
+		}
+	}
+
+	/**
+	 * Generates the source code of the executor class of a compiled tree.
+	 * 
+	 * @param tree
+	 *            the compiled tree.
+	 * @param className
+	 *            the simple name of the class. It belongs to the
+	 *            <code>jbt.execution.compiled</code> package.
+	 * @return the source code of the class.
+	 */
+	public static String generateSource(CompiledBT tree, String className) {
+		StringBuilder code = new StringBuilder();
+
+		code.append("package " + PACKAGE_NAME + ";\n\n");
+		code.append("import jbt.execution.core.ExecutionTask.Status;\n");
+		code.append("import jbt.execution.core.IContext;\n\n");
+		code.append("/** Executor class generated for a " + tree.root.getClass().getSimpleName()
+				+ " with " + tree.numNodes + " nodes. */\n");
+		code.append("public final class " + className + " extends CompiledBTExecutor {\n");
+		code.append("\tpublic " + className + "(CompiledBT tree, IContext context) {\n");
+		code.append("\t\tsuper(tree, context);\n");
+		code.append("\t}\n\n");
+
+		StringBuilder spawnSwitch = new StringBuilder();
+		StringBuilder tickSwitch = new StringBuilder();
+		StringBuilder terminateSwitch = new StringBuilder();
+		StringBuilder methods = new StringBuilder();
+
+		for (int node = 0; node < tree.numNodes; node++) {
+			if (!isSpecialized(tree.opcodes[node])) {
+				continue;
+			}
+
+			spawnSwitch.append("\t\tcase " + node + ":\n\t\t\tspawn" + node
+					+ "(context);\n\t\t\treturn;\n");
+			tickSwitch.append("\t\tcase " + node + ":\n\t\t\treturn tick" + node + "();\n");
+			methods.append("\tprivate void spawn" + node + "(IContext context) {\n");
+			generateSpawn(tree, node, methods);
+			methods.append("\t}\n\n");
+			methods.append("\tprivate Status tick" + node + "() {\n");
+			generateTick(tree, node, methods);
+			methods.append("\t}\n\n");
+
+			if (getNumChildren(tree, node) > 0) {
+				terminateSwitch.append("\t\tcase " + node + ":\n\t\t\tterminate" + node
+						+ "();\n\t\t\treturn;\n");
+				methods.append("\tprivate void terminate" + node + "() {\n");
+				generateTerminate(tree, node, methods);
+				methods.append("\t}\n\n");
+			}
+		}
+
+		code.append("\tprotected void internalSpawn(int node, IContext context) {\n");
+		code.append("\t\tswitch (node) {\n" + spawnSwitch);
+		code.append("\t\tdefault:\n\t\t\tsuper.internalSpawn(node, context);\n\t\t}\n\t}\n\n");
+		code.append("\tprotected Status internalTick(int node) {\n");
+		code.append("\t\tswitch (node) {\n" + tickSwitch);
+		code.append("\t\tdefault:\n\t\t\treturn super.internalTick(node);\n\t\t}\n\t}\n\n");
+		code.append("\tprotected void internalTerminate(int node) {\n");
+		code.append("\t\tswitch (node) {\n" + terminateSwitch);
+		code.append("\t\tdefault:\n\t\t\tsuper.internalTerminate(node);\n\t\t}\n\t}\n\n");
+		code.append(methods);
+		code.setLength(code.length() - 1);
+		code.append("}\n");
+
+		return code.toString();
+	}
+
+	/**
+	 * Returns true if the nodes with opcode <code>opcode</code> are run by specialized code, and
+	 * false if they are left to the CompiledBTExecutor.
+	 */
+	private static boolean isSpecialized(int opcode) {
+		return opcode != CompiledBT.LEAF && opcode != CompiledBT.RANDOM_SEQUENCE
+				&& opcode != CompiledBT.RANDOM_SELECTOR;
+	}
+
+	/**
+	 * Generates the body of the method that spawns <code>node</code>.
+	 */
+	private static void generateSpawn(CompiledBT tree, int node, StringBuilder code) {
+		int numChildren = getNumChildren(tree, node);
+
+		switch (tree.opcodes[node]) {
+		case CompiledBT.SUCCESS:
+		case CompiledBT.FAILURE:
+			code.append("\t\trequestInsertion(" + node + ");\n");
+			break;
+		case CompiledBT.WAIT:
+			code.append("\t\tspawnWait(" + node + ", " + tree.params[node] + "L);\n");
+			break;
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.SELECTOR:
+			code.append("\t\tthis.activeChildren[" + node + "] = 0;\n");
+			code.append("\t\tcreateAndSpawn(" + getChild(tree, node, 0) + ", context);\n");
+			break;
+		case CompiledBT.PARALLEL_SEQUENCE:
+		case CompiledBT.PARALLEL_SELECTOR:
+			for (int i = 0; i < numChildren; i++) {
+				code.append("\t\tcreate(" + getChild(tree, node, i) + ");\n");
+			}
+			for (int i = 0; i < numChildren; i++) {
+				code.append("\t\tspawn(" + getChild(tree, node, i) + ", context);\n");
+			}
+			break;
+		case CompiledBT.REPEAT:
+		case CompiledBT.UNTIL_FAIL:
+		case CompiledBT.INVERTER:
+		case CompiledBT.SUCCEEDER:
+			code.append("\t\tcreateAndSpawn(" + getChild(tree, node, 0) + ", context);\n");
+			break;
+		case CompiledBT.LIMIT:
+			code.append("\t\tif (this.runs[" + node + "] < " + tree.params[node] + "L) {\n");
+			code.append("\t\t\tthis.runs[" + node + "]++;\n");
+			code.append("\t\t\tthis.activeChildren[" + node + "] = 1;\n");
+			code.append("\t\t\tcreateAndSpawn(" + getChild(tree, node, 0) + ", context);\n");
+			code.append("\t\t} else {\n");
+			code.append("\t\t\tthis.activeChildren[" + node + "] = 0;\n");
+			code.append("\t\t\trequestInsertion(" + node + ");\n");
+			code.append("\t\t}\n");
+			break;
+		case CompiledBT.HIERARCHICAL_CONTEXT:
+		case CompiledBT.SAFE_CONTEXT:
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			code.append("\t\tcreateAndSpawn(" + getChild(tree, node, 0) + ", createChildContext("
+					+ node + ", context));\n");
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + tree.opcodes[node]);
+		}
+	}
+
+	/**
+	 * Generates the body of the method that ticks <code>node</code>.
+	 */
+	private static void generateTick(CompiledBT tree, int node, StringBuilder code) {
+		int numChildren = getNumChildren(tree, node);
+		String context = "this.contexts[" + node + "]";
+
+		switch (tree.opcodes[node]) {
+		case CompiledBT.SUCCESS:
+			code.append("\t\treturn Status.SUCCESS;\n");
+			break;
+		case CompiledBT.FAILURE:
+			code.append("\t\treturn Status.FAILURE;\n");
+			break;
+		case CompiledBT.WAIT:
+			code.append("\t\treturn tickWait(" + node + ", " + tree.params[node] + "L);\n");
+			break;
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.SELECTOR: {
+			boolean sequence = tree.opcodes[node] == CompiledBT.SEQUENCE;
+			code.append("\t\tStatus childStatus;\n");
+			code.append("\t\tswitch (this.activeChildren[" + node + "]) {\n");
+			for (int i = 0; i < numChildren; i++) {
+				code.append(i == numChildren - 1 ? "\t\tdefault:\n" : "\t\tcase " + i + ":\n");
+				code.append("\t\t\tchildStatus = " + getStatus(tree, getChild(tree, node, i))
+						+ ";\n");
+				code.append("\t\t\tif (childStatus == Status.RUNNING) {\n");
+				code.append("\t\t\t\treturn Status.RUNNING;\n\t\t\t}\n");
+				if (i == numChildren - 1) {
+					code.append("\t\t\treturn childStatus == Status.SUCCESS ? Status.SUCCESS "
+							+ ": Status.FAILURE;\n");
+				} else {
+					if (sequence) {
+						code.append("\t\t\tif (childStatus != Status.SUCCESS) {\n");
+						code.append("\t\t\t\treturn Status.FAILURE;\n\t\t\t}\n");
+					} else {
+						code.append("\t\t\tif (childStatus == Status.SUCCESS) {\n");
+						code.append("\t\t\t\treturn Status.SUCCESS;\n\t\t\t}\n");
+					}
+					code.append("\t\t\tthis.activeChildren[" + node + "] = " + (i + 1) + ";\n");
+					code.append("\t\t\tcreateAndSpawn(" + getChild(tree, node, i + 1) + ", "
+							+ context + ");\n");
+					code.append("\t\t\treturn Status.RUNNING;\n");
+				}
+			}
+			code.append("\t\t}\n");
+			break;
+		}
+		case CompiledBT.PARALLEL_SEQUENCE:
+		case CompiledBT.PARALLEL_SELECTOR: {
+			boolean sequence = tree.opcodes[node] == CompiledBT.PARALLEL_SEQUENCE;
+			code.append("\t\tboolean oneRunning = false;\n");
+			code.append("\t\tStatus childStatus;\n");
+			for (int i = 0; i < numChildren; i++) {
+				code.append("\t\tchildStatus = " + getStatus(tree, getChild(tree, node, i))
+						+ ";\n");
+				code.append("\t\tif (childStatus == Status.RUNNING) {\n");
+				code.append("\t\t\toneRunning = true;\n");
+				if (sequence) {
+					code.append("\t\t} else if (childStatus == Status.FAILURE "
+							+ "|| childStatus == Status.TERMINATED) {\n");
+					code.append("\t\t\tterminate" + node + "();\n");
+					code.append("\t\t\treturn Status.FAILURE;\n");
+				} else {
+					code.append("\t\t} else if (childStatus == Status.SUCCESS) {\n");
+					code.append("\t\t\tterminate" + node + "();\n");
+					code.append("\t\t\treturn Status.SUCCESS;\n");
+				}
+				code.append("\t\t}\n");
+			}
+			code.append("\t\treturn oneRunning ? Status.RUNNING : Status."
+					+ (sequence ? "SUCCESS" : "FAILURE") + ";\n");
+			break;
+		}
+		case CompiledBT.REPEAT: {
+			int child = getChild(tree, node, 0);
+			code.append("\t\tif (" + getStatus(tree, child) + " != Status.RUNNING) {\n");
+			code.append("\t\t\tcreateAndSpawn(" + child + ", " + context + ");\n");
+			code.append("\t\t}\n");
+			code.append("\t\treturn Status.RUNNING;\n");
+			break;
+		}
+		case CompiledBT.UNTIL_FAIL: {
+			int child = getChild(tree, node, 0);
+			code.append("\t\tStatus childStatus = " + getStatus(tree, child) + ";\n");
+			code.append("\t\tif (childStatus == Status.FAILURE "
+					+ "|| childStatus == Status.TERMINATED) {\n");
+			code.append("\t\t\treturn Status.SUCCESS;\n\t\t}\n");
+			code.append("\t\tif (childStatus == Status.SUCCESS) {\n");
+			code.append("\t\t\tcreateAndSpawn(" + child + ", " + context + ");\n");
+			code.append("\t\t}\n");
+			code.append("\t\treturn Status.RUNNING;\n");
+			break;
+		}
+		case CompiledBT.INVERTER:
+			code.append("\t\tStatus childStatus = " + getStatus(tree, getChild(tree, node, 0))
+					+ ";\n");
+			code.append("\t\tif (childStatus == Status.RUNNING) {\n");
+			code.append("\t\t\treturn Status.RUNNING;\n\t\t}\n");
+			code.append("\t\tif (childStatus == Status.FAILURE "
+					+ "|| childStatus == Status.TERMINATED) {\n");
+			code.append("\t\t\treturn Status.SUCCESS;\n\t\t}\n");
+			code.append("\t\treturn Status.FAILURE;\n");
+			break;
+		case CompiledBT.SUCCEEDER:
+			code.append("\t\treturn " + getStatus(tree, getChild(tree, node, 0))
+					+ " == Status.RUNNING ? Status.RUNNING : Status.SUCCESS;\n");
+			break;
+		case CompiledBT.LIMIT:
+			code.append("\t\treturn this.activeChildren[" + node + "] == 1 ? "
+					+ getStatus(tree, getChild(tree, node, 0)) + " : Status.FAILURE;\n");
+			break;
+		case CompiledBT.HIERARCHICAL_CONTEXT:
+		case CompiledBT.SAFE_CONTEXT:
+		case CompiledBT.SAFE_OUTPUT_CONTEXT:
+			code.append("\t\treturn " + getStatus(tree, getChild(tree, node, 0)) + ";\n");
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + tree.opcodes[node]);
+		}
+	}
+
+	/**
+	 * Generates the body of the method that terminates the children of <code>node</code>, which
+	 * has at least one child.
+	 */
+	private static void generateTerminate(CompiledBT tree, int node, StringBuilder code) {
+		int numChildren = getNumChildren(tree, node);
+
+		switch (tree.opcodes[node]) {
+		case CompiledBT.SEQUENCE:
+		case CompiledBT.SELECTOR:
+			code.append("\t\tswitch (this.activeChildren[" + node + "]) {\n");
+			for (int i = 0; i < numChildren; i++) {
+				code.append(i == numChildren - 1 ? "\t\tdefault:\n" : "\t\tcase " + i + ":\n");
+				code.append("\t\t\tterminateNode(" + getChild(tree, node, i) + ");\n");
+				code.append("\t\t\tbreak;\n");
+			}
+			code.append("\t\t}\n");
+			break;
+		case CompiledBT.PARALLEL_SEQUENCE:
+		case CompiledBT.PARALLEL_SELECTOR:
+			for (int i = 0; i < numChildren; i++) {
+				code.append("\t\tterminateNode(" + getChild(tree, node, i) + ");\n");
+			}
+			break;
+		case CompiledBT.LIMIT:
+			code.append("\t\tif (this.activeChildren[" + node + "] == 1) {\n");
+			code.append("\t\t\tterminateNode(" + getChild(tree, node, 0) + ");\n");
+			code.append("\t\t}\n");
+			break;
+		default:
+			code.append("\t\tterminateNode(" + getChild(tree, node, 0) + ");\n");
+			break;
+		}
+	}
+
+	/**
+	 * Returns an expression that evaluates to the status of <code>node</code>.
+	 */
+	private static String getStatus(CompiledBT tree, int node) {
+		if (tree.opcodes[node] == CompiledBT.LEAF) {
+			return "statusOf(" + node + ")";
+		}
+		return "this.statuses[" + node + "]";
+	}
+
+	/**
+	 * Returns the <code>index</code>-th child of <code>node</code>.
+	 */
+	private static int getChild(CompiledBT tree, int node, int index) {
+		return tree.children[tree.childOffsets[node] + index];
+	}
+
+	/**
+	 * Returns the number of children of <code>node</code>.
+	 */
+	private static int getNumChildren(CompiledBT tree, int node) {
+		return tree.childOffsets[node + 1] - tree.childOffsets[node];
+	}
+
+	/**
+	 * Returns a new name for a generated class.
+	 */
+	private static synchronized String nextClassName() {
+		return CLASS_NAME_PREFIX + (numGeneratedClasses++);
+	}
+
+	/**
+	 * Returns the class path that the generated code is compiled against: that of the application,
+	 * plus the location this class was loaded from, in case it is not part of it.
+	 */
+	private static String getClassPath() {
+		String classPath = System.getProperty("java.class.path");
+		try {
+			CodeSource codeSource = CompiledBTExecutor.class.getProtectionDomain()
+					.getCodeSource();
+			if (codeSource != null && codeSource.getLocation() != null) {
+				classPath = new File(codeSource.getLocation().toURI()).getPath()
+						+ File.pathSeparator + classPath;
+			}
+		} catch (Exception e) {
+			/* The application's class path is used alone. */
+		}
+		return classPath;
+	}
+
+	/**
+	 * Java source file held in memory.
+	 */
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final String source;
+
+		public SourceFile(String qualifiedName, String source) {
+			super(URI.create("string:///" + qualifiedName.replace('.', '/')
+					+ Kind.SOURCE.extension), Kind.SOURCE);
+			this.source = source;
+		}
+
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return this.source;
+		}
+	}
+
+	/**
+	 * Class file held in memory.
+	 */
+	private static class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		public ClassFile(String qualifiedName) {
+			super(URI.create("bytes:///" + qualifiedName.replace('.', '/')
+					+ Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		public OutputStream openOutputStream() {
+			return this.bytes;
+		}
+	}
+
+	/**
+	 * JavaFileManager that keeps the class files that the compiler produces in memory.
+	 */
+	private static class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+		private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+
+		public MemoryFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		public JavaFileObject getJavaFileForOutput(Location location, String className,
+				Kind kind, FileObject sibling) {
+			ClassFile classFile = new ClassFile(className);
+			this.classes.put(className, classFile);
+			return classFile;
+		}
+	}
+
+	/**
+	 * ClassLoader that defines the classes held by a MemoryFileManager.
+	 */
+	private static class MemoryClassLoader extends ClassLoader {
+		private final Map<String, ClassFile> classes;
+
+		public MemoryClassLoader(ClassLoader parent, Map<String, ClassFile> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			ClassFile classFile = this.classes.get(name);
+			if (classFile == null) {
+				throw new ClassNotFoundException(name);
+			}
+			byte[] bytes = classFile.bytes.toByteArray();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.compiled;
+
+import java.util.Arrays;
+
+import jbt.execution.core.BTExecutor;
+import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.ExecutionTask.Status;
+import jbt.execution.core.IContext;
+import jbt.execution.core.ITaskState;
+import jbt.model.core.ModelTask;
+import jbt.model.core.ModelTask.Position;
+import jbt.util.TimerWheel;
+
+/**
+ * LeafHost is the BTExecutor that manages the ExecutionTask objects of the leaves that a
+ * {@link CompiledBTExecutor} does not run by itself (actions, conditions and so on).
+ * <p>
+ * Such leaves are created without a parent, and their requests to the BTExecutor are forwarded to
+ * the CompiledBTExecutor: requests concerning the list of tickable tasks are mapped to the node
+ * that the leaf occupies in the {@link CompiledBT}, requests concerning the list of open tasks are
+ * ignored (since the CompiledBTExecutor does not need it), and the states of the leaves are
+ * stored by the position of their node. Before running any method of a leaf, the CompiledBTExecutor calls
+ * {@link #enter(int)} so that the LeafHost knows which node is being run.
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ */
+final class LeafHost extends BTExecutor {
+	/** The CompiledBTExecutor that owns this LeafHost. */
+	private final CompiledBTExecutor owner;
+	/** The node whose leaf is being run, or -1. */
+	private int currentNode;
+	/**
+	 * For each node of the compiled tree, the identifier that the BTExecutor gives to its position
+	 * (see {@link #getNodeId(Position)}), or -1 if it has not been computed yet.
+	 */
+	private final int[] nodeIds;
+
+	/**
+	 * Creates a LeafHost for a CompiledBTExecutor.
+	 *
+	 * @param owner
+	 *            the CompiledBTExecutor that owns this LeafHost.
+	 * @param modelBT
+	 *            the behaviour tree that <code>owner</code> runs.
+	 * @param context
+	 *            the root context of the tree.
+	 */
+	LeafHost(CompiledBTExecutor owner, ModelTask modelBT, IContext context) {
+		super(modelBT, context);
+		this.owner = owner;
+		this.currentNode = -1;
+		this.nodeIds = new int[owner.getCompiledTree().getNumNodes()];
+		Arrays.fill(this.nodeIds, -1);
+	}
+
+	/**
+	 * Sets the node whose leaf is about to be run.
+	 *
+	 * @param node
+	 *            the node whose leaf is about to be run, or -1.
+	 * @return the node that was being run before.
+	 */
+	int enter(int node) {
+		int previousNode = this.currentNode;
+		this.currentNode = node;
+		return previousNode;
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.BTExecutor#requestInsertionIntoList(jbt.execution.core.BTExecutor.BTExecutorList,
+	 *      jbt.execution.core.ExecutionTask)
+	 */
+	public void requestInsertionIntoList(BTExecutorList listType, ExecutionTask t) {
+		if (listType == BTExecutorList.TICKABLE) {
+			int node = this.owner.getLeafNode(t, this.currentNode);
+			if (node != -1) {
+				this.owner.requestInsertion(node, this.owner.getLeafGeneration(node, t));
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.BTExecutor#requestRemovalFromList(jbt.execution.core.BTExecutor.BTExecutorList,
+	 *      jbt.execution.core.ExecutionTask)
+	 */
+	public void requestRemovalFromList(BTExecutorList listType, ExecutionTask t) {
+		if (listType == BTExecutorList.TICKABLE) {
+			int node = this.owner.getLeafNode(t, this.currentNode);
+			if (node != -1) {
+				this.owner.requestRemoval(node, this.owner.getLeafGeneration(node, t));
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.BTExecutor#cancelInsertionRequest(jbt.execution.core.BTExecutor.BTExecutorList,
+	 *      jbt.execution.core.ExecutionTask)
+	 */
+	public void cancelInsertionRequest(BTExecutorList listType, ExecutionTask t) {
+		if (listType == BTExecutorList.TICKABLE) {
+			int node = this.owner.getLeafNode(t, this.currentNode);
+			if (node != -1) {
+				this.owner.cancelInsertion(node, this.owner.getLeafGeneration(node, t));
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @see jbt.execution.core.BTExecutor#cancelRemovalRequest(jbt.execution.core.BTExecutor.BTExecutorList,
+	 *      jbt.execution.core.ExecutionTask)
+	 */
+	public void cancelRemovalRequest(BTExecutorList listType, ExecutionTask t) {
+		if (listType == BTExecutorList.TICKABLE) {
+			int node = this.owner.getLeafNode(t, this.currentNode);
+			if (node != -1) {
+				this.owner.cancelRemoval(node, this.owner.getLeafGeneration(node, t));
+			}
+		}
+	}
+
+	/**
+	 * Stores the state of the leaf that is being run, regardless of <code>nodeId</code>. States are
+	 * keyed by the position of the leaf, so they can also be accessed through
+	 * {@link #getTaskState(Position)}.
+	 *
+	 * @see jbt.execution.core.BTExecutor#setTaskState(int, jbt.execution.core.ITaskState)
+	 */
+	protected boolean setTaskState(int nodeId, ITaskState state) {
+		return super.setTaskState(nodeIdOf(this.currentNode), state);
+	}
+
+	/**
+	 * Returns the state of the leaf that is being run, regardless of <code>nodeId</code>.
+	 *
+	 * @see jbt.execution.core.BTExecutor#getTaskState(int)
+	 */
+	protected ITaskState getTaskState(int nodeId) {
+		return super.getTaskState(nodeIdOf(this.currentNode));
+	}
+
+	/**
+	 * Returns the position of the ModelTask of <code>task</code>. Since compiled trees contain no
+	 * Subtree Lookup, the execution tree is a copy of the model tree, so the position of every
+	 * task matches that of its ModelTask.
+	 *
+	 * @see jbt.execution.core.BTExecutor#getParentlessTaskPosition(jbt.execution.core.ExecutionTask)
+	 */
+	protected Position getParentlessTaskPosition(ExecutionTask task) {
+		return new Position(task.getModelTask().getPosition());
+	}
+
+	/**
+	 * Runs the actions that the leaves have submitted through {@link #invokeLater(Runnable)}. It is
+	 * called by the CompiledBTExecutor at the beginning of every tick.
+	 */
+	void processLeafInvocations() {
+		processInvocations();
+	}
+
+	/**
+	 * Returns the TimerWheel of the CompiledBTExecutor, which advances it at the beginning of every
+	 * tick, so that sleeping leaves are woken up along with the nodes of the compiled tree.
+	 *
+	 * @see jbt.execution.core.BTExecutor#getTimerWheel()
+	 */
+	protected TimerWheel getTimerWheel() {
+		return this.owner.getTimerWheel();
+	}
+
+	/**
+	 * Returns the identifier that the BTExecutor gives to the position of the ModelTask of
+	 * <code>node</code>.
+	 */
+	private int nodeIdOf(int node) {
+		if (this.nodeIds[node] == -1) {
+			this.nodeIds[node] = getNodeId(this.owner.getCompiledTree().models[node].getPosition());
+		}
+		return this.nodeIds[node];
+	}
+
+	/**
+	 * Returns the status of the CompiledBTExecutor.
+	 *
+	 * @see jbt.execution.core.BTExecutor#getStatus()
+	 */
+	public Status getStatus() {
+		return this.owner.getStatus();
+	}
+
+	/**
+	 * Leaves of a compiled tree cannot tick the tree, so this method throws an
+	 * UnsupportedOperationException.
+	 *
+	 * @see jbt.execution.core.BTExecutor#tick()
+	 */
+	public void tick() {
+		throw new UnsupportedOperationException(
+				"The tree must be ticked through its CompiledBTExecutor");
+	}
+
+	/**
+	 * Leaves of a compiled tree cannot terminate the tree, so this method throws an
+	 * UnsupportedOperationException.
+	 *
+	 * @see jbt.execution.core.BTExecutor#terminate()
+	 */
+	public void terminate() {
+		throw new UnsupportedOperationException(
+				"The tree must be terminated through its CompiledBTExecutor");
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jbt.execution.core.IContext;
+import jbt.model.core.ModelTask;
+
+/**
+ * The context through which an agent accesses the world state of a {@link DoubleBufferedContext}.
+ * AgentBufferContext objects are created by
+ * {@link DoubleBufferedContext#createAgentContext(int)}.
+ * <p>
+ * Writes are not applied to the world state but kept in a write buffer of the agent until the
+ * frame is published. Reads return the value that the agent itself has written during the current
+ * frame, if any, and otherwise the value of the variable in the last published frame. Therefore,
+ * an agent never sees the writes that other agents make during the same frame, no matter how the
+ * agents are scheduled.
+ * <p>
+ * Each AgentBufferContext must be used by only one thread at a time (the one that ticks its agent),
+ * and never while the frame is being published. Since it is an ordinary IContext, it can be wrapped
+ * by a {@link SafeContext}, a {@link HierarchicalContext} and so on.
+ * <p>
+ * Writes are numbered by the AgentBufferContext itself, so agents ticked in parallel do not
+ * contend on any shared counter. The {@link BufferedWrite} objects are reused from one frame to
+ * the next, so a frame in which an agent only writes variables that it has written before does
+ * not allocate them.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class AgentBufferContext implements IContext {
+	/** The DoubleBufferedContext this context belongs to. */
+	private final DoubleBufferedContext world;
+	/** The priority of the agent, used by {@link DoubleBufferedContext#HIGHEST_PRIORITY_WINS}. */
+	private final int priority;
+	/** The position of the agent in the order in which the agent contexts were created. */
+	private final int index;
+	/**
+	 * The write of each variable that the agent has written in any frame. Only those that are
+	 * pending belong to the current frame.
+	 */
+	private final Map<String, BufferedWrite> writes;
+	/** The pending writes of the current frame. */
+	private final List<BufferedWrite> pendingWrites;
+	/** Whether the context has been cleared during the current frame. */
+	private boolean cleared;
+	/** The time at which the context was cleared, if it was. */
+	private long clearSequence;
+	/** The time of the last write. */
+	private long sequence;
+
+	/**
+	 * Creates an AgentBufferContext.
+	 */
+	AgentBufferContext(DoubleBufferedContext world, int priority, int index) {
+		this.world = world;
+		this.priority = priority;
+		this.index = index;
+		this.writes = new HashMap<String, BufferedWrite>();
+		this.pendingWrites = new ArrayList<BufferedWrite>();
+	}
+
+	/**
+	 * Returns the DoubleBufferedContext this context belongs to.
+	 * 
+	 * @return the DoubleBufferedContext this context belongs to.
+	 */
+	public DoubleBufferedContext getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Returns the priority of the agent.
+	 * 
+	 * @return the priority of the agent.
+	 */
+	public int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Returns the position of the agent in the order in which the agent contexts of the
+	 * DoubleBufferedContext were created. The DoubleBufferedContext itself is the first one.
+	 * 
+	 * @return the position of the agent in the order of creation.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Returns the value that this context has written to the variable during the current frame,
+	 * or, if it has not, its value in the last published frame.
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		BufferedWrite write = this.writes.get(name);
+		if (write != null && write.pending) {
+			return write.value;
+		}
+		return this.cleared ? null : this.world.getPublishedVariable(name);
+	}
+
+	/**
+	 * Buffers the write, which will be merged into the world state when the frame is published.
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		boolean existed = getVariable(name) != null;
+		buffer(name, value, ++this.sequence);
+		return existed;
+	}
+
+	/**
+	 * Buffers the removal of the variable, which will be merged into the world state when the frame
+	 * is published.
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		return setVariable(name, null);
+	}
+
+	/**
+	 * Buffers the removal of all the variables of the world state, which will be merged into it
+	 * when the frame is published.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		discardPendingWrites();
+		this.cleared = true;
+		this.clearSequence = ++this.sequence;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.world.getBT(name);
+	}
+
+	/**
+	 * Adds the writes of the current frame to <code>allWrites</code>, grouped by variable, and
+	 * empties the write buffer.
+	 * 
+	 * @param allWrites
+	 *            the writes of all the agent contexts, grouped by variable.
+	 * @param published
+	 *            the variables of the frame that has just finished.
+	 */
+	void drainWrites(Map<String, List<BufferedWrite>> allWrites, Map<String, Object> published) {
+		if (this.cleared) {
+			for (String name : published.keySet()) {
+				BufferedWrite write = this.writes.get(name);
+				if (write == null || !write.pending) {
+					buffer(name, null, this.clearSequence);
+				}
+			}
+			this.cleared = false;
+		}
+
+		for (int i = 0; i < this.pendingWrites.size(); i++) {
+			BufferedWrite write = this.pendingWrites.get(i);
+			List<BufferedWrite> variableWrites = allWrites.get(write.name);
+			if (variableWrites == null) {
+				variableWrites = new ArrayList<BufferedWrite>(2);
+				allWrites.put(write.name, variableWrites);
+			}
+			variableWrites.add(write);
+		}
+	}
+
+	/**
+	 * Marks the writes of the current frame as no longer pending, once they have been merged, so
+	 * that their BufferedWrite objects can be reused in the next frame.
+	 */
+	void discardPendingWrites() {
+		for (int i = 0; i < this.pendingWrites.size(); i++) {
+			BufferedWrite write = this.pendingWrites.get(i);
+			write.pending = false;
+			write.value = null;
+		}
+		this.pendingWrites.clear();
+	}
+
+	/**
+	 * Records a write of the current frame, reusing the BufferedWrite of the variable if there is
+	 * one.
+	 */
+	private void buffer(String name, Object value, long sequence) {
+		BufferedWrite write = this.writes.get(name);
+		if (write == null) {
+			write = new BufferedWrite(this, name);
+			this.writes.put(name, write);
+		}
+		if (!write.pending) {
+			write.pending = true;
+			this.pendingWrites.add(write);
+		}
+		write.value = value;
+		write.sequence = sequence;
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import jbt.execution.core.IPrimitiveContext;
+import jbt.execution.core.SymbolTable;
+import jbt.model.core.ModelTask;
+
+/**
+ * The context of an agent of an {@link AgentStateStore}, which reads and writes the row of the
+ * agent. It only holds the store and the index of the row, so it is cheap to keep one per agent or
+ * to create it whenever it is needed.
+ * <p>
+ * Only variables that have been declared in the store can be set; setting any other variable
+ * throws an IllegalArgumentException, and reading it returns null (or the default value). Values
+ * that do not fit the type of the column of a variable are rejected with a ClassCastException,
+ * except that double columns also accept ints and floats. Reads follow the rules of
+ * {@link IPrimitiveContext}.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class AgentRowContext implements IPrimitiveContext {
+	/** The store that holds the variables of the agent. */
+	private final AgentStateStore store;
+	/** The row of the agent in the store. */
+	private final int row;
+
+	/**
+	 * Creates an AgentRowContext.
+	 */
+	AgentRowContext(AgentStateStore store, int row) {
+		this.store = store;
+		this.row = row;
+	}
+
+	/**
+	 * Returns the store that holds the variables of the agent.
+	 * 
+	 * @return the store that holds the variables of the agent.
+	 */
+	public AgentStateStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * Returns the row of the agent in the store.
+	 * 
+	 * @return the row of the agent in the store.
+	 */
+	public int getRow() {
+		return this.row;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		return this.store.get(this.row, SymbolTable.lookup(name));
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#getVariable(int)
+	 */
+	public Object getVariable(int slot) {
+		return this.store.get(this.row, slot);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		return this.store.set(this.row, SymbolTable.lookup(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#setVariable(int, java.lang.Object)
+	 */
+	public boolean setVariable(int slot, Object value) {
+		return this.store.set(this.row, slot, value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		return this.store.clear(this.row, SymbolTable.lookup(name));
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#clearVariable(int)
+	 */
+	public boolean clearVariable(int slot) {
+		return this.store.clear(this.row, slot);
+	}
+
+	/**
+	 * Clears all the variables of the agent.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		this.store.clearRow(this.row);
+	}
+
+	/**
+	 * Returns a behaviour tree shared by all the agents of the store.
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.store.getBT(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getInt(java.lang.String, int)
+	 */
+	public int getInt(String name, int defaultValue) {
+		return this.store.getInt(this.row, SymbolTable.lookup(name), defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getInt(int, int)
+	 */
+	public int getInt(int slot, int defaultValue) {
+		return this.store.getInt(this.row, slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setInt(java.lang.String, int)
+	 */
+	public boolean setInt(String name, int value) {
+		return this.store.setInt(this.row, SymbolTable.lookup(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setInt(int, int)
+	 */
+	public boolean setInt(int slot, int value) {
+		return this.store.setInt(this.row, slot, value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getFloat(java.lang.String, float)
+	 */
+	public float getFloat(String name, float defaultValue) {
+		return this.store.getFloat(this.row, SymbolTable.lookup(name), defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getFloat(int, float)
+	 */
+	public float getFloat(int slot, float defaultValue) {
+		return this.store.getFloat(this.row, slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setFloat(java.lang.String, float)
+	 */
+	public boolean setFloat(String name, float value) {
+		return this.store.setFloat(this.row, SymbolTable.lookup(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setFloat(int, float)
+	 */
+	public boolean setFloat(int slot, float value) {
+		return this.store.setFloat(this.row, slot, value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getDouble(java.lang.String, double)
+	 */
+	public double getDouble(String name, double defaultValue) {
+		return this.store.getDouble(this.row, SymbolTable.lookup(name), defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getDouble(int, double)
+	 */
+	public double getDouble(int slot, double defaultValue) {
+		return this.store.getDouble(this.row, slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setDouble(java.lang.String, double)
+	 */
+	public boolean setDouble(String name, double value) {
+		return this.store.setDouble(this.row, SymbolTable.lookup(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setDouble(int, double)
+	 */
+	public boolean setDouble(int slot, double value) {
+		return this.store.setDouble(this.row, slot, value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getBoolean(java.lang.String, boolean)
+	 */
+	public boolean getBoolean(String name, boolean defaultValue) {
+		return this.store.getBoolean(this.row, SymbolTable.lookup(name), defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getBoolean(int, boolean)
+	 */
+	public boolean getBoolean(int slot, boolean defaultValue) {
+		return this.store.getBoolean(this.row, slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setBoolean(java.lang.String, boolean)
+	 */
+	public boolean setBoolean(String name, boolean value) {
+		return this.store.setBoolean(this.row, SymbolTable.lookup(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setBoolean(int, boolean)
+	 */
+	public boolean setBoolean(int slot, boolean value) {
+		return this.store.setBoolean(this.row, slot, value);
+	}
+}
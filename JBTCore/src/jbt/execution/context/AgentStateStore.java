@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import jbt.execution.core.IBTLibrary;
+import jbt.execution.core.SymbolTable;
+import jbt.model.core.ModelTask;
+
+/**
+ * A column-oriented store for the variables of a large number of agents, which keeps them outside
+ * the Java heap.
+ * <p>
+ * Variables must be declared (see {@link #declareVariable(String, ColumnType)}) before agents can
+ * use them, and each one has a type. Every declared variable is a column that holds its value for
+ * every agent (a row), so the store is a struct of arrays. Columns of primitive types are laid out
+ * in direct ByteBuffers, along with a byte per agent that tells whether the variable exists. Only
+ * {@link ColumnType#OBJECT} columns are kept on the heap, as an array of references.
+ * <p>
+ * Each agent accesses its row through an {@link AgentRowContext} (see {@link #allocateAgent()}),
+ * which is an {@link jbt.execution.core.IPrimitiveContext} that only holds a reference to the store
+ * and the index of the row. Thus, an agent costs a few dozen bytes of heap, and the number of
+ * objects that the garbage collector has to trace does not grow with the number of variables. All
+ * the agents share the behaviour trees of the store.
+ * <p>
+ * The capacity of the store (the maximum number of agents) is fixed at construction time. Rows
+ * can be accessed concurrently as long as each row is accessed by a single thread at a time.
+ * Declaring variables and allocating or releasing agents are synchronized.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class AgentStateStore {
+	/**
+	 * Enumeration of the types of the columns of an AgentStateStore.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static enum ColumnType {
+		/** int values, stored in 4 bytes. */
+		INT(4),
+		/** float values, stored in 4 bytes. */
+		FLOAT(4),
+		/** double values, stored in 8 bytes. Ints and floats are widened. */
+		DOUBLE(8),
+		/** boolean values, stored in a byte. */
+		BOOLEAN(1),
+		/** Values of any type, stored on the heap. */
+		OBJECT(0);
+
+		/** The number of bytes that each value takes off the heap. */
+		private final int width;
+
+		private ColumnType(int width) {
+			this.width = width;
+		}
+	}
+
+	/**
+	 * The storage of a declared variable.
+	 */
+	private static final class Column {
+		/** The type of the column. */
+		final ColumnType type;
+		/** The values of the column, or null for {@link ColumnType#OBJECT}. */
+		final ByteBuffer values;
+		/** A byte per row, which is 1 if the variable exists, or null for ColumnType#OBJECT. */
+		final ByteBuffer present;
+		/** The values of an {@link ColumnType#OBJECT} column, or null. */
+		final Object[] objects;
+
+		Column(ColumnType type, int capacity) {
+			this.type = type;
+			if (type == ColumnType.OBJECT) {
+				this.values = null;
+				this.present = null;
+				this.objects = new Object[capacity];
+			} else {
+				this.values = ByteBuffer.allocateDirect(capacity * type.width).order(
+						ByteOrder.nativeOrder());
+				this.present = ByteBuffer.allocateDirect(capacity);
+				this.objects = null;
+			}
+		}
+
+		boolean exists(int row) {
+			return this.objects == null ? this.present.get(row) != 0 : this.objects[row] != null;
+		}
+	}
+
+	/** The maximum number of agents. */
+	private final int capacity;
+	/** The column of each slot, or null for slots that have not been declared. */
+	private volatile Column[] columns;
+	/** Whether each row is in use. */
+	private final boolean[] allocated;
+	/** The rows that are not in use, as a stack. */
+	private final int[] freeRows;
+	/** The number of elements in {@link #freeRows}. */
+	private int numFreeRows;
+	/** The behaviour trees shared by all the agents. */
+	private final GenericBTLibrary library;
+
+	/**
+	 * Constructs an empty AgentStateStore.
+	 * 
+	 * @param capacity
+	 *            the maximum number of agents.
+	 */
+	public AgentStateStore(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.columns = new Column[0];
+		this.allocated = new boolean[capacity];
+		this.freeRows = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.freeRows[i] = capacity - 1 - i;
+		}
+		this.numFreeRows = capacity;
+		this.library = new GenericBTLibrary();
+	}
+
+	/**
+	 * Declares a variable, so that agents can store it. Declaring a variable again with the same
+	 * type has no effect.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param type
+	 *            the type of the variable.
+	 * @return the slot of the variable (see {@link SymbolTable}).
+	 * @throws IllegalArgumentException
+	 *             if the variable has already been declared with another type.
+	 */
+	public synchronized int declareVariable(String name, ColumnType type) {
+		if (name == null) {
+			throw new IllegalArgumentException("The input name cannot be null");
+		}
+		if (type == null) {
+			throw new IllegalArgumentException("The input type cannot be null");
+		}
+
+		int slot = SymbolTable.intern(name);
+		Column[] columns = this.columns;
+		if (slot < columns.length && columns[slot] != null) {
+			if (columns[slot].type != type) {
+				throw new IllegalArgumentException("The variable " + name
+						+ " has already been declared as " + columns[slot].type);
+			}
+			return slot;
+		}
+
+		Column[] newColumns = Arrays.copyOf(columns, Math.max(columns.length, slot + 1));
+		newColumns[slot] = new Column(type, this.capacity);
+		this.columns = newColumns;
+		return slot;
+	}
+
+	/**
+	 * Returns the type of a variable, or null if it has not been declared.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return the type of the variable, or null if it has not been declared.
+	 */
+	public ColumnType getColumnType(String name) {
+		Column column = getColumn(SymbolTable.lookup(name));
+		return column == null ? null : column.type;
+	}
+
+	/**
+	 * Allocates a row for a new agent, in which no variable exists.
+	 * 
+	 * @return the context through which the agent accesses its row.
+	 * @throws IllegalStateException
+	 *             if the store is full.
+	 */
+	public synchronized AgentRowContext allocateAgent() {
+		if (this.numFreeRows == 0) {
+			throw new IllegalStateException("The store cannot hold more than " + this.capacity
+					+ " agents");
+		}
+		int row = this.freeRows[--this.numFreeRows];
+		this.allocated[row] = true;
+		return new AgentRowContext(this, row);
+	}
+
+	/**
+	 * Releases the row of an agent, clearing all its variables. The row may be given to another
+	 * agent, so <code>agent</code> must not be used any more.
+	 * 
+	 * @param agent
+	 *            the context of the agent.
+	 * @return true if the row was released, and false if it was not in use.
+	 */
+	public synchronized boolean releaseAgent(AgentRowContext agent) {
+		if (agent == null) {
+			throw new IllegalArgumentException("The input agent cannot be null");
+		}
+		int row = agent.getRow();
+		if (agent.getStore() != this || !this.allocated[row]) {
+			return false;
+		}
+		clearRow(row);
+		this.allocated[row] = false;
+		this.freeRows[this.numFreeRows++] = row;
+		return true;
+	}
+
+	/**
+	 * Returns a context for the row of an agent that has already been allocated. The returned
+	 * context is equivalent to the one returned by {@link #allocateAgent()}.
+	 * 
+	 * @param row
+	 *            the row of the agent.
+	 * @return a context for the row of the agent.
+	 */
+	public synchronized AgentRowContext getAgent(int row) {
+		if (row < 0 || row >= this.capacity || !this.allocated[row]) {
+			throw new IllegalArgumentException("Row " + row + " has not been allocated");
+		}
+		return new AgentRowContext(this, row);
+	}
+
+	/**
+	 * Returns the maximum number of agents.
+	 * 
+	 * @return the maximum number of agents.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the number of agents that have been allocated and not released.
+	 * 
+	 * @return the number of agents in the store.
+	 */
+	public synchronized int getNumAgents() {
+		return this.capacity - this.numFreeRows;
+	}
+
+	/**
+	 * Adds all the behaviour trees in <code>library</code> to the set of behaviour trees shared by
+	 * the agents. If there is already a tree with the same name as that of one of the trees in
+	 * <code>library</code>, it is overwritten.
+	 * 
+	 * @param library
+	 *            the library containing all the behaviour trees to add.
+	 * @return true if a previously stored behaviour tree has been overwritten, and false
+	 *         otherwise.
+	 */
+	public boolean addBTLibrary(IBTLibrary library) {
+		return this.library.addBTLibrary(library);
+	}
+
+	/**
+	 * Adds the behaviour tree <code>tree</code> to the set of behaviour trees shared by the agents.
+	 * If there is already a tree with the name <code>name</code>, then it is overwritten by
+	 * <code>tree</code>.
+	 * 
+	 * @param name
+	 *            the name that will identify the tree <code>tree</code>.
+	 * @param tree
+	 *            the tree to insert.
+	 * @return true if there was already a tree with name <code>name</code>, and false otherwise.
+	 */
+	public boolean addBT(String name, ModelTask tree) {
+		return this.library.addBT(name, tree);
+	}
+
+	/**
+	 * Returns the behaviour tree whose name is <code>name</code>, or null if it cannot be found.
+	 */
+	ModelTask getBT(String name) {
+		return this.library.getBT(name);
+	}
+
+	/**
+	 * Returns the value of a variable of a row, boxed, or null if it does not exist.
+	 */
+	Object get(int row, int slot) {
+		Column column = getColumn(slot);
+		if (column == null || !column.exists(row)) {
+			return null;
+		}
+		switch (column.type) {
+		case INT:
+			return column.values.getInt(row << 2);
+		case FLOAT:
+			return column.values.getFloat(row << 2);
+		case DOUBLE:
+			return column.values.getDouble(row << 3);
+		case BOOLEAN:
+			return column.values.get(row) != 0;
+		default:
+			return column.objects[row];
+		}
+	}
+
+	/**
+	 * Sets the value of a variable of a row, unboxing it unless the column is an
+	 * {@link ColumnType#OBJECT} column. A null value clears the variable.
+	 */
+	boolean set(int row, int slot, Object value) {
+		if (value == null) {
+			return clear(row, slot);
+		}
+		Column column = getDeclaredColumn(slot);
+		switch (column.type) {
+		case INT:
+			return setInt(row, slot, (Integer) value);
+		case FLOAT:
+			return setFloat(row, slot, (Float) value);
+		case DOUBLE:
+			if (value instanceof Integer || value instanceof Float) {
+				return setDouble(row, slot, ((Number) value).doubleValue());
+			}
+			return setDouble(row, slot, (Double) value);
+		case BOOLEAN:
+			return setBoolean(row, slot, (Boolean) value);
+		default:
+			Object previousValue = column.objects[row];
+			column.objects[row] = value;
+			return previousValue != null;
+		}
+	}
+
+	/**
+	 * Clears a variable of a row.
+	 */
+	boolean clear(int row, int slot) {
+		Column column = getColumn(slot);
+		if (column == null) {
+			return false;
+		}
+		boolean existed = column.exists(row);
+		if (column.objects == null) {
+			column.present.put(row, (byte) 0);
+		} else {
+			column.objects[row] = null;
+		}
+		return existed;
+	}
+
+	/**
+	 * Clears all the variables of a row.
+	 */
+	void clearRow(int row) {
+		Column[] columns = this.columns;
+		for (int slot = 0; slot < columns.length; slot++) {
+			if (columns[slot] != null) {
+				clear(row, slot);
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of a variable of a row as an int.
+	 */
+	int getInt(int row, int slot, int defaultValue) {
+		Column column = getColumn(slot);
+		if (column == null || !column.exists(row)) {
+			return defaultValue;
+		}
+		switch (column.type) {
+		case INT:
+			return column.values.getInt(row << 2);
+		case FLOAT:
+			return (int) column.values.getFloat(row << 2);
+		case DOUBLE:
+			return (int) column.values.getDouble(row << 3);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			return ((Number) column.objects[row]).intValue();
+		}
+	}
+
+	/**
+	 * Returns the value of a variable of a row as a float.
+	 */
+	float getFloat(int row, int slot, float defaultValue) {
+		Column column = getColumn(slot);
+		if (column == null || !column.exists(row)) {
+			return defaultValue;
+		}
+		switch (column.type) {
+		case INT:
+			return column.values.getInt(row << 2);
+		case FLOAT:
+			return column.values.getFloat(row << 2);
+		case DOUBLE:
+			return (float) column.values.getDouble(row << 3);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			return ((Number) column.objects[row]).floatValue();
+		}
+	}
+
+	/**
+	 * Returns the value of a variable of a row as a double.
+	 */
+	double getDouble(int row, int slot, double defaultValue) {
+		Column column = getColumn(slot);
+		if (column == null || !column.exists(row)) {
+			return defaultValue;
+		}
+		switch (column.type) {
+		case INT:
+			return column.values.getInt(row << 2);
+		case FLOAT:
+			return column.values.getFloat(row << 2);
+		case DOUBLE:
+			return column.values.getDouble(row << 3);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			return ((Number) column.objects[row]).doubleValue();
+		}
+	}
+
+	/**
+	 * Returns the value of a variable of a row as a boolean.
+	 */
+	boolean getBoolean(int row, int slot, boolean defaultValue) {
+		Column column = getColumn(slot);
+		if (column == null || !column.exists(row)) {
+			return defaultValue;
+		}
+		switch (column.type) {
+		case BOOLEAN:
+			return column.values.get(row) != 0;
+		case OBJECT:
+			return (Boolean) column.objects[row];
+		default:
+			throw new ClassCastException("The variable " + SymbolTable.getName(slot)
+					+ " is not a boolean");
+		}
+	}
+
+	/**
+	 * Sets an int variable of a row.
+	 */
+	boolean setInt(int row, int slot, int value) {
+		Column column = getDeclaredColumn(slot);
+		switch (column.type) {
+		case INT:
+			column.values.putInt(row << 2, value);
+			return markPresent(column, row);
+		case DOUBLE:
+			column.values.putDouble(row << 3, value);
+			return markPresent(column, row);
+		case OBJECT:
+			return set(row, slot, Integer.valueOf(value));
+		default:
+			throw wrongType(slot, column, "an int");
+		}
+	}
+
+	/**
+	 * Sets a float variable of a row.
+	 */
+	boolean setFloat(int row, int slot, float value) {
+		Column column = getDeclaredColumn(slot);
+		switch (column.type) {
+		case FLOAT:
+			column.values.putFloat(row << 2, value);
+			return markPresent(column, row);
+		case DOUBLE:
+			column.values.putDouble(row << 3, value);
+			return markPresent(column, row);
+		case OBJECT:
+			return set(row, slot, Float.valueOf(value));
+		default:
+			throw wrongType(slot, column, "a float");
+		}
+	}
+
+	/**
+	 * Sets a double variable of a row.
+	 */
+	boolean setDouble(int row, int slot, double value) {
+		Column column = getDeclaredColumn(slot);
+		switch (column.type) {
+		case DOUBLE:
+			column.values.putDouble(row << 3, value);
+			return markPresent(column, row);
+		case OBJECT:
+			return set(row, slot, Double.valueOf(value));
+		default:
+			throw wrongType(slot, column, "a double");
+		}
+	}
+
+	/**
+	 * Sets a boolean variable of a row.
+	 */
+	boolean setBoolean(int row, int slot, boolean value) {
+		Column column = getDeclaredColumn(slot);
+		switch (column.type) {
+		case BOOLEAN:
+			column.values.put(row, (byte) (value ? 1 : 0));
+			return markPresent(column, row);
+		case OBJECT:
+			return set(row, slot, Boolean.valueOf(value));
+		default:
+			throw wrongType(slot, column, "a boolean");
+		}
+	}
+
+	/**
+	 * Returns the column of a slot, or null if it has not been declared.
+	 */
+	private Column getColumn(int slot) {
+		Column[] columns = this.columns;
+		return slot >= 0 && slot < columns.length ? columns[slot] : null;
+	}
+
+	/**
+	 * Returns the column of a slot, throwing an IllegalArgumentException if it has not been
+	 * declared.
+	 */
+	private Column getDeclaredColumn(int slot) {
+		Column column = getColumn(slot);
+		if (column == null) {
+			throw new IllegalArgumentException("The variable "
+					+ (slot == SymbolTable.NO_SLOT ? "" : SymbolTable.getName(slot) + " ")
+					+ "has not been declared in the AgentStateStore");
+		}
+		return column;
+	}
+
+	/**
+	 * Marks a variable of a primitive column as existing, returning whether it already existed.
+	 */
+	private static boolean markPresent(Column column, int row) {
+		boolean existed = column.present.get(row) != 0;
+		column.present.put(row, (byte) 1);
+		return existed;
+	}
+
+	/**
+	 * Returns the exception thrown when a boolean variable is read as a number.
+	 */
+	private static ClassCastException notANumber(int slot) {
+		return new ClassCastException("The variable " + SymbolTable.getName(slot)
+				+ " is not a number");
+	}
+
+	/**
+	 * Returns the exception thrown when a variable is set to a value its column cannot hold.
+	 */
+	private static ClassCastException wrongType(int slot, Column column, String type) {
+		return new ClassCastException("The variable " + SymbolTable.getName(slot) + " is "
+				+ column.type + " and cannot hold " + type);
+	}
+}
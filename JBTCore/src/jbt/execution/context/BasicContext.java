@@ -26,6 +26,10 @@ import jbt.model.core.ModelTask;
  * Basic implementation of the IContext interface. This class uses a Hashtable
  * to store the set of variables.
  * <p>
+ * The Hashtable and the library of behaviour trees are created when they are
+ * first written, so that short-lived contexts (such as the scope frames of the
+ * context managers) that are only read do not allocate them.
+ * <p>
  * Also, since a context must contain a set of behaviour trees, this class
  * defines some methods to add behaviour trees to the context.
  * 
@@ -34,29 +38,28 @@ import jbt.model.core.ModelTask;
  */
 public class BasicContext implements IContext {
 	/**
-	 * The set of variables that the context consists of.
+	 * The set of variables that the context consists of, or null if no
+	 * variable has been set yet.
 	 */
-	private Map<String, Object> variables;
+	private volatile Map<String, Object> variables;
 	/**
 	 * The BT library that is internally used to manage all the trees of the
-	 * context.
+	 * context, or null if no tree has been added yet.
 	 */
-	private GenericBTLibrary library;
+	private volatile GenericBTLibrary library;
 
 	/**
 	 * Default constructor. Constructs an empty BasicContext.
 	 */
-	public BasicContext() {
-		this.variables = new Hashtable<String, Object>();
-		this.library = new GenericBTLibrary();
-	}
+	public BasicContext() {}
 
 	/**
 	 * 
 	 * @see es.ucm.bt.core.IContext#getVariable(java.lang.String)
 	 */
 	public Object getVariable(String name) {
-		return this.variables.get(name);
+		Map<String, Object> variables = this.variables;
+		return variables == null ? null : variables.get(name);
 	}
 
 	/**
@@ -66,9 +69,9 @@ public class BasicContext implements IContext {
 	 */
 	public boolean setVariable(String name, Object value) {
 		if (value == null) {
-			return this.variables.remove(name) == null ? false : true;
+			return clearVariable(name);
 		}
-		return this.variables.put(name, value) == null ? false : true;
+		return getVariables().put(name, value) == null ? false : true;
 	}
 
 	/**
@@ -76,7 +79,10 @@ public class BasicContext implements IContext {
 	 * @see es.ucm.bt.core.IContext#clear()
 	 */
 	public void clear() {
-		this.variables.clear();
+		Map<String, Object> variables = this.variables;
+		if (variables != null) {
+			variables.clear();
+		}
 	}
 
 	/**
@@ -84,7 +90,8 @@ public class BasicContext implements IContext {
 	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
 	 */
 	public boolean clearVariable(String name) {
-		return this.variables.remove(name) == null ? false : true;
+		Map<String, Object> variables = this.variables;
+		return variables == null ? false : variables.remove(name) != null;
 	}
 
 	/**
@@ -100,7 +107,7 @@ public class BasicContext implements IContext {
 	 *         and false otherwise.
 	 */
 	public boolean addBTLibrary(IBTLibrary library) {
-		return this.library.addBTLibrary(library);
+		return getLibrary().addBTLibrary(library);
 	}
 
 	/**
@@ -117,7 +124,7 @@ public class BasicContext implements IContext {
 	 *         false otherwise.
 	 */
 	public boolean addBT(String name, ModelTask tree) {
-		return this.library.addBT(name, tree);
+		return getLibrary().addBT(name, tree);
 	}
 
 	/**
@@ -125,6 +132,41 @@ public class BasicContext implements IContext {
 	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
 	 */
 	public ModelTask getBT(String name) {
-		return this.library.getBT(name);
+		GenericBTLibrary library = this.library;
+		return library == null ? null : library.getBT(name);
+	}
+
+	/**
+	 * Returns the set of variables, creating it if needed.
+	 */
+	private Map<String, Object> getVariables() {
+		Map<String, Object> variables = this.variables;
+		if (variables == null) {
+			synchronized (this) {
+				variables = this.variables;
+				if (variables == null) {
+					variables = new Hashtable<String, Object>();
+					this.variables = variables;
+				}
+			}
+		}
+		return variables;
+	}
+
+	/**
+	 * Returns the BT library, creating it if needed.
+	 */
+	private GenericBTLibrary getLibrary() {
+		GenericBTLibrary library = this.library;
+		if (library == null) {
+			synchronized (this) {
+				library = this.library;
+				if (library == null) {
+					library = new GenericBTLibrary();
+					this.library = library;
+				}
+			}
+		}
+		return library;
 	}
 }
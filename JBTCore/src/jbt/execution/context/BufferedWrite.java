@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+/**
+ * The last write that an {@link AgentBufferContext} has made to a variable during a frame of a
+ * {@link DoubleBufferedContext}. BufferedWrite objects are handed to the {@link IWriteMerger} of
+ * the DoubleBufferedContext when the frame is published.
+ * <p>
+ * Writes are ordered as if the agent contexts had been ticked one after another, in the order in
+ * which they were created (see {@link #follows(BufferedWrite)}), so the order does not depend on
+ * how the agents are scheduled. Each agent context reuses its BufferedWrite objects from one frame
+ * to the next, so they must not be kept once the frame has been published.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class BufferedWrite {
+	/** The agent context that made the write. */
+	private final AgentBufferContext agent;
+	/** The name of the variable. */
+	final String name;
+	/** The value written, or null if the variable was cleared. */
+	Object value;
+	/** The time of the write, taken from the clock of the agent context. */
+	long sequence;
+	/** Whether the write has been made during the current frame. */
+	boolean pending;
+
+	/**
+	 * Creates a BufferedWrite.
+	 */
+	BufferedWrite(AgentBufferContext agent, String name) {
+		this.agent = agent;
+		this.name = name;
+	}
+
+	/**
+	 * Returns the agent context that made the write.
+	 * 
+	 * @return the agent context that made the write.
+	 */
+	public AgentBufferContext getAgent() {
+		return this.agent;
+	}
+
+	/**
+	 * Returns the value written, or null if the variable was cleared.
+	 * 
+	 * @return the value written, or null if the variable was cleared.
+	 */
+	public Object getValue() {
+		return this.value;
+	}
+
+	/**
+	 * Returns the time of the write. Writes made later by the same agent context have greater
+	 * sequences. Sequences of different agent contexts are not comparable.
+	 * 
+	 * @return the time of the write.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Returns whether this write comes after <code>other</code>: it was made by an agent context
+	 * created after that of <code>other</code>, or by the same agent context later on.
+	 * 
+	 * @param other
+	 *            the write to compare to.
+	 * @return true if this write comes after <code>other</code>, and false otherwise.
+	 */
+	public boolean follows(BufferedWrite other) {
+		int index = this.agent.getIndex();
+		int otherIndex = other.agent.getIndex();
+		return index > otherIndex || (index == otherIndex && this.sequence > other.sequence);
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import jbt.execution.core.ContextReadSet;
+import jbt.execution.core.IAtomicContext;
+import jbt.execution.core.IBTLibrary;
+import jbt.execution.core.IVariableListener;
+import jbt.execution.core.IVersionedContext;
+import jbt.model.core.ModelTask;
+
+/**
+ * A context meant to be shared by BTExecutor objects that are ticked concurrently, such as the
+ * blackboard of a team of agents.
+ * <p>
+ * Unlike {@link BasicContext} and {@link VersionedContext}, which serialize every access through a
+ * monitor, ConcurrentContext never blocks: variables are stored in a ConcurrentHashMap as
+ * immutable entries that hold both the value and the version of the variable, and they are
+ * updated by compare-and-set. Therefore, reads never contend with each other, and writes only
+ * contend with writes to the same variable.
+ * <p>
+ * Every variable has its own version, which is increased every time the variable is set or
+ * cleared. Variables that are cleared keep their entry, so that their version is not lost. Since
+ * versions are not taken from a shared counter, the versions of different variables are not
+ * comparable. ConcurrentContext implements {@link IVersionedContext}, so it supports guard
+ * memoization and reactive priority lists, and {@link IAtomicContext}, so tasks can update its
+ * variables atomically.
+ * <p>
+ * Each individual operation is atomic, except for {@link #clear()}, which clears the variables one
+ * by one.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ConcurrentContext implements IVersionedContext, IAtomicContext {
+	/** The variables of the context. */
+	private final ConcurrentMap<String, Entry> variables;
+	/** The behaviour trees of the context. */
+	private final GenericBTLibrary library;
+	/** Read set that each thread is recording into, if any. */
+	private final ThreadLocal<ContextReadSet> recorders;
+	/**
+	 * Number of threads that are recording. It is checked before looking for the read set of the
+	 * current thread, so that reading a variable is cheap when no thread is recording.
+	 */
+	private final AtomicInteger numRecorders;
+	/**
+	 * Listeners subscribed to each variable. Arrays are replaced rather than modified, so
+	 * notifications can iterate over them safely.
+	 */
+	private final ConcurrentMap<String, IVariableListener[]> listeners;
+
+	/**
+	 * Constructs an empty ConcurrentContext.
+	 */
+	public ConcurrentContext() {
+		this.variables = new ConcurrentHashMap<String, Entry>();
+		this.library = new GenericBTLibrary();
+		this.recorders = new ThreadLocal<ContextReadSet>();
+		this.numRecorders = new AtomicInteger();
+		this.listeners = new ConcurrentHashMap<String, IVariableListener[]>();
+	}
+
+	/**
+	 * Returns the value of a variable. If the current thread is recording, the variable is added
+	 * to its read set.
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		Entry entry = this.variables.get(name);
+
+		if (this.numRecorders.get() > 0) {
+			ContextReadSet recorder = this.recorders.get();
+			if (recorder != null) {
+				recorder.add(name, entry == null ? 0 : entry.version);
+			}
+		}
+
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		return getAndSetVariable(name, value) != null;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		return getAndSetVariable(name, null) != null;
+	}
+
+	/**
+	 * Clears all the variables of the context, one by one. Variables that are set while the
+	 * context is being cleared may not be cleared.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		for (String name : this.variables.keySet()) {
+			clearVariable(name);
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IAtomicContext#getAndSetVariable(java.lang.String, java.lang.Object)
+	 */
+	public Object getAndSetVariable(String name, Object value) {
+		while (true) {
+			Entry current = this.variables.get(name);
+			if (current == null && value == null) {
+				return null;
+			}
+			if (current != null && current.value == null && value == null) {
+				return null;
+			}
+			if (replace(name, current, value)) {
+				return current == null ? null : current.value;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IAtomicContext#compareAndSetVariable(java.lang.String,
+	 *      java.lang.Object, java.lang.Object)
+	 */
+	public boolean compareAndSetVariable(String name, Object expected, Object value) {
+		while (true) {
+			Entry current = this.variables.get(name);
+			Object currentValue = current == null ? null : current.value;
+			if (currentValue == null ? expected != null : !currentValue.equals(expected)) {
+				return false;
+			}
+			if (currentValue == null && value == null) {
+				return true;
+			}
+			if (replace(name, current, value)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IAtomicContext#updateVariable(java.lang.String,
+	 *      java.util.function.UnaryOperator)
+	 */
+	public Object updateVariable(String name, UnaryOperator<Object> update) {
+		if (update == null) {
+			throw new IllegalArgumentException("The input UnaryOperator cannot be null");
+		}
+
+		while (true) {
+			Entry current = this.variables.get(name);
+			Object currentValue = current == null ? null : current.value;
+			Object value = update.apply(currentValue);
+			if (currentValue == null && value == null) {
+				return null;
+			}
+			if (replace(name, current, value)) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#getVersion(java.lang.String)
+	 */
+	public long getVersion(String name) {
+		Entry entry = this.variables.get(name);
+		return entry == null ? 0 : entry.version;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#startRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public ContextReadSet startRecordingReads(ContextReadSet readSet) {
+		if (readSet == null) {
+			throw new IllegalArgumentException("The input ContextReadSet cannot be null");
+		}
+
+		ContextReadSet previous = this.recorders.get();
+		this.recorders.set(readSet);
+		if (previous == null) {
+			this.numRecorders.incrementAndGet();
+		}
+		return previous;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#stopRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void stopRecordingReads(ContextReadSet previous) {
+		ContextReadSet finished = this.recorders.get();
+		if (finished == null) {
+			return;
+		}
+
+		if (previous == null) {
+			this.recorders.remove();
+			this.numRecorders.decrementAndGet();
+		} else {
+			previous.addAll(finished);
+			this.recorders.set(previous);
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#recordReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void recordReads(ContextReadSet readSet) {
+		if (this.numRecorders.get() > 0) {
+			ContextReadSet recorder = this.recorders.get();
+			if (recorder != null) {
+				recorder.addAll(readSet);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#addVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public void addVariableListener(String name, IVariableListener listener) {
+		if (name == null) {
+			throw new IllegalArgumentException("The input name cannot be null");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("The input IVariableListener cannot be null");
+		}
+
+		while (true) {
+			IVariableListener[] current = this.listeners.get(name);
+			if (current == null) {
+				if (this.listeners.putIfAbsent(name, new IVariableListener[] { listener }) == null) {
+					return;
+				}
+			} else {
+				IVariableListener[] updated = Arrays.copyOf(current, current.length + 1);
+				updated[current.length] = listener;
+				if (this.listeners.replace(name, current, updated)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#removeVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public void removeVariableListener(String name, IVariableListener listener) {
+		while (true) {
+			IVariableListener[] current = this.listeners.get(name);
+			if (current == null) {
+				return;
+			}
+
+			int index = -1;
+			for (int i = 0; i < current.length && index == -1; i++) {
+				if (current[i] == listener) {
+					index = i;
+				}
+			}
+			if (index == -1) {
+				return;
+			}
+
+			boolean removed;
+			if (current.length == 1) {
+				removed = this.listeners.remove(name, current);
+			} else {
+				IVariableListener[] updated = new IVariableListener[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, index);
+				System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+				removed = this.listeners.replace(name, current, updated);
+			}
+			if (removed) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds all the behaviour trees in <code>library</code> to the set of behaviour trees stored in
+	 * this context. If there is already a tree with the same name as that of one of the trees in
+	 * <code>library</code>, it is overwritten.
+	 * 
+	 * @param library
+	 *            the library containing all the behaviour trees to add to this context.
+	 * @return true if a previously stored behaviour tree has been overwritten, and false
+	 *         otherwise.
+	 */
+	public boolean addBTLibrary(IBTLibrary library) {
+		return this.library.addBTLibrary(library);
+	}
+
+	/**
+	 * Adds the behaviour tree <code>tree</code> to the set of behaviour trees stored in this
+	 * context. If there is already a tree with the name <code>name</code>, then it is overwritten
+	 * by <code>tree</code>.
+	 * 
+	 * @param name
+	 *            the name that will identify the tree <code>tree</code> in the context.
+	 * @param tree
+	 *            the tree to insert.
+	 * @return true if there was already a tree with name <code>name</code>, and false otherwise.
+	 */
+	public boolean addBT(String name, ModelTask tree) {
+		return this.library.addBT(name, tree);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.library.getBT(name);
+	}
+
+	/**
+	 * Replaces the entry of a variable, <code>current</code>, by a new one with the value
+	 * <code>value</code> and the next version, and notifies the listeners of the variable. Nothing
+	 * is done if the entry of the variable is no longer <code>current</code>.
+	 * 
+	 * @return true if the entry has been replaced, and false otherwise.
+	 */
+	private boolean replace(String name, Entry current, Object value) {
+		boolean replaced;
+		if (current == null) {
+			replaced = this.variables.putIfAbsent(name, new Entry(value, 1)) == null;
+		} else {
+			replaced = this.variables.replace(name, current, new Entry(value, current.version + 1));
+		}
+
+		if (replaced) {
+			IVariableListener[] subscribed = this.listeners.get(name);
+			if (subscribed != null) {
+				for (IVariableListener listener : subscribed) {
+					listener.variableChanged(this, name);
+				}
+			}
+		}
+
+		return replaced;
+	}
+
+	/**
+	 * The value of a variable along with its version. Entries are immutable, and they are compared
+	 * by identity, so replacing an entry by compare-and-set fails if the variable has changed in
+	 * the meantime.
+	 */
+	private static final class Entry {
+		/** The value of the variable, or null if it has been cleared. */
+		final Object value;
+		/** The version of the variable. */
+		final long version;
+
+		Entry(Object value, long version) {
+			this.value = value;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import jbt.execution.core.IContext;
+import jbt.execution.core.SymbolTable;
+
+/**
+ * The changes that a {@link JournalingContext} has recorded between two sequence numbers, coalesced
+ * so that each variable appears at most once, with its last operation. A ContextDelta can be
+ * replayed on another context through {@link #applyTo(IContext)}, or read entry by entry in order
+ * to send it elsewhere.
+ * <p>
+ * If the context was cleared within the range of the delta, {@link #isClearAll()} returns true and
+ * the delta only contains the changes made after the last clear, which must be applied after
+ * clearing the target.
+ * <p>
+ * Variables are identified by slot (see {@link SymbolTable}), except those whose name had not been
+ * interned when they were changed, which are identified by name.
+ * <p>
+ * A ContextDelta is meant to be reused: every export overwrites its contents, and its arrays only
+ * grow when needed.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ContextDelta {
+	/**
+	 * Enumeration of the operations that an entry of a ContextDelta can represent.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static enum Operation {
+		/** The variable was set to a non-null value. */
+		SET,
+		/** The variable was cleared. */
+		CLEAR
+	}
+
+	/** The first sequence number covered by the delta. */
+	private long fromSequence;
+	/** The sequence number following the last one covered by the delta. */
+	private long toSequence;
+	/** Whether the context was cleared within the range of the delta. */
+	private boolean clearAll;
+	/** The number of entries. */
+	private int size;
+	/** The slot of the variable of each entry. */
+	private int[] slots;
+	/**
+	 * The name of the variable of each entry whose slot is {@link SymbolTable#NO_SLOT}, and null
+	 * for the rest.
+	 */
+	private String[] names;
+	/** The value of each entry, which is null for {@link Operation#CLEAR}. */
+	private Object[] values;
+	/** The index of the entry of each slot, or -1. All of them are -1 between exports. */
+	private int[] entryBySlot;
+	/**
+	 * The index of the entry of each variable identified by name, or null if there has been none
+	 * yet. It is empty between exports.
+	 */
+	private Map<String, Integer> entryByName;
+
+	/**
+	 * Creates an empty ContextDelta.
+	 */
+	public ContextDelta() {
+		this.slots = new int[16];
+		this.names = new String[16];
+		this.values = new Object[16];
+		this.entryBySlot = new int[0];
+	}
+
+	/**
+	 * Returns the first sequence number covered by the delta.
+	 * 
+	 * @return the first sequence number covered by the delta.
+	 */
+	public long getFromSequence() {
+		return this.fromSequence;
+	}
+
+	/**
+	 * Returns the sequence number following the last one covered by the delta, which is the one
+	 * from which the next delta must be exported.
+	 * 
+	 * @return the sequence number following the last one covered by the delta.
+	 */
+	public long getToSequence() {
+		return this.toSequence;
+	}
+
+	/**
+	 * Returns whether the context was cleared within the range of the delta.
+	 * 
+	 * @return true if the context was cleared within the range of the delta.
+	 */
+	public boolean isClearAll() {
+		return this.clearAll;
+	}
+
+	/**
+	 * Returns the number of entries of the delta.
+	 * 
+	 * @return the number of entries of the delta.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the slot (see {@link SymbolTable}) of the variable of the entry <code>index</code>, or
+	 * {@link SymbolTable#NO_SLOT} if the variable is identified by name (see {@link #getName(int)}).
+	 * 
+	 * @param index
+	 *            the index of the entry.
+	 * @return the slot of the variable of the entry, or {@link SymbolTable#NO_SLOT}.
+	 */
+	public int getSlot(int index) {
+		checkIndex(index);
+		return this.slots[index];
+	}
+
+	/**
+	 * Returns the name of the variable of the entry <code>index</code>.
+	 * 
+	 * @param index
+	 *            the index of the entry.
+	 * @return the name of the variable of the entry.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		if (this.slots[index] == SymbolTable.NO_SLOT) {
+			return this.names[index];
+		}
+		return SymbolTable.getName(this.slots[index]);
+	}
+
+	/**
+	 * Returns the operation of the entry <code>index</code>.
+	 * 
+	 * @param index
+	 *            the index of the entry.
+	 * @return the operation of the entry.
+	 */
+	public Operation getOperation(int index) {
+		checkIndex(index);
+		return this.values[index] == null ? Operation.CLEAR : Operation.SET;
+	}
+
+	/**
+	 * Returns the value of the entry <code>index</code>, which is null if the variable was cleared.
+	 * 
+	 * @param index
+	 *            the index of the entry.
+	 * @return the value of the entry.
+	 */
+	public Object getValue(int index) {
+		checkIndex(index);
+		return this.values[index];
+	}
+
+	/**
+	 * Replays the delta on <code>context</code>: clears it if {@link #isClearAll()} returns true, and
+	 * then sets or clears the variable of every entry.
+	 * 
+	 * @param context
+	 *            the context to apply the delta to.
+	 */
+	public void applyTo(IContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("The input context cannot be null");
+		}
+		if (this.clearAll) {
+			context.clear();
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.slots[i] == SymbolTable.NO_SLOT) {
+				context.setVariable(this.names[i], this.values[i]);
+			} else {
+				SymbolTable.setVariable(context, this.slots[i], this.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Empties the delta before an export.
+	 */
+	void reset(long fromSequence, long toSequence, boolean clearAll) {
+		for (int i = 0; i < this.size; i++) {
+			this.names[i] = null;
+			this.values[i] = null;
+		}
+		this.size = 0;
+		this.fromSequence = fromSequence;
+		this.toSequence = toSequence;
+		this.clearAll = clearAll;
+	}
+
+	/**
+	 * Records a change, replacing the previous change of the same variable, if any. If the
+	 * variable was changed before its name was interned, its entry by name becomes an entry by
+	 * slot.
+	 */
+	void add(int slot, Object value) {
+		if (slot >= this.entryBySlot.length) {
+			int oldLength = this.entryBySlot.length;
+			this.entryBySlot = Arrays.copyOf(this.entryBySlot, Math.max(slot + 1,
+					SymbolTable.size()));
+			Arrays.fill(this.entryBySlot, oldLength, this.entryBySlot.length, -1);
+		}
+
+		int index = this.entryBySlot[slot];
+		if (index == -1) {
+			Integer byName = this.entryByName == null || this.entryByName.isEmpty() ? null
+					: this.entryByName.remove(SymbolTable.getName(slot));
+			if (byName == null) {
+				index = newEntry(slot, null);
+			} else {
+				index = byName;
+				this.slots[index] = slot;
+				this.names[index] = null;
+			}
+			this.entryBySlot[slot] = index;
+		}
+		this.values[index] = value;
+	}
+
+	/**
+	 * Records a change of a variable whose name has not been interned, replacing the previous
+	 * change of the same variable, if any.
+	 */
+	void add(String name, Object value) {
+		if (this.entryByName == null) {
+			this.entryByName = new HashMap<String, Integer>();
+		}
+
+		Integer index = this.entryByName.get(name);
+		if (index == null) {
+			index = newEntry(SymbolTable.NO_SLOT, name);
+			this.entryByName.put(name, index);
+		}
+		this.values[index] = value;
+	}
+
+	/**
+	 * Finishes an export, leaving the index of entries by slot ready for the next one.
+	 */
+	void seal() {
+		for (int i = 0; i < this.size; i++) {
+			if (this.slots[i] != SymbolTable.NO_SLOT) {
+				this.entryBySlot[this.slots[i]] = -1;
+			}
+		}
+		if (this.entryByName != null) {
+			this.entryByName.clear();
+		}
+	}
+
+	/**
+	 * Appends an entry for the variable <code>slot</code> or <code>name</code>, and returns its
+	 * index.
+	 */
+	private int newEntry(int slot, String name) {
+		if (this.size == this.slots.length) {
+			this.slots = Arrays.copyOf(this.slots, this.size * 2);
+			this.names = Arrays.copyOf(this.names, this.size * 2);
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+		int index = this.size++;
+		this.slots[index] = slot;
+		this.names[index] = name;
+		return index;
+	}
+
+	/**
+	 * Throws an IndexOutOfBoundsException if <code>index</code> is not the index of an entry.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+		}
+	}
+}
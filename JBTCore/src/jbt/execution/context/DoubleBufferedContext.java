@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jbt.execution.core.IBTLibrary;
+import jbt.execution.core.IContext;
+import jbt.model.core.ModelTask;
+
+/**
+ * A double-buffered world state, meant to be shared by agents whose behaviour trees are ticked in
+ * parallel without locks.
+ * <p>
+ * The world state is an immutable snapshot of the variables as of the last published frame. Each
+ * agent accesses it through its own {@link AgentBufferContext} (see
+ * {@link #createAgentContext(int)}), which reads the snapshot and keeps its writes in a private
+ * buffer. Once all the agents have been ticked, {@link #publish()} must be called (the <i>frame
+ * barrier</i>): it merges the buffers of all the agents into a new snapshot, which becomes visible
+ * to every agent at once. Thus, during frame N every agent reads the state of frame N, and what
+ * they write becomes the state of frame N+1.
+ * <p>
+ * When several agents write the same variable during a frame, the value of the variable in the
+ * next frame is decided by an {@link IWriteMerger}: {@link #LAST_WRITER_WINS} (the default),
+ * {@link #HIGHEST_PRIORITY_WINS} or a custom one. Writes are ordered as if the agents had been
+ * ticked one after another, in the order in which their contexts were created (see
+ * {@link BufferedWrite#follows(BufferedWrite)}), so the state of the next frame does not depend
+ * on how the agents are scheduled.
+ * <p>
+ * The DoubleBufferedContext is itself an IContext, which behaves as an agent context whose
+ * priority is lower than that of any agent. It can be used to set up the world state, which
+ * becomes visible after the first call to {@link #publish()}.
+ * <p>
+ * Reading the snapshot never blocks. {@link #publish()} must be called by a single thread, when no
+ * agent is being ticked.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class DoubleBufferedContext implements IContext {
+	/**
+	 * IWriteMerger that keeps the value of the last write, that is, the one made by the agent whose
+	 * context was created last (see {@link BufferedWrite#follows(BufferedWrite)}).
+	 */
+	public static final IWriteMerger LAST_WRITER_WINS = new IWriteMerger() {
+		public Object merge(String name, Object previousValue, List<BufferedWrite> writes) {
+			BufferedWrite last = writes.get(0);
+			for (int i = 1; i < writes.size(); i++) {
+				if (writes.get(i).follows(last)) {
+					last = writes.get(i);
+				}
+			}
+			return last.getValue();
+		}
+	};
+
+	/**
+	 * IWriteMerger that keeps the value written by the agent with the highest priority. Among
+	 * agents with the same priority, the last write wins (see
+	 * {@link BufferedWrite#follows(BufferedWrite)}).
+	 */
+	public static final IWriteMerger HIGHEST_PRIORITY_WINS = new IWriteMerger() {
+		public Object merge(String name, Object previousValue, List<BufferedWrite> writes) {
+			BufferedWrite best = writes.get(0);
+			for (int i = 1; i < writes.size(); i++) {
+				BufferedWrite write = writes.get(i);
+				int priority = write.getAgent().getPriority();
+				int bestPriority = best.getAgent().getPriority();
+				if (priority > bestPriority
+						|| (priority == bestPriority && write.follows(best))) {
+					best = write;
+				}
+			}
+			return best.getValue();
+		}
+	};
+
+	/** The variables of the last published frame. The map is never modified once published. */
+	private volatile Map<String, Object> published;
+	/** The number of frames that have been published. */
+	private volatile long frame;
+	/** The behaviour trees of the context. */
+	private final GenericBTLibrary library;
+	/** The number of agent contexts that have been created, including the own one. */
+	private int numCreatedAgents;
+	/** The agent contexts, in the order in which they were created. */
+	private final List<AgentBufferContext> agents;
+	/** The agent context through which the DoubleBufferedContext is written. */
+	private final AgentBufferContext ownContext;
+	/** The policy used to merge conflicting writes. */
+	private final IWriteMerger merger;
+
+	/**
+	 * Constructs an empty DoubleBufferedContext that merges conflicting writes with
+	 * {@link #LAST_WRITER_WINS}.
+	 */
+	public DoubleBufferedContext() {
+		this(LAST_WRITER_WINS);
+	}
+
+	/**
+	 * Constructs an empty DoubleBufferedContext that merges conflicting writes with
+	 * <code>merger</code>.
+	 * 
+	 * @param merger
+	 *            the policy used to merge conflicting writes.
+	 */
+	public DoubleBufferedContext(IWriteMerger merger) {
+		if (merger == null) {
+			throw new IllegalArgumentException("The input merger cannot be null");
+		}
+		this.merger = merger;
+		this.published = Collections.emptyMap();
+		this.library = new GenericBTLibrary();
+		this.agents = new CopyOnWriteArrayList<AgentBufferContext>();
+		this.ownContext = new AgentBufferContext(this, Integer.MIN_VALUE, this.numCreatedAgents++);
+		this.agents.add(this.ownContext);
+	}
+
+	/**
+	 * Creates the context of a new agent, with priority 0.
+	 * 
+	 * @return the context of the new agent.
+	 */
+	public AgentBufferContext createAgentContext() {
+		return createAgentContext(0);
+	}
+
+	/**
+	 * Creates the context of a new agent.
+	 * 
+	 * @param priority
+	 *            the priority of the agent, used by {@link #HIGHEST_PRIORITY_WINS}.
+	 * @return the context of the new agent.
+	 */
+	public synchronized AgentBufferContext createAgentContext(int priority) {
+		AgentBufferContext agent = new AgentBufferContext(this, priority, this.numCreatedAgents++);
+		this.agents.add(agent);
+		return agent;
+	}
+
+	/**
+	 * Removes the context of an agent. The writes it has buffered during the current frame are
+	 * discarded.
+	 * 
+	 * @param agent
+	 *            the context to remove.
+	 * @return true if the context belonged to this DoubleBufferedContext and had not been removed
+	 *         yet, and false otherwise.
+	 */
+	public boolean removeAgentContext(AgentBufferContext agent) {
+		if (agent == this.ownContext) {
+			return false;
+		}
+		return this.agents.remove(agent);
+	}
+
+	/**
+	 * Ends the current frame: merges the writes of all the agent contexts into a new snapshot of
+	 * the world state and publishes it. If no variable has been written, the snapshot is kept.
+	 * <p>
+	 * It must be called by a single thread, when no agent is being ticked.
+	 */
+	public void publish() {
+		Map<String, Object> previous = this.published;
+		Map<String, List<BufferedWrite>> allWrites = new HashMap<String, List<BufferedWrite>>();
+
+		for (AgentBufferContext agent : this.agents) {
+			agent.drainWrites(allWrites, previous);
+		}
+
+		if (!allWrites.isEmpty()) {
+			Map<String, Object> next = new HashMap<String, Object>(previous);
+			for (Map.Entry<String, List<BufferedWrite>> entry : allWrites.entrySet()) {
+				String name = entry.getKey();
+				Object value = this.merger.merge(name, previous.get(name), entry.getValue());
+				if (value == null) {
+					next.remove(name);
+				} else {
+					next.put(name, value);
+				}
+			}
+			this.published = next;
+		}
+
+		for (AgentBufferContext agent : this.agents) {
+			agent.discardPendingWrites();
+		}
+
+		this.frame++;
+	}
+
+	/**
+	 * Returns the number of frames that have been published.
+	 * 
+	 * @return the number of frames that have been published.
+	 */
+	public long getFrame() {
+		return this.frame;
+	}
+
+	/**
+	 * Returns the value of a variable in the last published frame, ignoring any write made during
+	 * the current frame.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return the value of the variable in the last published frame, or null if it did not exist.
+	 */
+	public Object getPublishedVariable(String name) {
+		return this.published.get(name);
+	}
+
+	/**
+	 * Returns the value written to the variable through this DoubleBufferedContext during the
+	 * current frame, if any, and otherwise its value in the last published frame.
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		return this.ownContext.getVariable(name);
+	}
+
+	/**
+	 * Buffers the write, which will be merged into the world state when the frame is published.
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		return this.ownContext.setVariable(name, value);
+	}
+
+	/**
+	 * Buffers the removal of the variable, which will be merged into the world state when the frame
+	 * is published.
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		return this.ownContext.clearVariable(name);
+	}
+
+	/**
+	 * Buffers the removal of all the variables, which will be merged into the world state when the
+	 * frame is published.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		this.ownContext.clear();
+	}
+
+	/**
+	 * Adds all the behaviour trees in <code>library</code> to the set of behaviour trees stored in
+	 * this context. If there is already a tree with the same name as that of one of the trees in
+	 * <code>library</code>, it is overwritten.
+	 * 
+	 * @param library
+	 *            the library containing all the behaviour trees to add to this context.
+	 * @return true if a previously stored behaviour tree has been overwritten, and false
+	 *         otherwise.
+	 */
+	public boolean addBTLibrary(IBTLibrary library) {
+		return this.library.addBTLibrary(library);
+	}
+
+	/**
+	 * Adds the behaviour tree <code>tree</code> to the set of behaviour trees stored in this
+	 * context. If there is already a tree with the name <code>name</code>, then it is overwritten
+	 * by <code>tree</code>.
+	 * 
+	 * @param name
+	 *            the name that will identify the tree <code>tree</code> in the context.
+	 * @param tree
+	 *            the tree to insert.
+	 * @return true if there was already a tree with name <code>name</code>, and false otherwise.
+	 */
+	public boolean addBT(String name, ModelTask tree) {
+		return this.library.addBT(name, tree);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.library.getBT(name);
+	}
+}
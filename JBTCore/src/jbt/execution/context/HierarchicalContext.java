@@ -16,6 +16,7 @@
 package jbt.execution.context;
 
 import jbt.execution.core.IContext;
+import jbt.model.core.ModelTask;
 
 /**
  * A HierarchicalContext is a context that stores a parent IContext to fall back
@@ -23,16 +24,36 @@ import jbt.execution.core.IContext;
  * This class just redefines the method {@link #getVariable(String)} so that if
  * the variable name cannot be found, its value is retrieved from the parent
  * context.
+ * <p>
+ * Behaviour trees are also looked up in the parent context when they have not
+ * been added to the HierarchicalContext itself, so the HierarchicalContext
+ * shares the library of its parent instead of having an empty one of its own.
+ * <p>
+ * When the parent is itself an {@link IScopeFrame} (for instance, another
+ * HierarchicalContext), variables are resolved through a
+ * {@link ScopeChainResolver}, which remembers the context of the chain where
+ * each variable was found. Thus, reading a variable defined several levels up
+ * does not look it up in every level in between.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class HierarchicalContext extends BasicContext {
+public class HierarchicalContext extends BasicContext implements IScopeFrame {
 	/**
 	 * The parent context. When a variable cannot be retrieved from the current
 	 * context, it will be looked up in the parent context.
 	 */
 	private IContext parent;
+	/**
+	 * The scope generation of this context, which changes whenever a variable
+	 * is added or removed, or the parent context is set.
+	 */
+	private volatile long scopeGeneration;
+	/**
+	 * The resolver of the variables that are not defined in this context, or
+	 * null if it has not been needed yet.
+	 */
+	private ScopeChainResolver resolver;
 
 	/**
 	 * Default constructor. Builds an empty HierarchicalContext, with no parent
@@ -51,6 +72,10 @@ public class HierarchicalContext extends BasicContext {
 	 */
 	public void setParent(IContext parent) {
 		this.parent = parent;
+		this.scopeGeneration++;
+		if (this.resolver != null) {
+			this.resolver.clear();
+		}
 	}
 
 	/**
@@ -64,6 +89,13 @@ public class HierarchicalContext extends BasicContext {
 	 * @see es.ucm.bt.context.BasicContext#getVariable(java.lang.String)
 	 */
 	public Object getVariable(String name) {
+		if (this.parent instanceof IScopeFrame) {
+			if (this.resolver == null) {
+				this.resolver = new ScopeChainResolver(this);
+			}
+			return this.resolver.getVariable(name);
+		}
+
 		Object result;
 
 		result = super.getVariable(name);
@@ -76,4 +108,93 @@ public class HierarchicalContext extends BasicContext {
 
 		return result;
 	}
+
+	/**
+	 * Returns the behaviour tree whose name is <code>name</code>. If it has not
+	 * been added to this HierarchicalContext and there is a parent context set,
+	 * it is retrieved from the parent context.
+	 * 
+	 * @see jbt.execution.context.BasicContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		ModelTask result = super.getBT(name);
+
+		if (result == null && this.parent != null) {
+			result = this.parent.getBT(name);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sets the value of a variable, changing the scope generation of this
+	 * context if the variable did not exist.
+	 * 
+	 * @see jbt.execution.context.BasicContext#setVariable(java.lang.String,
+	 *      java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		boolean existed = super.setVariable(name, value);
+		if (!existed && value != null) {
+			this.scopeGeneration++;
+		}
+		return existed;
+	}
+
+	/**
+	 * Clears a variable, changing the scope generation of this context if it
+	 * existed.
+	 * 
+	 * @see jbt.execution.context.BasicContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		boolean existed = super.clearVariable(name);
+		if (existed) {
+			this.scopeGeneration++;
+		}
+		return existed;
+	}
+
+	/**
+	 * Clears all the variables of this context, changing its scope generation.
+	 * 
+	 * @see jbt.execution.context.BasicContext#clear()
+	 */
+	public void clear() {
+		super.clear();
+		this.scopeGeneration++;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getEnclosingContext()
+	 */
+	public IContext getEnclosingContext() {
+		return this.parent;
+	}
+
+	/**
+	 * Returns true if the variable is stored in this context.
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#definesVariable(java.lang.String)
+	 */
+	public boolean definesVariable(String name) {
+		return super.getVariable(name) != null;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getLocalVariable(java.lang.String)
+	 */
+	public Object getLocalVariable(String name) {
+		return super.getVariable(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getScopeGeneration()
+	 */
+	public long getScopeGeneration() {
+		return this.scopeGeneration;
+	}
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import jbt.execution.core.IContext;
+
+/**
+ * An IScopeFrame is a context that is layered on top of another one (its <i>enclosing
+ * context</i>), such as the contexts that the context managers create for their children
+ * ({@link HierarchicalContext}, {@link SafeContext} and {@link SafeOutputContext}). Each frame
+ * resolves some variables by itself and leaves the rest to its enclosing context.
+ * <p>
+ * This interface lets a frame find where a variable is defined in a chain of frames without
+ * asking every layer for its value, and cache the result (see {@link ScopeChainResolver}). For
+ * that purpose, every frame has a <i>scope generation</i>, a counter of its own which must be
+ * increased whenever the result of {@link #definesVariable(String)} may change for any variable,
+ * or the enclosing context changes.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IScopeFrame extends IContext {
+	/**
+	 * Returns the context to which this frame leaves the variables it does not define, or null if
+	 * there is none.
+	 * 
+	 * @return the enclosing context, which may be null.
+	 */
+	public IContext getEnclosingContext();
+
+	/**
+	 * Returns true if this frame resolves the variable <code>name</code> by itself (even if its
+	 * value is null), and false if it is resolved by the enclosing context.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return true if this frame resolves the variable <code>name</code> by itself.
+	 */
+	public boolean definesVariable(String name);
+
+	/**
+	 * Returns the value of the variable <code>name</code> in this frame, without looking it up in
+	 * the enclosing context. It is only meaningful if {@link #definesVariable(String)} returns true.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return the value of the variable in this frame, or null if it has none.
+	 */
+	public Object getLocalVariable(String name);
+
+	/**
+	 * Returns the scope generation of this frame, that is, the number of times that the variables
+	 * it defines or its enclosing context have changed.
+	 * 
+	 * @return the scope generation of this frame.
+	 */
+	public long getScopeGeneration();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.List;
+
+/**
+ * Strategy that a {@link DoubleBufferedContext} uses to decide the value of a variable in the next
+ * frame when it has been written during the current frame.
+ * <p>
+ * {@link DoubleBufferedContext#LAST_WRITER_WINS} and
+ * {@link DoubleBufferedContext#HIGHEST_PRIORITY_WINS} are provided, but any other policy (for
+ * instance, adding up the increments of all the agents) can be implemented.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IWriteMerger {
+	/**
+	 * Merges the writes made to the variable <code>name</code> during a frame.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param previousValue
+	 *            the value of the variable in the frame that has just finished, or null if it did
+	 *            not exist.
+	 * @param writes
+	 *            the writes made to the variable during the frame, at least one, in the order in
+	 *            which the agent contexts were created. Each agent context contributes at most one
+	 *            write, its last one.
+	 * @return the value of the variable in the next frame, or null if it must not exist.
+	 */
+	public Object merge(String name, Object previousValue, List<BufferedWrite> writes);
+}
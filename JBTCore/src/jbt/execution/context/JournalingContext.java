@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import jbt.execution.core.IContext;
+import jbt.execution.core.ISlotContext;
+import jbt.execution.core.SymbolTable;
+import jbt.model.core.ModelTask;
+
+/**
+ * A JournalingContext is a decorator that records every change made through it to another context
+ * (the <i>journaled context</i>) in a bounded journal, so that the changes made since a given
+ * moment can be exported (see {@link #exportDelta(long, ContextDelta)}) instead of copying the
+ * whole context. It is meant for synchronizing blackboards with observers or mirrors.
+ * <p>
+ * Every call to {@link #setVariable(String, Object)}, {@link #clearVariable(String)} and
+ * {@link #clear()} appends an entry to the journal and receives a <i>sequence number</i>, which
+ * increases by one with every entry. The journal is a ring buffer of parallel arrays that holds
+ * the slot of the variable (see {@link SymbolTable}) and its new value (null if it was cleared;
+ * a clear of the whole context is recorded with slot {@link SymbolTable#NO_SLOT}). Variables that
+ * are changed by name are not interned, so that arbitrary names do not make the SymbolTable grow:
+ * the changes of those whose name has not been interned are recorded by name. Once the journal is
+ * full, new entries overwrite the oldest ones, so a reader that falls too far behind must
+ * resynchronize from scratch.
+ * <p>
+ * Values are journaled by reference, so they should be immutable. Changes made directly to the
+ * journaled context are not recorded. Every change is applied to the journaled context and
+ * recorded while holding the lock of the JournalingContext, which exporting holds too, so the
+ * order of the journal is the order in which the changes were applied even if several threads
+ * modify the context, and changes can be exported by a thread other than the ones that modify
+ * it.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class JournalingContext implements ISlotContext {
+	/** Slot recorded for the changes of variables whose name has not been interned. */
+	private static final int UNDECLARED_SLOT = -2;
+
+	/** The journaled context. */
+	private final IContext context;
+	/** The slot of the variable of each entry of the journal. */
+	private final int[] slots;
+	/**
+	 * The name of the variable of each entry whose slot is {@link #UNDECLARED_SLOT}, and null for
+	 * the rest.
+	 */
+	private final String[] names;
+	/** The value of each entry of the journal. */
+	private final Object[] values;
+	/** Mask to map sequence numbers to positions of the journal. */
+	private final int mask;
+	/** The sequence number of the next entry. */
+	private long nextSequence;
+
+	/**
+	 * Constructs a JournalingContext.
+	 * 
+	 * @param context
+	 *            the journaled context.
+	 * @param capacity
+	 *            the number of entries that the journal can hold. It is rounded up to a power of
+	 *            two.
+	 */
+	public JournalingContext(IContext context, int capacity) {
+		if (context == null) {
+			throw new IllegalArgumentException("The input context cannot be null");
+		}
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("The capacity must be between 1 and 2^30");
+		}
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity) {
+			length <<= 1;
+		}
+		this.context = context;
+		this.slots = new int[length];
+		this.names = new String[length];
+		this.values = new Object[length];
+		this.mask = length - 1;
+	}
+
+	/**
+	 * Returns the journaled context.
+	 * 
+	 * @return the journaled context.
+	 */
+	public IContext getContext() {
+		return this.context;
+	}
+
+	/**
+	 * Returns the sequence number that the next change will receive. Exporting from it at a later
+	 * time returns the changes made from now on.
+	 * 
+	 * @return the sequence number of the next change.
+	 */
+	public synchronized long getSequence() {
+		return this.nextSequence;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest change that is still in the journal.
+	 * 
+	 * @return the sequence number of the oldest change that is still in the journal.
+	 */
+	public synchronized long getOldestSequence() {
+		return Math.max(0, this.nextSequence - this.slots.length);
+	}
+
+	/**
+	 * Exports into <code>delta</code> the changes made since <code>fromSequence</code>, coalesced
+	 * by variable. The next export should start at {@link ContextDelta#getToSequence()}.
+	 * 
+	 * @param fromSequence
+	 *            the sequence number of the first change to export.
+	 * @param delta
+	 *            the ContextDelta to fill, whose previous contents are discarded.
+	 * @return true if the changes were exported, and false if some of them are no longer in the
+	 *         journal (in which case <code>delta</code> is not modified, and the reader must
+	 *         resynchronize from a copy of the whole context).
+	 */
+	public synchronized boolean exportDelta(long fromSequence, ContextDelta delta) {
+		if (delta == null) {
+			throw new IllegalArgumentException("The input delta cannot be null");
+		}
+		if (fromSequence < 0 || fromSequence > this.nextSequence) {
+			throw new IllegalArgumentException("Invalid sequence number: " + fromSequence);
+		}
+		if (fromSequence < this.nextSequence - this.slots.length) {
+			return false;
+		}
+
+		long start = fromSequence;
+		boolean clearAll = false;
+		for (long sequence = this.nextSequence - 1; sequence >= fromSequence; sequence--) {
+			if (this.slots[(int) sequence & this.mask] == SymbolTable.NO_SLOT) {
+				start = sequence + 1;
+				clearAll = true;
+				break;
+			}
+		}
+
+		delta.reset(fromSequence, this.nextSequence, clearAll);
+		for (long sequence = start; sequence < this.nextSequence; sequence++) {
+			int position = (int) sequence & this.mask;
+			if (this.slots[position] == UNDECLARED_SLOT) {
+				delta.add(this.names[position], this.values[position]);
+			} else {
+				delta.add(this.slots[position], this.values[position]);
+			}
+		}
+		delta.seal();
+		return true;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		return this.context.getVariable(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#getVariable(int)
+	 */
+	public Object getVariable(int slot) {
+		return SymbolTable.getVariable(this.context, slot);
+	}
+
+	/**
+	 * Sets the variable in the journaled context and records the change.
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public synchronized boolean setVariable(String name, Object value) {
+		int slot = SymbolTable.lookup(name);
+		if (slot != SymbolTable.NO_SLOT) {
+			return setVariable(slot, value);
+		}
+		boolean existed = this.context.setVariable(name, value);
+		record(UNDECLARED_SLOT, name, value);
+		return existed;
+	}
+
+	/**
+	 * Sets the variable in the journaled context and records the change.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#setVariable(int, java.lang.Object)
+	 */
+	public synchronized boolean setVariable(int slot, Object value) {
+		boolean existed = SymbolTable.setVariable(this.context, slot, value);
+		record(slot, null, value);
+		return existed;
+	}
+
+	/**
+	 * Clears the variable in the journaled context and records the change.
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public synchronized boolean clearVariable(String name) {
+		int slot = SymbolTable.lookup(name);
+		if (slot != SymbolTable.NO_SLOT) {
+			return clearVariable(slot);
+		}
+		boolean existed = this.context.clearVariable(name);
+		record(UNDECLARED_SLOT, name, null);
+		return existed;
+	}
+
+	/**
+	 * Clears the variable in the journaled context and records the change.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#clearVariable(int)
+	 */
+	public synchronized boolean clearVariable(int slot) {
+		boolean existed = SymbolTable.clearVariable(this.context, slot);
+		record(slot, null, null);
+		return existed;
+	}
+
+	/**
+	 * Clears the journaled context and records the change.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public synchronized void clear() {
+		this.context.clear();
+		record(SymbolTable.NO_SLOT, null, null);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.context.getBT(name);
+	}
+
+	/**
+	 * Appends an entry to the journal. It must be called while holding the lock of the
+	 * JournalingContext, along with the change that it records.
+	 */
+	private void record(int slot, String name, Object value) {
+		int position = (int) this.nextSequence & this.mask;
+		this.slots[position] = slot;
+		this.names[position] = name;
+		this.values[position] = value;
+		this.nextSequence++;
+	}
+}
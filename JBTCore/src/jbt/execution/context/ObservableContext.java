@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import jbt.execution.core.IContext;
+import jbt.execution.core.IObservableContext;
+import jbt.execution.core.ISlotContext;
+import jbt.execution.core.IVariableListener;
+import jbt.execution.core.IVersionedContext;
+import jbt.execution.core.SymbolTable;
+import jbt.model.core.ModelTask;
+
+/**
+ * An ObservableContext is a decorator that makes another context (the <i>observed context</i>)
+ * an {@link IObservableContext}. Every variable that is set or cleared through the
+ * ObservableContext is queued, and its listeners are notified when
+ * {@link #dispatchChanges()} is called.
+ * <p>
+ * Clearing the context counts as a change of every variable that has been set through the
+ * ObservableContext and of every variable that has key listeners. Changes made directly to the
+ * observed context are not observed.
+ * <p>
+ * Changes can be made and listeners can be subscribed from any thread. Listeners are notified by
+ * the thread that calls {@link #dispatchChanges()}, without holding any lock, so they may access
+ * the context. Dispatches are serialized, so listeners are never notified concurrently, even if
+ * the ObservableContext is shared by several executors that are ticked in parallel: a call to
+ * {@link #dispatchChanges()} made while another thread is dispatching returns immediately, and
+ * the thread that is dispatching delivers the changes queued so far before it returns.
+ * <p>
+ * An ObservableContext is not an {@link IVersionedContext}, even if the observed context is, so
+ * guards are neither memoized nor reactive when it is the context of a tree. A
+ * {@link VersionedObservableContext} must be used instead to observe an IVersionedContext (see
+ * {@link jbt.execution.core.ContextFactory#createObservableContext(IContext)}).
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ObservableContext implements IObservableContext, ISlotContext {
+	/** The observed context. */
+	private final IContext context;
+	/**
+	 * Listeners subscribed to each variable. The map and the arrays are replaced rather than
+	 * modified, so notifications can iterate over them without locking.
+	 */
+	private volatile Map<String, IVariableListener[]> keyListeners;
+	/** Listeners subscribed to each prefix, replaced like {@link #keyListeners}. */
+	private volatile Map<String, IVariableListener[]> prefixListeners;
+	/** The variables that have changed since the last dispatch, in order. */
+	private Set<String> pendingChanges;
+	/** An empty set to swap with {@link #pendingChanges} on dispatch, or null. */
+	private Set<String> spareChanges;
+	/** The variables that have been set through the ObservableContext and not cleared. */
+	private final Set<String> knownVariables;
+	/**
+	 * Whether changes may have been queued since the last dispatch started. It is checked before
+	 * locking, so that dispatching is cheap when nothing has changed.
+	 */
+	private volatile boolean changesPending;
+	/** Whether a thread is dispatching changes. */
+	private boolean dispatching;
+	/** Whether another thread has called {@link #dispatchChanges()} during the current dispatch. */
+	private boolean dispatchRequested;
+
+	/**
+	 * Constructs an ObservableContext.
+	 * 
+	 * @param context
+	 *            the observed context.
+	 */
+	public ObservableContext(IContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("The input context cannot be null");
+		}
+		this.context = context;
+		this.keyListeners = Collections.emptyMap();
+		this.prefixListeners = Collections.emptyMap();
+		this.pendingChanges = new LinkedHashSet<String>();
+		this.spareChanges = new LinkedHashSet<String>();
+		this.knownVariables = new HashSet<String>();
+	}
+
+	/**
+	 * Returns the observed context.
+	 * 
+	 * @return the observed context.
+	 */
+	public IContext getContext() {
+		return this.context;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		return this.context.getVariable(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#getVariable(int)
+	 */
+	public Object getVariable(int slot) {
+		return SymbolTable.getVariable(this.context, slot);
+	}
+
+	/**
+	 * Sets the variable in the observed context and queues the change.
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		boolean existed = this.context.setVariable(name, value);
+		changed(name, value != null);
+		return existed;
+	}
+
+	/**
+	 * Sets the variable in the observed context and queues the change.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#setVariable(int, java.lang.Object)
+	 */
+	public boolean setVariable(int slot, Object value) {
+		boolean existed = SymbolTable.setVariable(this.context, slot, value);
+		changed(SymbolTable.getName(slot), value != null);
+		return existed;
+	}
+
+	/**
+	 * Clears the variable in the observed context and queues the change.
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		boolean existed = this.context.clearVariable(name);
+		changed(name, false);
+		return existed;
+	}
+
+	/**
+	 * Clears the variable in the observed context and queues the change.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#clearVariable(int)
+	 */
+	public boolean clearVariable(int slot) {
+		boolean existed = SymbolTable.clearVariable(this.context, slot);
+		changed(SymbolTable.getName(slot), false);
+		return existed;
+	}
+
+	/**
+	 * Clears the observed context and queues the change of every variable that has been set through
+	 * the ObservableContext or has key listeners.
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		this.context.clear();
+		synchronized (this) {
+			this.pendingChanges.addAll(this.knownVariables);
+			this.pendingChanges.addAll(this.keyListeners.keySet());
+			this.knownVariables.clear();
+			this.changesPending = true;
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.context.getBT(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IObservableContext#addKeyListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void addKeyListener(String name, IVariableListener listener) {
+		this.keyListeners = addListener(this.keyListeners, name, listener);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IObservableContext#removeKeyListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void removeKeyListener(String name, IVariableListener listener) {
+		this.keyListeners = removeListener(this.keyListeners, name, listener);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IObservableContext#addPrefixListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void addPrefixListener(String prefix, IVariableListener listener) {
+		this.prefixListeners = addListener(this.prefixListeners, prefix, listener);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IObservableContext#removePrefixListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void removePrefixListener(String prefix, IVariableListener listener) {
+		this.prefixListeners = removeListener(this.prefixListeners, prefix, listener);
+	}
+
+	/**
+	 * Notifies the listeners of the variables that have changed since the last dispatch. If
+	 * another thread is dispatching, this method returns false right away, and that thread
+	 * delivers the changes queued so far (including those made by its listeners) before it
+	 * returns.
+	 * 
+	 * @see jbt.execution.core.IObservableContext#dispatchChanges()
+	 */
+	public boolean dispatchChanges() {
+		if (!this.changesPending) {
+			return false;
+		}
+		synchronized (this) {
+			if (this.dispatching) {
+				this.dispatchRequested = true;
+				return false;
+			}
+			this.dispatching = true;
+		}
+
+		boolean dispatched = false;
+		boolean finished = false;
+		try {
+			Set<String> changes;
+			while ((changes = takeChanges(dispatched)) != null) {
+				notifyChanges(changes);
+				dispatched = true;
+			}
+			finished = true;
+		} finally {
+			if (!finished) {
+				synchronized (this) {
+					this.dispatching = false;
+				}
+			}
+		}
+		return dispatched;
+	}
+
+	/**
+	 * Returns the queued changes, replacing them with an empty set, or null if the dispatch in
+	 * progress must finish. After the first batch of a dispatch, changes are only taken if another
+	 * thread has requested a dispatch in the meantime. When null is returned, the dispatch is
+	 * finished within the same lock, so no request can be missed.
+	 */
+	private synchronized Set<String> takeChanges(boolean again) {
+		if (this.pendingChanges.isEmpty() || (again && !this.dispatchRequested)) {
+			if (this.pendingChanges.isEmpty()) {
+				this.changesPending = false;
+			}
+			this.dispatchRequested = false;
+			this.dispatching = false;
+			return null;
+		}
+		this.dispatchRequested = false;
+		this.changesPending = false;
+		Set<String> changes = this.pendingChanges;
+		this.pendingChanges = this.spareChanges != null ? this.spareChanges
+				: new LinkedHashSet<String>();
+		this.spareChanges = null;
+		return changes;
+	}
+
+	/**
+	 * Notifies the listeners of a batch of changes, and keeps the emptied set for the next batch.
+	 */
+	private void notifyChanges(Set<String> changes) {
+		Map<String, IVariableListener[]> keyListeners = this.keyListeners;
+		Map<String, IVariableListener[]> prefixListeners = this.prefixListeners;
+		for (String name : changes) {
+			IVariableListener[] listeners = keyListeners.get(name);
+			if (listeners != null) {
+				notify(listeners, name);
+			}
+			if (!prefixListeners.isEmpty()) {
+				for (Map.Entry<String, IVariableListener[]> entry : prefixListeners.entrySet()) {
+					if (name.startsWith(entry.getKey())) {
+						notify(entry.getValue(), name);
+					}
+				}
+			}
+		}
+
+		changes.clear();
+		synchronized (this) {
+			this.spareChanges = changes;
+		}
+	}
+
+	/**
+	 * Queues the change of a variable.
+	 */
+	private synchronized void changed(String name, boolean exists) {
+		this.pendingChanges.add(name);
+		this.changesPending = true;
+		if (exists) {
+			this.knownVariables.add(name);
+		} else {
+			this.knownVariables.remove(name);
+		}
+	}
+
+	/**
+	 * Notifies the change of a variable to some listeners.
+	 */
+	private void notify(IVariableListener[] listeners, String name) {
+		for (IVariableListener listener : listeners) {
+			listener.variableChanged(this, name);
+		}
+	}
+
+	/**
+	 * Returns a copy of <code>listeners</code> in which <code>listener</code> is subscribed to
+	 * <code>key</code>.
+	 */
+	private static Map<String, IVariableListener[]> addListener(
+			Map<String, IVariableListener[]> listeners, String key, IVariableListener listener) {
+		if (key == null) {
+			throw new IllegalArgumentException("The input key cannot be null");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("The input IVariableListener cannot be null");
+		}
+
+		Map<String, IVariableListener[]> updated = new HashMap<String, IVariableListener[]>(
+				listeners);
+		IVariableListener[] current = updated.get(key);
+		if (current == null) {
+			updated.put(key, new IVariableListener[] { listener });
+		} else {
+			IVariableListener[] extended = Arrays.copyOf(current, current.length + 1);
+			extended[current.length] = listener;
+			updated.put(key, extended);
+		}
+		return updated;
+	}
+
+	/**
+	 * Returns a copy of <code>listeners</code> in which one subscription of <code>listener</code>
+	 * to <code>key</code> has been cancelled, or <code>listeners</code> itself if there was none.
+	 */
+	private static Map<String, IVariableListener[]> removeListener(
+			Map<String, IVariableListener[]> listeners, String key, IVariableListener listener) {
+		IVariableListener[] current = listeners.get(key);
+		if (current == null) {
+			return listeners;
+		}
+
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == listener) {
+				Map<String, IVariableListener[]> updated = new HashMap<String, IVariableListener[]>(
+						listeners);
+				if (current.length == 1) {
+					updated.remove(key);
+				} else {
+					IVariableListener[] reduced = new IVariableListener[current.length - 1];
+					System.arraycopy(current, 0, reduced, 0, i);
+					System.arraycopy(current, i + 1, reduced, i, current.length - i - 1);
+					updated.put(key, reduced);
+				}
+				return updated;
+			}
+		}
+		return listeners;
+	}
+}
@@ -38,11 +38,20 @@ import jbt.model.core.ModelTask;
  * SafeContext, it will not modify the input context, but on the other hand will
  * interact with the SafeContext in just the same way it would with the input
  * context.
+ * <p>
+ * The structures that hold the local variables are created when the first
+ * variable is set or cleared, so a SafeContext that is only read does not
+ * allocate them. A SafeContext can be reused for another input context through
+ * {@link #reset(IContext)}.
+ * <p>
+ * When the input context is an {@link IScopeFrame}, variables that have not
+ * been modified are resolved through a {@link ScopeChainResolver}, so stacks of
+ * safe and hierarchical contexts do not look them up in every level.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class SafeContext implements IContext {
+public class SafeContext implements IScopeFrame {
 	/**
 	 * The original input context which the SafeOutputContext is based on.
 	 */
@@ -52,14 +61,26 @@ public class SafeContext implements IContext {
 	 */
 	private boolean cleared;
 	/**
-	 * The set of local variables managed by the SafeOutputContext.
+	 * The set of local variables managed by the SafeOutputContext, or null if
+	 * no variable has been set or cleared yet.
 	 */
 	private Map<String, Object> localVariables;
 	/**
 	 * Set containing the names of those variables whose value has been set or
-	 * cleared by the SafeOutputContext.
+	 * cleared by the SafeOutputContext, or null if there is none yet.
 	 */
 	private Set<String> localModifiedVariables;
+	/**
+	 * The scope generation of this SafeContext, which changes whenever a
+	 * variable is modified for the first time, the SafeContext is cleared or
+	 * it is reset.
+	 */
+	private volatile long scopeGeneration;
+	/**
+	 * The resolver of the variables that are read through the SafeContext, or
+	 * null if it has not been needed yet.
+	 */
+	private ScopeChainResolver resolver;
 
 	/**
 	 * Constructs a SafeContext whose input context is <code>inputContext</code>
@@ -70,9 +91,28 @@ public class SafeContext implements IContext {
 	 */
 	public SafeContext(IContext inputContext) {
 		this.inputContext = inputContext;
-		this.localVariables = new Hashtable<String, Object>();
 		this.cleared = false;
-		this.localModifiedVariables = new HashSet<String>();
+	}
+
+	/**
+	 * Resets this SafeContext so that it is empty and its input context is
+	 * <code>inputContext</code>, just as if it had just been constructed. The
+	 * structures that hold the local variables, if any, are kept.
+	 * 
+	 * @param inputContext
+	 *            the new input context.
+	 */
+	public void reset(IContext inputContext) {
+		this.inputContext = inputContext;
+		this.cleared = false;
+		if (this.localVariables != null) {
+			this.localVariables.clear();
+			this.localModifiedVariables.clear();
+		}
+		this.scopeGeneration++;
+		if (this.resolver != null) {
+			this.resolver.clear();
+		}
 	}
 
 	/**
@@ -90,6 +130,15 @@ public class SafeContext implements IContext {
 	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
 	 */
 	public Object getVariable(String name) {
+		if (this.inputContext instanceof IScopeFrame) {
+			if (this.resolver == null) {
+				this.resolver = new ScopeChainResolver(this);
+			}
+			return this.resolver.getVariable(name);
+		}
+		if (this.localVariables == null) {
+			return this.cleared ? null : this.inputContext.getVariable(name);
+		}
 		if (this.localModifiedVariables.contains(name) || this.cleared) {
 			return this.localVariables.get(name);
 		} else {
@@ -118,9 +167,8 @@ public class SafeContext implements IContext {
 	 *      java.lang.Object)
 	 */
 	public boolean setVariable(String name, Object value) {
-		if (!this.localModifiedVariables.contains(name)) {
-			this.localModifiedVariables.add(name);
-		}
+		createLocalVariables();
+		markModified(name);
 		if (value == null) {
 			return this.localVariables.remove(name) == null ? false : true;
 		}
@@ -134,8 +182,11 @@ public class SafeContext implements IContext {
 	 * @see jbt.execution.core.IContext#clear()
 	 */
 	public void clear() {
-		this.localVariables.clear();
+		if (this.localVariables != null) {
+			this.localVariables.clear();
+		}
 		this.cleared = true;
+		this.scopeGeneration++;
 	}
 
 	/**
@@ -150,9 +201,8 @@ public class SafeContext implements IContext {
 	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
 	 */
 	public boolean clearVariable(String name) {
-		if (!this.localModifiedVariables.contains(name)) {
-			this.localModifiedVariables.add(name);
-		}
+		createLocalVariables();
+		markModified(name);
 		return this.localVariables.remove(name) == null ? false : true;
 	}
 
@@ -170,4 +220,62 @@ public class SafeContext implements IContext {
 	public ModelTask getBT(String name) {
 		return this.inputContext.getBT(name);
 	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getEnclosingContext()
+	 */
+	public IContext getEnclosingContext() {
+		return this.inputContext;
+	}
+
+	/**
+	 * Returns true if the variable has been modified by the SafeContext or the
+	 * SafeContext has been cleared.
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#definesVariable(java.lang.String)
+	 */
+	public boolean definesVariable(String name) {
+		return this.cleared
+				|| (this.localModifiedVariables != null && this.localModifiedVariables
+						.contains(name));
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getLocalVariable(java.lang.String)
+	 */
+	public Object getLocalVariable(String name) {
+		return this.localVariables == null ? null : this.localVariables
+				.get(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getScopeGeneration()
+	 */
+	public long getScopeGeneration() {
+		return this.scopeGeneration;
+	}
+
+	/**
+	 * Records that the variable <code>name</code> has been modified, changing
+	 * the scope generation if it had not been modified before.
+	 */
+	private void markModified(String name) {
+		if (this.localModifiedVariables.add(name)) {
+			this.scopeGeneration++;
+		}
+	}
+
+	/**
+	 * Creates the structures that hold the local variables, if they have not
+	 * been created yet.
+	 */
+	private void createLocalVariables() {
+		if (this.localVariables == null) {
+			this.localVariables = new Hashtable<String, Object>();
+			this.localModifiedVariables = new HashSet<String>();
+		}
+	}
 }
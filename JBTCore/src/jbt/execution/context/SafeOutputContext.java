@@ -15,13 +15,14 @@
  */
 package jbt.execution.context;
 
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import jbt.execution.core.IContext;
+import jbt.execution.core.ISlotContext;
+import jbt.execution.core.SymbolTable;
 import jbt.model.core.ModelTask;
 
 /**
@@ -55,11 +56,32 @@ import jbt.model.core.ModelTask;
  * SafeOutputContext, such entity will only be able to modify the output
  * variables in the input context. On the other hand, it will interact with the
  * SafeOutputContext in just the same way it would with the input context.
+ * <p>
+ * Variables are managed by slot (see {@link SymbolTable}), so the
+ * SafeOutputContext is an {@link ISlotContext}. Accesses by slot never hash
+ * the name of the variable, and they are forwarded by slot to the input
+ * context when it is also an ISlotContext. Variables that are set or cleared
+ * by name are not interned, so that arbitrary names do not make the
+ * SymbolTable grow: those whose name has not been interned are stored by name
+ * instead.
+ * <p>
+ * The arrays that hold the local variables are created when the first local
+ * variable is set or cleared. A SafeOutputContext can be reused for another
+ * input context through {@link #reset(IContext, List, int[])}.
+ * <p>
+ * When the input context is an {@link IScopeFrame}, variables read by name
+ * that the SafeOutputContext does not hold are resolved through a
+ * {@link ScopeChainResolver}.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class SafeOutputContext implements IContext {
+public class SafeOutputContext implements ISlotContext, IScopeFrame {
+	/** Empty array shared by SafeOutputContexts with no local variables. */
+	private static final Object[] NO_VARIABLES = new Object[0];
+	/** Empty array shared by SafeOutputContexts with no local variables. */
+	private static final boolean[] NO_FLAGS = new boolean[0];
+
 	/**
 	 * The original input context which the SafeOutputContext is based on.
 	 */
@@ -71,18 +93,47 @@ public class SafeOutputContext implements IContext {
 	 */
 	private List<String> outputVariables;
 	/**
-	 * Set containing the names of those non-output variables whose value has
-	 * been set or cleared by the SafeOutputContext.
+	 * The slots of the output variables, in the same order as
+	 * {@link #outputVariables}.
 	 */
-	private Set<String> localModifiedVariables;
+	private int[] outputSlots;
+	/**
+	 * For each slot, whether it is the slot of an output variable. Slots beyond
+	 * its length are not.
+	 */
+	private boolean[] outputVariableFlags;
+	/**
+	 * For each slot, whether it is the slot of a non-output variable whose value
+	 * has been set or cleared by the SafeOutputContext. It grows along with
+	 * {@link #localVariables}.
+	 */
+	private boolean[] localModifiedVariables;
 	/**
 	 * Flag that tells whether the SafeOutputContext has been cleared.
 	 */
 	private boolean cleared;
 	/**
-	 * The set of local variables managed by the SafeOutputContext.
+	 * The set of local variables managed by the SafeOutputContext, indexed by
+	 * slot. It is created when the first local variable is modified, and until
+	 * then it is empty.
+	 */
+	private Object[] localVariables;
+	/**
+	 * The local variables whose name had not been interned when they were set
+	 * or cleared, or null if there has been none yet.
+	 */
+	private Map<String, Object> undeclaredVariables;
+	/**
+	 * The scope generation of this SafeOutputContext, which changes whenever a
+	 * local variable is modified for the first time, the SafeOutputContext is
+	 * cleared or it is reset.
 	 */
-	private Map<String, Object> localVariables;
+	private volatile long scopeGeneration;
+	/**
+	 * The resolver of the variables that are read by name, or null if it has
+	 * not been needed yet.
+	 */
+	private ScopeChainResolver resolver;
 
 	/**
 	 * Constructs a SafeOutputContext whose input context is
@@ -95,11 +146,83 @@ public class SafeOutputContext implements IContext {
 	 *            the list of output variables.
 	 */
 	public SafeOutputContext(IContext inputContext, List<String> outputVariables) {
+		this(inputContext, outputVariables, internAll(outputVariables));
+	}
+
+	/**
+	 * Constructs a SafeOutputContext whose input context is
+	 * <code>inputContext</code> and whose list of output variables is
+	 * <code>outputVariables</code>, whose slots have already been interned.
+	 * 
+	 * @param inputContext
+	 *            the input context.
+	 * @param outputVariables
+	 *            the list of output variables.
+	 * @param outputSlots
+	 *            the slots of the variables in <code>outputVariables</code>, in
+	 *            the same order. It is not copied, so it must not be modified.
+	 */
+	public SafeOutputContext(IContext inputContext, List<String> outputVariables,
+			int[] outputSlots) {
+		this.localModifiedVariables = NO_FLAGS;
+		this.localVariables = NO_VARIABLES;
+		reset(inputContext, outputVariables, outputSlots);
+	}
+
+	/**
+	 * Resets this SafeOutputContext so that it is empty, its input context is
+	 * <code>inputContext</code> and its output variables are
+	 * <code>outputVariables</code>, just as if it had just been constructed.
+	 * The arrays that hold the local variables, if any, are kept.
+	 * 
+	 * @param inputContext
+	 *            the new input context.
+	 * @param outputVariables
+	 *            the new list of output variables.
+	 * @param outputSlots
+	 *            the slots of the variables in <code>outputVariables</code>, in
+	 *            the same order. It is not copied, so it must not be modified.
+	 */
+	public void reset(IContext inputContext, List<String> outputVariables, int[] outputSlots) {
 		this.inputContext = inputContext;
 		this.outputVariables = outputVariables;
-		this.localVariables = new Hashtable<String, Object>();
-		this.localModifiedVariables = new HashSet<String>();
+		if (outputSlots != this.outputSlots) {
+			this.outputSlots = outputSlots;
+			int maxSlot = -1;
+			for (int slot : outputSlots) {
+				maxSlot = Math.max(maxSlot, slot);
+			}
+			this.outputVariableFlags = new boolean[maxSlot + 1];
+			for (int slot : outputSlots) {
+				this.outputVariableFlags[slot] = true;
+			}
+		}
+		Arrays.fill(this.localVariables, null);
+		Arrays.fill(this.localModifiedVariables, false);
+		if (this.undeclaredVariables != null) {
+			this.undeclaredVariables.clear();
+		}
 		this.cleared = false;
+		this.scopeGeneration++;
+		if (this.resolver != null) {
+			this.resolver.clear();
+		}
+	}
+
+	/**
+	 * Interns all the names in <code>names</code>, returning their slots in the
+	 * same order.
+	 * 
+	 * @param names
+	 *            the names to intern.
+	 * @return the slots of the names in <code>names</code>.
+	 */
+	public static int[] internAll(List<String> names) {
+		int[] slots = new int[names.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = SymbolTable.intern(names.get(i));
+		}
+		return slots;
 	}
 
 	/**
@@ -118,18 +241,42 @@ public class SafeOutputContext implements IContext {
 	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
 	 */
 	public Object getVariable(String name) {
-		if (this.outputVariables.contains(name)) {
-			return this.inputContext.getVariable(name);
+		if (this.inputContext instanceof IScopeFrame) {
+			if (this.resolver == null) {
+				this.resolver = new ScopeChainResolver(this);
+			}
+			return this.resolver.getVariable(name);
+		}
+		int slot = lookup(name);
+		if (slot == SymbolTable.NO_SLOT) {
+			/*
+			 * Output variables are always interned, so the variable is either a
+			 * local one or it is in the input context.
+			 */
+			if (this.undeclaredVariables != null && this.undeclaredVariables.containsKey(name)) {
+				return this.undeclaredVariables.get(name);
+			}
+			return this.cleared ? null : this.inputContext.getVariable(name);
+		}
+		return getVariable(slot);
+	}
+
+	/**
+	 * Retrieves the value of a variable by slot, just like
+	 * {@link #getVariable(String)}.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#getVariable(int)
+	 */
+	public Object getVariable(int slot) {
+		if (isOutputVariable(slot)) {
+			return SymbolTable.getVariable(this.inputContext, slot);
 		} else {
-			if (this.localModifiedVariables.contains(name) || this.cleared) {
-				return this.localVariables.get(name);
+			if (slot < this.localVariables.length && this.localModifiedVariables[slot]) {
+				return this.localVariables[slot];
+			} else if (this.cleared) {
+				return null;
 			} else {
-				Object variable = this.localVariables.get(name);
-				if (variable != null) {
-					return variable;
-				} else {
-					return this.inputContext.getVariable(name);
-				}
+				return SymbolTable.getVariable(this.inputContext, slot);
 			}
 		}
 	}
@@ -150,16 +297,42 @@ public class SafeOutputContext implements IContext {
 	 *      java.lang.Object)
 	 */
 	public boolean setVariable(String name, Object value) {
-		if (this.outputVariables.contains(name)) {
-			return this.inputContext.setVariable(name, value);
+		int slot = lookup(name);
+		if (slot == SymbolTable.NO_SLOT) {
+			if (this.undeclaredVariables == null) {
+				this.undeclaredVariables = new HashMap<String, Object>();
+			}
+			if (!this.undeclaredVariables.containsKey(name)) {
+				this.scopeGeneration++;
+			}
+			return this.undeclaredVariables.put(name, value) != null;
+		}
+		return setVariable(slot, value);
+	}
+
+	/**
+	 * Sets the value of a variable by slot, just like
+	 * {@link #setVariable(String, Object)}.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#setVariable(int, java.lang.Object)
+	 */
+	public boolean setVariable(int slot, Object value) {
+		if (isOutputVariable(slot)) {
+			return SymbolTable.setVariable(this.inputContext, slot, value);
 		} else {
-			if (!this.localModifiedVariables.contains(name)) {
-				this.localModifiedVariables.add(name);
+			if (slot >= this.localVariables.length) {
+				int newLength = Math.max(slot + 1, SymbolTable.size());
+				this.localVariables = Arrays.copyOf(this.localVariables, newLength);
+				this.localModifiedVariables = Arrays.copyOf(this.localModifiedVariables,
+						newLength);
 			}
-			if (value == null) {
-				return this.localVariables.remove(name) == null ? false : true;
+			if (!this.localModifiedVariables[slot]) {
+				this.localModifiedVariables[slot] = true;
+				this.scopeGeneration++;
 			}
-			return this.localVariables.put(name, value) == null ? false : true;
+			Object previousValue = this.localVariables[slot];
+			this.localVariables[slot] = value;
+			return previousValue != null;
 		}
 	}
 
@@ -171,11 +344,15 @@ public class SafeOutputContext implements IContext {
 	 * @see jbt.execution.core.IContext#clear()
 	 */
 	public void clear() {
-		this.localVariables.clear();
-		for (String outputVariable : this.outputVariables) {
-			this.inputContext.clearVariable(outputVariable);
+		Arrays.fill(this.localVariables, null);
+		if (this.undeclaredVariables != null) {
+			this.undeclaredVariables.clear();
+		}
+		for (int outputSlot : this.outputSlots) {
+			SymbolTable.clearVariable(this.inputContext, outputSlot);
 		}
 		this.cleared = true;
+		this.scopeGeneration++;
 	}
 
 	/**
@@ -191,13 +368,23 @@ public class SafeOutputContext implements IContext {
 	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
 	 */
 	public boolean clearVariable(String name) {
-		if (this.outputVariables.contains(name)) {
-			return this.inputContext.clearVariable(name);
+		int slot = lookup(name);
+		if (slot == SymbolTable.NO_SLOT) {
+			return setVariable(name, null);
+		}
+		return clearVariable(slot);
+	}
+
+	/**
+	 * Clears a variable by slot, just like {@link #clearVariable(String)}.
+	 * 
+	 * @see jbt.execution.core.ISlotContext#clearVariable(int)
+	 */
+	public boolean clearVariable(int slot) {
+		if (isOutputVariable(slot)) {
+			return SymbolTable.clearVariable(this.inputContext, slot);
 		} else {
-			if (!this.localModifiedVariables.contains(name)) {
-				this.localModifiedVariables.add(name);
-			}
-			return this.localVariables.remove(name) == null ? false : true;
+			return setVariable(slot, null);
 		}
 	}
 
@@ -215,4 +402,78 @@ public class SafeOutputContext implements IContext {
 	public ModelTask getBT(String name) {
 		return this.inputContext.getBT(name);
 	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getEnclosingContext()
+	 */
+	public IContext getEnclosingContext() {
+		return this.inputContext;
+	}
+
+	/**
+	 * Returns true if the variable is not an output variable and it has been
+	 * modified by the SafeOutputContext or the SafeOutputContext has been
+	 * cleared.
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#definesVariable(java.lang.String)
+	 */
+	public boolean definesVariable(String name) {
+		int slot = lookup(name);
+		if (slot == SymbolTable.NO_SLOT) {
+			return this.cleared
+					|| (this.undeclaredVariables != null && this.undeclaredVariables
+							.containsKey(name));
+		}
+		if (isOutputVariable(slot)) {
+			return false;
+		}
+		return this.cleared
+				|| (slot < this.localModifiedVariables.length && this.localModifiedVariables[slot]);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getLocalVariable(java.lang.String)
+	 */
+	public Object getLocalVariable(String name) {
+		int slot = lookup(name);
+		if (slot == SymbolTable.NO_SLOT) {
+			return this.undeclaredVariables == null ? null : this.undeclaredVariables.get(name);
+		}
+		if (slot >= this.localVariables.length) {
+			return null;
+		}
+		return this.localVariables[slot];
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.IScopeFrame#getScopeGeneration()
+	 */
+	public long getScopeGeneration() {
+		return this.scopeGeneration;
+	}
+
+	/**
+	 * Returns the slot of <code>name</code>, or {@link SymbolTable#NO_SLOT} if
+	 * it has not been interned. If it has been interned since it was stored
+	 * in {@link #undeclaredVariables}, the variable is moved to its slot.
+	 */
+	private int lookup(String name) {
+		int slot = SymbolTable.lookup(name);
+		if (slot != SymbolTable.NO_SLOT && this.undeclaredVariables != null
+				&& !this.undeclaredVariables.isEmpty()
+				&& this.undeclaredVariables.containsKey(name)) {
+			setVariable(slot, this.undeclaredVariables.remove(name));
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns whether <code>slot</code> is the slot of an output variable.
+	 */
+	private boolean isOutputVariable(int slot) {
+		return slot < this.outputVariableFlags.length && this.outputVariableFlags[slot];
+	}
 }
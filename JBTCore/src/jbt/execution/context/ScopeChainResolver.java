@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jbt.execution.core.IContext;
+
+/**
+ * A ScopeChainResolver resolves the variables read through an {@link IScopeFrame}, caching the
+ * context of the chain of frames where each variable is found (its <i>owner</i>). Once a variable
+ * has been resolved, reading it costs one lookup in the cache plus one lookup in its owner, and
+ * no frame in between is asked whether it defines the variable.
+ * <p>
+ * Cached resolutions are invalidated through the scope generations of the frames. Every frame
+ * keeps its own generation, which it increases whenever the variables it defines or its enclosing
+ * context change, and every resolution records the generation of each frame between the one that
+ * owns this resolver and the owner of the variable (both included). A resolution is still valid if
+ * none of those generations has changed, which also guarantees that the chain of frames is the
+ * same, since a frame that changes its enclosing context changes its generation. Writes that only
+ * change the value of a variable do not change the generation of the frame, so they do not
+ * invalidate anything.
+ * <p>
+ * Checking a resolution walks the frames up to the owner, comparing integers only. Since
+ * generations belong to the frames, changes made to the frames of a chain never invalidate the
+ * resolutions of a chain that does not contain them (for instance, that of another agent), and
+ * frames of different chains do not share any state.
+ * <p>
+ * Reads may be performed concurrently (for instance, by guards evaluated in parallel), but frames
+ * must not be modified while they are read by other threads.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+final class ScopeChainResolver {
+	/** Generations of a resolution that does not check any frame. */
+	private static final long[] NO_GENERATIONS = new long[0];
+
+	/** The frame that owns this resolver, from which variables are resolved. */
+	private final IScopeFrame frame;
+	/** The cached resolution of each variable. */
+	private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+
+	/**
+	 * Where a variable was found.
+	 */
+	private static final class Resolution {
+		/** The context that resolves the variable, or null if the chain ended without it. */
+		final IContext owner;
+		/**
+		 * The generation of each frame from the frame of the resolver up to the owner (included if
+		 * it is a frame), read before the resolution was computed.
+		 */
+		final long[] generations;
+
+		Resolution(IContext owner, long[] generations) {
+			this.owner = owner;
+			this.generations = generations;
+		}
+	}
+
+	/**
+	 * Creates a ScopeChainResolver that resolves variables from <code>frame</code>.
+	 * 
+	 * @param frame
+	 *            the frame from which variables are resolved.
+	 */
+	ScopeChainResolver(IScopeFrame frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * Returns the value of the variable <code>name</code> as seen from the frame of this
+	 * resolver, which is that of the first frame of the chain that defines it, or that of the
+	 * first context of the chain that is not a frame.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return the value of the variable, or null if it does not exist.
+	 */
+	Object getVariable(String name) {
+		Resolution resolution = this.resolutions.get(name);
+		if (resolution == null || !isValid(resolution)) {
+			resolution = resolve(name);
+			this.resolutions.put(name, resolution);
+		}
+
+		IContext owner = resolution.owner;
+		if (owner == null) {
+			return null;
+		}
+		if (owner instanceof IScopeFrame) {
+			return ((IScopeFrame) owner).getLocalVariable(name);
+		}
+		return owner.getVariable(name);
+	}
+
+	/**
+	 * Discards all the cached resolutions.
+	 */
+	void clear() {
+		this.resolutions.clear();
+	}
+
+	/**
+	 * Walks the chain of frames looking for the owner of <code>name</code>, recording the
+	 * generations of the frames it goes through.
+	 */
+	private Resolution resolve(String name) {
+		long[] generations = NO_GENERATIONS;
+		int numFrames = 0;
+		IContext current = this.frame;
+
+		while (current instanceof IScopeFrame) {
+			IScopeFrame currentFrame = (IScopeFrame) current;
+			if (numFrames == generations.length) {
+				generations = Arrays.copyOf(generations, Math.max(4, numFrames * 2));
+			}
+			generations[numFrames++] = currentFrame.getScopeGeneration();
+			if (currentFrame.definesVariable(name)) {
+				break;
+			}
+			current = currentFrame.getEnclosingContext();
+		}
+
+		if (numFrames != generations.length) {
+			generations = Arrays.copyOf(generations, numFrames);
+		}
+		return new Resolution(current, generations);
+	}
+
+	/**
+	 * Returns true if no frame between the frame of this resolver and the owner of
+	 * <code>resolution</code> has changed since it was computed.
+	 */
+	private boolean isValid(Resolution resolution) {
+		long[] generations = resolution.generations;
+		IScopeFrame currentFrame = this.frame;
+
+		for (int i = 0;; i++) {
+			if (currentFrame.getScopeGeneration() != generations[i]) {
+				return false;
+			}
+			if (i == generations.length - 1) {
+				return true;
+			}
+			currentFrame = (IScopeFrame) currentFrame.getEnclosingContext();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jbt.execution.core.IContext;
+
+/**
+ * A ScopeFramePool keeps the contexts that the context managers create for their children (the
+ * <i>scope frames</i>: {@link HierarchicalContext}, {@link SafeContext} and
+ * {@link SafeOutputContext}) once they are no longer needed, so that they can be reused instead of
+ * allocating new ones every time a context manager is spawned.
+ * <p>
+ * Frames are reset when they are taken from the pool, so they behave just like new ones. Only
+ * instances of the exact frame classes are pooled; instances of subclasses are discarded. Each
+ * pool keeps at most {@link #MAX_FRAMES_PER_TYPE} frames of each type.
+ * <p>
+ * A ScopeFramePool is not thread-safe. It is meant to be owned by a BTExecutor (see
+ * {@link jbt.execution.core.BTExecutor#setScopeFramePooling(boolean)}).
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ScopeFramePool {
+	/** Maximum number of frames of each type that are kept. */
+	public static final int MAX_FRAMES_PER_TYPE = 64;
+
+	/** Pooled HierarchicalContexts. */
+	private final List<HierarchicalContext> hierarchicalContexts = new ArrayList<HierarchicalContext>();
+	/** Pooled SafeContexts. */
+	private final List<SafeContext> safeContexts = new ArrayList<SafeContext>();
+	/** Pooled SafeOutputContexts. */
+	private final List<SafeOutputContext> safeOutputContexts = new ArrayList<SafeOutputContext>();
+
+	/**
+	 * Returns an empty HierarchicalContext whose parent is <code>parent</code>.
+	 * 
+	 * @param parent
+	 *            the parent context.
+	 * @return an empty HierarchicalContext whose parent is <code>parent</code>.
+	 */
+	public HierarchicalContext acquireHierarchicalContext(IContext parent) {
+		HierarchicalContext frame;
+		if (this.hierarchicalContexts.isEmpty()) {
+			frame = new HierarchicalContext();
+		} else {
+			frame = this.hierarchicalContexts.remove(this.hierarchicalContexts.size() - 1);
+			frame.clear();
+		}
+		frame.setParent(parent);
+		return frame;
+	}
+
+	/**
+	 * Returns an empty SafeContext whose input context is <code>inputContext</code>.
+	 * 
+	 * @param inputContext
+	 *            the input context.
+	 * @return an empty SafeContext whose input context is <code>inputContext</code>.
+	 */
+	public SafeContext acquireSafeContext(IContext inputContext) {
+		if (this.safeContexts.isEmpty()) {
+			return new SafeContext(inputContext);
+		}
+		SafeContext frame = this.safeContexts.remove(this.safeContexts.size() - 1);
+		frame.reset(inputContext);
+		return frame;
+	}
+
+	/**
+	 * Returns an empty SafeOutputContext whose input context is <code>inputContext</code> and
+	 * whose output variables are <code>outputVariables</code>.
+	 * 
+	 * @param inputContext
+	 *            the input context.
+	 * @param outputVariables
+	 *            the list of output variables.
+	 * @param outputSlots
+	 *            the slots of the variables in <code>outputVariables</code>, in the same order.
+	 * @return an empty SafeOutputContext.
+	 */
+	public SafeOutputContext acquireSafeOutputContext(IContext inputContext,
+			List<String> outputVariables, int[] outputSlots) {
+		if (this.safeOutputContexts.isEmpty()) {
+			return new SafeOutputContext(inputContext, outputVariables, outputSlots);
+		}
+		SafeOutputContext frame = this.safeOutputContexts
+				.remove(this.safeOutputContexts.size() - 1);
+		frame.reset(inputContext, outputVariables, outputSlots);
+		return frame;
+	}
+
+	/**
+	 * Moves <code>frame</code> into the pool, unless it is not a scope frame or the pool of its
+	 * type is full. The caller must not access <code>frame</code> anymore.
+	 * 
+	 * @param frame
+	 *            the frame that is no longer needed.
+	 */
+	public void release(IContext frame) {
+		Class<?> c = frame.getClass();
+
+		if (c == HierarchicalContext.class) {
+			add(this.hierarchicalContexts, (HierarchicalContext) frame);
+		} else if (c == SafeContext.class) {
+			add(this.safeContexts, (SafeContext) frame);
+		} else if (c == SafeOutputContext.class) {
+			add(this.safeOutputContexts, (SafeOutputContext) frame);
+		}
+	}
+
+	/**
+	 * Adds <code>frame</code> to <code>pool</code> unless it is full.
+	 */
+	private static <T> void add(List<T> pool, T frame) {
+		if (pool.size() < MAX_FRAMES_PER_TYPE) {
+			pool.add(frame);
+		}
+	}
+}
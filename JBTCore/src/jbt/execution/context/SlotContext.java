@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+
+import jbt.execution.core.IBTLibrary;
+import jbt.execution.core.IPrimitiveContext;
+import jbt.execution.core.SymbolTable;
+import jbt.model.core.ModelTask;
+
+/**
+ * Implementation of the {@link IPrimitiveContext} interface that stores the value of each variable
+ * in an array indexed by the slot of the variable (see {@link SymbolTable}).
+ * <p>
+ * Accessing a variable by slot is just an array access. Accessing it by name costs a single lookup
+ * in the SymbolTable; names that are written but have not been interned yet are interned on the
+ * fly.
+ * <p>
+ * Primitive variables are stored unboxed in a parallel array of longs, along with their type. They
+ * are only boxed when they are read as objects.
+ * <p>
+ * A SlotContext is not thread-safe, so it should only be used by one BTExecutor (see
+ * {@link jbt.execution.core.IContext}).
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class SlotContext implements IPrimitiveContext {
+	/** Type of a variable that is unset or that stores an object. */
+	private static final byte OBJECT = 0;
+	/** Type of a variable that stores an int. */
+	private static final byte INT = 1;
+	/** Type of a variable that stores a float. */
+	private static final byte FLOAT = 2;
+	/** Type of a variable that stores a double. */
+	private static final byte DOUBLE = 3;
+	/** Type of a variable that stores a boolean. */
+	private static final byte BOOLEAN = 4;
+
+	/**
+	 * The value of each object variable, indexed by slot. Slots beyond its length are unset.
+	 */
+	private Object[] values;
+	/**
+	 * The bits of each primitive variable, indexed by slot. It has the same length as
+	 * {@link #values}.
+	 */
+	private long[] primitives;
+	/**
+	 * The type of each variable, indexed by slot. It has the same length as {@link #values}.
+	 */
+	private byte[] types;
+	/**
+	 * The BT library that is internally used to manage all the trees of the context.
+	 */
+	private GenericBTLibrary library;
+
+	/**
+	 * Default constructor. Constructs an empty SlotContext.
+	 */
+	public SlotContext() {
+		int length = Math.max(SymbolTable.size(), 16);
+		this.values = new Object[length];
+		this.primitives = new long[length];
+		this.types = new byte[length];
+		this.library = new GenericBTLibrary();
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#getVariable(int)
+	 */
+	public Object getVariable(int slot) {
+		if (slot >= this.values.length) {
+			return null;
+		}
+		long bits = this.primitives[slot];
+		switch (this.types[slot]) {
+		case INT:
+			return Integer.valueOf((int) bits);
+		case FLOAT:
+			return Float.valueOf(Float.intBitsToFloat((int) bits));
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(bits));
+		case BOOLEAN:
+			return Boolean.valueOf(bits != 0);
+		default:
+			return this.values[slot];
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#setVariable(int, java.lang.Object)
+	 */
+	public boolean setVariable(int slot, Object value) {
+		if (slot >= this.values.length) {
+			if (value == null) {
+				return false;
+			}
+			grow();
+		}
+		boolean existed = exists(slot);
+		this.values[slot] = value;
+		this.types[slot] = OBJECT;
+		return existed;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.ISlotContext#clearVariable(int)
+	 */
+	public boolean clearVariable(int slot) {
+		return setVariable(slot, null);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? null : getVariable(slot);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public boolean setVariable(String name, Object value) {
+		if (value == null) {
+			return clearVariable(name);
+		}
+		return setVariable(SymbolTable.intern(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#clear()
+	 */
+	public void clear() {
+		Arrays.fill(this.values, null);
+		Arrays.fill(this.types, OBJECT);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#clearVariable(java.lang.String)
+	 */
+	public boolean clearVariable(String name) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? false : setVariable(slot, null);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getInt(int, int)
+	 */
+	public int getInt(int slot, int defaultValue) {
+		if (slot >= this.values.length) {
+			return defaultValue;
+		}
+		long bits = this.primitives[slot];
+		switch (this.types[slot]) {
+		case INT:
+			return (int) bits;
+		case FLOAT:
+			return (int) Float.intBitsToFloat((int) bits);
+		case DOUBLE:
+			return (int) Double.longBitsToDouble(bits);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			Object value = this.values[slot];
+			return value == null ? defaultValue : ((Number) value).intValue();
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setInt(int, int)
+	 */
+	public boolean setInt(int slot, int value) {
+		return setPrimitive(slot, INT, value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getFloat(int, float)
+	 */
+	public float getFloat(int slot, float defaultValue) {
+		if (slot >= this.values.length) {
+			return defaultValue;
+		}
+		long bits = this.primitives[slot];
+		switch (this.types[slot]) {
+		case INT:
+			return (int) bits;
+		case FLOAT:
+			return Float.intBitsToFloat((int) bits);
+		case DOUBLE:
+			return (float) Double.longBitsToDouble(bits);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			Object value = this.values[slot];
+			return value == null ? defaultValue : ((Number) value).floatValue();
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setFloat(int, float)
+	 */
+	public boolean setFloat(int slot, float value) {
+		return setPrimitive(slot, FLOAT, Float.floatToRawIntBits(value));
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getDouble(int, double)
+	 */
+	public double getDouble(int slot, double defaultValue) {
+		if (slot >= this.values.length) {
+			return defaultValue;
+		}
+		long bits = this.primitives[slot];
+		switch (this.types[slot]) {
+		case INT:
+			return (int) bits;
+		case FLOAT:
+			return Float.intBitsToFloat((int) bits);
+		case DOUBLE:
+			return Double.longBitsToDouble(bits);
+		case BOOLEAN:
+			throw notANumber(slot);
+		default:
+			Object value = this.values[slot];
+			return value == null ? defaultValue : ((Number) value).doubleValue();
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setDouble(int, double)
+	 */
+	public boolean setDouble(int slot, double value) {
+		return setPrimitive(slot, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getBoolean(int, boolean)
+	 */
+	public boolean getBoolean(int slot, boolean defaultValue) {
+		if (slot >= this.values.length) {
+			return defaultValue;
+		}
+		switch (this.types[slot]) {
+		case BOOLEAN:
+			return this.primitives[slot] != 0;
+		case OBJECT:
+			Object value = this.values[slot];
+			return value == null ? defaultValue : ((Boolean) value).booleanValue();
+		default:
+			throw new ClassCastException("The variable " + SymbolTable.getName(slot)
+					+ " is not a boolean");
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setBoolean(int, boolean)
+	 */
+	public boolean setBoolean(int slot, boolean value) {
+		return setPrimitive(slot, BOOLEAN, value ? 1 : 0);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getInt(java.lang.String, int)
+	 */
+	public int getInt(String name, int defaultValue) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? defaultValue : getInt(slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setInt(java.lang.String, int)
+	 */
+	public boolean setInt(String name, int value) {
+		return setInt(SymbolTable.intern(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getFloat(java.lang.String, float)
+	 */
+	public float getFloat(String name, float defaultValue) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? defaultValue : getFloat(slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setFloat(java.lang.String, float)
+	 */
+	public boolean setFloat(String name, float value) {
+		return setFloat(SymbolTable.intern(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getDouble(java.lang.String, double)
+	 */
+	public double getDouble(String name, double defaultValue) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? defaultValue : getDouble(slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setDouble(java.lang.String, double)
+	 */
+	public boolean setDouble(String name, double value) {
+		return setDouble(SymbolTable.intern(name), value);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#getBoolean(java.lang.String, boolean)
+	 */
+	public boolean getBoolean(String name, boolean defaultValue) {
+		int slot = SymbolTable.lookup(name);
+		return slot == SymbolTable.NO_SLOT ? defaultValue : getBoolean(slot, defaultValue);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveContext#setBoolean(java.lang.String, boolean)
+	 */
+	public boolean setBoolean(String name, boolean value) {
+		return setBoolean(SymbolTable.intern(name), value);
+	}
+
+	/**
+	 * Adds all the behaviour trees in <code>library</code> to the set of behaviour trees stored in
+	 * the context. If there is already a tree with the same name as that of one of the trees in
+	 * <code>library</code>, it is overwritten.
+	 * 
+	 * @param library
+	 *            the library containing all the behaviour trees to add to this context.
+	 * @return true if a previously stored behaviour tree has been overwritten, and false
+	 *         otherwise.
+	 */
+	public boolean addBTLibrary(IBTLibrary library) {
+		return this.library.addBTLibrary(library);
+	}
+
+	/**
+	 * Adds the behaviour tree <code>tree</code> to the set of behaviour trees stored in the
+	 * context. If there is already a tree with the name <code>name</code>, then it is overwritten
+	 * by <code>tree</code>.
+	 * 
+	 * @param name
+	 *            the name that will identify the tree <code>tree</code> in the context.
+	 * @param tree
+	 *            the tree to insert.
+	 * @return true if there was already a tree with name <code>name</code>, and false otherwise.
+	 */
+	public boolean addBT(String name, ModelTask tree) {
+		return this.library.addBT(name, tree);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IContext#getBT(java.lang.String)
+	 */
+	public ModelTask getBT(String name) {
+		return this.library.getBT(name);
+	}
+
+	/**
+	 * Stores the bits of a primitive variable.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param type
+	 *            the type of the variable.
+	 * @param bits
+	 *            the bits of its value.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	private boolean setPrimitive(int slot, byte type, long bits) {
+		if (slot >= this.values.length) {
+			grow();
+		}
+		boolean existed = exists(slot);
+		this.values[slot] = null;
+		this.primitives[slot] = bits;
+		this.types[slot] = type;
+		return existed;
+	}
+
+	/**
+	 * Returns true if the variable whose slot is <code>slot</code>, which must be within the
+	 * arrays, is set.
+	 */
+	private boolean exists(int slot) {
+		return this.types[slot] != OBJECT || this.values[slot] != null;
+	}
+
+	/**
+	 * Grows the arrays so that they can hold every slot of the SymbolTable.
+	 */
+	private void grow() {
+		int length = Math.max(this.values.length * 2, SymbolTable.size());
+		this.values = Arrays.copyOf(this.values, length);
+		this.primitives = Arrays.copyOf(this.primitives, length);
+		this.types = Arrays.copyOf(this.types, length);
+	}
+
+	/**
+	 * Returns the exception that is thrown when the variable whose slot is <code>slot</code> is
+	 * read as a number but it is not.
+	 */
+	private static ClassCastException notANumber(int slot) {
+		return new ClassCastException("The variable " + SymbolTable.getName(slot)
+				+ " is not a number");
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jbt.execution.core.ContextReadSet;
+import jbt.execution.core.IVariableListener;
+import jbt.execution.core.IVersionedContext;
+
+/**
+ * A BasicContext that keeps a version number for each of its variables and that can record which
+ * variables are read (see {@link IVersionedContext}).
+ * <p>
+ * Versions are taken from a counter that is increased every time a variable is set or cleared, so
+ * versions never repeat. Just like in BasicContext, each individual operation is atomic, so a
+ * VersionedContext can be shared by BTExecutor objects that are ticked concurrently. Each thread
+ * records into its own read set.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class VersionedContext extends BasicContext implements IVersionedContext {
+	/** Last version that has been given to a variable. */
+	private long lastVersion;
+	/** Version of the last call to {@link #clear()}. All the variables changed then. */
+	private long clearVersion;
+	/**
+	 * Version of each variable that has been set or cleared. Every variable has its own array of
+	 * length 1, so that updating its version does not allocate any object.
+	 */
+	private final Map<String, long[]> versions;
+	/** Read set that each thread is recording into, if any. */
+	private final ThreadLocal<ContextReadSet> recorders;
+	/**
+	 * Number of threads that are recording. It is checked before looking for the read set of the
+	 * current thread, so that reading a variable is cheap when no thread is recording.
+	 */
+	private final AtomicInteger numRecorders;
+	/**
+	 * Listeners subscribed to each variable. Arrays are replaced rather than modified, so
+	 * notifications can iterate over them safely. Lazily created.
+	 */
+	private Map<String, IVariableListener[]> listeners;
+
+	/**
+	 * Constructs an empty VersionedContext.
+	 */
+	public VersionedContext() {
+		super();
+		this.lastVersion = 0;
+		this.clearVersion = 0;
+		this.versions = new HashMap<String, long[]>();
+		this.recorders = new ThreadLocal<ContextReadSet>();
+		this.numRecorders = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the value of a variable. If the current thread is recording, the variable is added
+	 * to its read set.
+	 * 
+	 * @see jbt.execution.context.BasicContext#getVariable(java.lang.String)
+	 */
+	public Object getVariable(String name) {
+		if (this.numRecorders.get() > 0) {
+			ContextReadSet recorder = this.recorders.get();
+			if (recorder != null) {
+				/* The value and its version are read atomically. */
+				synchronized (this) {
+					recorder.add(name, getVersion(name));
+					return super.getVariable(name);
+				}
+			}
+		}
+
+		return super.getVariable(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.BasicContext#setVariable(java.lang.String, java.lang.Object)
+	 */
+	public synchronized boolean setVariable(String name, Object value) {
+		updateVersion(name);
+		boolean existed = super.setVariable(name, value);
+		notifyListeners(name);
+		return existed;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.BasicContext#clearVariable(java.lang.String)
+	 */
+	public synchronized boolean clearVariable(String name) {
+		updateVersion(name);
+		boolean existed = super.clearVariable(name);
+		notifyListeners(name);
+		return existed;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.context.BasicContext#clear()
+	 */
+	public synchronized void clear() {
+		this.clearVersion = ++this.lastVersion;
+		super.clear();
+		if (this.listeners != null) {
+			for (Map.Entry<String, IVariableListener[]> entry : this.listeners.entrySet()) {
+				for (IVariableListener listener : entry.getValue()) {
+					listener.variableChanged(this, entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#getVersion(java.lang.String)
+	 */
+	public synchronized long getVersion(String name) {
+		long[] version = this.versions.get(name);
+		if (version == null || version[0] < this.clearVersion) {
+			return this.clearVersion;
+		}
+		return version[0];
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#startRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public ContextReadSet startRecordingReads(ContextReadSet readSet) {
+		if (readSet == null) {
+			throw new IllegalArgumentException("The input ContextReadSet cannot be null");
+		}
+
+		ContextReadSet previous = this.recorders.get();
+		this.recorders.set(readSet);
+		if (previous == null) {
+			this.numRecorders.incrementAndGet();
+		}
+		return previous;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#stopRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void stopRecordingReads(ContextReadSet previous) {
+		ContextReadSet finished = this.recorders.get();
+		if (finished == null) {
+			return;
+		}
+
+		if (previous == null) {
+			this.recorders.remove();
+			this.numRecorders.decrementAndGet();
+		} else {
+			previous.addAll(finished);
+			this.recorders.set(previous);
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#recordReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void recordReads(ContextReadSet readSet) {
+		if (this.numRecorders.get() > 0) {
+			ContextReadSet recorder = this.recorders.get();
+			if (recorder != null) {
+				recorder.addAll(readSet);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#addVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void addVariableListener(String name, IVariableListener listener) {
+		if (name == null) {
+			throw new IllegalArgumentException("The input name cannot be null");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("The input IVariableListener cannot be null");
+		}
+
+		if (this.listeners == null) {
+			this.listeners = new HashMap<String, IVariableListener[]>();
+		}
+
+		IVariableListener[] current = this.listeners.get(name);
+		if (current == null) {
+			this.listeners.put(name, new IVariableListener[] { listener });
+		} else {
+			IVariableListener[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = listener;
+			this.listeners.put(name, updated);
+		}
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#removeVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public synchronized void removeVariableListener(String name, IVariableListener listener) {
+		if (this.listeners == null) {
+			return;
+		}
+
+		IVariableListener[] current = this.listeners.get(name);
+		if (current == null) {
+			return;
+		}
+
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == listener) {
+				if (current.length == 1) {
+					this.listeners.remove(name);
+				} else {
+					IVariableListener[] updated = new IVariableListener[current.length - 1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					this.listeners.put(name, updated);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gives a new version to a variable.
+	 */
+	private void updateVersion(String name) {
+		long[] version = this.versions.get(name);
+		if (version == null) {
+			version = new long[1];
+			this.versions.put(name, version);
+		}
+		version[0] = ++this.lastVersion;
+	}
+
+	/**
+	 * Notifies the listeners of a variable that it has changed.
+	 */
+	private void notifyListeners(String name) {
+		if (this.listeners != null) {
+			IVariableListener[] subscribed = this.listeners.get(name);
+			if (subscribed != null) {
+				for (IVariableListener listener : subscribed) {
+					listener.variableChanged(this, name);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import jbt.execution.core.ContextReadSet;
+import jbt.execution.core.IVariableListener;
+import jbt.execution.core.IVersionedContext;
+
+/**
+ * An {@link ObservableContext} whose observed context is an {@link IVersionedContext}, and which
+ * is an IVersionedContext itself by delegating to it. Guards of trees whose context is a
+ * VersionedObservableContext can therefore be memoized and reactive, just as if the context
+ * were the observed one.
+ * <p>
+ * The two kinds of listeners keep their own contracts. The listeners subscribed through
+ * {@link #addVariableListener(String, IVariableListener)} are subscribed to the observed context,
+ * so they are notified synchronously, within the call that changes a variable, and they must not
+ * access the context. The listeners subscribed through
+ * {@link #addKeyListener(String, IVariableListener)} and
+ * {@link #addPrefixListener(String, IVariableListener)} are notified when the changes are
+ * dispatched (see {@link #dispatchChanges()}), and they may access the context. Changes made
+ * directly to the observed context are only notified to the former.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class VersionedObservableContext extends ObservableContext implements IVersionedContext {
+	/** The observed context. */
+	private final IVersionedContext versionedContext;
+
+	/**
+	 * Constructs a VersionedObservableContext.
+	 * 
+	 * @param context
+	 *            the observed context.
+	 */
+	public VersionedObservableContext(IVersionedContext context) {
+		super(context);
+		this.versionedContext = context;
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#getVersion(java.lang.String)
+	 */
+	public long getVersion(String name) {
+		return this.versionedContext.getVersion(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#startRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public ContextReadSet startRecordingReads(ContextReadSet readSet) {
+		return this.versionedContext.startRecordingReads(readSet);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#stopRecordingReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void stopRecordingReads(ContextReadSet previous) {
+		this.versionedContext.stopRecordingReads(previous);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#recordReads(jbt.execution.core.ContextReadSet)
+	 */
+	public void recordReads(ContextReadSet readSet) {
+		this.versionedContext.recordReads(readSet);
+	}
+
+	/**
+	 * Subscribes a listener to the changes of a variable of the observed context.
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#addVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public void addVariableListener(String name, IVariableListener listener) {
+		this.versionedContext.addVariableListener(name, listener);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IVersionedContext#removeVariableListener(java.lang.String,
+	 *      jbt.execution.core.IVariableListener)
+	 */
+	public void removeVariableListener(String name, IVariableListener listener) {
+		this.versionedContext.removeVariableListener(name, listener);
+	}
+}
@@ -15,17 +15,24 @@
  */
 package jbt.execution.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 import jbt.execution.context.BasicContext;
+import jbt.execution.context.ScopeFramePool;
 import jbt.execution.core.ExecutionTask.Status;
 import jbt.execution.task.decorator.ExecutionInterrupter;
 import jbt.model.core.ModelTask;
 import jbt.model.core.ModelTask.Position;
 import jbt.model.task.decorator.ModelInterrupter;
+import jbt.util.TimerWheel;
 
 /**
  * BTExecutor is the implementation of the IBTExecutor interface.
@@ -50,9 +57,29 @@ import jbt.model.task.decorator.ModelInterrupter;
  * and {@link ExecutionTask#storeState()}). For each BT there is only one BTExecutor that actually
  * runs it. Therefore, the BTExecutor can be used as the repository for storing the state of the
  * tasks of the tree.
+ * <p>
+ * A BTExecutor is not thread-safe, and neither are the ExecutionTask objects it manages. A
+ * BTExecutor and its tasks must be confined to one thread at a time: all the calls to its methods
+ * must be made by the same thread, or by different threads as long as every call happens-before
+ * the next one (which is the case when the BTExecutor is ticked by a {@link BTExecutorGroup}).
+ * The only exception is {@link #invokeLater(Runnable)}, which other threads can use to hand work
+ * back to the thread that ticks the BTExecutor. Different BTExecutor objects can be ticked
+ * concurrently as long as they do not share any mutable state:
+ * <ul>
+ * <li>The ModelTask tree may be shared, since it is not modified while running. However, the
+ * first BTExecutor created for a tree computes its positions (
+ * {@link ModelTask#computePositionsIfNeeded()}), so it must not be created while another one is
+ * running the tree.
+ * <li>The set of tasks' states must not be shared ({@link #copyTasksStates(BTExecutor)}).
+ * <li>Contexts that are shared by several BTExecutor objects must be thread-safe. The contexts of
+ * the framework (such as {@link jbt.execution.context.BasicContext}) are backed by synchronized
+ * maps, so each individual operation is atomic, but a sequence of operations (for instance,
+ * reading a variable and then setting a new value for it) is not.
+ * </ul>
  * 
  * @see ModelTask
  * @see ExecutionTask
+ * @see BTExecutorGroup
  * 
  * @author Ricardo Juan Palma Durán
  * 
@@ -62,53 +89,160 @@ public class BTExecutor implements IBTExecutor {
 	private ModelTask modelBT;
 	/** The ExecutionTask associated to the root ModelTask. */
 	private ExecutionTask executionBT;
-	/** List of tickable tasks. */
-	private List<ExecutionTask> tickableTasks;
-	/** List of open tasks. */
-	private List<ExecutionTask> openTasks;
+	/** Set of tickable tasks. */
+	private ExecutionTaskSet tickableTasks;
+	/** Set of open tasks. */
+	private ExecutionTaskSet openTasks;
 	/** The context that will be passed to the root task. */
-	private IContext context;
+	private final IContext context;
+	/**
+	 * The context that will be passed to the root task if it is an IObservableContext, or null
+	 * otherwise.
+	 */
+	private final IObservableContext observableContext;
 	/**
 	 * Boolean telling whether this BTExecutor has been ticked ( {@link #tick()} ) before.
 	 */
 	private boolean firstTimeTicked = true;
 	/**
-	 * List of the tasks that must be inserted into the list of tickable nodes.
+	 * Set of the tasks that must be inserted into the list of tickable nodes.
 	 */
-	private List<ExecutionTask> currentTickableInsertions;
+	private ExecutionTaskSet currentTickableInsertions;
 	/**
-	 * List of the tasks that must be removed from the list of tickable nodes.
-	 */
-	/*
-	 * TODO: improve the way requests for insertions and removals are handled. Currently simple
-	 * Lists are used to manage them, but in case there were many requests, this process would not
-	 * be very efficient.
+	 * Set of the tasks that must be removed from the list of tickable nodes.
 	 */
-	private List<ExecutionTask> currentTickableRemovals;
+	private ExecutionTaskSet currentTickableRemovals;
 	/**
-	 * List of the tasks that must be inserted into the list of open nodes.
+	 * Set of the tasks that must be inserted into the list of open nodes.
 	 */
-	private List<ExecutionTask> currentOpenInsertions;
+	private ExecutionTaskSet currentOpenInsertions;
 	/**
-	 * List of the tasks that must be removed from the list of open nodes.
+	 * Set of the tasks that must be removed from the list of open nodes.
 	 */
-	private List<ExecutionTask> currentOpenRemovals;
+	private ExecutionTaskSet currentOpenRemovals;
 	/**
 	 * List of all the ExecutionInterrupter currently active in the behaviour tree. They are indexed
-	 * by their ModelInterrupter in the conceptual tree.
+	 * by the identifier of their ModelInterrupter in the conceptual tree (see
+	 * {@link ModelTask#getId()}).
 	 * <p>
 	 * This list is used by ExecutionPerformInterruption, which must have a way of knowing what
 	 * ExecutionInterrupter it is interrupting.
 	 */
-	private Map<ModelInterrupter, ExecutionInterrupter> interrupters;
+	private ExecutionInterrupter[] interrupters;
+	/**
+	 * ExecutionInterrupter objects that could not be stored in {@link #interrupters} because their
+	 * slot was taken by an ExecutionInterrupter of a different ModelInterrupter with the same
+	 * identifier. This may happen when the tree contains subtrees (see ModelSubtreeLookup), since
+	 * the identifiers of the tasks of a subtree are computed from the root of the subtree. Lazily
+	 * created.
+	 */
+	private Map<ModelInterrupter, ExecutionInterrupter> overflowInterrupters;
 	/**
 	 * States of the tasks of the tree that is being run by this BTExecutor. States are indexed by
-	 * Position. These are the positions of the ExecutionTask in the execution tree. These positions
-	 * are unique (they do not necessarily match the position of the corresponding ModelTask), so
-	 * each node in the execution tree can be unambiguously referenced by such position. Note that
-	 * this Map does not store the states of the nodes of the guards of the tree that is being run.
+	 * the identifier of the node of the execution tree where the task runs, which is assigned by
+	 * the TaskStateTable itself from the position of the ExecutionTask in the execution tree. These
+	 * positions are unique (they do not necessarily match the position of the corresponding
+	 * ModelTask), so each node in the execution tree can be unambiguously referenced by such
+	 * identifier. Note that this table does not store the states of the nodes of the guards of the
+	 * tree that is being run.
+	 */
+	private TaskStateTable tasksStates;
+	/**
+	 * Flag telling whether the BTExecutor runs in allocation-free mode. See
+	 * {@link #setAllocationFree(boolean)}.
+	 */
+	private boolean allocationFree = false;
+	/**
+	 * Flag telling whether tasks are pooled. See {@link #setTaskPooling(boolean)}.
+	 */
+	private boolean taskPooling = false;
+	/**
+	 * Flag telling whether the scope frames of the context managers are pooled. See
+	 * {@link #setScopeFramePooling(boolean)}.
+	 */
+	private boolean scopeFramePooling = false;
+	/**
+	 * Flag telling whether the results of guards are memoized. See
+	 * {@link #setGuardMemoization(boolean)}.
+	 */
+	private boolean guardMemoization = false;
+	/**
+	 * The pool where read-only guards are evaluated concurrently, or null if they are evaluated by
+	 * the thread that ticks the tree. See {@link #setGuardEvaluationPool(Executor)}.
+	 */
+	private Executor guardEvaluationPool;
+	/**
+	 * Flag telling whether the changes of the context are dispatched at the end of every tick. See
+	 * {@link #setContextChangeDispatch(boolean)}.
+	 */
+	private boolean contextChangeDispatch = true;
+	/** Number of guard evaluations that have been run since the statistics were reset. */
+	private long numExecutedGuardEvaluations;
+	/** Number of guard evaluations that have been skipped since the statistics were reset. */
+	private long numSkippedGuardEvaluations;
+	/**
+	 * Metrics of the evaluation of the guards of the priority lists of the tree, indexed by the
+	 * ModelTask of the list. Lazily created.
+	 */
+	private Map<ModelTask, GuardEvaluationStatistics> guardStatistics;
+	/**
+	 * Pools of tasks that have been reset and can be reused, indexed by the ModelTask they run.
+	 * Lazily created.
+	 */
+	private Map<ModelTask, List<ExecutionTask>> taskPools;
+	/**
+	 * List of the tasks that have been released (see {@link #releaseTask(ExecutionTask)}) and that
+	 * will be moved into the pools once the pending insertions and removals are processed.
+	 */
+	private List<ExecutionTask> currentReleases;
+	/** Pool of the scope frames that can be reused. Lazily created. */
+	private ScopeFramePool scopeFrames;
+	/**
+	 * List of the scope frames that have been released (see {@link #releaseScopeFrame(IContext)})
+	 * and that will be moved into {@link #scopeFrames} once the pending insertions and removals are
+	 * processed.
+	 */
+	private List<IContext> currentFrameReleases;
+	/**
+	 * Wheel that keeps the timers of the tasks that are sleeping (see
+	 * {@link ExecutionTask#sleepUntil(long)}). Lazily created.
+	 */
+	private TimerWheel timers;
+	/**
+	 * Actions submitted through {@link #invokeLater(Runnable)}, possibly from other threads, that
+	 * will be run at the beginning of the next tick.
+	 */
+	private final Queue<Runnable> invocations = new ConcurrentLinkedQueue<Runnable>();
+	/**
+	 * Flag indicating whether an action may have been submitted through
+	 * {@link #invokeLater(Runnable)} since {@link #invocations} was last emptied.
+	 */
+	private volatile boolean pendingInvocations;
+	/**
+	 * Flag indicating whether there may be insertions, removals or releases to process since
+	 * {@link #processInsertionsAndRemovals()} was last called. It spares idle BTExecutors from
+	 * visiting all the request sets on every tick.
+	 */
+	private boolean pendingChanges;
+
+	/*
+	 * Identifiers of the sets of tasks handled by the BTExecutor. Each one is the index, within
+	 * ExecutionTask#taskSetSlots, where a task stores the slot it occupies in the corresponding set.
 	 */
-	private Map<Position, ITaskState> tasksStates;
+	/** Identifier of the set of tickable tasks. */
+	static final int TICKABLE_SET = 0;
+	/** Identifier of the set of open tasks. */
+	static final int OPEN_SET = 1;
+	/** Identifier of the set of pending insertions into the set of tickable tasks. */
+	static final int TICKABLE_INSERTIONS_SET = 2;
+	/** Identifier of the set of pending removals from the set of tickable tasks. */
+	static final int TICKABLE_REMOVALS_SET = 3;
+	/** Identifier of the set of pending insertions into the set of open tasks. */
+	static final int OPEN_INSERTIONS_SET = 4;
+	/** Identifier of the set of pending removals from the set of open tasks. */
+	static final int OPEN_REMOVALS_SET = 5;
+	/** Number of sets of tasks handled by the BTExecutor. */
+	static final int NUM_TASK_SETS = 6;
 
 	/**
 	 * Creates a BTExecutor that handles the execution of a behaviour tree. The behaviour tree is
@@ -134,16 +268,18 @@ public class BTExecutor implements IBTExecutor {
 		}
 
 		this.modelBT = modelBT;
-		this.modelBT.computePositions();
+		this.modelBT.computePositionsIfNeeded();
 		this.context = context;
-		this.tickableTasks = new LinkedList<ExecutionTask>();
-		this.openTasks = new LinkedList<ExecutionTask>();
-		this.currentOpenInsertions = new LinkedList<ExecutionTask>();
-		this.currentOpenRemovals = new LinkedList<ExecutionTask>();
-		this.currentTickableInsertions = new LinkedList<ExecutionTask>();
-		this.currentTickableRemovals = new LinkedList<ExecutionTask>();
-		this.interrupters = new Hashtable<ModelInterrupter, ExecutionInterrupter>();
-		this.tasksStates = new Hashtable<ModelTask.Position, ITaskState>();
+		this.observableContext = context instanceof IObservableContext ? (IObservableContext) context
+				: null;
+		this.tickableTasks = new ExecutionTaskSet(TICKABLE_SET);
+		this.openTasks = new ExecutionTaskSet(OPEN_SET);
+		this.currentOpenInsertions = new ExecutionTaskSet(OPEN_INSERTIONS_SET);
+		this.currentOpenRemovals = new ExecutionTaskSet(OPEN_REMOVALS_SET);
+		this.currentTickableInsertions = new ExecutionTaskSet(TICKABLE_INSERTIONS_SET);
+		this.currentTickableRemovals = new ExecutionTaskSet(TICKABLE_REMOVALS_SET);
+		this.interrupters = new ExecutionInterrupter[0];
+		this.tasksStates = new TaskStateTable();
 	}
 
 	/**
@@ -164,16 +300,17 @@ public class BTExecutor implements IBTExecutor {
 		}
 
 		this.modelBT = modelBT;
-		this.modelBT.computePositions();
+		this.modelBT.computePositionsIfNeeded();
 		this.context = new BasicContext();
-		this.tickableTasks = new LinkedList<ExecutionTask>();
-		this.openTasks = new LinkedList<ExecutionTask>();
-		this.currentOpenInsertions = new LinkedList<ExecutionTask>();
-		this.currentOpenRemovals = new LinkedList<ExecutionTask>();
-		this.currentTickableInsertions = new LinkedList<ExecutionTask>();
-		this.currentTickableRemovals = new LinkedList<ExecutionTask>();
-		this.interrupters = new Hashtable<ModelInterrupter, ExecutionInterrupter>();
-		this.tasksStates = new Hashtable<ModelTask.Position, ITaskState>();
+		this.observableContext = null;
+		this.tickableTasks = new ExecutionTaskSet(TICKABLE_SET);
+		this.openTasks = new ExecutionTaskSet(OPEN_SET);
+		this.currentOpenInsertions = new ExecutionTaskSet(OPEN_INSERTIONS_SET);
+		this.currentOpenRemovals = new ExecutionTaskSet(OPEN_REMOVALS_SET);
+		this.currentTickableInsertions = new ExecutionTaskSet(TICKABLE_INSERTIONS_SET);
+		this.currentTickableRemovals = new ExecutionTaskSet(TICKABLE_REMOVALS_SET);
+		this.interrupters = new ExecutionInterrupter[0];
+		this.tasksStates = new TaskStateTable();
 	}
 
 	/**
@@ -193,26 +330,78 @@ public class BTExecutor implements IBTExecutor {
 		 * 
 		 * It is important to note that insertions and removals from the list of tickable and open
 		 * tasks are processed at the very beginning and at the very end of this method, but not
-		 * while it is ticking the current list of tickable tasks.
+		 * while it is ticking the current list of tickable tasks. Right before that, sleeping tasks
+		 * whose deadline has passed request their insertion, and the actions submitted through
+		 * invokeLater() are run.
+		 * 
+		 * Finally, if the context is an IObservableContext, the changes made to it are dispatched
+		 * to its listeners, whether the tree has been ticked or not.
 		 */
 		Status currentStatus = this.getStatus();
 
 		/* We only tick if the tree has not finished yet or if it has not started running. */
 		if (currentStatus == Status.RUNNING || currentStatus == Status.UNINITIALIZED) {
+			if (this.timers != null && !this.timers.isEmpty()) {
+				this.timers.advance(System.nanoTime());
+			}
+
+			processInvocations();
 			processInsertionsAndRemovals();
 
 			if (this.firstTimeTicked) {
-				this.executionBT = this.modelBT.createExecutor(this, null);
+				this.executionBT = createTask(this.modelBT, null);
 				this.executionBT.spawn(this.context);
 				this.firstTimeTicked = false;
 			} else {
-				for (ExecutionTask t : tickableTasks) {
-					t.tick();
+				/*
+				 * Tasks are not inserted into or removed from the set while it is being ticked, so
+				 * its size can be read just once.
+				 */
+				int numTickable = this.tickableTasks.size();
+				for (int i = 0; i < numTickable; i++) {
+					ExecutionTask t = this.tickableTasks.get(i);
+					if (t != null) {
+						t.tick();
+					}
 				}
 			}
 
 			processInsertionsAndRemovals();
 		}
+
+		if (this.contextChangeDispatch && this.observableContext != null) {
+			this.observableContext.dispatchChanges();
+		}
+	}
+
+	/**
+	 * Resets this BTExecutor so that the next call to {@link #tick()} starts running the tree from
+	 * scratch, as if the BTExecutor had just been created. The current execution of the tree, if
+	 * any, is terminated (see {@link #terminate()}), so the termination states of its tasks are
+	 * stored as usual, and the set of tasks' states is kept.
+	 * <p>
+	 * Resetting a BTExecutor is much cheaper than creating a new one to run the same tree again,
+	 * since its internal structures are reused. Moreover, if tasks are pooled (see
+	 * {@link #setTaskPooling(boolean)}), the tasks of the previous execution are reused by the next
+	 * one.
+	 */
+	public void reset() {
+		if (this.executionBT != null) {
+			this.executionBT.terminate();
+		}
+
+		processInsertionsAndRemovals();
+		this.tickableTasks.clear();
+		this.openTasks.clear();
+		this.invocations.clear();
+
+		if (this.executionBT != null) {
+			releaseTask(this.executionBT);
+			processReleases();
+			this.executionBT = null;
+		}
+
+		this.firstTimeTicked = true;
 	}
 
 	/**
@@ -225,6 +414,418 @@ public class BTExecutor implements IBTExecutor {
 		}
 	}
 
+	/**
+	 * Enables or disables the allocation-free mode of this BTExecutor. It is disabled by default.
+	 * <p>
+	 * The ticking process of the BTExecutor and of the tasks provided by the framework does not
+	 * create any Iterator or temporary object. However, every time a task changes its status, it
+	 * notifies its listeners by means of a new {@link jbt.execution.core.event.TaskEvent}. In
+	 * allocation-free mode, each task reuses a single TaskEvent for all the events it fires, so,
+	 * once the tree has been warmed up, ticking it does not allocate memory unless new tasks are
+	 * spawned or some task (for instance, a user-defined action) allocates memory by itself. If task
+	 * pooling is also enabled (see {@link #setTaskPooling(boolean)}), the tasks that are spawned
+	 * again, such as the children of a Repeat, are taken from the pool, and the priority lists
+	 * reuse the BTExecutors of their guards. Guards evaluated concurrently (see
+	 * {@link #setGuardEvaluationPool(Executor)}) still allocate one object
+	 * per evaluation.
+	 * <p>
+	 * In this mode, listeners must not keep references to the TaskEvent objects they receive.
+	 * 
+	 * @param allocationFree
+	 *            true to enable the allocation-free mode, and false to disable it.
+	 */
+	public void setAllocationFree(boolean allocationFree) {
+		this.allocationFree = allocationFree;
+	}
+
+	/**
+	 * Returns true if this BTExecutor runs in allocation-free mode, and false otherwise. See
+	 * {@link #setAllocationFree(boolean)}.
+	 * 
+	 * @return true if this BTExecutor runs in allocation-free mode, and false otherwise.
+	 */
+	public boolean isAllocationFree() {
+		return this.allocationFree;
+	}
+
+	/**
+	 * Enables or disables task pooling in this BTExecutor. It is disabled by default.
+	 * <p>
+	 * When task pooling is enabled, tasks that are no longer needed by their parents (for instance,
+	 * the child of a repeat decorator, which is run over and over again) are not discarded. Instead,
+	 * they are reset and kept in a pool indexed by their ModelTask, so that the next time an
+	 * ExecutionTask for that ModelTask is needed ( {@link #createTask(ModelTask, ExecutionTask)}),
+	 * the pooled one is reused. Only the tasks that support being reset are pooled (see
+	 * {@link ExecutionTask#internalReset()}).
+	 * <p>
+	 * This mode should only be enabled if no reference to the tasks of the tree is kept outside the
+	 * tree itself, since released tasks may be reused at any point in a subsequent tick.
+	 * 
+	 * @param taskPooling
+	 *            true to enable task pooling, and false to disable it.
+	 */
+	public void setTaskPooling(boolean taskPooling) {
+		this.taskPooling = taskPooling;
+		if (!taskPooling) {
+			this.taskPools = null;
+		}
+	}
+
+	/**
+	 * Returns true if task pooling is enabled in this BTExecutor, and false otherwise. See
+	 * {@link #setTaskPooling(boolean)}.
+	 * 
+	 * @return true if task pooling is enabled in this BTExecutor, and false otherwise.
+	 */
+	public boolean isTaskPooling() {
+		return this.taskPooling;
+	}
+
+	/**
+	 * Enables or disables the pooling of scope frames in this BTExecutor. It is disabled by
+	 * default.
+	 * <p>
+	 * Scope frames are the contexts that the context managers (for instance, the
+	 * {@link jbt.execution.task.decorator.ExecutionHierarchicalContextManager}) create for their
+	 * children. When this mode is enabled, context managers take their frames from a
+	 * {@link ScopeFramePool} owned by this BTExecutor, and give them back when they finish or are
+	 * terminated, so that context managers inside loops do not allocate a new context every time
+	 * they are spawned.
+	 * <p>
+	 * This mode should only be enabled if no reference to the contexts of the tasks of the tree is
+	 * kept outside the tree itself, since released frames may be reused at any point in a
+	 * subsequent tick.
+	 * 
+	 * @param scopeFramePooling
+	 *            true to enable the pooling of scope frames, and false to disable it.
+	 */
+	public void setScopeFramePooling(boolean scopeFramePooling) {
+		this.scopeFramePooling = scopeFramePooling;
+		if (!scopeFramePooling) {
+			this.scopeFrames = null;
+		}
+	}
+
+	/**
+	 * Returns true if the pooling of scope frames is enabled in this BTExecutor, and false
+	 * otherwise. See {@link #setScopeFramePooling(boolean)}.
+	 * 
+	 * @return true if the pooling of scope frames is enabled, and false otherwise.
+	 */
+	public boolean isScopeFramePooling() {
+		return this.scopeFramePooling;
+	}
+
+	/**
+	 * Enables or disables guard memoization in this BTExecutor. It is disabled by default.
+	 * <p>
+	 * When guard memoization is enabled and the context of a dynamic priority list is an
+	 * {@link IVersionedContext}, the list records the variables that each evaluation of a guard
+	 * reads. When the guard has to be evaluated again, if none of those variables has changed
+	 * since then, its previous result is reused instead of running the guard.
+	 * <p>
+	 * This mode should only be enabled if guards are pure functions of the variables of the
+	 * context, that is, if they do not depend on anything else (such as time or the state of the
+	 * game that is not in the context).
+	 * 
+	 * @param guardMemoization
+	 *            true to enable guard memoization, and false to disable it.
+	 */
+	public void setGuardMemoization(boolean guardMemoization) {
+		this.guardMemoization = guardMemoization;
+	}
+
+	/**
+	 * Returns true if guard memoization is enabled (see {@link #setGuardMemoization(boolean)}), and
+	 * false otherwise.
+	 * 
+	 * @return true if guard memoization is enabled, and false otherwise.
+	 */
+	public boolean isGuardMemoization() {
+		return this.guardMemoization;
+	}
+
+	/**
+	 * Sets the pool where the priority lists of the tree evaluate their read-only guards. It is
+	 * null by default.
+	 * <p>
+	 * When a pool is set, the guards of the children of a priority list that implement
+	 * {@link jbt.model.task.leaf.condition.IReadOnlyGuardPredicate} are submitted to the pool all at
+	 * once, so that they are evaluated concurrently. Their results are then consumed in order of
+	 * priority, and the evaluations that have not started by the time the list has selected a
+	 * child are cancelled. The pool may be shared by several trees.
+	 * 
+	 * @param pool
+	 *            the pool where read-only guards are evaluated, or null to evaluate them in the
+	 *            thread that ticks the tree.
+	 */
+	public void setGuardEvaluationPool(Executor pool) {
+		this.guardEvaluationPool = pool;
+	}
+
+	/**
+	 * Returns the pool where read-only guards are evaluated (see
+	 * {@link #setGuardEvaluationPool(Executor)}), or null if there is none.
+	 * 
+	 * @return the pool where read-only guards are evaluated, or null.
+	 */
+	public Executor getGuardEvaluationPool() {
+		return this.guardEvaluationPool;
+	}
+
+	/**
+	 * Sets whether the changes of the context of the tree are dispatched at the end of every tick.
+	 * If enabled (which is the default) and the context is an {@link IObservableContext},
+	 * {@link IObservableContext#dispatchChanges()} is called at the end of {@link #tick()}, so
+	 * listeners are notified once per tick of the changes made by the tree and of those made
+	 * since the previous tick.
+	 * <p>
+	 * The BTExecutors that evaluate guards share the context of the tree, so they do not dispatch
+	 * its changes. When the context is shared by several executors, it may be disabled in all of
+	 * them so that changes are dispatched once per frame, after all of them have been ticked (see
+	 * {@link IObservableContext}).
+	 * 
+	 * @param contextChangeDispatch
+	 *            true to dispatch the changes of the context at the end of every tick, and false
+	 *            otherwise.
+	 */
+	public void setContextChangeDispatch(boolean contextChangeDispatch) {
+		this.contextChangeDispatch = contextChangeDispatch;
+	}
+
+	/**
+	 * Returns true if the changes of the context are dispatched at the end of every tick (see
+	 * {@link #setContextChangeDispatch(boolean)}), and false otherwise.
+	 * 
+	 * @return true if the changes of the context are dispatched at the end of every tick.
+	 */
+	public boolean isContextChangeDispatch() {
+		return this.contextChangeDispatch;
+	}
+
+	/**
+	 * Counts an evaluation of a guard by one of the tasks of this BTExecutor. This method is called
+	 * by the tasks that evaluate guards, so that the effect of guard memoization can be measured
+	 * (see {@link #getNumExecutedGuardEvaluations()} and {@link #getNumSkippedGuardEvaluations()}).
+	 * 
+	 * @param skipped
+	 *            true if the guard was not run because its previous result was reused, and false
+	 *            if it was run.
+	 */
+	public void countGuardEvaluation(boolean skipped) {
+		if (skipped) {
+			this.numSkippedGuardEvaluations++;
+		} else {
+			this.numExecutedGuardEvaluations++;
+		}
+	}
+
+	/**
+	 * Returns the number of guard evaluations that have been run since this BTExecutor was created
+	 * or its guard statistics were reset.
+	 * 
+	 * @return the number of guard evaluations that have been run.
+	 */
+	public long getNumExecutedGuardEvaluations() {
+		return this.numExecutedGuardEvaluations;
+	}
+
+	/**
+	 * Returns the number of guard evaluations that have been skipped, because the previous result
+	 * of the guard was reused, since this BTExecutor was created or its guard statistics were
+	 * reset.
+	 * 
+	 * @return the number of guard evaluations that have been skipped.
+	 */
+	public long getNumSkippedGuardEvaluations() {
+		return this.numSkippedGuardEvaluations;
+	}
+
+	/**
+	 * Resets the counters of guard evaluations, as well as the metrics of all the priority lists
+	 * (see {@link #getGuardEvaluationStatistics(ModelTask)}).
+	 */
+	public void resetGuardStatistics() {
+		this.numExecutedGuardEvaluations = 0;
+		this.numSkippedGuardEvaluations = 0;
+		if (this.guardStatistics != null) {
+			for (GuardEvaluationStatistics statistics : this.guardStatistics.values()) {
+				statistics.reset();
+			}
+		}
+	}
+
+	/**
+	 * Returns the metrics of the evaluation of the guards of a priority list of the tree. All the
+	 * ExecutionTask objects that run <code>priorityList</code> within this BTExecutor share the
+	 * same metrics. If there are none yet, they are created.
+	 * 
+	 * @param priorityList
+	 *            the ModelTask of the priority list.
+	 * @return the metrics of the evaluation of the guards of <code>priorityList</code>.
+	 */
+	public GuardEvaluationStatistics getGuardEvaluationStatistics(ModelTask priorityList) {
+		if (this.guardStatistics == null) {
+			this.guardStatistics = new IdentityHashMap<ModelTask, GuardEvaluationStatistics>();
+		}
+
+		GuardEvaluationStatistics statistics = this.guardStatistics.get(priorityList);
+		if (statistics == null) {
+			statistics = new GuardEvaluationStatistics();
+			this.guardStatistics.put(priorityList, statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Returns an ExecutionTask that is able to run <code>modelTask</code>, and whose parent is
+	 * <code>parent</code>. This is the method that tasks use to create their children.
+	 * <p>
+	 * If task pooling is enabled and there is a pooled task for <code>modelTask</code>, it is
+	 * reused. Otherwise, a new one is created by calling
+	 * {@link ModelTask#createExecutor(BTExecutor, ExecutionTask)}.
+	 * 
+	 * @param modelTask
+	 *            the ModelTask to run.
+	 * @param parent
+	 *            the parent of the returned task, or null if it is the root of the execution tree.
+	 * @return an ExecutionTask that is able to run <code>modelTask</code>, which has not been
+	 *         spawned yet.
+	 */
+	public ExecutionTask createTask(ModelTask modelTask, ExecutionTask parent) {
+		if (this.taskPools != null) {
+			List<ExecutionTask> pool = this.taskPools.get(modelTask);
+			if (pool != null && !pool.isEmpty()) {
+				ExecutionTask task = pool.remove(pool.size() - 1);
+				task.setParent(parent);
+				return task;
+			}
+		}
+
+		return modelTask.createExecutor(this, parent);
+	}
+
+	/**
+	 * Tells the BTExecutor that <code>task</code>, which has either finished or been terminated,
+	 * is no longer needed by its parent. If task pooling is enabled, the task will be reset and
+	 * moved into the pool once the pending insertions and removals are processed, so it can be
+	 * reused by {@link #createTask(ModelTask, ExecutionTask)} in a subsequent tick. If task pooling
+	 * is disabled, this method does nothing.
+	 * <p>
+	 * After calling this method, the caller must not access <code>task</code> anymore.
+	 * 
+	 * @param task
+	 *            the task that is no longer needed.
+	 */
+	public void releaseTask(ExecutionTask task) {
+		if (this.taskPooling) {
+			if (this.currentReleases == null) {
+				this.currentReleases = new ArrayList<ExecutionTask>();
+			}
+			this.currentReleases.add(task);
+			this.pendingChanges = true;
+		}
+	}
+
+	/**
+	 * Returns the pool from which context managers must take their scope frames, or null if the
+	 * pooling of scope frames is disabled (see {@link #setScopeFramePooling(boolean)}), in which
+	 * case they must create new ones.
+	 * 
+	 * @return the pool of scope frames, or null if the pooling of scope frames is disabled.
+	 */
+	public ScopeFramePool getScopeFramePool() {
+		if (!this.scopeFramePooling) {
+			return null;
+		}
+		if (this.scopeFrames == null) {
+			this.scopeFrames = new ScopeFramePool();
+		}
+		return this.scopeFrames;
+	}
+
+	/**
+	 * Tells the BTExecutor that <code>frame</code>, a scope frame taken from
+	 * {@link #getScopeFramePool()}, is no longer needed because the context manager that created
+	 * it has either finished or been terminated. The frame will be moved into the pool once the
+	 * pending insertions and removals are processed. If the pooling of scope frames is disabled,
+	 * this method does nothing.
+	 * <p>
+	 * After calling this method, the caller must not access <code>frame</code> anymore.
+	 * 
+	 * @param frame
+	 *            the scope frame that is no longer needed.
+	 */
+	public void releaseScopeFrame(IContext frame) {
+		if (this.scopeFramePooling) {
+			if (this.currentFrameReleases == null) {
+				this.currentFrameReleases = new ArrayList<IContext>();
+			}
+			this.currentFrameReleases.add(frame);
+			this.pendingChanges = true;
+		}
+	}
+
+	/**
+	 * Resets the tasks that have been released since the last call to this method and moves them
+	 * into their pools. Tasks that are still open or tickable, or that have pending requests, as
+	 * well as tasks that do not support being reset, are just discarded. The scope frames that have
+	 * been released are also moved into their pool.
+	 */
+	private void processReleases() {
+		if (this.currentFrameReleases != null && !this.currentFrameReleases.isEmpty()) {
+			ScopeFramePool pool = getScopeFramePool();
+			if (pool != null) {
+				for (int i = 0; i < this.currentFrameReleases.size(); i++) {
+					pool.release(this.currentFrameReleases.get(i));
+				}
+			}
+			this.currentFrameReleases.clear();
+		}
+
+		if (this.currentReleases == null || this.currentReleases.isEmpty()) {
+			return;
+		}
+
+		if (this.taskPools == null) {
+			this.taskPools = new IdentityHashMap<ModelTask, List<ExecutionTask>>();
+		}
+
+		/*
+		 * Note that resetting a task may release its children, so the list may grow while it is
+		 * being traversed.
+		 */
+		for (int i = 0; i < this.currentReleases.size(); i++) {
+			ExecutionTask task = this.currentReleases.get(i);
+
+			if (isInAnySet(task) || !task.reset()) {
+				continue;
+			}
+
+			List<ExecutionTask> pool = this.taskPools.get(task.getModelTask());
+			if (pool == null) {
+				pool = new ArrayList<ExecutionTask>();
+				this.taskPools.put(task.getModelTask(), pool);
+			}
+			pool.add(task);
+		}
+
+		this.currentReleases.clear();
+	}
+
+	/**
+	 * Returns true if <code>task</code> is in any of the sets of tasks of this BTExecutor, and
+	 * false otherwise.
+	 */
+	private static boolean isInAnySet(ExecutionTask task) {
+		for (int i = 0; i < NUM_TASK_SETS; i++) {
+			if (task.taskSetSlots[i] != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns the ExecutionInterrupter that is currently active and registered in the BTExecutor (
 	 * {@link #registerInterrupter(ExecutionInterrupter)}) whose associated ModelInterrupter is
@@ -236,7 +837,16 @@ public class BTExecutor implements IBTExecutor {
 	 *         <code>modelInterrupter</code>.
 	 */
 	public ExecutionInterrupter getExecutionInterrupter(ModelInterrupter modelInterrupter) {
-		return this.interrupters.get(modelInterrupter);
+		int id = modelInterrupter.getId();
+		if (id >= 0 && id < this.interrupters.length) {
+			ExecutionInterrupter interrupter = this.interrupters[id];
+			if (interrupter != null && interrupter.getModelTask() == modelInterrupter) {
+				return interrupter;
+			}
+		}
+
+		return this.overflowInterrupters == null ? null
+				: this.overflowInterrupters.get(modelInterrupter);
 	}
 
 	/**
@@ -246,7 +856,26 @@ public class BTExecutor implements IBTExecutor {
 	 *            the ExecutionInterrupter to register.
 	 */
 	public void registerInterrupter(ExecutionInterrupter interrupter) {
-		this.interrupters.put((ModelInterrupter) interrupter.getModelTask(), interrupter);
+		ModelInterrupter modelInterrupter = (ModelInterrupter) interrupter.getModelTask();
+		int id = modelInterrupter.getId();
+
+		if (id >= 0) {
+			if (id >= this.interrupters.length) {
+				this.interrupters = Arrays.copyOf(this.interrupters,
+						Math.max(id + 1, this.interrupters.length * 2));
+			}
+
+			ExecutionInterrupter current = this.interrupters[id];
+			if (current == null || current.getModelTask() == modelInterrupter) {
+				this.interrupters[id] = interrupter;
+				return;
+			}
+		}
+
+		if (this.overflowInterrupters == null) {
+			this.overflowInterrupters = new Hashtable<ModelInterrupter, ExecutionInterrupter>();
+		}
+		this.overflowInterrupters.put(modelInterrupter, interrupter);
 	}
 
 	/**
@@ -256,7 +885,15 @@ public class BTExecutor implements IBTExecutor {
 	 *            the ExecutionInterrupter to unregister.
 	 */
 	public void unregisterInterrupter(ExecutionInterrupter interrupter) {
-		this.interrupters.remove(interrupter.getModelTask());
+		ModelTask modelInterrupter = interrupter.getModelTask();
+		int id = modelInterrupter.getId();
+
+		if (id >= 0 && id < this.interrupters.length && this.interrupters[id] != null
+				&& this.interrupters[id].getModelTask() == modelInterrupter) {
+			this.interrupters[id] = null;
+		} else if (this.overflowInterrupters != null) {
+			this.overflowInterrupters.remove(modelInterrupter);
+		}
 	}
 
 	/**
@@ -297,14 +934,11 @@ public class BTExecutor implements IBTExecutor {
 	 */
 	public void requestInsertionIntoList(BTExecutorList listType, ExecutionTask t) {
 		if (listType == BTExecutorList.OPEN) {
-			if (!this.currentOpenInsertions.contains(t)) {
-				this.currentOpenInsertions.add(t);
-			}
+			this.currentOpenInsertions.add(t);
 		} else {
-			if (!this.currentTickableInsertions.contains(t)) {
-				this.currentTickableInsertions.add(t);
-			}
+			this.currentTickableInsertions.add(t);
 		}
+		this.pendingChanges = true;
 	}
 
 	/**
@@ -327,14 +961,11 @@ public class BTExecutor implements IBTExecutor {
 	 */
 	public void requestRemovalFromList(BTExecutorList listType, ExecutionTask t) {
 		if (listType == BTExecutorList.OPEN) {
-			if (!this.currentOpenRemovals.contains(t)) {
-				this.currentOpenRemovals.add(t);
-			}
+			this.currentOpenRemovals.add(t);
 		} else {
-			if (!this.currentTickableRemovals.contains(t)) {
-				this.currentTickableRemovals.add(t);
-			}
+			this.currentTickableRemovals.add(t);
 		}
+		this.pendingChanges = true;
 	}
 
 	/**
@@ -379,28 +1010,57 @@ public class BTExecutor implements IBTExecutor {
 	 * insertion and removal will be carried out unless new ones are requested.
 	 */
 	private void processInsertionsAndRemovals() {
+		if (!this.pendingChanges) {
+			return;
+		}
+		this.pendingChanges = false;
+
 		/*
-		 * Process insertions and removals.
+		 * Process insertions and removals. Note that requests are processed in the order they were
+		 * made, and that all the insertions are processed before the removals.
 		 */
-		for (ExecutionTask t : this.currentTickableInsertions) {
-			this.tickableTasks.add(t);
-		}
-		for (ExecutionTask t : this.currentTickableRemovals) {
-			this.tickableTasks.remove(t);
-		}
-		for (ExecutionTask t : this.currentOpenInsertions) {
-			this.openTasks.add(t);
+		processRequests(this.currentTickableInsertions, this.tickableTasks, true);
+		processRequests(this.currentTickableRemovals, this.tickableTasks, false);
+		processRequests(this.currentOpenInsertions, this.openTasks, true);
+		processRequests(this.currentOpenRemovals, this.openTasks, false);
+
+		this.tickableTasks.compactIfNeeded();
+		this.openTasks.compactIfNeeded();
+
+		processReleases();
+	}
+
+	/**
+	 * Applies all the requests stored in <code>requests</code> to <code>target</code>, and then
+	 * clears <code>requests</code>.
+	 * 
+	 * @param requests
+	 *            the set of tasks whose insertion or removal has been requested.
+	 * @param target
+	 *            the set the tasks are inserted into or removed from.
+	 * @param insert
+	 *            true if the tasks must be inserted into <code>target</code>, and false if they
+	 *            must be removed from it.
+	 */
+	private static void processRequests(ExecutionTaskSet requests, ExecutionTaskSet target,
+			boolean insert) {
+		if (requests.isEmpty()) {
+			return;
 		}
-		for (ExecutionTask t : this.currentOpenRemovals) {
-			this.openTasks.remove(t);
+
+		int numRequests = requests.size();
+		for (int i = 0; i < numRequests; i++) {
+			ExecutionTask t = requests.get(i);
+			if (t != null) {
+				if (insert) {
+					target.add(t);
+				} else {
+					target.remove(t);
+				}
+			}
 		}
-		/*
-		 * Clear the lists of tasks to insert and remove.
-		 */
-		this.currentOpenInsertions.clear();
-		this.currentOpenRemovals.clear();
-		this.currentTickableInsertions.clear();
-		this.currentTickableRemovals.clear();
+
+		requests.clear();
 	}
 
 	/**
@@ -443,10 +1103,23 @@ public class BTExecutor implements IBTExecutor {
 	 *         otherwise.
 	 */
 	public boolean setTaskState(Position taskPosition, ITaskState state) {
-		if (state == null) {
-			return this.tasksStates.remove(taskPosition) == null ? false : true;
-		}
-		return this.tasksStates.put(taskPosition, state) == null ? false : true;
+		return setTaskState(this.tasksStates.getNodeId(taskPosition), state);
+	}
+
+	/**
+	 * Sets the permanent state of a given task. The task is identified by the identifier of the
+	 * node it occupies in the execution behaviour tree (see {@link #getChildNodeId(int, int)}).
+	 * This is the method that ExecutionTask objects use in order to store their state.
+	 * 
+	 * @param nodeId
+	 *            the identifier of the node of the task whose state must be stored.
+	 * @param state
+	 *            the state of the task, or null if it should be cleared.
+	 * @return true if there was a previous state for this task in the BTExecutor, or false
+	 *         otherwise.
+	 */
+	protected boolean setTaskState(int nodeId, ITaskState state) {
+		return this.tasksStates.set(nodeId, state);
 	}
 
 	/**
@@ -459,7 +1132,119 @@ public class BTExecutor implements IBTExecutor {
 	 *         task.
 	 */
 	public ITaskState getTaskState(Position taskPosition) {
-		return this.tasksStates.get(taskPosition);
+		return getTaskState(this.tasksStates.getNodeId(taskPosition));
+	}
+
+	/**
+	 * Returns the permanent state of a task. The task is identified by the identifier of the node
+	 * it occupies in the execution behaviour tree (see {@link #getChildNodeId(int, int)}). This is
+	 * the method that ExecutionTask objects use in order to retrieve their state.
+	 * 
+	 * @param nodeId
+	 *            the identifier of the node of the task whose state must be retrieved.
+	 * @return the state of the task, or null if there is no state stored in the BTExecutor for the
+	 *         task.
+	 */
+	protected ITaskState getTaskState(int nodeId) {
+		return this.tasksStates.get(nodeId);
+	}
+
+	/**
+	 * Returns the identifier of the <code>move</code>-th child of the node of the execution tree
+	 * identified by <code>parentId</code>. The root of the execution tree is identified by
+	 * {@link TaskStateTable#ROOT_ID}. Identifiers are unique within the execution tree, and are
+	 * shared by all the BTExecutor objects that share their tasks' states (see
+	 * {@link #copyTasksStates(BTExecutor)}).
+	 * 
+	 * @param parentId
+	 *            the identifier of the parent node.
+	 * @param move
+	 *            the index of the child.
+	 * @return the identifier of the child.
+	 */
+	int getChildNodeId(int parentId, int move) {
+		return this.tasksStates.getChildId(parentId, move);
+	}
+
+	/**
+	 * Returns the identifier of the node at position <code>position</code> of the execution tree
+	 * (see {@link #getChildNodeId(int, int)}).
+	 * 
+	 * @param position
+	 *            the position of the node.
+	 * @return the identifier of the node.
+	 */
+	protected final int getNodeId(Position position) {
+		return this.tasksStates.getNodeId(position);
+	}
+
+	/**
+	 * Returns the position of a task that has no parent ExecutionTask. By default, such a task is
+	 * the root of the execution tree, so its position is an empty one. Subclasses that run tasks
+	 * detached from their parents may override this method so that the tasks still report the
+	 * position they would occupy in the execution tree.
+	 * 
+	 * @param task
+	 *            the task whose position must be returned. Its parent is null.
+	 * @return the position of <code>task</code> in the execution tree.
+	 */
+	protected Position getParentlessTaskPosition(ExecutionTask task) {
+		return new Position();
+	}
+
+	/**
+	 * Returns the TimerWheel where the tasks managed by this BTExecutor schedule their wakeups when
+	 * they sleep (see {@link ExecutionTask#sleepUntil(long)}). The wheel is advanced at the
+	 * beginning of every call to {@link #tick()}, so a sleeping task is ticked again in the first
+	 * tick after its deadline. Subclasses that tick their tasks by other means may override this
+	 * method, as long as they advance the returned wheel themselves.
+	 * 
+	 * @return the TimerWheel of the tasks managed by this BTExecutor.
+	 */
+	protected TimerWheel getTimerWheel() {
+		if (this.timers == null) {
+			this.timers = new TimerWheel();
+		}
+		return this.timers;
+	}
+
+	/**
+	 * Submits an action to be run by the thread that ticks this BTExecutor, at the beginning of
+	 * the next call to {@link #tick()} (before pending insertions and removals are processed).
+	 * <p>
+	 * This is the only method of the BTExecutor that may be called from any thread. It is intended
+	 * for tasks whose work is carried out by other threads (see
+	 * {@link jbt.execution.task.leaf.action.ExecutionAsyncAction}): instead of touching the
+	 * BTExecutor or the task when the work is done, such threads submit an action that does so
+	 * from the thread that owns them. Actions are run in the order they were submitted.
+	 * 
+	 * @param action
+	 *            the action to run.
+	 */
+	public void invokeLater(Runnable action) {
+		if (action == null) {
+			throw new IllegalArgumentException("The input Runnable cannot be null");
+		}
+
+		this.invocations.add(action);
+		this.pendingInvocations = true;
+	}
+
+	/**
+	 * Runs the actions submitted through {@link #invokeLater(Runnable)} so far. This method is
+	 * called at the beginning of every call to {@link #tick()}. Subclasses that tick their tasks by
+	 * other means must call it themselves.
+	 */
+	protected final void processInvocations() {
+		if (!this.pendingInvocations) {
+			return;
+		}
+		this.pendingInvocations = false;
+
+		Runnable action;
+		while ((action = this.invocations.poll()) != null) {
+			action.run();
+		}
 	}
 
 	/**
@@ -483,7 +1268,7 @@ public class BTExecutor implements IBTExecutor {
 	 *         false otherwise.
 	 */
 	public boolean clearTaskState(Position taskPosition) {
-		return this.tasksStates.remove(taskPosition) == null ? false : true;
+		return setTaskState(this.tasksStates.getNodeId(taskPosition), null);
 	}
 
 	/**
@@ -15,6 +15,18 @@
  */
 package jbt.execution.core;
 
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import jbt.execution.compiled.CompiledBT;
+import jbt.execution.compiled.CompiledBTClass;
+import jbt.execution.compiled.CompiledBTExecutor;
+import jbt.execution.compiled.CompiledBTGenerationException;
+import jbt.execution.compiled.CompiledBTGenerator;
+import jbt.execution.context.BasicContext;
 import jbt.model.core.ModelTask;
 
 /**
@@ -26,6 +38,58 @@ import jbt.model.core.ModelTask;
  * 
  */
 public class BTExecutorFactory {
+	/**
+	 * Enum listing the engines that can run a behaviour tree.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static enum Engine {
+		/**
+		 * The tree is run by a {@link BTExecutor}, which creates an ExecutionTask for every node
+		 * of the tree. This engine supports all kinds of tasks.
+		 */
+		INTERPRETED,
+		/**
+		 * The tree is compiled into a {@link CompiledBT} and run by a
+		 * {@link CompiledBTExecutor}, which keeps the state of the nodes in flat arrays. Trees that
+		 * cannot be compiled (see {@link CompiledBT#isSupported(ModelTask)}) are run by a
+		 * BTExecutor instead.
+		 */
+		COMPILED,
+		/**
+		 * The tree is compiled into a {@link CompiledBT}, and a class that runs that particular
+		 * tree is generated and compiled at runtime (see {@link CompiledBTGenerator}). The class
+		 * is generated the first time the tree is run, and it is reused afterwards. Trees that
+		 * cannot be compiled are run by a BTExecutor, and if the class cannot be generated (for
+		 * instance, because there is no Java compiler available), the tree is run by a
+		 * CompiledBTExecutor, and the generation is not attempted again for that tree.
+		 */
+		GENERATED
+	}
+
+	/**
+	 * Classes generated for the trees that have been run with {@link Engine#GENERATED}. They are
+	 * softly referenced, so that they can be unloaded when memory runs low.
+	 */
+	private static final Map<ModelTask, SoftReference<CompiledBTClass>> generatedClasses =
+			new WeakHashMap<ModelTask, SoftReference<CompiledBTClass>>();
+
+	/**
+	 * Trees whose class could not be generated. They are not generated again, and are run by a
+	 * CompiledBTExecutor.
+	 */
+	private static final Set<ModelTask> failedGenerations = Collections
+			.newSetFromMap(new WeakHashMap<ModelTask, Boolean>());
+
+	/**
+	 * Trees that have been compiled for {@link Engine#COMPILED} and {@link Engine#GENERATED}. A
+	 * CompiledBT is immutable, so the one compiled for a tree is shared by all the executors that
+	 * run it. They are softly referenced, so that they can be discarded when memory runs low.
+	 */
+	private static final Map<ModelTask, SoftReference<CompiledBT>> compiledTrees =
+			new WeakHashMap<ModelTask, SoftReference<CompiledBT>>();
+
 	/**
 	 * Creates an IBTExecutor that is able to run a specific behaviour tree. The
 	 * input context is also specified.
@@ -52,4 +116,86 @@ public class BTExecutorFactory {
 	public static IBTExecutor createBTExecutor(ModelTask treeToRun) {
 		return new BTExecutor(treeToRun);
 	}
+
+	/**
+	 * Creates an IBTExecutor that is able to run a specific behaviour tree with
+	 * a specific engine. The input context is also specified.
+	 * 
+	 * @param treeToRun
+	 *            the behaviour tree that the returned IBTExecutor will run,
+	 * @param context
+	 *            the input context to be used by the behaviour tree.
+	 * @param engine
+	 *            the engine that will run the tree. If the tree cannot be run
+	 *            by it, {@link Engine#INTERPRETED} is used.
+	 * @return an IBTExecutor to run the tree <code>treeToRun</code>.
+	 */
+	public static IBTExecutor createBTExecutor(ModelTask treeToRun,
+			IContext context, Engine engine) {
+		if (engine != Engine.INTERPRETED && CompiledBT.isSupported(treeToRun)) {
+			if (engine == Engine.GENERATED) {
+				CompiledBTClass generatedClass = getGeneratedClass(treeToRun);
+				if (generatedClass != null) {
+					return generatedClass.createExecutor(context);
+				}
+			}
+			return new CompiledBTExecutor(getCompiledTree(treeToRun), context);
+		}
+		return new BTExecutor(treeToRun, context);
+	}
+
+	/**
+	 * Creates an IBTExecutor that is able to run a specific behaviour tree with
+	 * a specific engine. A new empty context is created for the tree.
+	 * 
+	 * @param treeToRun
+	 *            the behaviour tree that the returned IBTExecutor will run,
+	 * @param engine
+	 *            the engine that will run the tree. If the tree cannot be run
+	 *            by it, {@link Engine#INTERPRETED} is used.
+	 * @return an IBTExecutor to run the tree <code>treeToRun</code>.
+	 */
+	public static IBTExecutor createBTExecutor(ModelTask treeToRun, Engine engine) {
+		return createBTExecutor(treeToRun, new BasicContext(), engine);
+	}
+
+	/**
+	 * Returns the CompiledBT of a tree, compiling it if needed.
+	 */
+	private static synchronized CompiledBT getCompiledTree(ModelTask tree) {
+		SoftReference<CompiledBT> reference = compiledTrees.get(tree);
+		CompiledBT compiledTree = reference != null ? reference.get() : null;
+
+		if (compiledTree == null) {
+			compiledTree = CompiledBT.compile(tree);
+			compiledTrees.put(tree, new SoftReference<CompiledBT>(compiledTree));
+		}
+
+		return compiledTree;
+	}
+
+	/**
+	 * Returns the class generated for a tree, generating it if needed, or null if it cannot be
+	 * generated. If the generation of the class of a tree fails, the failure is remembered, and
+	 * null is returned from then on without trying to generate it again.
+	 */
+	private static synchronized CompiledBTClass getGeneratedClass(ModelTask tree) {
+		SoftReference<CompiledBTClass> reference = generatedClasses.get(tree);
+		CompiledBTClass generatedClass = reference != null ? reference.get() : null;
+
+		if (generatedClass == null) {
+			if (failedGenerations.contains(tree)) {
+				return null;
+			}
+			try {
+				generatedClass = CompiledBTGenerator.compile(getCompiledTree(tree));
+			} catch (CompiledBTGenerationException e) {
+				failedGenerations.add(tree);
+				return null;
+			}
+			generatedClasses.put(tree, new SoftReference<CompiledBTClass>(generatedClass));
+		}
+
+		return generatedClass;
+	}
 }
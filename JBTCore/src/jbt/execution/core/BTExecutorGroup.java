@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A BTExecutorGroup is a set of IBTExecutor objects that are ticked together, in parallel, on a
+ * ForkJoinPool. It is meant for applications that run one behaviour tree per entity (for
+ * instance, one per NPC of a game), and that tick all of them once per frame.
+ * <p>
+ * Every call to {@link #tick()} is a <i>frame</i>: the executors of the group are split into
+ * chunks of consecutive executors (see {@link #setChunkSize(int)}), the chunks are ticked by the
+ * threads of the pool, which steal work from each other when they run out of chunks, and the
+ * method does not return until every executor has been ticked, so frames never overlap. Each
+ * executor is ticked exactly once per frame, but the order in which executors are ticked, and the
+ * thread that ticks each of them, are unspecified, and may change from one frame to the next.
+ * <p>
+ * Since the pool establishes a happens-before relation between the end of a frame and the start
+ * of the next one, executors do not need to be synchronized in order to be ticked by different
+ * threads in different frames. However, executors of the same group are ticked concurrently, so
+ * they must not share mutable state; see {@link BTExecutor} for the rules that BTExecutor
+ * objects must follow. Executors must not be ticked by anyone else while they belong to a group.
+ * <p>
+ * Executors can be added to and removed from the group at any time, even from within a frame
+ * (for instance, by a task of one of the executors of the group). Changes made during a frame
+ * take effect once the frame finishes, so they do not affect the executors ticked in it.
+ * <p>
+ * A BTExecutorGroup keeps some statistics about the frames it has run: the number of frames, the
+ * time spent in the last frame and on average, and the number of executors ticked per second.
+ * 
+ * @see BTExecutor
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class BTExecutorGroup {
+	/**
+	 * Number of chunks per thread that the executors are split into when the chunk size is
+	 * automatically computed. Having several chunks per thread lets threads that finish early
+	 * steal work from the others.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** The pool whose threads tick the executors. */
+	private final ForkJoinPool pool;
+	/** Flag indicating whether the pool was created by, and must be shut down with, this group. */
+	private final boolean ownsPool;
+	/** The executors of the group. */
+	private final List<IBTExecutor> executors;
+	/** Array with the executors of the group, which is rebuilt when the group changes. */
+	private IBTExecutor[] executorsArray;
+	/** Executors that have been added during the current frame. */
+	private final List<IBTExecutor> pendingAdditions;
+	/** Executors that have been removed during the current frame. */
+	private final List<IBTExecutor> pendingRemovals;
+	/** Maximum number of executors per chunk, or 0 if it is automatically computed. */
+	private int chunkSize;
+	/** Flag indicating whether a frame is running. */
+	private boolean ticking;
+
+	/** Number of frames run so far. */
+	private volatile long numFrames;
+	/** Number of executors ticked so far. */
+	private volatile long numTicks;
+	/** Total time spent in frames, in nanoseconds. */
+	private volatile long totalFrameTime;
+	/** Time spent in the last frame, in nanoseconds. */
+	private volatile long lastFrameTime;
+
+	/**
+	 * Creates an empty BTExecutorGroup whose executors are ticked by as many threads as available
+	 * processors.
+	 */
+	public BTExecutorGroup() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an empty BTExecutorGroup whose executors are ticked by a given number of threads. The
+	 * threads are shut down by {@link #shutdown()}.
+	 * 
+	 * @param parallelism
+	 *            the number of threads that tick the executors.
+	 */
+	public BTExecutorGroup(int parallelism) {
+		this(new ForkJoinPool(parallelism), true);
+	}
+
+	/**
+	 * Creates an empty BTExecutorGroup whose executors are ticked by the threads of a given pool.
+	 * The pool may be shared with other groups, or used for other purposes, and it is not shut down
+	 * by {@link #shutdown()}.
+	 * 
+	 * @param pool
+	 *            the pool whose threads tick the executors.
+	 */
+	public BTExecutorGroup(ForkJoinPool pool) {
+		this(pool, false);
+	}
+
+	/**
+	 * Constructor.
+	 */
+	private BTExecutorGroup(ForkJoinPool pool, boolean ownsPool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("The input ForkJoinPool cannot be null");
+		}
+
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.executors = new ArrayList<IBTExecutor>();
+		this.executorsArray = new IBTExecutor[0];
+		this.pendingAdditions = new ArrayList<IBTExecutor>();
+		this.pendingRemovals = new ArrayList<IBTExecutor>();
+		this.chunkSize = 0;
+	}
+
+	/**
+	 * Adds an executor to the group. If a frame is running, the executor will be ticked from the
+	 * next frame on.
+	 * 
+	 * @param executor
+	 *            the executor to add.
+	 */
+	public synchronized void add(IBTExecutor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The input IBTExecutor cannot be null");
+		}
+
+		if (this.ticking) {
+			this.pendingAdditions.add(executor);
+		} else {
+			this.executors.add(executor);
+			this.executorsArray = null;
+		}
+	}
+
+	/**
+	 * Removes an executor from the group. If a frame is running, the executor is removed once it
+	 * finishes.
+	 * 
+	 * @param executor
+	 *            the executor to remove.
+	 */
+	public synchronized void remove(IBTExecutor executor) {
+		if (this.ticking) {
+			this.pendingRemovals.add(executor);
+		} else if (this.executors.remove(executor)) {
+			this.executorsArray = null;
+		}
+	}
+
+	/**
+	 * Returns the executors of the group. Changes that have been made during the current frame are
+	 * not reflected until it finishes.
+	 * 
+	 * @return an unmodifiable copy of the list of executors of the group.
+	 */
+	public synchronized List<IBTExecutor> getExecutors() {
+		return Collections.unmodifiableList(new ArrayList<IBTExecutor>(this.executors));
+	}
+
+	/**
+	 * Sets the maximum number of executors that are ticked as a single unit of work. Smaller chunks
+	 * balance the load better when executors take very different times to tick, whereas bigger
+	 * chunks reduce the overhead of splitting the work. If it is 0 (the default), the executors
+	 * are split into a few chunks per thread.
+	 * 
+	 * @param chunkSize
+	 *            the maximum number of executors per chunk, or 0.
+	 */
+	public synchronized void setChunkSize(int chunkSize) {
+		if (chunkSize < 0) {
+			throw new IllegalArgumentException("The chunk size cannot be negative");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the maximum number of executors per chunk, or 0 if it is automatically computed.
+	 * 
+	 * @return the maximum number of executors per chunk, or 0.
+	 */
+	public synchronized int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * Returns the number of threads that tick the executors.
+	 * 
+	 * @return the number of threads that tick the executors.
+	 */
+	public int getParallelism() {
+		return this.pool.getParallelism();
+	}
+
+	/**
+	 * Runs a frame: ticks every executor of the group once, in parallel, and waits for all of them
+	 * to be ticked. If any executor throws an exception, it is rethrown by this method once the
+	 * rest of the executors have been ticked or cancelled, and the statistics are not updated.
+	 * <p>
+	 * This method cannot be called while a frame is running.
+	 */
+	public void tick() {
+		IBTExecutor[] toTick;
+		int currentChunkSize;
+
+		synchronized (this) {
+			if (this.ticking) {
+				throw new IllegalStateException("The group is already running a frame");
+			}
+			this.ticking = true;
+
+			if (this.executorsArray == null) {
+				this.executorsArray = this.executors.toArray(
+						new IBTExecutor[this.executors.size()]);
+			}
+			toTick = this.executorsArray;
+
+			currentChunkSize = this.chunkSize;
+			if (currentChunkSize == 0) {
+				int numChunks = this.pool.getParallelism() * CHUNKS_PER_THREAD;
+				currentChunkSize = Math.max(1, (toTick.length + numChunks - 1) / numChunks);
+			}
+		}
+
+		try {
+			long start = System.nanoTime();
+
+			if (toTick.length > 0) {
+				this.pool.invoke(new TickAction(toTick, 0, toTick.length, currentChunkSize));
+			}
+
+			long frameTime = System.nanoTime() - start;
+			this.lastFrameTime = frameTime;
+			this.totalFrameTime += frameTime;
+			this.numTicks += toTick.length;
+			this.numFrames++;
+		} finally {
+			processPendingChanges();
+		}
+	}
+
+	/**
+	 * Applies the additions and removals made during the frame that has just finished.
+	 */
+	private synchronized void processPendingChanges() {
+		this.ticking = false;
+
+		if (!this.pendingAdditions.isEmpty() || !this.pendingRemovals.isEmpty()) {
+			this.executors.addAll(this.pendingAdditions);
+			for (IBTExecutor executor : this.pendingRemovals) {
+				this.executors.remove(executor);
+			}
+			this.pendingAdditions.clear();
+			this.pendingRemovals.clear();
+			this.executorsArray = null;
+		}
+	}
+
+	/**
+	 * Returns the number of frames run so far.
+	 * 
+	 * @return the number of frames run so far.
+	 */
+	public long getNumFrames() {
+		return this.numFrames;
+	}
+
+	/**
+	 * Returns the time spent in the last frame, in nanoseconds.
+	 * 
+	 * @return the time spent in the last frame, in nanoseconds.
+	 */
+	public long getLastFrameTime() {
+		return this.lastFrameTime;
+	}
+
+	/**
+	 * Returns the average time spent per frame, in nanoseconds.
+	 * 
+	 * @return the average time spent per frame, in nanoseconds, or 0 if no frame has been run.
+	 */
+	public double getAverageFrameTime() {
+		long frames = this.numFrames;
+		return frames == 0 ? 0 : (double) this.totalFrameTime / frames;
+	}
+
+	/**
+	 * Returns the number of executors ticked per second of frame time, that is, the throughput of
+	 * the group while running frames.
+	 * 
+	 * @return the number of executors ticked per second, or 0 if no frame has been run.
+	 */
+	public double getTicksPerSecond() {
+		long time = this.totalFrameTime;
+		return time == 0 ? 0 : this.numTicks * 1000000000.0 / time;
+	}
+
+	/**
+	 * Resets the statistics of the group.
+	 */
+	public void resetStatistics() {
+		this.numFrames = 0;
+		this.numTicks = 0;
+		this.totalFrameTime = 0;
+		this.lastFrameTime = 0;
+	}
+
+	/**
+	 * Shuts down the threads that tick the executors, if they were created by this group. The group
+	 * cannot be ticked afterwards.
+	 */
+	public void shutdown() {
+		if (this.ownsPool) {
+			this.pool.shutdown();
+		}
+	}
+
+	/**
+	 * RecursiveAction that ticks a range of executors, splitting it in halves until it is no bigger
+	 * than the chunk size.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static class TickAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** All the executors of the frame. */
+		private final IBTExecutor[] executors;
+		/** First executor of the range. */
+		private final int from;
+		/** Executor after the last one of the range. */
+		private final int to;
+		/** Maximum number of executors that are ticked without splitting the range. */
+		private final int chunkSize;
+
+		public TickAction(IBTExecutor[] executors, int from, int to, int chunkSize) {
+			this.executors = executors;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		protected void compute() {
+			if (this.to - this.from <= this.chunkSize) {
+				for (int i = this.from; i < this.to; i++) {
+					this.executors[i].tick();
+				}
+			} else {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new TickAction(this.executors, this.from, middle, this.chunkSize),
+						new TickAction(this.executors, middle, this.to, this.chunkSize));
+			}
+		}
+	}
+}
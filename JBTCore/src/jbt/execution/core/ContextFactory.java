@@ -19,6 +19,8 @@ import java.util.Iterator;
 import java.util.List;
 
 import jbt.execution.context.BasicContext;
+import jbt.execution.context.ObservableContext;
+import jbt.execution.context.VersionedObservableContext;
 import jbt.model.core.ModelTask;
 
 /**
@@ -101,4 +103,21 @@ public class ContextFactory {
 	public static IContext createContext() {
 		return new BasicContext();
 	}
+
+	/**
+	 * Creates an {@link IObservableContext} that observes <code>context</code>.
+	 * If <code>context</code> is an {@link IVersionedContext}, the returned
+	 * context is a {@link VersionedObservableContext}, so that it is an
+	 * IVersionedContext too, and guards can still be memoized and reactive.
+	 * 
+	 * @param context
+	 *            the context to observe.
+	 * @return a new IObservableContext that observes <code>context</code>.
+	 */
+	public static ObservableContext createObservableContext(IContext context) {
+		if (context instanceof IVersionedContext) {
+			return new VersionedObservableContext((IVersionedContext) context);
+		}
+		return new ObservableContext(context);
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.Arrays;
+
+/**
+ * A ContextReadSet is a set of variables of an {@link IVersionedContext}, along with the version
+ * that each one had when it was read. It is filled by the context while recording (see
+ * {@link IVersionedContext#startRecordingReads(ContextReadSet)}), and it tells whether any of the
+ * variables has changed since then ({@link #isUpToDate(IVersionedContext)}).
+ * <p>
+ * Read sets are expected to be small, so variables are kept in arrays that are reused when the
+ * read set is cleared.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ContextReadSet {
+	/** Names of the variables. Only the first {@link #size} are meaningful. */
+	private String[] names;
+	/** Version of each variable when it was first read. */
+	private long[] versions;
+	/** Number of variables in the read set. */
+	private int size;
+
+	/**
+	 * Creates an empty ContextReadSet.
+	 */
+	public ContextReadSet() {
+		this.names = new String[4];
+		this.versions = new long[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a variable to the read set. If it was already in the read set, the version it was first
+	 * read with is kept.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param version
+	 *            the version of the variable when it was read.
+	 */
+	public void add(String name, long version) {
+		for (int i = 0; i < this.size; i++) {
+			if (this.names[i].equals(name)) {
+				return;
+			}
+		}
+
+		if (this.size == this.names.length) {
+			this.names = Arrays.copyOf(this.names, this.size * 2);
+			this.versions = Arrays.copyOf(this.versions, this.size * 2);
+		}
+		this.names[this.size] = name;
+		this.versions[this.size] = version;
+		this.size++;
+	}
+
+	/**
+	 * Adds all the variables of another read set to this one.
+	 * 
+	 * @param readSet
+	 *            the read set whose variables are added.
+	 */
+	public void addAll(ContextReadSet readSet) {
+		for (int i = 0; i < readSet.size; i++) {
+			add(readSet.names[i], readSet.versions[i]);
+		}
+	}
+
+	/**
+	 * Returns true if none of the variables of the read set has changed in <code>context</code>
+	 * since it was read, and false otherwise.
+	 * 
+	 * @param context
+	 *            the context the variables were read from.
+	 * @return true if none of the variables has changed, and false otherwise.
+	 */
+	public boolean isUpToDate(IVersionedContext context) {
+		for (int i = 0; i < this.size; i++) {
+			if (context.getVersion(this.names[i]) != this.versions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the name of the <code>index</code>-th variable of the read set.
+	 * 
+	 * @param index
+	 *            the index of the variable, between 0 and {@link #size()} - 1.
+	 * @return the name of the variable.
+	 */
+	public String getName(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds: " + this.size);
+		}
+		return this.names[index];
+	}
+
+	/**
+	 * Returns the number of variables in the read set.
+	 * 
+	 * @return the number of variables in the read set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes all the variables from the read set.
+	 */
+	public void clear() {
+		Arrays.fill(this.names, 0, this.size, null);
+		this.size = 0;
+	}
+}
@@ -15,8 +15,8 @@
  */
 package jbt.execution.core;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import jbt.exception.IllegalReturnStatusException;
@@ -28,6 +28,7 @@ import jbt.execution.core.event.ITaskListener;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
 import jbt.model.core.ModelTask.Position;
+import jbt.util.TimerWheel;
 
 /**
  * A behaviour tree is conceptually modeled by the ModelTask class. A ModelTask,
@@ -63,6 +64,10 @@ import jbt.model.core.ModelTask.Position;
  * tickable nodes of the BTExecutor. Subclasses only have to worry about
  * requesting to be inserted into the list of tickable nodes. Other types of
  * insertions and removals are automatically handled by the ExecutionTask class.
+ * <p>
+ * ExecutionTask objects are not thread-safe. They are confined to the thread
+ * that runs their BTExecutor (see {@link BTExecutor}), so tasks must not hand
+ * themselves or their context to other threads.
  * 
  * @see ModelTask
  * @see BTExecutor
@@ -81,6 +86,12 @@ public abstract class ExecutionTask implements ITaskListener {
 	 * List of all the listeners that are listening to TaskEvent from this task.
 	 */
 	private List<ITaskListener> listeners;
+	/**
+	 * TaskEvent that is reused every time this task fires an event, in case the BTExecutor runs in
+	 * allocation-free mode (see {@link BTExecutor#setAllocationFree(boolean)}). It is lazily
+	 * created.
+	 */
+	private TaskEvent reusableEvent;
 	/** Current status of the task. */
 	private Status status;
 	/** Flag telling whether the task can be spawned or not. */
@@ -94,10 +105,34 @@ public abstract class ExecutionTask implements ITaskListener {
 	/**
 	 * The position that the task occupies in the execution tree. Note that this
 	 * position does not necessarily match that of the underlying ModelTask.
-	 * This position is computed from the parent ExecutionTask when the
-	 * ExecutionTask is created.
+	 * This position is lazily computed from the parent ExecutionTask by
+	 * {@link #getPosition()}.
 	 */
 	private Position position;
+	/**
+	 * The index of this task in the list of children of its parent (see
+	 * {@link #getMove()}), or -1 if this is the root of the tree.
+	 */
+	private int move;
+	/**
+	 * The identifier of the node that the task occupies in the execution tree.
+	 * Just like its position, it unambiguously identifies the node within the
+	 * BTExecutor, but it is computed from the identifier of the parent in
+	 * constant time (see {@link BTExecutor#getChildNodeId(int, int)}). It is
+	 * used by the BTExecutor to store the state of the task.
+	 */
+	private int nodeId;
+	/**
+	 * For each of the sets of tasks handled by the BTExecutor (open tasks, tickable tasks and
+	 * pending insertions and removals), the slot that this task occupies in the set, or -1 if it
+	 * is not in the set. This array is exclusively managed by {@link ExecutionTaskSet}.
+	 */
+	final int[] taskSetSlots;
+	/**
+	 * Timer that wakes the task up when it is sleeping (see {@link #sleepUntil(long)}). Lazily
+	 * created.
+	 */
+	private WakeUpTimer wakeUpTimer;
 
 	/**
 	 * Enum defining the possible states of an ExecutionTask. Throughout its
@@ -152,21 +187,17 @@ public abstract class ExecutionTask implements ITaskListener {
 	public ExecutionTask(ModelTask modelTask, BTExecutor executor, ExecutionTask parent) {
 		this.modelTask = modelTask;
 		this.executor = executor;
-		this.listeners = new LinkedList<ITaskListener>();
+		this.listeners = new ArrayList<ITaskListener>(1);
 		this.spawnable = true;
 		this.tickable = false;
 		this.terminated = false;
 		this.status = Status.UNINITIALIZED;
 		this.parent = parent;
+		this.taskSetSlots = new int[BTExecutor.NUM_TASK_SETS];
+		Arrays.fill(this.taskSetSlots, -1);
 
-		/* Compute the position of this node. */
-		if (parent == null) {
-			this.position = new Position();
-		} else {
-			this.position = new Position(parent.position);
-			int nextMove = getMove();
-			this.position.addMove(nextMove);
-		}
+		/* Compute the identifier of this node. Its position is lazily computed. */
+		this.nodeId = computeNodeId();
 	}
 
 	/**
@@ -219,7 +250,7 @@ public abstract class ExecutionTask implements ITaskListener {
 		/*
 		 * Restore the past state of the task in case it has any.
 		 */
-		ITaskState previousState = this.executor.getTaskState(getPosition());
+		ITaskState previousState = this.executor.getTaskState(this.nodeId);
 		restoreState(previousState);
 
 		/*
@@ -370,8 +401,9 @@ public abstract class ExecutionTask implements ITaskListener {
 			 * done.
 			 */
 			if (newStatus != Status.RUNNING) {
+				cancelSleep();
 				ITaskState taskState = storeState();
-				this.executor.setTaskState(getPosition(), taskState);
+				this.executor.setTaskState(this.nodeId, taskState);
 				this.executor.requestRemovalFromList(BTExecutorList.TICKABLE, this);
 				this.executor.requestRemovalFromList(BTExecutorList.OPEN, this);
 
@@ -626,6 +658,13 @@ public abstract class ExecutionTask implements ITaskListener {
 	 * @return the position of the ExecutionTask in the execution tree.
 	 */
 	public Position getPosition() {
+		if (this.position == null) {
+			if (this.parent == null) {
+				this.position = this.executor.getParentlessTaskPosition(this);
+			} else {
+				this.position = new Position(this.parent.getPosition()).addMove(this.move);
+			}
+		}
 		return this.position;
 	}
 
@@ -676,10 +715,11 @@ public abstract class ExecutionTask implements ITaskListener {
 		if (!this.terminated) {
 			this.terminated = true;
 			this.status = Status.TERMINATED;
+			cancelSleep();
 			this.executor.requestRemovalFromList(BTExecutorList.TICKABLE, this);
 			this.executor.requestRemovalFromList(BTExecutorList.OPEN, this);
 			ITaskState taskState = this.storeTerminationState();
-			this.executor.setTaskState(getPosition(), taskState);
+			this.executor.setTaskState(this.nodeId, taskState);
 			this.internalTerminate();
 		}
 	}
@@ -707,6 +747,169 @@ public abstract class ExecutionTask implements ITaskListener {
 	 */
 	protected abstract void internalTerminate();
 
+	/**
+	 * Makes the task sleep until a given time. The task leaves the list of tickable tasks of the
+	 * BTExecutor, so it is not ticked (and it does not consume any CPU time) until
+	 * <code>deadline</code> is reached. From then on, it is ticked again in the first game AI
+	 * cycle. The wakeup is kept in the TimerWheel of the BTExecutor, so the cost of sleeping does
+	 * not depend on the number of sleeping tasks.
+	 * <p>
+	 * This method is intended to be called from {@link #internalSpawn()} or
+	 * {@link #internalTick()} by tasks that have nothing to do until some point in time (for
+	 * instance, an action that waits for an animation to end). If the task was already sleeping,
+	 * its deadline is replaced. The task is woken up if it finishes or is terminated, and it can
+	 * also be woken up earlier through {@link #wakeUp()}.
+	 * 
+	 * @param deadline
+	 *            the time when the task must be ticked again, in nanoseconds, as returned by
+	 *            {@link System#nanoTime()}.
+	 */
+	protected final void sleepUntil(long deadline) {
+		if (this.terminated) {
+			return;
+		}
+
+		if (this.wakeUpTimer == null) {
+			this.wakeUpTimer = new WakeUpTimer();
+		}
+
+		this.executor.cancelInsertionRequest(BTExecutorList.TICKABLE, this);
+		this.executor.requestRemovalFromList(BTExecutorList.TICKABLE, this);
+		this.executor.getTimerWheel().schedule(this.wakeUpTimer, deadline);
+	}
+
+	/**
+	 * Wakes up the task if it is sleeping (see {@link #sleepUntil(long)}), so that it is ticked
+	 * again in the next game AI cycle. If the task is not sleeping, nothing is done.
+	 */
+	protected final void wakeUp() {
+		if (isSleeping()) {
+			this.executor.getTimerWheel().cancel(this.wakeUpTimer);
+			this.wakeUpTimer.expired();
+		}
+	}
+
+	/**
+	 * Returns true if the task is sleeping (see {@link #sleepUntil(long)}), and false otherwise.
+	 * 
+	 * @return true if the task is sleeping, and false otherwise.
+	 */
+	protected final boolean isSleeping() {
+		return this.wakeUpTimer != null && this.wakeUpTimer.isScheduled();
+	}
+
+	/**
+	 * Cancels the wakeup of the task, if it is sleeping, without inserting it back into the list
+	 * of tickable tasks.
+	 */
+	private void cancelSleep() {
+		if (isSleeping()) {
+			this.executor.getTimerWheel().cancel(this.wakeUpTimer);
+		}
+	}
+
+	/**
+	 * Timer that inserts the task back into the list of tickable tasks when it expires.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private final class WakeUpTimer extends TimerWheel.Timer {
+		protected void expired() {
+			executor.cancelRemovalRequest(BTExecutorList.TICKABLE, ExecutionTask.this);
+			executor.requestInsertionIntoList(BTExecutorList.TICKABLE, ExecutionTask.this);
+		}
+	}
+
+	/**
+	 * Resets this task so that it can be spawned again, as if it had just been
+	 * created. This method is used by the BTExecutor in order to reuse tasks
+	 * that are no longer needed instead of creating new ones (see
+	 * {@link BTExecutor#setTaskPooling(boolean)}).
+	 * <p>
+	 * It first calls {@link #internalReset()}. If the task does not support
+	 * being reset, nothing is done and false is returned. Otherwise, the
+	 * context, listeners and status of the task are cleared, and the task
+	 * becomes spawnable again.
+	 * 
+	 * @return true if the task has been reset, and false if it does not support
+	 *         being reset.
+	 */
+	final boolean reset() {
+		if (!this.internalReset()) {
+			return false;
+		}
+
+		cancelSleep();
+		this.context = null;
+		this.listeners.clear();
+		this.status = Status.UNINITIALIZED;
+		this.spawnable = true;
+		this.tickable = false;
+		this.terminated = false;
+		return true;
+	}
+
+	/**
+	 * Sets the parent of this task, which has been reset (see {@link #reset()})
+	 * and is going to be reused under <code>parent</code>. The position of the
+	 * task in the execution tree is computed again, unless the task is placed
+	 * at the same point it was before.
+	 * 
+	 * @param parent
+	 *            the new parent of the task. May be null if the task is the
+	 *            root of the execution tree.
+	 */
+	final void setParent(ExecutionTask parent) {
+		this.parent = parent;
+		int newNodeId = computeNodeId();
+		if (newNodeId != this.nodeId) {
+			this.nodeId = newNodeId;
+			this.position = null;
+		}
+	}
+
+	/**
+	 * Computes {@link #move} and returns the identifier of the node that this
+	 * task occupies in the execution tree, which is computed from that of its
+	 * parent.
+	 * 
+	 * @return the identifier of the node that this task occupies in the
+	 *         execution tree.
+	 */
+	private int computeNodeId() {
+		if (this.parent == null) {
+			this.move = -1;
+			return TaskStateTable.ROOT_ID;
+		}
+
+		this.move = getMove();
+		return this.executor.getChildNodeId(this.parent.nodeId, this.move);
+	}
+
+	/**
+	 * This method is called from {@link #reset()}, and it must leave the
+	 * task-specific state of the ExecutionTask as it was right after the task
+	 * was created, so that it can be spawned again. Tasks that keep references
+	 * to their children should release them (see
+	 * {@link BTExecutor#releaseTask(ExecutionTask)}) so that they can also be
+	 * reused.
+	 * <p>
+	 * This method is called only once the task has either finished or been
+	 * terminated, and once the BTExecutor has processed all its pending
+	 * insertions and removals.
+	 * <p>
+	 * By default, it does nothing and returns false, meaning that the task does
+	 * not support being reset, and it will therefore never be reused.
+	 * Subclasses that support it must override this method and return true.
+	 * 
+	 * @return true if the task has been reset and can be spawned again, and
+	 *         false otherwise.
+	 */
+	protected boolean internalReset() {
+		return false;
+	}
+
 	/**
 	 * Fires a TaskEvent in all the listeners of this task. The TaskEvent will
 	 * inform about an important change in the status of the task.
@@ -715,8 +918,31 @@ public abstract class ExecutionTask implements ITaskListener {
 	 *            the new status of the task.
 	 */
 	private void fireTaskEvent(Status newStatus) {
-		for (ITaskListener l : this.listeners) {
-			l.statusChanged(new TaskEvent(this, newStatus, this.getStatus()));
+		/*
+		 * Listeners are traversed by index so that no Iterator is created. In allocation-free mode,
+		 * the same TaskEvent object is handed to all the listeners and reused in subsequent events.
+		 */
+		int numListeners = this.listeners.size();
+
+		if (numListeners == 0) {
+			return;
+		}
+
+		if (this.executor.isAllocationFree()) {
+			if (this.reusableEvent == null) {
+				this.reusableEvent = new TaskEvent(this, newStatus, this.getStatus());
+			} else {
+				this.reusableEvent.reset(newStatus, this.getStatus());
+			}
+
+			for (int i = 0; i < numListeners; i++) {
+				this.listeners.get(i).statusChanged(this.reusableEvent);
+			}
+		} else {
+			for (int i = 0; i < numListeners; i++) {
+				this.listeners.get(i).statusChanged(
+						new TaskEvent(this, newStatus, this.getStatus()));
+			}
 		}
 	}
 
@@ -736,11 +962,20 @@ public abstract class ExecutionTask implements ITaskListener {
 	 */
 	private int getMove() {
 		List<ModelTask> parentsChildren = this.parent.getModelTask().getChildren();
-		Iterator<ModelTask> iterator = parentsChildren.iterator();
 		ModelTask thisModelTask = this.getModelTask();
 
+		/*
+		 * Usually, the index of the ModelTask has already been computed by
+		 * ModelTask.computePositions(), so there is no need to look for it.
+		 */
+		int childIndex = thisModelTask.getChildIndex();
+		if (childIndex >= 0 && childIndex < parentsChildren.size()
+				&& parentsChildren.get(childIndex) == thisModelTask) {
+			return childIndex;
+		}
+
 		for (int i = 0; i < parentsChildren.size(); i++) {
-			if (iterator.next() == thisModelTask) {
+			if (parentsChildren.get(i) == thisModelTask) {
 				return i;
 			}
 		}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * ExecutionTaskSet is the structure that the BTExecutor uses to store the sets of tasks it handles
+ * (the list of open tasks, the list of tickable tasks and the pending insertions and removals into
+ * and from them).
+ * <p>
+ * An ExecutionTaskSet is an array-backed, insertion-ordered set of ExecutionTask objects. Every
+ * ExecutionTask stores, for each of the sets of its BTExecutor, the index (<i>slot</i>) it occupies
+ * in that set (see {@link ExecutionTask#taskSetSlots}), or -1 if it is not a member of the set. By
+ * doing so, insertions, removals and membership checks are O(1) operations that do not need to
+ * traverse the set.
+ * <p>
+ * Removals do not shift the rest of elements. Instead, they leave an empty (null) slot in the
+ * underlying array, which is reclaimed later on by {@link #compact()}. Therefore, when iterating
+ * through the set by means of {@link #size()} and {@link #get(int)}, null elements must be skipped.
+ * Iterating this way does not create any Iterator object.
+ * <p>
+ * Since each ExecutionTask is managed by a single BTExecutor, the slots of a task are only
+ * meaningful for the sets of that BTExecutor.
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ */
+class ExecutionTaskSet {
+	/** Initial capacity of the underlying array. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Index of this set within {@link ExecutionTask#taskSetSlots}, that is, the position where
+	 * each task stores the slot it occupies in this set.
+	 */
+	private final int id;
+	/** The underlying array. Removed elements leave a null hole. */
+	private ExecutionTask[] elements;
+	/** Number of array positions in use, including holes. */
+	private int size;
+	/** Number of holes (null positions) below {@link #size}. */
+	private int numHoles;
+
+	/**
+	 * Creates an empty ExecutionTaskSet.
+	 *
+	 * @param id
+	 *            the index, within {@link ExecutionTask#taskSetSlots}, where tasks store the slot
+	 *            they occupy in this set.
+	 */
+	ExecutionTaskSet(int id) {
+		this.id = id;
+		this.elements = new ExecutionTask[INITIAL_CAPACITY];
+		this.size = 0;
+		this.numHoles = 0;
+	}
+
+	/**
+	 * Adds a task at the end of the set. If the task is already in the set, nothing is done.
+	 *
+	 * @param t
+	 *            the task to add.
+	 * @return true if the task has been added, and false if it was already in the set.
+	 */
+	boolean add(ExecutionTask t) {
+		if (t.taskSetSlots[this.id] != -1) {
+			return false;
+		}
+
+		if (this.size == this.elements.length) {
+			if (this.numHoles > 0) {
+				compact();
+			}
+			if (this.size == this.elements.length) {
+				ExecutionTask[] newElements = new ExecutionTask[this.elements.length * 2];
+				System.arraycopy(this.elements, 0, newElements, 0, this.size);
+				this.elements = newElements;
+			}
+		}
+
+		this.elements[this.size] = t;
+		t.taskSetSlots[this.id] = this.size;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Removes a task from the set. If the task is not in the set, nothing is done.
+	 *
+	 * @param t
+	 *            the task to remove.
+	 * @return true if the task has been removed, and false if it was not in the set.
+	 */
+	boolean remove(ExecutionTask t) {
+		int slot = t.taskSetSlots[this.id];
+
+		if (slot == -1) {
+			return false;
+		}
+
+		this.elements[slot] = null;
+		t.taskSetSlots[this.id] = -1;
+
+		if (slot == this.size - 1) {
+			this.size--;
+		} else {
+			this.numHoles++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns true if <code>t</code> is in the set, and false otherwise.
+	 *
+	 * @param t
+	 *            the task to check.
+	 * @return true if <code>t</code> is in the set, and false otherwise.
+	 */
+	boolean contains(ExecutionTask t) {
+		return t.taskSetSlots[this.id] != -1;
+	}
+
+	/**
+	 * Returns the number of array positions that must be traversed in order to iterate through the
+	 * set. This is an upper bound of the number of tasks in the set, since holes left by removals
+	 * are included.
+	 *
+	 * @return the number of positions to traverse when iterating through the set.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the set contains no task, and false otherwise.
+	 *
+	 * @return true if the set contains no task, and false otherwise.
+	 */
+	boolean isEmpty() {
+		return this.size == this.numHoles;
+	}
+
+	/**
+	 * Returns the task stored at position <code>index</code>, which may be null if the task that
+	 * was there has been removed.
+	 *
+	 * @param index
+	 *            a position between 0 and {@link #size()} - 1.
+	 * @return the task at position <code>index</code>, or null.
+	 */
+	ExecutionTask get(int index) {
+		return this.elements[index];
+	}
+
+	/**
+	 * Removes all the tasks from the set.
+	 */
+	void clear() {
+		for (int i = 0; i < this.size; i++) {
+			ExecutionTask t = this.elements[i];
+			if (t != null) {
+				t.taskSetSlots[this.id] = -1;
+				this.elements[i] = null;
+			}
+		}
+		this.size = 0;
+		this.numHoles = 0;
+	}
+
+	/**
+	 * Reclaims the holes left by removals if there are too many of them, that is, if they take up
+	 * more than half of the used positions. The relative order of the tasks is preserved.
+	 */
+	void compactIfNeeded() {
+		if (this.numHoles > (this.size >>> 1)) {
+			compact();
+		}
+	}
+
+	/**
+	 * Reclaims all the holes left by removals. The relative order of the tasks is preserved.
+	 */
+	void compact() {
+		int next = 0;
+
+		for (int i = 0; i < this.size; i++) {
+			ExecutionTask t = this.elements[i];
+			if (t != null) {
+				if (i != next) {
+					this.elements[next] = t;
+					this.elements[i] = null;
+					t.taskSetSlots[this.id] = next;
+				}
+				next++;
+			}
+		}
+
+		this.size = next;
+		this.numHoles = 0;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * GuardEvaluationStatistics holds the metrics of the evaluation of the guards of a priority list
+ * (see {@link jbt.model.task.composite.ModelDynamicPriorityList}) within a BTExecutor. They are
+ * accessible through {@link BTExecutor#getGuardEvaluationStatistics(jbt.model.core.ModelTask)}.
+ * <p>
+ * Two kinds of metrics are kept:
+ * <ul>
+ * <li>Per tick of the priority list: the time spent evaluating guards, the number of ticks of the
+ * guards (including the first tick of a guard that is restarted), how many times it exceeded
+ * the time budget of the list (<i>overruns</i>), and how many times the budget ran out before the
+ * evaluation finished, so that it was carried over to the next tick (<i>carry-overs</i>).
+ * <li>Per evaluation of a guard: the time from the moment the evaluation starts until the guard
+ * finishes (<i>latency</i>). Guard results reused by guard memoization are not evaluations.
+ * </ul>
+ * All times are measured in nanoseconds.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class GuardEvaluationStatistics {
+	/** Number of ticks of the priority list where guards have been evaluated. */
+	private long numTicks;
+	/** Sum of the time spent evaluating guards in all the ticks. */
+	private long totalTickTime;
+	/** Maximum time spent evaluating guards in one tick. */
+	private long maxTickTime;
+	/** Number of ticks of the guards in all the ticks. */
+	private long numGuardTicks;
+	/** Number of ticks that exceeded the time budget. */
+	private long numOverruns;
+	/** Number of ticks whose budget ran out before the evaluation finished. */
+	private long numCarryOvers;
+	/** Number of evaluations of guards that have finished. */
+	private long numEvaluations;
+	/** Sum of the latencies of all the evaluations. */
+	private long totalLatency;
+	/** Maximum latency of an evaluation. */
+	private long maxLatency;
+
+	/**
+	 * Records a tick of the priority list.
+	 * 
+	 * @param time
+	 *            the time spent evaluating guards during the tick.
+	 * @param guardTicks
+	 *            the number of ticks of the guards during the tick.
+	 * @param overrun
+	 *            true if the tick exceeded the time budget of the list.
+	 * @param carriedOver
+	 *            true if the budget ran out before the evaluation finished.
+	 */
+	public void recordTick(long time, int guardTicks, boolean overrun, boolean carriedOver) {
+		this.numTicks++;
+		this.totalTickTime += time;
+		this.numGuardTicks += guardTicks;
+		if (time > this.maxTickTime) {
+			this.maxTickTime = time;
+		}
+		if (overrun) {
+			this.numOverruns++;
+		}
+		if (carriedOver) {
+			this.numCarryOvers++;
+		}
+	}
+
+	/**
+	 * Records an evaluation of a guard that has finished.
+	 * 
+	 * @param latency
+	 *            the time from the start of the evaluation until the guard finished.
+	 */
+	public void recordEvaluation(long latency) {
+		this.numEvaluations++;
+		this.totalLatency += latency;
+		if (latency > this.maxLatency) {
+			this.maxLatency = latency;
+		}
+	}
+
+	/**
+	 * Returns the number of ticks of the priority list where guards have been evaluated.
+	 * 
+	 * @return the number of ticks where guards have been evaluated.
+	 */
+	public long getNumTicks() {
+		return this.numTicks;
+	}
+
+	/**
+	 * Returns the average time spent evaluating guards per tick, or 0 if there has been no tick.
+	 * 
+	 * @return the average time spent evaluating guards per tick.
+	 */
+	public double getAverageTickTime() {
+		return this.numTicks == 0 ? 0 : (double) this.totalTickTime / this.numTicks;
+	}
+
+	/**
+	 * Returns the maximum time spent evaluating guards in one tick.
+	 * 
+	 * @return the maximum time spent evaluating guards in one tick.
+	 */
+	public long getMaxTickTime() {
+		return this.maxTickTime;
+	}
+
+	/**
+	 * Returns the number of ticks of the guards, added up over all the ticks of the priority list.
+	 * 
+	 * @return the number of ticks of the guards.
+	 */
+	public long getNumGuardTicks() {
+		return this.numGuardTicks;
+	}
+
+	/**
+	 * Returns the number of ticks that exceeded the time budget of the priority list.
+	 * 
+	 * @return the number of budget overruns.
+	 */
+	public long getNumOverruns() {
+		return this.numOverruns;
+	}
+
+	/**
+	 * Returns the number of ticks whose budget ran out before the evaluation of the guards
+	 * finished.
+	 * 
+	 * @return the number of carry-overs.
+	 */
+	public long getNumCarryOvers() {
+		return this.numCarryOvers;
+	}
+
+	/**
+	 * Returns the number of evaluations of guards that have finished.
+	 * 
+	 * @return the number of evaluations that have finished.
+	 */
+	public long getNumEvaluations() {
+		return this.numEvaluations;
+	}
+
+	/**
+	 * Returns the average latency of the evaluations of guards, or 0 if none has finished.
+	 * 
+	 * @return the average latency of the evaluations.
+	 */
+	public double getAverageLatency() {
+		return this.numEvaluations == 0 ? 0 : (double) this.totalLatency / this.numEvaluations;
+	}
+
+	/**
+	 * Returns the maximum latency of the evaluations of guards.
+	 * 
+	 * @return the maximum latency of the evaluations.
+	 */
+	public long getMaxLatency() {
+		return this.maxLatency;
+	}
+
+	/**
+	 * Resets all the metrics.
+	 */
+	public void reset() {
+		this.numTicks = 0;
+		this.totalTickTime = 0;
+		this.maxTickTime = 0;
+		this.numGuardTicks = 0;
+		this.numOverruns = 0;
+		this.numCarryOvers = 0;
+		this.numEvaluations = 0;
+		this.totalLatency = 0;
+		this.maxLatency = 0;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * An IAtomicContext is an IContext that offers atomic read-modify-write operations on its
+ * variables, so that tasks that share a context across threads (for instance, the blackboard of a
+ * team of agents whose trees are ticked concurrently) can update a variable without losing the
+ * updates made by other threads.
+ * <p>
+ * As in {@link IContext}, a null value means that the variable does not exist.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IAtomicContext extends IContext {
+	/**
+	 * Atomically sets the value of a variable and returns its previous value.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the new value of the variable, or null to clear it.
+	 * @return the previous value of the variable, or null if it did not exist.
+	 */
+	public Object getAndSetVariable(String name, Object value);
+
+	/**
+	 * Atomically sets the value of a variable if its current value is equal (according to
+	 * {@link Object#equals(Object)}) to <code>expected</code>.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param expected
+	 *            the expected value of the variable, or null if the variable is expected not to
+	 *            exist.
+	 * @param value
+	 *            the new value of the variable, or null to clear it.
+	 * @return true if the variable has been set, and false if its value was not the expected one.
+	 */
+	public boolean compareAndSetVariable(String name, Object expected, Object value);
+
+	/**
+	 * Atomically updates the value of a variable with the result of applying <code>update</code>
+	 * to its current value. If other threads change the variable at the same time,
+	 * <code>update</code> may be applied more than once, so it should have no side effects.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param update
+	 *            the function that computes the new value of the variable from the current one.
+	 *            It receives null if the variable does not exist, and may return null to clear
+	 *            it.
+	 * @return the new value of the variable.
+	 */
+	public Object updateVariable(String name, UnaryOperator<Object> update);
+}
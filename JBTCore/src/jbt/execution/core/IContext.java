@@ -28,6 +28,11 @@ import jbt.model.core.ModelTask;
  * references to other behaviour trees. When tasks need to retrieve references
  * to other behaviour trees, it will be the context that will provide with them.
  * Thus, the context defines a method for retrieving behaviour trees by name.
+ * <p>
+ * A context that is only used by one BTExecutor is confined to the thread that
+ * runs it, so it does not need to be thread-safe. Contexts that are shared by
+ * BTExecutor objects that may be ticked concurrently (for instance, by a
+ * {@link BTExecutorGroup}) must be thread-safe.
  * 
  * @author Ricardo Juan Palma Durán
  * 
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * An IObservableContext is a context whose changes can be observed. Listeners subscribe to
+ * individual variables (see {@link #addKeyListener(String, IVariableListener)}) or to all the
+ * variables whose names start with a prefix (see
+ * {@link #addPrefixListener(String, IVariableListener)}).
+ * <p>
+ * Unlike the listeners of an {@link IVersionedContext}, these listeners are not notified within
+ * the calls that change the context. Changes are queued and coalesced, and they are delivered
+ * when {@link #dispatchChanges()} is called: a listener is notified once for each variable it is
+ * subscribed to that has changed since the previous dispatch, no matter how many times it has
+ * changed. The {@link BTExecutor} of a tree whose root context is an IObservableContext calls
+ * {@link #dispatchChanges()} at the end of every tick (see
+ * {@link BTExecutor#setContextChangeDispatch(boolean)}), so listeners can access the context and
+ * observe the changes made by the tree in each tick, instead of polling the context.
+ * <p>
+ * When several executors share an IObservableContext, each of them dispatches the changes queued
+ * by all of them so far at the end of its tick. Dispatches must be serialized, so that listeners
+ * are never notified concurrently even if the executors are ticked in parallel (for instance, by
+ * a {@link BTExecutorGroup}). In order to dispatch just once per frame, dispatching can be
+ * disabled in the executors and {@link #dispatchChanges()} called after the frame.
+ * <p>
+ * The listeners of an IObservableContext are independent from those of an IVersionedContext. A
+ * context that must be both (so that guards are memoized or reactive) should implement both
+ * interfaces, as {@link jbt.execution.context.VersionedObservableContext} does.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IObservableContext extends IContext {
+	/**
+	 * Subscribes a listener to the changes of a variable. A listener is notified as many times as
+	 * it has been subscribed.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param listener
+	 *            the listener to notify.
+	 */
+	public void addKeyListener(String name, IVariableListener listener);
+
+	/**
+	 * Cancels a subscription made by {@link #addKeyListener(String, IVariableListener)}. If the
+	 * listener is not subscribed to the variable, nothing is done.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeKeyListener(String name, IVariableListener listener);
+
+	/**
+	 * Subscribes a listener to the changes of all the variables whose names start with
+	 * <code>prefix</code>. The listener is notified once for each of them that has changed.
+	 * 
+	 * @param prefix
+	 *            the prefix of the names of the variables.
+	 * @param listener
+	 *            the listener to notify.
+	 */
+	public void addPrefixListener(String prefix, IVariableListener listener);
+
+	/**
+	 * Cancels a subscription made by {@link #addPrefixListener(String, IVariableListener)}. If the
+	 * listener is not subscribed to the prefix, nothing is done.
+	 * 
+	 * @param prefix
+	 *            the prefix of the names of the variables.
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removePrefixListener(String prefix, IVariableListener listener);
+
+	/**
+	 * Notifies the listeners of the variables that have changed since the last call to this
+	 * method. Changes made by the listeners themselves are delivered by a later call. If another
+	 * thread is dispatching, this method may return without notifying anybody, as long as that
+	 * thread delivers the changes queued so far.
+	 * 
+	 * @return true if any variable had changed and this call notified its listeners, and false
+	 *         otherwise.
+	 */
+	public boolean dispatchChanges();
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * An IPrimitiveContext is a context that can read and write variables of primitive types without
+ * boxing them. Every variable can be accessed either by name or by slot (see {@link SymbolTable}).
+ * <p>
+ * Primitive variables are ordinary variables of the context: a variable set through
+ * {@link #setInt(String, int)} can be read through {@link #getVariable(String)}, which returns it
+ * boxed, and a variable set to an Integer through {@link #setVariable(String, Object)} can be
+ * read through {@link #getInt(String, int)}. The numeric getters accept any variable that holds a
+ * number, and convert it just like the corresponding method of {@link Number} does. The boolean
+ * getters only accept booleans. If a variable of the wrong type is read, a ClassCastException is
+ * thrown.
+ * <p>
+ * Tasks that do not know whether their context is an IPrimitiveContext should use
+ * {@link PrimitiveVariables}, which boxes values for other contexts.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IPrimitiveContext extends ISlotContext {
+	/**
+	 * Returns the value of an int variable, or <code>defaultValue</code> if it does not exist.
+	 * 
+	 * @param name
+	 *            the name of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public int getInt(String name, int defaultValue);
+
+	/**
+	 * Returns the value of an int variable by slot, just like {@link #getInt(String, int)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public int getInt(int slot, int defaultValue);
+
+	/**
+	 * Sets the value of an int variable.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setInt(String name, int value);
+
+	/**
+	 * Sets the value of an int variable by slot, just like {@link #setInt(String, int)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setInt(int slot, int value);
+
+	/**
+	 * Returns the value of a float variable, or <code>defaultValue</code> if it does not exist.
+	 * 
+	 * @param name
+	 *            the name of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public float getFloat(String name, float defaultValue);
+
+	/**
+	 * Returns the value of a float variable by slot, just like {@link #getFloat(String, float)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public float getFloat(int slot, float defaultValue);
+
+	/**
+	 * Sets the value of a float variable.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setFloat(String name, float value);
+
+	/**
+	 * Sets the value of a float variable by slot, just like {@link #setFloat(String, float)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setFloat(int slot, float value);
+
+	/**
+	 * Returns the value of a double variable, or <code>defaultValue</code> if it does not exist.
+	 * 
+	 * @param name
+	 *            the name of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public double getDouble(String name, double defaultValue);
+
+	/**
+	 * Returns the value of a double variable by slot, just like
+	 * {@link #getDouble(String, double)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public double getDouble(int slot, double defaultValue);
+
+	/**
+	 * Sets the value of a double variable.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setDouble(String name, double value);
+
+	/**
+	 * Sets the value of a double variable by slot, just like {@link #setDouble(String, double)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setDouble(int slot, double value);
+
+	/**
+	 * Returns the value of a boolean variable, or <code>defaultValue</code> if it does not exist.
+	 * 
+	 * @param name
+	 *            the name of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public boolean getBoolean(String name, boolean defaultValue);
+
+	/**
+	 * Returns the value of a boolean variable by slot, just like
+	 * {@link #getBoolean(String, boolean)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public boolean getBoolean(int slot, boolean defaultValue);
+
+	/**
+	 * Sets the value of a boolean variable.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setBoolean(String name, boolean value);
+
+	/**
+	 * Sets the value of a boolean variable by slot, just like
+	 * {@link #setBoolean(String, boolean)}.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setBoolean(int slot, boolean value);
+}
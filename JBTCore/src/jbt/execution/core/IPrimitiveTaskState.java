@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * An IPrimitiveTaskState is an {@link ITaskState} that can store int variables without boxing
+ * them, so that tasks whose state consists of counters (such as
+ * {@link jbt.execution.task.decorator.ExecutionLimit}) do not need to allocate an object for each
+ * value they store.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IPrimitiveTaskState extends ITaskState {
+	/**
+	 * Returns the value of an int variable, or <code>defaultValue</code> if it does not exist.
+	 * Variables that store a {@link Number} are also accepted.
+	 * 
+	 * @param name
+	 *            the name of the variable to retrieve.
+	 * @param defaultValue
+	 *            the value returned if the variable does not exist.
+	 * @return the value of the variable, or <code>defaultValue</code> if it does not exist.
+	 */
+	public int getIntStateVariable(String name, int defaultValue);
+}
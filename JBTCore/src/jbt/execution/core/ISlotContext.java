@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * An ISlotContext is a context whose variables can also be accessed by slot. The slot of a
+ * variable is the integer that the {@link SymbolTable} assigns to its name, so accessing a
+ * variable by slot is equivalent to accessing it by the name returned by
+ * {@link SymbolTable#getName(int)}, but it does not need to hash the name.
+ * <p>
+ * Tasks that do not know whether their context is an ISlotContext should use the static methods
+ * of SymbolTable, which fall back to names for other contexts.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface ISlotContext extends IContext {
+	/**
+	 * Returns the value of the variable whose slot is <code>slot</code>, or null if it does not
+	 * exist.
+	 * 
+	 * @param slot
+	 *            the slot of the variable to retrieve.
+	 * @return the value of the variable, or null if it does not exist.
+	 */
+	public Object getVariable(int slot);
+
+	/**
+	 * Sets the value of the variable whose slot is <code>slot</code>. <code>value</code> may be
+	 * null in order to clear the variable.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public boolean setVariable(int slot, Object value);
+
+	/**
+	 * Clears the variable whose slot is <code>slot</code>.
+	 * 
+	 * @param slot
+	 *            the slot of the variable.
+	 * @return true if the variable existed, and false otherwise.
+	 */
+	public boolean clearVariable(int slot);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * Interface for objects that are notified when a variable of a context changes, that is, when it
+ * is set or cleared, either individually or along with the whole context.
+ * 
+ * @see IVersionedContext#addVariableListener(String, IVariableListener)
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IVariableListener {
+	/**
+	 * Method called when a variable that the listener is subscribed to changes.
+	 * 
+	 * @param context
+	 *            the context where the variable has changed.
+	 * @param name
+	 *            the name of the variable.
+	 */
+	public void variableChanged(IContext context, String name);
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * An IVersionedContext is an IContext that keeps a version number for each of its variables, and
+ * that can record which variables are read.
+ * <p>
+ * The version of a variable changes every time the variable is set or cleared (including when
+ * the whole context is cleared), so two reads of a variable that return the same version are
+ * guaranteed to return the same value. Versions are also kept for variables that do not exist.
+ * <p>
+ * While a thread is recording (see {@link #startRecordingReads(ContextReadSet)}), every variable
+ * that it reads through {@link #getVariable(String)} is added, along with its version, to a
+ * {@link ContextReadSet}. Later on, the read set tells whether any of those variables has
+ * changed. This is used to memoize the results of computations that only depend on the
+ * variables of the context, such as most guards (see {@link BTExecutor#setGuardMemoization(boolean)}).
+ * <p>
+ * Besides, listeners can subscribe to the changes of individual variables (see
+ * {@link #addVariableListener(String, IVariableListener)}), so that computations that depend on
+ * them do not have to check their read sets until something has actually changed.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IVersionedContext extends IContext {
+	/**
+	 * Returns the current version of a variable, whether it exists or not.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @return the current version of the variable.
+	 */
+	public long getVersion(String name);
+
+	/**
+	 * Starts recording the variables read by the current thread into <code>readSet</code>. If the
+	 * thread was already recording into another read set, that recording is suspended until
+	 * {@link #stopRecordingReads(ContextReadSet)} is called.
+	 * 
+	 * @param readSet
+	 *            the read set where the variables are recorded.
+	 * @return the read set the current thread was recording into, or null if there was none.
+	 */
+	public ContextReadSet startRecordingReads(ContextReadSet readSet);
+
+	/**
+	 * Stops the recording started by the last call to
+	 * {@link #startRecordingReads(ContextReadSet)} in the current thread, and resumes the previous
+	 * one, if any. The variables recorded by the recording that stops are also added to the
+	 * previous read set, since whatever depended on them depended on them as well.
+	 * 
+	 * @param previous
+	 *            the read set returned by the matching call to
+	 *            {@link #startRecordingReads(ContextReadSet)}.
+	 */
+	public void stopRecordingReads(ContextReadSet previous);
+
+	/**
+	 * Adds the variables of <code>readSet</code> to the read set the current thread is recording
+	 * into, if any. This is used when the result of a computation is reused instead of being
+	 * computed again, so that the recording still accounts for the variables it depends on.
+	 * 
+	 * @param readSet
+	 *            the variables to record.
+	 */
+	public void recordReads(ContextReadSet readSet);
+
+	/**
+	 * Subscribes a listener to the changes of a variable. The listener is notified every time the
+	 * version of the variable changes, right after it has changed and within the call that changes
+	 * it, so it must return quickly and must not access the context. A listener is notified as
+	 * many times as it has been subscribed to the variable.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param listener
+	 *            the listener to notify.
+	 */
+	public void addVariableListener(String name, IVariableListener listener);
+
+	/**
+	 * Cancels a subscription made by {@link #addVariableListener(String, IVariableListener)}. If
+	 * the listener is not subscribed to the variable, nothing is done.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeVariableListener(String name, IVariableListener listener);
+}
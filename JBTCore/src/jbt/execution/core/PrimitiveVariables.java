@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+/**
+ * PrimitiveVariables provides static methods to read and write primitive variables of any context
+ * by slot (see {@link SymbolTable}). If the context is an {@link IPrimitiveContext}, values are
+ * neither boxed nor unboxed. Otherwise, the variables are accessed as objects, following the
+ * conversion rules of IPrimitiveContext.
+ * <p>
+ * These methods are mainly used by the code that the BT library generator produces, since it does
+ * not know the type of the context in which tasks run.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class PrimitiveVariables {
+	private PrimitiveVariables() {}
+
+	/**
+	 * Returns the value of an int variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#getInt(int, int)
+	 */
+	public static int getInt(IContext context, int slot, int defaultValue) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).getInt(slot, defaultValue);
+		}
+		Object value = SymbolTable.getVariable(context, slot);
+		return value == null ? defaultValue : ((Number) value).intValue();
+	}
+
+	/**
+	 * Sets the value of an int variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#setInt(int, int)
+	 */
+	public static boolean setInt(IContext context, int slot, int value) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).setInt(slot, value);
+		}
+		return SymbolTable.setVariable(context, slot, Integer.valueOf(value));
+	}
+
+	/**
+	 * Returns the value of a float variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#getFloat(int, float)
+	 */
+	public static float getFloat(IContext context, int slot, float defaultValue) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).getFloat(slot, defaultValue);
+		}
+		Object value = SymbolTable.getVariable(context, slot);
+		return value == null ? defaultValue : ((Number) value).floatValue();
+	}
+
+	/**
+	 * Sets the value of a float variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#setFloat(int, float)
+	 */
+	public static boolean setFloat(IContext context, int slot, float value) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).setFloat(slot, value);
+		}
+		return SymbolTable.setVariable(context, slot, Float.valueOf(value));
+	}
+
+	/**
+	 * Returns the value of a double variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#getDouble(int, double)
+	 */
+	public static double getDouble(IContext context, int slot, double defaultValue) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).getDouble(slot, defaultValue);
+		}
+		Object value = SymbolTable.getVariable(context, slot);
+		return value == null ? defaultValue : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Sets the value of a double variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#setDouble(int, double)
+	 */
+	public static boolean setDouble(IContext context, int slot, double value) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).setDouble(slot, value);
+		}
+		return SymbolTable.setVariable(context, slot, Double.valueOf(value));
+	}
+
+	/**
+	 * Returns the value of a boolean variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#getBoolean(int, boolean)
+	 */
+	public static boolean getBoolean(IContext context, int slot, boolean defaultValue) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).getBoolean(slot, defaultValue);
+		}
+		Object value = SymbolTable.getVariable(context, slot);
+		return value == null ? defaultValue : ((Boolean) value).booleanValue();
+	}
+
+	/**
+	 * Sets the value of a boolean variable of <code>context</code>.
+	 * 
+	 * @see IPrimitiveContext#setBoolean(int, boolean)
+	 */
+	public static boolean setBoolean(IContext context, int slot, boolean value) {
+		if (context instanceof IPrimitiveContext) {
+			return ((IPrimitiveContext) context).setBoolean(slot, value);
+		}
+		return SymbolTable.setVariable(context, slot, Boolean.valueOf(value));
+	}
+}
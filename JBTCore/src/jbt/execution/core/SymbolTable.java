@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The SymbolTable interns the names of the variables of the context into integer <i>slots</i>, so
+ * that tasks can access the context by slot (see {@link ISlotContext}) instead of hashing the
+ * name of the variable on every access.
+ * <p>
+ * Names are interned when the trees that use them are loaded (for instance, when a
+ * {@link jbt.model.task.leaf.ModelVariableRenamer} or a low level task created by the BT library
+ * generator is built). Slots are dense (the first interned name gets slot 0, the second one slot
+ * 1, and so on) and are never released, so a slot identifies the same variable in every context of
+ * the application.
+ * <p>
+ * Looking up an already interned name does not block. Interning a new name is synchronized.
+ * <p>
+ * This class also provides static methods to access a context by slot. They access the context by
+ * slot if it is an ISlotContext, and by name otherwise, so callers do not need to know the actual
+ * type of the context.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class SymbolTable {
+	/** Value returned by {@link #lookup(String)} for names that have not been interned. */
+	public static final int NO_SLOT = -1;
+
+	/** The slot of each interned name. */
+	private static final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+	/** The interned names, indexed by slot. Its length may exceed {@link #size}. */
+	private static volatile String[] names = new String[64];
+	/** The number of interned names. */
+	private static volatile int size = 0;
+
+	private SymbolTable() {}
+
+	/**
+	 * Interns <code>name</code>, returning its slot. If <code>name</code> had already been
+	 * interned, its slot does not change.
+	 * 
+	 * @param name
+	 *            the name of a variable.
+	 * @return the slot of <code>name</code>.
+	 */
+	public static int intern(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("The input name cannot be null");
+		}
+
+		Integer slot = slots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+
+		synchronized (SymbolTable.class) {
+			slot = slots.get(name);
+			if (slot != null) {
+				return slot;
+			}
+
+			int newSlot = size;
+			String[] currentNames = names;
+			if (newSlot == currentNames.length) {
+				String[] newNames = new String[currentNames.length * 2];
+				System.arraycopy(currentNames, 0, newNames, 0, currentNames.length);
+				currentNames = newNames;
+			}
+			currentNames[newSlot] = name;
+			names = currentNames;
+			size = newSlot + 1;
+			/* Published last, so that the name of every visible slot is already set. */
+			slots.put(name, newSlot);
+			return newSlot;
+		}
+	}
+
+	/**
+	 * Returns the slot of <code>name</code>, or {@link #NO_SLOT} if it has not been interned.
+	 * Unlike {@link #intern(String)}, this method never adds a name to the table, so it is the one
+	 * to use for names that come from arbitrary accesses to a context.
+	 * 
+	 * @param name
+	 *            the name of a variable.
+	 * @return the slot of <code>name</code>, or {@link #NO_SLOT} if it has not been interned.
+	 */
+	public static int lookup(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? NO_SLOT : slot;
+	}
+
+	/**
+	 * Returns the name whose slot is <code>slot</code>.
+	 * 
+	 * @param slot
+	 *            a slot returned by {@link #intern(String)}.
+	 * @return the name whose slot is <code>slot</code>.
+	 */
+	public static String getName(int slot) {
+		if (slot < 0 || slot >= size) {
+			throw new IllegalArgumentException("There is no variable with slot " + slot);
+		}
+		return names[slot];
+	}
+
+	/**
+	 * Returns the number of interned names, which is also the number of slots in use.
+	 * 
+	 * @return the number of interned names.
+	 */
+	public static int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the value of the variable whose slot is <code>slot</code> in <code>context</code>,
+	 * or null if it does not exist.
+	 * 
+	 * @param context
+	 *            the context to read.
+	 * @param slot
+	 *            the slot of the variable.
+	 * @return the value of the variable, or null if it does not exist.
+	 */
+	public static Object getVariable(IContext context, int slot) {
+		if (context instanceof ISlotContext) {
+			return ((ISlotContext) context).getVariable(slot);
+		}
+		return context.getVariable(getName(slot));
+	}
+
+	/**
+	 * Sets the value of the variable whose slot is <code>slot</code> in <code>context</code>.
+	 * 
+	 * @param context
+	 *            the context to modify.
+	 * @param slot
+	 *            the slot of the variable.
+	 * @param value
+	 *            the value for the variable, which may be null in order to clear it.
+	 * @return true if the variable already existed, and false otherwise.
+	 */
+	public static boolean setVariable(IContext context, int slot, Object value) {
+		if (context instanceof ISlotContext) {
+			return ((ISlotContext) context).setVariable(slot, value);
+		}
+		return context.setVariable(getName(slot), value);
+	}
+
+	/**
+	 * Clears the variable whose slot is <code>slot</code> in <code>context</code>.
+	 * 
+	 * @param context
+	 *            the context to modify.
+	 * @param slot
+	 *            the slot of the variable.
+	 * @return true if the variable existed, and false otherwise.
+	 */
+	public static boolean clearVariable(IContext context, int slot) {
+		if (context instanceof ISlotContext) {
+			return ((ISlotContext) context).clearVariable(slot);
+		}
+		return context.clearVariable(getName(slot));
+	}
+}
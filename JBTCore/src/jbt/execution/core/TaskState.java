@@ -15,25 +15,36 @@
  */
 package jbt.execution.core;
 
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Map;
 
 /**
  * Default implementation of the {@link ITaskState} interface. It provides
  * methods for modifying the set of variables stored by the TaskState.
+ * <p>
+ * Int variables set through {@link #setIntStateVariable(String, int)} are
+ * stored unboxed, so TaskState also implements {@link IPrimitiveTaskState}.
+ * They are looked up linearly, since task states only hold a few of them.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class TaskState implements ITaskState {
-	/** The set of variables. */
+public class TaskState implements IPrimitiveTaskState {
+	/** The set of variables. It is created when the first one is set. */
 	private Map<String, Object> variables;
+	/** The names of the int variables. Only the first {@link #numInts} are used. */
+	private String[] intNames;
+	/** The values of the int variables, in the same order as {@link #intNames}. */
+	private int[] intValues;
+	/** The number of int variables. */
+	private int numInts;
 
 	/**
 	 * Constructs an empty TaskState.
 	 */
 	public TaskState() {
-		this.variables = new Hashtable<String, Object>();
+		this.numInts = 0;
 	}
 
 	/**
@@ -41,7 +52,25 @@ public class TaskState implements ITaskState {
 	 * @see jbt.execution.core.ITaskState#getStateVariable(java.lang.String)
 	 */
 	public Object getStateVariable(String name) {
-		return this.variables.get(name);
+		int index = indexOfInt(name);
+		if (index != -1) {
+			return this.intValues[index];
+		}
+		return this.variables == null ? null : this.variables.get(name);
+	}
+
+	/**
+	 * 
+	 * @see jbt.execution.core.IPrimitiveTaskState#getIntStateVariable(java.lang.String,
+	 *      int)
+	 */
+	public int getIntStateVariable(String name, int defaultValue) {
+		int index = indexOfInt(name);
+		if (index != -1) {
+			return this.intValues[index];
+		}
+		Object value = this.variables == null ? null : this.variables.get(name);
+		return value == null ? defaultValue : ((Number) value).intValue();
 	}
 
 	/**
@@ -57,17 +86,63 @@ public class TaskState implements ITaskState {
 	 *         otherwise.
 	 */
 	public boolean setStateVariable(String name, Object value) {
+		boolean existed = removeInt(name);
 		if (value == null) {
-			return this.variables.remove(name) == null ? false : true;
+			return removeObject(name) || existed;
+		}
+		if (this.variables == null) {
+			this.variables = new Hashtable<String, Object>();
+		}
+		return this.variables.put(name, value) != null || existed;
+	}
+
+	/**
+	 * Sets the value of an int variable, which is stored unboxed.
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value of the variable.
+	 * @return true if there was a variable with name <code>name</code> before
+	 *         calling this method (it is therefore been overwritten), and false
+	 *         otherwise.
+	 */
+	public boolean setIntStateVariable(String name, int value) {
+		if (name == null) {
+			throw new IllegalArgumentException("The input name cannot be null");
+		}
+
+		int index = indexOfInt(name);
+		if (index != -1) {
+			this.intValues[index] = value;
+			return true;
+		}
+
+		boolean existed = removeObject(name);
+		if (this.intNames == null) {
+			this.intNames = new String[2];
+			this.intValues = new int[2];
+		} else if (this.numInts == this.intNames.length) {
+			this.intNames = Arrays.copyOf(this.intNames, this.numInts * 2);
+			this.intValues = Arrays.copyOf(this.intValues, this.numInts * 2);
 		}
-		return this.variables.put(name, value) == null ? false : true;
+		this.intNames[this.numInts] = name;
+		this.intValues[this.numInts] = value;
+		this.numInts++;
+		return existed;
 	}
 
 	/**
 	 * Clears all the variables of the TaskState.
 	 */
 	public void clear() {
-		this.variables.clear();
+		if (this.variables != null) {
+			this.variables.clear();
+		}
+		if (this.intNames != null) {
+			Arrays.fill(this.intNames, null);
+		}
+		this.numInts = 0;
 	}
 
 	/**
@@ -79,7 +154,44 @@ public class TaskState implements ITaskState {
 	 *         false otherwise.
 	 */
 	public boolean clearStateVariable(String name) {
-		return this.variables.remove(name) == null ? false : true;
+		boolean existed = removeInt(name);
+		return removeObject(name) || existed;
+	}
+
+	/**
+	 * Returns the index of the int variable <code>name</code>, or -1 if it
+	 * does not exist.
+	 */
+	private int indexOfInt(String name) {
+		for (int i = 0; i < this.numInts; i++) {
+			if (this.intNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the int variable <code>name</code>, returning true if it
+	 * existed.
+	 */
+	private boolean removeInt(String name) {
+		int index = indexOfInt(name);
+		if (index == -1) {
+			return false;
+		}
+		this.numInts--;
+		this.intNames[index] = this.intNames[this.numInts];
+		this.intValues[index] = this.intValues[this.numInts];
+		this.intNames[this.numInts] = null;
+		return true;
 	}
 
+	/**
+	 * Removes the non-int variable <code>name</code>, returning true if it
+	 * existed.
+	 */
+	private boolean removeObject(String name) {
+		return this.variables != null && this.variables.remove(name) != null;
+	}
 }
@@ -70,4 +70,20 @@ public class TaskStateFactory {
 
 		return taskState;
 	}
+
+	/**
+	 * Creates an ITaskState that contains a single int variable, which is
+	 * stored unboxed (see {@link IPrimitiveTaskState}).
+	 * 
+	 * @param name
+	 *            the name of the variable.
+	 * @param value
+	 *            the value of the variable.
+	 * @return an ITaskState that contains the variable <code>name</code>.
+	 */
+	public static ITaskState createTaskState(String name, int value) {
+		TaskState taskState = new TaskState();
+		taskState.setIntStateVariable(name, value);
+		return taskState;
+	}
 }
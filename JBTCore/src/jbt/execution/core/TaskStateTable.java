@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.Arrays;
+
+import jbt.model.core.ModelTask.Position;
+
+/**
+ * TaskStateTable is the structure that the BTExecutor uses to identify the nodes of the execution
+ * tree and to store the states of the tasks that run on them.
+ * <p>
+ * Every node of the execution tree is unambiguously identified by its position (see
+ * {@link ExecutionTask#getPosition()}). Instead of using positions, a TaskStateTable assigns each
+ * node a dense integer identifier (<i>node id</i>): the root of the execution tree is node 0, and
+ * the <i>i</i>-th child of node <i>p</i> is given the next free identifier the first time it is
+ * requested ({@link #getChildId(int, int)}). From then on, the pair (<i>p</i>, <i>i</i>) always
+ * maps to the same identifier. The states of the tasks are stored in an array indexed by node id.
+ * <p>
+ * Pairs are stored in an open-addressing hash table of primitive values, so looking up the
+ * identifier of a node that has already been numbered does not allocate any object. Therefore, an
+ * ExecutionTask can compute its identifier from that of its parent in constant time, regardless of
+ * its depth in the tree.
+ *
+ * @author Ricardo Juan Palma Durán
+ *
+ */
+class TaskStateTable {
+	/** Identifier of the root of the execution tree. */
+	static final int ROOT_ID = 0;
+	/** Initial capacity of the hash table. Must be a power of two. */
+	private static final int INITIAL_CAPACITY = 32;
+	/** Value of {@link #keys} for empty entries. Real keys are never negative. */
+	private static final long EMPTY_KEY = -1;
+
+	/**
+	 * Keys of the hash table. The key of the <i>i</i>-th child of node <i>p</i> is <i>p</i> in the
+	 * high 32 bits and <i>i</i> in the low 32 bits.
+	 */
+	private long[] keys;
+	/** Identifiers of the nodes whose keys are stored in {@link #keys}. */
+	private int[] ids;
+	/** Number of entries in the hash table. */
+	private int numEntries;
+	/** Number of identifiers assigned so far, including the root. */
+	private int numIds;
+	/** States of the tasks, indexed by node id. */
+	private ITaskState[] states;
+
+	/**
+	 * Creates an empty TaskStateTable where only the root has an identifier.
+	 */
+	TaskStateTable() {
+		this.keys = new long[INITIAL_CAPACITY];
+		Arrays.fill(this.keys, EMPTY_KEY);
+		this.ids = new int[INITIAL_CAPACITY];
+		this.numEntries = 0;
+		this.numIds = 1;
+		this.states = new ITaskState[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the identifier of the <code>move</code>-th child of the node identified by
+	 * <code>parentId</code>. If it has no identifier yet, a new one is assigned.
+	 *
+	 * @param parentId
+	 *            the identifier of the parent node.
+	 * @param move
+	 *            the index of the child.
+	 * @return the identifier of the child.
+	 */
+	int getChildId(int parentId, int move) {
+		long key = key(parentId, move);
+		int index = indexOf(key);
+
+		if (this.keys[index] == key) {
+			return this.ids[index];
+		}
+
+		int id = this.numIds++;
+		this.keys[index] = key;
+		this.ids[index] = id;
+		this.numEntries++;
+
+		/* Keep the load factor below 0.5. */
+		if (this.numEntries * 2 > this.keys.length) {
+			rehash();
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the identifier of the node at position <code>position</code> of the execution tree.
+	 * If any node along the way has no identifier yet, a new one is assigned.
+	 *
+	 * @param position
+	 *            the position of the node.
+	 * @return the identifier of the node.
+	 */
+	int getNodeId(Position position) {
+		int id = ROOT_ID;
+		for (int i = 0; i < position.getNumMoves(); i++) {
+			id = getChildId(id, position.getMove(i));
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the state stored for the node identified by <code>nodeId</code>, or null if there is
+	 * none.
+	 *
+	 * @param nodeId
+	 *            the identifier of the node.
+	 * @return the state of the node, or null.
+	 */
+	ITaskState get(int nodeId) {
+		return nodeId < this.states.length ? this.states[nodeId] : null;
+	}
+
+	/**
+	 * Sets the state of the node identified by <code>nodeId</code>.
+	 *
+	 * @param nodeId
+	 *            the identifier of the node.
+	 * @param state
+	 *            the state of the node, or null if it should be cleared.
+	 * @return true if there was a previous state for the node, or false otherwise.
+	 */
+	boolean set(int nodeId, ITaskState state) {
+		if (nodeId >= this.states.length) {
+			if (state == null) {
+				return false;
+			}
+			this.states = Arrays.copyOf(this.states,
+					Math.max(this.states.length * 2, nodeId + 1));
+		}
+
+		ITaskState previous = this.states[nodeId];
+		this.states[nodeId] = state;
+		return previous != null;
+	}
+
+	/**
+	 * Returns the index of the hash table where <code>key</code> is stored, or that of the empty
+	 * entry where it should be inserted.
+	 */
+	private int indexOf(long key) {
+		int mask = this.keys.length - 1;
+		int index = mix(key) & mask;
+
+		while (this.keys[index] != EMPTY_KEY && this.keys[index] != key) {
+			index = (index + 1) & mask;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Doubles the capacity of the hash table.
+	 */
+	private void rehash() {
+		long[] oldKeys = this.keys;
+		int[] oldIds = this.ids;
+
+		this.keys = new long[oldKeys.length * 2];
+		Arrays.fill(this.keys, EMPTY_KEY);
+		this.ids = new int[oldIds.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY) {
+				int index = indexOf(oldKeys[i]);
+				this.keys[index] = oldKeys[i];
+				this.ids[index] = oldIds[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the <code>move</code>-th child of the node identified by
+	 * <code>parentId</code>.
+	 */
+	private static long key(int parentId, int move) {
+		return ((long) parentId << 32) | (move & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Spreads the bits of <code>key</code> so that keys that only differ in their high bits do not
+	 * collide.
+	 */
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
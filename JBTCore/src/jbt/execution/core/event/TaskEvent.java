@@ -51,6 +51,25 @@ public class TaskEvent extends EventObject {
 		this.previousStatus = previousStatus;
 	}
 
+	/**
+	 * Overwrites the new and previous status carried by this TaskEvent. The source of the event is
+	 * not modified.
+	 * <p>
+	 * This method lets a task reuse the same TaskEvent for all the events it fires, which is what
+	 * ExecutionTask does when its BTExecutor runs in allocation-free mode. Listeners must therefore
+	 * not keep a reference to a TaskEvent beyond the call to
+	 * {@link ITaskListener#statusChanged(TaskEvent)}.
+	 * 
+	 * @param newStatus
+	 *            the new status of the task.
+	 * @param previousStatus
+	 *            the previous status of the task.
+	 */
+	public void reset(Status newStatus, Status previousStatus) {
+		this.newStatus = newStatus;
+		this.previousStatus = previousStatus;
+	}
+
 	/**
 	 * Returns the new status associated to the task.
 	 * 
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import jbt.execution.core.IBTExecutor;
+
+/**
+ * A BTScheduler ticks a set of IBTExecutor objects, each one at its own rate, within a CPU budget
+ * per frame. It implements <i>level of detail</i> for behaviour trees: agents that are relevant
+ * (for instance, those close to the player) can be ticked every frame, whereas less relevant ones
+ * can be ticked less often, so the CPU time is spent where it matters most.
+ * <p>
+ * Executors are registered along with a period and a priority (see {@link ScheduledExecutor}).
+ * Every call to {@link #tick()} runs a frame: the executors that are due in the frame are ticked,
+ * those with higher priorities first (and, for equal priorities, those that have been waiting the
+ * longest). If the frame budget ({@link #setFrameBudget(long)}) runs out, the remaining executors
+ * are deferred: they are still due, so they compete again in the next frame. In order to prevent
+ * low-priority executors from starving forever when the scheduler is constantly over budget, an
+ * executor that has been deferred for too many frames ({@link #setMaxStarvation(int)}) is ticked
+ * regardless of the budget and of its priority.
+ * <p>
+ * Executors with the same period are spread across frames when they are registered, so that they
+ * do not all become due in the same frame.
+ * <p>
+ * Executors are kept in a priority queue ordered by the frame when they are due, so the cost of a
+ * frame depends on the number of executors that are due, not on the total number of executors.
+ * <p>
+ * A BTScheduler is not thread-safe, and is meant to be ticked from the main loop of the
+ * application. Executors can be registered and unregistered at any time, even while a frame is
+ * running (for instance, by a task of one of the scheduled executors).
+ * 
+ * @see ScheduledExecutor
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class BTScheduler {
+	/** Current frame. It is 0 until the first frame is run. */
+	private long frame;
+	/** Maximum time per frame, in nanoseconds, or 0 if there is no budget. */
+	private long frameBudget;
+	/**
+	 * Number of frames an executor may be deferred before it is ticked regardless of the budget,
+	 * or 0 if there is no limit.
+	 */
+	private int maxStarvation;
+	/** Executors that are registered, ordered by the frame when they are due. */
+	private final PriorityQueue<ScheduledExecutor> queue;
+	/** Executors that are due in the current frame. */
+	private final List<ScheduledExecutor> dueExecutors;
+	/** Comparator that sorts {@link #dueExecutors} in the order they are ticked. */
+	private final Comparator<ScheduledExecutor> dueComparator;
+	/** Number of executors registered so far, used to spread them across frames. */
+	private long numRegistrations;
+
+	/** Time spent in the last frame, in nanoseconds. */
+	private long lastFrameTime;
+	/** Number of executors ticked in the last frame. */
+	private int lastFrameTicks;
+	/** Number of executors deferred in the last frame. */
+	private int lastFrameDeferrals;
+	/** Maximum starvation, in frames, of the executors deferred in the last frame. */
+	private long lastFrameMaxStarvation;
+	/** Number of executors ticked so far. */
+	private long totalTicks;
+	/** Number of deferrals so far. */
+	private long totalDeferrals;
+	/** Sum of the lateness of all the ticks so far. */
+	private long totalLateness;
+	/** Maximum lateness of all the ticks so far. */
+	private long maxLateness;
+
+	/**
+	 * Creates an empty BTScheduler with no frame budget.
+	 */
+	public BTScheduler() {
+		this.queue = new PriorityQueue<ScheduledExecutor>(16, new Comparator<ScheduledExecutor>() {
+			public int compare(ScheduledExecutor e1, ScheduledExecutor e2) {
+				return e1.dueFrame < e2.dueFrame ? -1 : (e1.dueFrame == e2.dueFrame ? 0 : 1);
+			}
+		});
+		this.dueExecutors = new ArrayList<ScheduledExecutor>();
+		this.dueComparator = new Comparator<ScheduledExecutor>() {
+			public int compare(ScheduledExecutor e1, ScheduledExecutor e2) {
+				boolean starving1 = isStarving(e1);
+				boolean starving2 = isStarving(e2);
+				if (starving1 != starving2) {
+					return starving1 ? -1 : 1;
+				}
+				if (e1.getPriority() != e2.getPriority()) {
+					return e1.getPriority() > e2.getPriority() ? -1 : 1;
+				}
+				return e1.dueFrame < e2.dueFrame ? -1 : (e1.dueFrame == e2.dueFrame ? 0 : 1);
+			}
+		};
+	}
+
+	/**
+	 * Registers an executor with a given period and priority 0.
+	 * 
+	 * @param executor
+	 *            the executor to register.
+	 * @param period
+	 *            the number of frames between two consecutive ticks of the executor.
+	 * @return the ScheduledExecutor that represents <code>executor</code> in this scheduler.
+	 */
+	public ScheduledExecutor register(IBTExecutor executor, int period) {
+		return register(executor, period, 0);
+	}
+
+	/**
+	 * Registers an executor with a given period and priority. The executor will be first ticked
+	 * within the next <code>period</code> frames.
+	 * 
+	 * @param executor
+	 *            the executor to register.
+	 * @param period
+	 *            the number of frames between two consecutive ticks of the executor.
+	 * @param priority
+	 *            the priority of the executor.
+	 * @return the ScheduledExecutor that represents <code>executor</code> in this scheduler.
+	 */
+	public ScheduledExecutor register(IBTExecutor executor, int period, int priority) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The input IBTExecutor cannot be null");
+		}
+
+		ScheduledExecutor scheduledExecutor = new ScheduledExecutor(this, executor, period,
+				priority);
+		scheduledExecutor.dueFrame = this.frame + 1 + (this.numRegistrations++ % period);
+		this.queue.add(scheduledExecutor);
+		return scheduledExecutor;
+	}
+
+	/**
+	 * Unregisters an executor. If a frame is running, the executor may still be ticked in it.
+	 * 
+	 * @param scheduledExecutor
+	 *            the executor to unregister.
+	 */
+	public void unregister(ScheduledExecutor scheduledExecutor) {
+		if (scheduledExecutor.getScheduler() != this) {
+			throw new IllegalArgumentException(
+					"The ScheduledExecutor does not belong to this scheduler");
+		}
+
+		if (!scheduledExecutor.removed) {
+			scheduledExecutor.removed = true;
+			this.queue.remove(scheduledExecutor);
+		}
+	}
+
+	/**
+	 * Returns the executors registered into this scheduler, in no particular order.
+	 * 
+	 * @return a new list with the executors registered into this scheduler.
+	 */
+	public List<ScheduledExecutor> getScheduledExecutors() {
+		List<ScheduledExecutor> result = new ArrayList<ScheduledExecutor>(this.queue);
+		for (ScheduledExecutor scheduledExecutor : this.dueExecutors) {
+			if (!scheduledExecutor.removed) {
+				result.add(scheduledExecutor);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the maximum time per frame. Once it has been exceeded, the executors that have not been
+	 * ticked yet are deferred to the next frame, unless they are starving (see
+	 * {@link #setMaxStarvation(int)}). Note that executors are not interrupted, so a frame may
+	 * take longer than its budget.
+	 * 
+	 * @param microseconds
+	 *            the maximum time per frame, in microseconds, or 0 if there is no budget.
+	 */
+	public void setFrameBudget(long microseconds) {
+		if (microseconds < 0) {
+			throw new IllegalArgumentException("The frame budget cannot be negative");
+		}
+		this.frameBudget = microseconds * 1000;
+	}
+
+	/**
+	 * Returns the maximum time per frame, in microseconds, or 0 if there is no budget.
+	 * 
+	 * @return the maximum time per frame, in microseconds, or 0 if there is no budget.
+	 */
+	public long getFrameBudget() {
+		return this.frameBudget / 1000;
+	}
+
+	/**
+	 * Sets the number of frames an executor may be deferred before it is ticked regardless of the
+	 * frame budget and of its priority.
+	 * 
+	 * @param frames
+	 *            the maximum number of frames an executor may be deferred, or 0 if there is no
+	 *            limit.
+	 */
+	public void setMaxStarvation(int frames) {
+		if (frames < 0) {
+			throw new IllegalArgumentException("The maximum starvation cannot be negative");
+		}
+		this.maxStarvation = frames;
+	}
+
+	/**
+	 * Returns the number of frames an executor may be deferred before it is ticked regardless of
+	 * the frame budget, or 0 if there is no limit.
+	 * 
+	 * @return the maximum number of frames an executor may be deferred, or 0.
+	 */
+	public int getMaxStarvation() {
+		return this.maxStarvation;
+	}
+
+	/**
+	 * Returns the current frame, that is, the number of frames run so far.
+	 * 
+	 * @return the current frame.
+	 */
+	public long getFrame() {
+		return this.frame;
+	}
+
+	/**
+	 * Runs a frame: ticks the executors that are due, in order of priority, until the frame budget
+	 * runs out, and defers the rest to the next frame.
+	 */
+	public void tick() {
+		long start = System.nanoTime();
+		this.frame++;
+
+		while (!this.queue.isEmpty() && this.queue.peek().dueFrame <= this.frame) {
+			this.dueExecutors.add(this.queue.poll());
+		}
+		Collections.sort(this.dueExecutors, this.dueComparator);
+
+		int numDue = this.dueExecutors.size();
+		int numTicks = 0;
+		int numDeferrals = 0;
+		long maxFrameStarvation = 0;
+		int next = 0;
+
+		try {
+			while (next < numDue) {
+				ScheduledExecutor scheduledExecutor = this.dueExecutors.get(next);
+
+				if (scheduledExecutor.removed) {
+					next++;
+					continue;
+				}
+
+				if (this.frameBudget > 0 && System.nanoTime() - start >= this.frameBudget
+						&& !isStarving(scheduledExecutor)) {
+					break;
+				}
+
+				next++;
+				long lateness = scheduledExecutor.ticked(this.frame);
+				this.totalLateness += lateness;
+				if (lateness > this.maxLateness) {
+					this.maxLateness = lateness;
+				}
+				numTicks++;
+
+				scheduledExecutor.getExecutor().tick();
+			}
+
+			/* The rest of the due executors are deferred. */
+			for (int i = next; i < numDue; i++) {
+				ScheduledExecutor scheduledExecutor = this.dueExecutors.get(i);
+				if (!scheduledExecutor.removed) {
+					scheduledExecutor.deferred();
+					numDeferrals++;
+					maxFrameStarvation = Math.max(maxFrameStarvation, this.frame
+							- scheduledExecutor.dueFrame + 1);
+				}
+			}
+		} finally {
+			/*
+			 * Due executors are put back into the queue only once the frame is over, so that
+			 * each registered executor is in either the queue or the list of due executors.
+			 */
+			for (int i = 0; i < numDue; i++) {
+				ScheduledExecutor scheduledExecutor = this.dueExecutors.get(i);
+				if (!scheduledExecutor.removed) {
+					this.queue.add(scheduledExecutor);
+				}
+			}
+			this.dueExecutors.clear();
+		}
+
+		this.totalTicks += numTicks;
+		this.totalDeferrals += numDeferrals;
+		this.lastFrameTicks = numTicks;
+		this.lastFrameDeferrals = numDeferrals;
+		this.lastFrameMaxStarvation = maxFrameStarvation;
+		this.lastFrameTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns true if an executor has been deferred for at least the maximum number of frames.
+	 */
+	private boolean isStarving(ScheduledExecutor scheduledExecutor) {
+		return this.maxStarvation > 0
+				&& this.frame - scheduledExecutor.dueFrame >= this.maxStarvation;
+	}
+
+	/**
+	 * Returns the time spent in the last frame, in nanoseconds.
+	 * 
+	 * @return the time spent in the last frame, in nanoseconds.
+	 */
+	public long getLastFrameTime() {
+		return this.lastFrameTime;
+	}
+
+	/**
+	 * Returns the number of executors ticked in the last frame.
+	 * 
+	 * @return the number of executors ticked in the last frame.
+	 */
+	public int getLastFrameTicks() {
+		return this.lastFrameTicks;
+	}
+
+	/**
+	 * Returns the number of executors that were due in the last frame but were deferred because
+	 * the frame budget ran out. All of them are currently starving.
+	 * 
+	 * @return the number of executors deferred in the last frame.
+	 */
+	public int getLastFrameDeferrals() {
+		return this.lastFrameDeferrals;
+	}
+
+	/**
+	 * Returns the maximum number of frames that any of the executors deferred in the last frame
+	 * has been starving for (see {@link ScheduledExecutor#getStarvation()}).
+	 * 
+	 * @return the maximum starvation of the executors deferred in the last frame.
+	 */
+	public long getLastFrameMaxStarvation() {
+		return this.lastFrameMaxStarvation;
+	}
+
+	/**
+	 * Returns the number of executors ticked so far.
+	 * 
+	 * @return the number of executors ticked so far.
+	 */
+	public long getTotalTicks() {
+		return this.totalTicks;
+	}
+
+	/**
+	 * Returns the number of times an executor has been deferred so far.
+	 * 
+	 * @return the number of times an executor has been deferred so far.
+	 */
+	public long getTotalDeferrals() {
+		return this.totalDeferrals;
+	}
+
+	/**
+	 * Returns the maximum lateness, in frames, of all the ticks so far.
+	 * 
+	 * @return the maximum lateness of all the ticks so far.
+	 */
+	public long getMaxLateness() {
+		return this.maxLateness;
+	}
+
+	/**
+	 * Returns the average lateness, in frames, of all the ticks so far.
+	 * 
+	 * @return the average lateness of all the ticks so far, or 0 if there has been none.
+	 */
+	public double getAverageLateness() {
+		return this.totalTicks == 0 ? 0 : (double) this.totalLateness / this.totalTicks;
+	}
+
+	/**
+	 * Resets the statistics of the scheduler and of all its executors. The current frame is not
+	 * reset.
+	 */
+	public void resetStatistics() {
+		this.lastFrameTime = 0;
+		this.lastFrameTicks = 0;
+		this.lastFrameDeferrals = 0;
+		this.lastFrameMaxStarvation = 0;
+		this.totalTicks = 0;
+		this.totalDeferrals = 0;
+		this.totalLateness = 0;
+		this.maxLateness = 0;
+
+		for (ScheduledExecutor scheduledExecutor : getScheduledExecutors()) {
+			scheduledExecutor.resetStatistics();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.scheduler;
+
+import jbt.execution.core.IBTExecutor;
+
+/**
+ * A ScheduledExecutor is an IBTExecutor that has been registered into a {@link BTScheduler},
+ * along with its scheduling parameters (period and priority) and its statistics.
+ * <p>
+ * The <i>period</i> of an executor is the number of frames between two consecutive ticks of it:
+ * an executor with period 1 is due every frame, and one with period 10 is due every 10th frame.
+ * The <i>priority</i> of an executor determines which executors are deferred when the frame
+ * budget of the scheduler runs out: executors with lower priorities are deferred first.
+ * <p>
+ * The <i>lateness</i> of a tick is the number of frames that the executor was deferred before
+ * being ticked, that is, the number of frames between the frame when it was due and the frame when
+ * it was actually ticked. An executor that is due but has not been ticked yet is <i>starving</i>.
+ * 
+ * @see BTScheduler
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public final class ScheduledExecutor {
+	/** The scheduled executor. */
+	private final IBTExecutor executor;
+	/** The scheduler this executor belongs to. */
+	private final BTScheduler scheduler;
+	/** Number of frames between two consecutive ticks. */
+	private int period;
+	/** Priority of the executor. */
+	private int priority;
+	/** Frame when the executor is due. */
+	long dueFrame;
+	/** Flag indicating whether the executor has been removed from the scheduler. */
+	boolean removed;
+
+	/** Number of times the executor has been ticked. */
+	private long numTicks;
+	/** Number of frames the executor has been deferred. */
+	private long numDeferrals;
+	/** Sum of the lateness of all the ticks of the executor. */
+	private long totalLateness;
+	/** Maximum lateness of the ticks of the executor. */
+	private long maxLateness;
+
+	/**
+	 * Creates a ScheduledExecutor.
+	 */
+	ScheduledExecutor(BTScheduler scheduler, IBTExecutor executor, int period, int priority) {
+		this.scheduler = scheduler;
+		this.executor = executor;
+		setPeriod(period);
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns the scheduled executor.
+	 * 
+	 * @return the scheduled executor.
+	 */
+	public IBTExecutor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Returns the scheduler this executor belongs to.
+	 * 
+	 * @return the scheduler this executor belongs to.
+	 */
+	public BTScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * Returns the number of frames between two consecutive ticks of the executor.
+	 * 
+	 * @return the number of frames between two consecutive ticks of the executor.
+	 */
+	public int getPeriod() {
+		return this.period;
+	}
+
+	/**
+	 * Sets the number of frames between two consecutive ticks of the executor. The new period is
+	 * used to compute when the executor is due after its next tick, so it does not change the frame
+	 * when the executor is currently due.
+	 * 
+	 * @param period
+	 *            the number of frames between two consecutive ticks. Must be at least 1.
+	 */
+	public void setPeriod(int period) {
+		if (period < 1) {
+			throw new IllegalArgumentException("The period must be at least 1");
+		}
+		this.period = period;
+	}
+
+	/**
+	 * Returns the priority of the executor.
+	 * 
+	 * @return the priority of the executor.
+	 */
+	public int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Sets the priority of the executor. When the frame budget runs out, executors with lower
+	 * priorities are deferred first.
+	 * 
+	 * @param priority
+	 *            the priority of the executor.
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns the frame when the executor is due.
+	 * 
+	 * @return the frame when the executor is due.
+	 */
+	public long getDueFrame() {
+		return this.dueFrame;
+	}
+
+	/**
+	 * Returns the number of consecutive frames the executor has been starving for, that is, the
+	 * number of frames that have passed since it was due, or 0 if it is not due yet.
+	 * 
+	 * @return the number of frames the executor has been starving for.
+	 */
+	public long getStarvation() {
+		return Math.max(0, this.scheduler.getFrame() - this.dueFrame);
+	}
+
+	/**
+	 * Returns the number of times the executor has been ticked.
+	 * 
+	 * @return the number of times the executor has been ticked.
+	 */
+	public long getNumTicks() {
+		return this.numTicks;
+	}
+
+	/**
+	 * Returns the number of frames the executor has been deferred because the frame budget ran
+	 * out.
+	 * 
+	 * @return the number of frames the executor has been deferred.
+	 */
+	public long getNumDeferrals() {
+		return this.numDeferrals;
+	}
+
+	/**
+	 * Returns the maximum lateness, in frames, of the ticks of the executor.
+	 * 
+	 * @return the maximum lateness of the ticks of the executor.
+	 */
+	public long getMaxLateness() {
+		return this.maxLateness;
+	}
+
+	/**
+	 * Returns the average lateness, in frames, of the ticks of the executor.
+	 * 
+	 * @return the average lateness of the ticks of the executor, or 0 if it has not been ticked.
+	 */
+	public double getAverageLateness() {
+		return this.numTicks == 0 ? 0 : (double) this.totalLateness / this.numTicks;
+	}
+
+	/**
+	 * Returns true if the executor is still registered into its scheduler, and false otherwise.
+	 * 
+	 * @return true if the executor is still registered into its scheduler, and false otherwise.
+	 */
+	public boolean isScheduled() {
+		return !this.removed;
+	}
+
+	/**
+	 * Records that the executor has been ticked in <code>frame</code>, and computes when it is due
+	 * next.
+	 * 
+	 * @return the lateness of the tick.
+	 */
+	long ticked(long frame) {
+		long lateness = frame - this.dueFrame;
+		this.numTicks++;
+		this.totalLateness += lateness;
+		if (lateness > this.maxLateness) {
+			this.maxLateness = lateness;
+		}
+		this.dueFrame = frame + this.period;
+		return lateness;
+	}
+
+	/**
+	 * Records that the executor has been deferred.
+	 */
+	void deferred() {
+		this.numDeferrals++;
+	}
+
+	/**
+	 * Resets the statistics of the executor.
+	 */
+	void resetStatistics() {
+		this.numTicks = 0;
+		this.numDeferrals = 0;
+		this.totalLateness = 0;
+		this.maxLateness = 0;
+	}
+
+	/**
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "[Executor: " + this.executor + ", Period: " + this.period + ", Priority: "
+				+ this.priority + ", Due frame: " + this.dueFrame + "]";
+	}
+}
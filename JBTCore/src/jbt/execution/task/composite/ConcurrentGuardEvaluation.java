@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.task.composite;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ConcurrentGuardEvaluation is an evaluation of a read-only guard (see
+ * {@link jbt.model.task.leaf.condition.IReadOnlyGuardPredicate}) that a priority list submits to
+ * the guard evaluation pool of its BTExecutor.
+ * <p>
+ * The evaluation is run exactly once, either by a thread of the pool or by the thread of the
+ * priority list: when the priority list needs the result ({@link #await()}), it runs the
+ * evaluation itself if no thread of the pool has started it yet, so it never waits for an
+ * evaluation that is queued behind others. Likewise, an evaluation that has not started yet can
+ * be cancelled ({@link #cancel()}), in which case it is never run.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+abstract class ConcurrentGuardEvaluation implements Runnable {
+	/** Whether some thread has already taken the evaluation, either to run it or to cancel it. */
+	private final AtomicBoolean claimed = new AtomicBoolean();
+	/** Released when the evaluation has been run by a thread of the pool. */
+	private final CountDownLatch done = new CountDownLatch(1);
+	/** The exception thrown by the evaluation when run by a thread of the pool, or null. */
+	private volatile RuntimeException failure;
+
+	/**
+	 * Submits the evaluation to <code>pool</code>. If the pool rejects it, the evaluation will be
+	 * run by {@link #await()}.
+	 * 
+	 * @param pool
+	 *            the pool where the evaluation is run.
+	 */
+	void submit(Executor pool) {
+		try {
+			pool.execute(this);
+		} catch (RejectedExecutionException e) {
+			/* The evaluation will be run by the priority list. */
+		}
+	}
+
+	/**
+	 * Runs the evaluation, unless it has already been taken by another thread.
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	public final void run() {
+		if (this.claimed.compareAndSet(false, true)) {
+			try {
+				evaluate();
+			} catch (RuntimeException e) {
+				this.failure = e;
+			} finally {
+				this.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the evaluation has been run. If no thread of the pool has started it, it is run
+	 * by the calling thread. The effects of the evaluation are visible to the calling thread when
+	 * this method returns.
+	 * 
+	 * @throws RuntimeException
+	 *             if the evaluation threw it.
+	 */
+	void await() {
+		if (this.claimed.compareAndSet(false, true)) {
+			evaluate();
+			return;
+		}
+
+		awaitDone();
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Cancels the evaluation. If a thread of the pool has already started it, this method waits
+	 * for it to finish, so that when it returns the evaluation has no pending effects. Exceptions
+	 * thrown by the evaluation are ignored.
+	 */
+	void cancel() {
+		if (!this.claimed.compareAndSet(false, true)) {
+			awaitDone();
+		}
+	}
+
+	/**
+	 * Evaluates the guard. This method is run by exactly one thread.
+	 */
+	protected abstract void evaluate();
+
+	/**
+	 * Waits, without being interrupted, until a thread of the pool has run the evaluation.
+	 */
+	private void awaitDone() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
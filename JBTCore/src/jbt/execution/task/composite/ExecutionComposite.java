@@ -19,6 +19,7 @@ import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
 import jbt.model.core.ModelTask;
 import jbt.model.task.composite.ModelComposite;
+import jbt.model.task.leaf.condition.IGuardPredicate;
 
 /**
  * Base class for all the ExecutionTask subclasses that are able to run
@@ -47,4 +48,52 @@ public abstract class ExecutionComposite extends ExecutionTask {
 					+ modelTask.getClass().getCanonicalName());
 		}
 	}
+
+	/**
+	 * Creates a BTExecutor that evaluates the guard of a child of this task with the context of
+	 * this task. The BTExecutor runs in the same modes (allocation-free mode, task pooling, scope
+	 * frame pooling, guard memoization and guard evaluation pool) as the BTExecutor of this task,
+	 * but it does not dispatch the changes of the context, which is done by the BTExecutor of the
+	 * tree. It is meant to be reused for every evaluation of the guard (see
+	 * {@link BTExecutor#reset()}).
+	 * 
+	 * @param guard
+	 *            the guard to evaluate.
+	 * @return a BTExecutor that evaluates <code>guard</code>.
+	 */
+	protected BTExecutor createGuardExecutor(ModelTask guard) {
+		BTExecutor guardExecutor = new BTExecutor(guard, this.getContext());
+		guardExecutor.setAllocationFree(this.getExecutor().isAllocationFree());
+		guardExecutor.setTaskPooling(this.getExecutor().isTaskPooling());
+		guardExecutor.setScopeFramePooling(this.getExecutor().isScopeFramePooling());
+		guardExecutor.setGuardMemoization(this.getExecutor().isGuardMemoization());
+		guardExecutor.setGuardEvaluationPool(this.getExecutor().getGuardEvaluationPool());
+		guardExecutor.setContextChangeDispatch(false);
+		return guardExecutor;
+	}
+
+	/**
+	 * Returns <code>guard</code> as an IGuardPredicate if it can be evaluated synchronously, that
+	 * is, if it is a single condition that implements IGuardPredicate, or null otherwise. If it
+	 * returns null, the guard has to be evaluated through a BTExecutor (see
+	 * {@link #createGuardExecutor(ModelTask)}).
+	 * 
+	 * @param guard
+	 *            the guard to evaluate.
+	 * @return <code>guard</code> as an IGuardPredicate, or null.
+	 */
+	protected static IGuardPredicate getGuardPredicate(ModelTask guard) {
+		return guard instanceof IGuardPredicate ? (IGuardPredicate) guard : null;
+	}
+
+	/**
+	 * Evaluates a guard that is an IGuardPredicate with the context of this task.
+	 * 
+	 * @param predicate
+	 *            the guard to evaluate.
+	 * @return {@link Status#SUCCESS} if the guard is met, and {@link Status#FAILURE} otherwise.
+	 */
+	protected Status evaluateGuardPredicate(IGuardPredicate predicate) {
+		return predicate.evaluate(this.getContext()) ? Status.SUCCESS : Status.FAILURE;
+	}
 }
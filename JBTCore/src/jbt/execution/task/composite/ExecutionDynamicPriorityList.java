@@ -17,25 +17,36 @@ package jbt.execution.task.composite;
 
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.GuardEvaluationStatistics;
 import jbt.execution.core.IBTExecutor;
 import jbt.execution.core.BTExecutor.BTExecutorList;
+import jbt.execution.core.ContextReadSet;
+import jbt.execution.core.IContext;
 import jbt.execution.core.ITaskState;
+import jbt.execution.core.IVariableListener;
+import jbt.execution.core.IVersionedContext;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
 import jbt.model.task.composite.ModelDynamicPriorityList;
-import jbt.util.Pair;
+import jbt.model.task.leaf.condition.IGuardPredicate;
+import jbt.model.task.leaf.condition.IReadOnlyGuardPredicate;
 
 /**
  * ExecutionDynamicPriorityList is the ExecutionTask that knows how to run a
  * ModelDynamicPriorityList.
+ * <p>
+ * If the ModelDynamicPriorityList is reactive (see {@link ModelDynamicPriorityList#setReactive(boolean)}),
+ * the ExecutionDynamicPriorityList listens to the changes of the variables its guards depend on
+ * (see {@link #variableChanged(IContext, String)}).
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
-public class ExecutionDynamicPriorityList extends ExecutionComposite {
+public class ExecutionDynamicPriorityList extends ExecutionComposite implements IVariableListener {
 	/** List of the children (ModelTask) of this task. */
 	private List<ModelTask> children;
 	/** Flag telling if the spawning process has failed. */
@@ -49,7 +60,8 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 	/**
 	 * List containing the IBTExecutors in charge of running the guards. The i-th element of this
 	 * list manages the guard of the i-th child ( {@link #children}). Note that if a guard is null,
-	 * its corresponding IBTExecutor is also null.
+	 * or if it is evaluated synchronously ({@link #guardsPredicates}), its corresponding
+	 * IBTExecutor is also null.
 	 */
 	private List<BTExecutor> guardsExecutors;
 	/**
@@ -57,12 +69,86 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 	 * corresponding status is {@link Status#SUCCESS} (null guards are evaluated to true).
 	 */
 	private List<Status> guardsResults;
+	/**
+	 * The guards that are evaluated synchronously (see {@link IGuardPredicate}). The i-th element
+	 * corresponds to the guard of the i-th child, and it is null unless the guard is an
+	 * IGuardPredicate. Such guards have no BTExecutor in {@link #guardsExecutors}.
+	 */
+	private IGuardPredicate[] guardsPredicates;
+	/**
+	 * The status of the evaluation of each guard in {@link #guardsPredicates}, which plays the role
+	 * of the status of the BTExecutor of other guards. It is {@link Status#RUNNING} from the moment
+	 * the evaluation is restarted until the guard is actually evaluated, which happens when a
+	 * BTExecutor would tick the condition (see {@link #longTick(int)}).
+	 */
+	private Status[] predicatesResults;
+	/**
+	 * The pool where read-only guards are evaluated (see
+	 * {@link BTExecutor#setGuardEvaluationPool(Executor)}), or null.
+	 */
+	private Executor guardsPool;
+	/**
+	 * If there is a pool, the evaluations of read-only guards that have been submitted during the
+	 * current call to {@link #evaluateGuards()} and whose result has not been consumed yet. The
+	 * i-th element corresponds to the i-th guard.
+	 */
+	private ConcurrentGuardEvaluation[] guardsEvaluations;
 	/**
 	 * Index of the current most relevant guard. All the guards before it have finished in failure.
 	 * This represents the guard such that, if its status changes to success, then it would be the
 	 * one selected by the dynamic priority list.
 	 */
 	private int indexMostRelevantGuard = 0;
+	/**
+	 * Index of the guard selected by the last call to {@link #evaluateGuards()} that returned
+	 * {@link Status#SUCCESS}.
+	 */
+	private int selectedGuardIndex;
+	/**
+	 * The context of this task if guards are memoized (see
+	 * {@link BTExecutor#setGuardMemoization(boolean)}), or null otherwise.
+	 */
+	private IVersionedContext versionedContext;
+	/**
+	 * If guards are memoized, the variables read by the last evaluation of each guard. The i-th
+	 * element corresponds to the i-th guard, and it is null if the guard is null.
+	 */
+	private ContextReadSet[] guardsReadSets;
+	/**
+	 * If guards are memoized, whether the evaluation of each guard has been deferred because its
+	 * previous result may be reused. Whether it can actually be reused is checked right before the
+	 * result is needed (see {@link #resolveDeferredGuard(int)}).
+	 */
+	private boolean[] guardsDeferred;
+	/**
+	 * The moment (as returned by {@link System#nanoTime()}) when the current evaluation of each
+	 * guard started, or 0 if there is no evaluation in progress whose latency has to be recorded.
+	 */
+	private long[] guardsStartTimes;
+	/** The metrics of the evaluation of the guards of this task. */
+	private GuardEvaluationStatistics statistics;
+	/** Maximum number of guard ticks per tick of this task, or 0 if there is no limit. */
+	private int guardTickBudget;
+	/** Maximum time spent evaluating guards per tick of this task, in nanoseconds, or 0. */
+	private long guardTimeBudget;
+	/** Number of guard ticks performed during the current call to {@link #evaluateGuards()}. */
+	private int numGuardTicks;
+	/** The moment when the current call to {@link #evaluateGuards()} started. */
+	private long evaluationStartTime;
+	/** Whether the budget has run out during the current call to {@link #evaluateGuards()}. */
+	private boolean budgetExhausted;
+	/**
+	 * If the task is reactive, the variables read by the guards that decided the last selection of
+	 * a child, to which this task is subscribed. Otherwise, it is null.
+	 */
+	private ContextReadSet dependencies;
+	/**
+	 * Whether the guards do not need to be evaluated until some variable in
+	 * {@link #dependencies} changes.
+	 */
+	private boolean quiescent;
+	/** Whether some variable in {@link #dependencies} has changed since the subscription. */
+	private volatile boolean dependenciesChanged;
 
 	/**
 	 * Creates an ExecutionDynamicPriorityList that is able to run a ModelDynamicPriorityList task
@@ -104,27 +190,91 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 
 		this.children = this.getModelTask().getChildren();
 
-		/* Initialize guard executors. */
-		this.guardsExecutors = new Vector<BTExecutor>();
-		this.guardsResults = new Vector<Status>();
-		for (ModelTask child : this.children) {
-			if (child.getGuard() != null) {
-				this.guardsExecutors.add(new BTExecutor(child.getGuard(), this.getContext()));
-				this.guardsResults.add(Status.RUNNING);
+		/*
+		 * Initialize guard executors. If this task has been reset and spawned again, the structures
+		 * built for the previous run are reused, since they only depend on the children.
+		 */
+		if (this.guardsExecutors == null) {
+			this.guardsExecutors = new Vector<BTExecutor>();
+			this.guardsResults = new Vector<Status>();
+			this.guardsPredicates = new IGuardPredicate[this.children.size()];
+			this.predicatesResults = new Status[this.children.size()];
+			for (int i = 0; i < this.children.size(); i++) {
+				ModelTask child = this.children.get(i);
+				if (child.getGuard() != null) {
+					this.guardsPredicates[i] = getGuardPredicate(child.getGuard());
+					this.guardsExecutors.add(this.guardsPredicates[i] == null ? createGuardExecutor(child
+							.getGuard()) : null);
+					this.predicatesResults[i] = Status.UNINITIALIZED;
+					this.guardsResults.add(Status.RUNNING);
+				} else {
+					this.guardsExecutors.add(null);
+					this.guardsResults.add(Status.SUCCESS);
+				}
+			}
+			this.guardsStartTimes = new long[this.children.size()];
+		}
+
+		/* Initialize the budget and the metrics of the evaluation of the guards. */
+		ModelDynamicPriorityList model = (ModelDynamicPriorityList) this.getModelTask();
+		this.guardTickBudget = model.getGuardTickBudget();
+		this.guardTimeBudget = model.getGuardTimeBudget() * 1000;
+		this.statistics = this.getExecutor().getGuardEvaluationStatistics(model);
+
+		/* Initialize the concurrent evaluation of read-only guards. */
+		this.guardsPool = this.getExecutor().getGuardEvaluationPool();
+		if (this.guardsPool == null) {
+			this.guardsEvaluations = null;
+		} else if (this.guardsEvaluations == null) {
+			this.guardsEvaluations = new ConcurrentGuardEvaluation[this.children.size()];
+		}
+
+		/*
+		 * Initialize the read sets of the guards if they are memoized. Reactive tasks always
+		 * memoize their guards.
+		 */
+		boolean reactive = model.isReactive() && this.getContext() instanceof IVersionedContext;
+		unsubscribeFromGuards();
+		if (!reactive) {
+			this.dependencies = null;
+		} else if (this.dependencies == null) {
+			this.dependencies = new ContextReadSet();
+		} else {
+			this.dependencies.clear();
+		}
+		if ((this.getExecutor().isGuardMemoization() || reactive)
+				&& this.getContext() instanceof IVersionedContext) {
+			this.versionedContext = (IVersionedContext) this.getContext();
+			if (this.guardsReadSets == null) {
+				this.guardsReadSets = new ContextReadSet[this.children.size()];
+				this.guardsDeferred = new boolean[this.children.size()];
+				for (int i = 0; i < this.guardsReadSets.length; i++) {
+					if (hasGuard(i)) {
+						this.guardsReadSets[i] = new ContextReadSet();
+					}
+				}
 			} else {
-				this.guardsExecutors.add(null);
-				this.guardsResults.add(Status.SUCCESS);
+				for (int i = 0; i < this.guardsReadSets.length; i++) {
+					if (this.guardsReadSets[i] != null) {
+						this.guardsReadSets[i].clear();
+					}
+					this.guardsDeferred[i] = false;
+				}
 			}
+		} else {
+			this.versionedContext = null;
+			this.guardsReadSets = null;
+			this.guardsDeferred = null;
 		}
 
 		/* Evaluate guards. */
 		resetGuardsEvaluation();
-		Pair<Status, Integer> activeGuard = evaluateGuards();
+		Status activeGuard = evaluateGuards();
 
 		/* If all guards have failed, the spawning process has also failed. */
-		if (activeGuard.getFirst() == Status.FAILURE) {
+		if (activeGuard == Status.FAILURE) {
 			this.spawnFailed = true;
-		} else if (activeGuard.getFirst() == Status.RUNNING) {
+		} else if (activeGuard == Status.RUNNING) {
 			/*
 			 * If not all the guards have been evaluated yet, the spawning process is not considered
 			 * to have started.
@@ -137,9 +287,9 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 			 */
 			this.spawnFailed = false;
 			this.stillNotSpawned = false;
-			this.activeChildIndex = activeGuard.getSecond();
-			this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-					this.getExecutor(), this);
+			this.activeChildIndex = this.selectedGuardIndex;
+			this.activeChild = this.getExecutor().createTask(
+					this.children.get(this.activeChildIndex), this);
 			this.activeChild.addTaskListener(this);
 			this.activeChild.spawn(this.getContext());
 
@@ -169,6 +319,8 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 				guardExecutor.terminate();
 			}
 		}
+
+		unsubscribeFromGuards();
 	}
 
 	/**
@@ -180,17 +332,42 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 	 * If the spawning process failed, this method just returns {@link Status#FAILURE}. If the
 	 * spawning process has not finished yet, this method keeps evaluating the guards, and returns
 	 * {@link Status#RUNNING}.
+	 * <p>
+	 * If the task is reactive and none of the variables its guards depend on has changed since the
+	 * last selection, the guards are not evaluated, and the status of the active child is returned.
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalTick()
 	 */
 	protected Status internalTick() {
+		Status status = tickList();
+
+		/* A task that has finished does not listen to its guards anymore. */
+		if (status != Status.RUNNING) {
+			unsubscribeFromGuards();
+		}
+
+		return status;
+	}
+
+	/**
+	 * Does the actual work of {@link #internalTick()}.
+	 */
+	private Status tickList() {
 		/* If the spawning process failed, return failure. */
 		if (this.spawnFailed) {
 			return Status.FAILURE;
 		}
 
+		/* If nothing has changed since the last selection, just return the status of the child. */
+		if (this.quiescent) {
+			if (!this.dependenciesChanged) {
+				return this.activeChild.getStatus();
+			}
+			this.quiescent = false;
+		}
+
 		/* Evaluate guards. */
-		Pair<Status, Integer> activeGuard = evaluateGuards();
+		Status activeGuard = evaluateGuards();
 
 		/*
 		 * If no child has been spawned yet (not all the guards had completed yet in the
@@ -198,9 +375,9 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 		 */
 		if (this.stillNotSpawned) {
 			/* If all the guards have failed, return failure. */
-			if (activeGuard.getFirst() == Status.FAILURE) {
+			if (activeGuard == Status.FAILURE) {
 				return Status.FAILURE;
-			} else if (activeGuard.getFirst() == Status.RUNNING) {
+			} else if (activeGuard == Status.RUNNING) {
 				/*
 				 * If not all the guards have finished, do no nothing (return RUNNING).
 				 */
@@ -210,9 +387,9 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 				 */
 				this.spawnFailed = false;
 				this.stillNotSpawned = false;
-				this.activeChildIndex = activeGuard.getSecond();
-				this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-						this.getExecutor(), this);
+				this.activeChildIndex = this.selectedGuardIndex;
+				this.activeChild = this.getExecutor().createTask(
+						this.children.get(this.activeChildIndex), this);
 				this.activeChild.addTaskListener(this);
 				this.activeChild.spawn(this.getContext());
 
@@ -224,28 +401,29 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 		}
 
 		/* If this point has been reached, there must be an active child. */
-		if (activeGuard.getFirst() == Status.FAILURE) {
+		if (activeGuard == Status.FAILURE) {
 			/* If all the guards have failed, return failure. */
 			return Status.FAILURE;
-		} else if (activeGuard.getFirst() == Status.RUNNING) {
+		} else if (activeGuard == Status.RUNNING) {
 			/*
 			 * If the guards are being evaluated, return the status of the active child.
 			 */
 			return this.activeChild.getStatus();
 		} else {
-			if (activeGuard.getSecond() != this.activeChildIndex) {
+			if (this.selectedGuardIndex != this.activeChildIndex) {
 				/*
 				 * If the child with the highest priority guard has changed, terminate the currently
 				 * active child.
 				 */
 				this.activeChild.terminate();
-				this.activeChildIndex = activeGuard.getSecond();
+				this.getExecutor().releaseTask(this.activeChild);
+				this.activeChildIndex = this.selectedGuardIndex;
 
 				/*
 				 * Spawn the new child.
 				 */
-				this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-						this.getExecutor(), this);
+				this.activeChild = this.getExecutor().createTask(
+						this.children.get(this.activeChildIndex), this);
 				this.activeChild.addTaskListener(this);
 				this.activeChild.spawn(this.getContext());
 
@@ -262,6 +440,57 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 		}
 	}
 
+	/**
+	 * Records that a variable the guards depend on has changed, so that they are evaluated in the
+	 * next tick. It is called by the context of the task if the task is reactive.
+	 * 
+	 * @see jbt.execution.core.IVariableListener#variableChanged(jbt.execution.core.IContext,
+	 *      java.lang.String)
+	 */
+	public void variableChanged(IContext context, String name) {
+		this.dependenciesChanged = true;
+	}
+
+	/**
+	 * Subscribes to the variables read by the guards that have decided the selection of the
+	 * <code>selectedIndex</code>-th child, that is, the guard of that child and those before it,
+	 * replacing any previous subscription. If none of the variables has changed since they were
+	 * read, the task becomes quiescent, so the guards are not evaluated again until one of them
+	 * changes.
+	 */
+	private void subscribeToGuards(int selectedIndex) {
+		unsubscribeFromGuards();
+		this.dependenciesChanged = false;
+
+		for (int i = 0; i <= selectedIndex; i++) {
+			if (this.guardsReadSets[i] != null) {
+				this.dependencies.addAll(this.guardsReadSets[i]);
+			}
+		}
+		for (int i = 0; i < this.dependencies.size(); i++) {
+			this.versionedContext.addVariableListener(this.dependencies.getName(i), this);
+		}
+
+		/*
+		 * Variables that changed after being read but before the subscription would not be
+		 * notified, so they are checked now.
+		 */
+		this.quiescent = this.dependencies.isUpToDate(this.versionedContext);
+	}
+
+	/**
+	 * Cancels the subscription made by {@link #subscribeToGuards(int)}, if any.
+	 */
+	private void unsubscribeFromGuards() {
+		if (this.dependencies != null) {
+			for (int i = 0; i < this.dependencies.size(); i++) {
+				this.versionedContext.removeVariableListener(this.dependencies.getName(i), this);
+			}
+			this.dependencies.clear();
+		}
+		this.quiescent = false;
+	}
+
 	/**
 	 * Does nothing.
 	 * 
@@ -291,61 +520,248 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 	/**
 	 * Resets the evaluation of all the guards. This method leaves all the guard executors (
 	 * {@link #guardsExecutors}) ready to start again the evaluation of the guards. It internally
-	 * terminates the IBTExecutor of each guard, creates a new one, and then ticks it.
+	 * resets the BTExecutor of each guard (see {@link BTExecutor#reset()}). Guards that are
+	 * evaluated synchronously ({@link #guardsPredicates}) are left pending. Guards are not ticked
+	 * here, but by {@link #evaluateGuards()}, so that all their ticks count against the budget.
+	 * <p>
+	 * If guards are memoized, a guard whose last evaluation finished and whose read set is up to
+	 * date is not reset, so its BTExecutor keeps the previous result. Its evaluation is deferred
+	 * until the result is needed.
 	 */
 	private void resetGuardsEvaluation() {
 		for (int i = 0; i < this.guardsExecutors.size(); i++) {
-			BTExecutor guardExecutor = this.guardsExecutors.get(i);
-
-			if (guardExecutor != null) {
-				guardExecutor.terminate();
+			if (hasGuard(i)) {
 				this.guardsResults.set(i, Status.RUNNING);
-				BTExecutor newExecutor = new BTExecutor(guardExecutor.getBehaviourTree(),
-						this.getContext());
-				newExecutor.copyTasksStates(guardExecutor);
-				newExecutor.tick();
-				this.guardsExecutors.set(i, newExecutor);
+
+				if (isMemoized(i)) {
+					this.guardsDeferred[i] = true;
+				} else {
+					restartGuard(i);
+				}
 			}
 		}
 
 		this.indexMostRelevantGuard = 0;
 	}
 
+	/**
+	 * Returns true if the <code>index</code>-th child has a guard.
+	 */
+	private boolean hasGuard(int index) {
+		return this.guardsExecutors.get(index) != null || this.guardsPredicates[index] != null;
+	}
+
+	/**
+	 * Returns the status of the last evaluation of the <code>index</code>-th guard, which must not
+	 * be null. A guard that has been restarted but not ticked yet is reported as
+	 * {@link Status#RUNNING}.
+	 */
+	private Status getGuardStatus(int index) {
+		BTExecutor guardExecutor = this.guardsExecutors.get(index);
+		Status status = guardExecutor != null ? guardExecutor.getStatus()
+				: this.predicatesResults[index];
+		return status == Status.UNINITIALIZED ? Status.RUNNING : status;
+	}
+
+	/**
+	 * Starts a new evaluation of the <code>index</code>-th guard by resetting its BTExecutor, or by
+	 * marking it as pending if it is evaluated synchronously. The guard is ticked afterwards by
+	 * {@link #longTick(int)}, which accounts for the tick in the budget and in the statistics.
+	 */
+	private void restartGuard(int index) {
+		BTExecutor guardExecutor = this.guardsExecutors.get(index);
+		this.getExecutor().countGuardEvaluation(false);
+		this.guardsStartTimes[index] = System.nanoTime();
+		if (this.guardsReadSets != null) {
+			this.guardsDeferred[index] = false;
+			this.guardsReadSets[index].clear();
+		}
+		if (guardExecutor != null) {
+			guardExecutor.reset();
+		} else {
+			this.predicatesResults[index] = Status.RUNNING;
+		}
+	}
+
+	/**
+	 * If the evaluation of the <code>index</code>-th guard has been deferred, either reuses its
+	 * previous result, if none of the variables it read has changed in the meantime, or starts a
+	 * new evaluation otherwise.
+	 */
+	private void resolveDeferredGuard(int index) {
+		if (this.guardsDeferred == null || !this.guardsDeferred[index]) {
+			return;
+		}
+
+		if (isMemoized(index)) {
+			this.guardsDeferred[index] = false;
+			this.versionedContext.recordReads(this.guardsReadSets[index]);
+			this.getExecutor().countGuardEvaluation(true);
+		} else {
+			restartGuard(index);
+		}
+	}
+
+	/**
+	 * Returns true if the result of the last evaluation of the <code>index</code>-th guard can be
+	 * reused, that is, if guards are memoized, the evaluation finished, and none of the variables
+	 * it read has changed since then.
+	 */
+	private boolean isMemoized(int index) {
+		if (this.guardsReadSets == null) {
+			return false;
+		}
+
+		Status lastResult = getGuardStatus(index);
+		return (lastResult == Status.SUCCESS || lastResult == Status.FAILURE)
+				&& this.guardsReadSets[index].isUpToDate(this.versionedContext);
+	}
+
+	/**
+	 * Ticks the BTExecutor of the <code>index</code>-th guard once, or evaluates the guard if it is
+	 * evaluated synchronously. If guards are memoized, the variables that it reads are recorded
+	 * into the read set of the guard.
+	 */
+	private void tickGuard(int index) {
+		if (this.guardsReadSets == null) {
+			doTickGuard(index);
+		} else {
+			ContextReadSet previous = this.versionedContext
+					.startRecordingReads(this.guardsReadSets[index]);
+			try {
+				doTickGuard(index);
+			} finally {
+				this.versionedContext.stopRecordingReads(previous);
+			}
+		}
+	}
+
+	/**
+	 * Does the actual work of {@link #tickGuard(int)}.
+	 */
+	private void doTickGuard(int index) {
+		BTExecutor guardExecutor = this.guardsExecutors.get(index);
+		if (guardExecutor != null) {
+			guardExecutor.tick();
+		} else {
+			this.predicatesResults[index] = evaluateGuardPredicate(this.guardsPredicates[index]);
+		}
+	}
+
 	/**
 	 * Evaluate all the guards that have not finished yet, that is, those whose result in
 	 * {@link #guardsResults} is {@link Status#RUNNING}, by ticking them.
 	 * <p>
-	 * If all the guards have finished in failure, this method returns a Pair whose first element is
-	 * {@link Status#FAILURE}. If guards' evaluation has not completed yet, the first element of the
-	 * Pair contains {@link Status#RUNNING}. If all the guards have been evaluated and at least one
-	 * has succeeded, the first element of the Pair is {@link Status#SUCCESS}, and the second one is
-	 * the index, over the list of guards ({@link #guardsExecutors}) , of the first guard (that with
-	 * the highest priority) that has succeeded.
+	 * Guards are ticked in order of priority until the budget of the ModelDynamicPriorityList runs
+	 * out (see {@link ModelDynamicPriorityList#setGuardTickBudget(int)} and
+	 * {@link ModelDynamicPriorityList#setGuardTimeBudget(long)}). The guards that have not been
+	 * ticked are carried over to the next call, which resumes their evaluation. The time spent and
+	 * whether the budget was exceeded are recorded into {@link #statistics}.
+	 * <p>
+	 * If there is a pool for evaluating guards, all the pending read-only guards are submitted to
+	 * it at the beginning, and their results are consumed in order of priority. The evaluations
+	 * that have not been consumed by the end of the call, because a guard with higher priority
+	 * has been selected or because the budget has run out, are cancelled.
+	 * <p>
+	 * If all the guards have finished in failure, this method returns {@link Status#FAILURE}. If
+	 * guards' evaluation has not completed yet, it returns {@link Status#RUNNING}. If all the guards
+	 * have been evaluated and at least one has succeeded, it returns {@link Status#SUCCESS}, and
+	 * {@link #selectedGuardIndex} is set to the index, over the list of guards (
+	 * {@link #guardsExecutors}) , of the first guard (that with the highest priority) that has
+	 * succeeded.
 	 * 
 	 */
-	private Pair<Status, Integer> evaluateGuards() {
+	private Status evaluateGuards() {
+		this.numGuardTicks = 0;
+		this.budgetExhausted = false;
+		this.evaluationStartTime = System.nanoTime();
+
+		Status result;
+		if (this.guardsPool == null) {
+			result = evaluateGuardsWithinBudget();
+		} else {
+			submitReadOnlyGuards();
+			try {
+				result = evaluateGuardsWithinBudget();
+			} finally {
+				cancelReadOnlyGuards();
+			}
+		}
+
+		if (result == Status.SUCCESS && this.dependencies != null) {
+			subscribeToGuards(this.selectedGuardIndex);
+		}
+
+		long elapsed = System.nanoTime() - this.evaluationStartTime;
+		this.statistics.recordTick(elapsed, this.numGuardTicks, this.guardTimeBudget != 0
+				&& elapsed > this.guardTimeBudget, this.budgetExhausted
+				&& result == Status.RUNNING);
+		return result;
+	}
+
+	/**
+	 * Submits to {@link #guardsPool} the evaluation of all the read-only guards that are pending,
+	 * starting from the most relevant guard.
+	 */
+	private void submitReadOnlyGuards() {
+		for (int i = this.indexMostRelevantGuard; i < this.guardsExecutors.size(); i++) {
+			if (this.guardsPredicates[i] instanceof IReadOnlyGuardPredicate
+					&& this.guardsResults.get(i) == Status.RUNNING) {
+				resolveDeferredGuard(i);
+				if (this.predicatesResults[i] == Status.RUNNING) {
+					final int index = i;
+					this.guardsEvaluations[i] = new ConcurrentGuardEvaluation() {
+						protected void evaluate() {
+							tickGuard(index);
+						}
+					};
+					this.guardsEvaluations[i].submit(this.guardsPool);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cancels the evaluations of read-only guards whose result has not been consumed. Their guards
+	 * are left pending.
+	 */
+	private void cancelReadOnlyGuards() {
+		for (int i = 0; i < this.guardsEvaluations.length; i++) {
+			if (this.guardsEvaluations[i] != null) {
+				this.guardsEvaluations[i].cancel();
+				this.guardsEvaluations[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Does the actual work of {@link #evaluateGuards()}.
+	 */
+	private Status evaluateGuardsWithinBudget() {
 		/*
 		 * Tick all the guards that are still running. If one changes its status to SUCCESS and it
 		 * matches the guard associated to "indexMostRelevantGuard", then the guards' evaluation is
 		 * over and that is the selected guard.
 		 */
 		for (int i = 0; i < this.guardsExecutors.size(); i++) {
-			IBTExecutor guardExecutor = this.guardsExecutors.get(i);
-
-			if (guardExecutor != null) {
+			if (hasGuard(i)) {
 				if (this.guardsResults.get(i) == Status.RUNNING) {
-					longTick(guardExecutor);
+					resolveDeferredGuard(i);
+					longTick(i);
 
-					this.guardsResults.set(i, guardExecutor.getStatus());
+					Status guardStatus = getGuardStatus(i);
+					this.guardsResults.set(i, guardStatus);
+
+					if (guardStatus != Status.RUNNING) {
+						recordLatency(i);
 
-					if (guardExecutor.getStatus() != Status.RUNNING) {
 						/*
 						 * If the guard has finished, we check if it matches the
 						 * "most relevant guard".
 						 */
 						if (i == this.indexMostRelevantGuard) {
-							if (guardExecutor.getStatus() == Status.SUCCESS) {
-								return new Pair<Status, Integer>(Status.SUCCESS, i);
+							if (guardStatus == Status.SUCCESS) {
+								return selectGuard(i);
 							} else {
 								/*
 								 * If the guard failed, we have to find the next
@@ -361,23 +777,23 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 
 								for (int k = this.indexMostRelevantGuard + 1; k < this.guardsExecutors
 										.size(); k++) {
-									if (this.guardsExecutors.get(k) != null) {
-										Status currentResult = this.guardsExecutors.get(k)
-												.getStatus();
+									if (hasGuard(k)) {
+										resolveDeferredGuard(k);
+										Status currentResult = getGuardStatus(k);
 										if (currentResult == Status.RUNNING) {
 											this.indexMostRelevantGuard = k;
 											oneRunning = true;
 											break;
 										} else if (currentResult == Status.SUCCESS) {
-											return new Pair<Status, Integer>(Status.SUCCESS, k);
+											return selectGuard(k);
 										}
 									} else {
-										return new Pair<Status, Integer>(Status.SUCCESS, k);
+										return selectGuard(k);
 									}
 								}
 
 								if (!oneRunning) {
-									return new Pair<Status, Integer>(Status.FAILURE, -1);
+									return Status.FAILURE;
 								}
 							}
 						}
@@ -386,12 +802,35 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 			} else {
 				/* Remember, null guard means successful evaluation. */
 				if (i == this.indexMostRelevantGuard) {
-					return new Pair<Status, Integer>(Status.SUCCESS, i);
+					return selectGuard(i);
 				}
 			}
 		}
 
-		return new Pair<Status, Integer>(Status.RUNNING, -1);
+		return Status.RUNNING;
+	}
+
+	/**
+	 * Records the latency of the evaluation of the <code>index</code>-th guard, which has just
+	 * finished, unless it has already been recorded or its result has been reused.
+	 */
+	private void recordLatency(int index) {
+		if (this.guardsStartTimes[index] != 0) {
+			this.statistics.recordEvaluation(System.nanoTime() - this.guardsStartTimes[index]);
+			this.guardsStartTimes[index] = 0;
+		}
+	}
+
+	/**
+	 * Sets {@link #selectedGuardIndex} to <code>index</code> and returns {@link Status#SUCCESS}.
+	 * 
+	 * @param index
+	 *            the index of the selected guard.
+	 * @return {@link Status#SUCCESS}.
+	 */
+	private Status selectGuard(int index) {
+		this.selectedGuardIndex = index;
+		return Status.SUCCESS;
 	}
 
 	/**
@@ -404,22 +843,93 @@ public class ExecutionDynamicPriorityList extends ExecutionComposite {
 	}
 
 	/**
-	 * This method ticks <code>executor</code> {@value #NUM_TICKS_LONG_TICK} times. If the executor
-	 * finishes earlier, it is not ticked anymore, and the ticking process stops.
+	 * Releases the active child, if there is one, and resets the BTExecutors of the guards, which
+	 * are reused the next time the task is spawned.
 	 * 
-	 * @param executor
-	 *            the IBTExecutor that is ticked.
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
 	 */
-	private void longTick(IBTExecutor executor) {
-		if (executor.getStatus() == Status.RUNNING || executor.getStatus() == Status.UNINITIALIZED) {
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		if (this.guardsExecutors != null) {
+			for (int i = 0; i < this.guardsExecutors.size(); i++) {
+				BTExecutor guardExecutor = this.guardsExecutors.get(i);
+				if (guardExecutor != null) {
+					guardExecutor.reset();
+				} else if (this.guardsPredicates[i] != null) {
+					this.predicatesResults[i] = Status.UNINITIALIZED;
+				}
+			}
+		}
+		this.spawnFailed = false;
+		this.stillNotSpawned = false;
+		this.quiescent = false;
+		this.dependenciesChanged = false;
+		return true;
+	}
+
+	/**
+	 * This method ticks the BTExecutor of the <code>index</code>-th guard,
+	 * {@value #NUM_TICKS_LONG_TICK} times. If the executor finishes earlier, it is not ticked
+	 * anymore, and the ticking process stops. It also stops if the budget of the current call to
+	 * {@link #evaluateGuards()} runs out, although at least one guard tick is performed in every
+	 * call.
+	 * 
+	 * <p>
+	 * Guards that are evaluated synchronously are evaluated once, if they are pending. If the
+	 * evaluation has been submitted to {@link #guardsPool}, its result is awaited instead.
+	 * 
+	 * @param index
+	 *            the index of the guard.
+	 */
+	private void longTick(int index) {
+		BTExecutor executor = this.guardsExecutors.get(index);
+		if (executor == null) {
+			if (this.predicatesResults[index] == Status.RUNNING) {
+				if (this.numGuardTicks != 0 && isBudgetExhausted()) {
+					this.budgetExhausted = true;
+					return;
+				}
+				if (this.guardsEvaluations != null && this.guardsEvaluations[index] != null) {
+					ConcurrentGuardEvaluation evaluation = this.guardsEvaluations[index];
+					this.guardsEvaluations[index] = null;
+					evaluation.await();
+				} else {
+					tickGuard(index);
+				}
+				this.numGuardTicks++;
+			}
+		} else if (executor.getStatus() == Status.RUNNING
+				|| executor.getStatus() == Status.UNINITIALIZED) {
 			int counter = 0;
 			do {
-				executor.tick();
+				if (this.numGuardTicks != 0 && isBudgetExhausted()) {
+					this.budgetExhausted = true;
+					return;
+				}
+				tickGuard(index);
+				this.numGuardTicks++;
 				counter++;
 			} while (executor.getStatus() == Status.RUNNING && counter < NUM_TICKS_LONG_TICK);
 		}
 	}
 
-	/** Number of ticks performed in each long tick ({@link #longTick(IBTExecutor)}). */
+	/**
+	 * Returns true if the budget of the current call to {@link #evaluateGuards()} has run out.
+	 */
+	private boolean isBudgetExhausted() {
+		if (this.budgetExhausted) {
+			return true;
+		}
+		if (this.guardTickBudget != 0 && this.numGuardTicks >= this.guardTickBudget) {
+			return true;
+		}
+		return this.guardTimeBudget != 0
+				&& System.nanoTime() - this.evaluationStartTime >= this.guardTimeBudget;
+	}
+
+	/** Number of ticks performed in each long tick ({@link #longTick(int)}). */
 	private static final int NUM_TICKS_LONG_TICK = 20;
 }
@@ -15,7 +15,7 @@
  */
 package jbt.execution.task.composite;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import jbt.execution.core.BTExecutor;
@@ -62,7 +62,7 @@ public class ExecutionParallel extends ExecutionComposite {
 
 		this.policy = ((ModelParallel) modelTask).getPolicy();
 		this.modelChildren = modelTask.getChildren();
-		this.executionChildren = new LinkedList<ExecutionTask>();
+		this.executionChildren = new ArrayList<ExecutionTask>(this.modelChildren.size());
 	}
 
 	/**
@@ -116,12 +116,14 @@ public class ExecutionParallel extends ExecutionComposite {
 	 */
 	private void sequencePolicySpawn() {
 		/* First, create an ExecutionTask for all of the childre. */
-		for (ModelTask t : this.modelChildren) {
-			this.executionChildren.add(t.createExecutor(this.getExecutor(), this));
+		for (int i = 0; i < this.modelChildren.size(); i++) {
+			this.executionChildren.add(this.getExecutor().createTask(
+					this.modelChildren.get(i), this));
 		}
 
 		/* Then, spawn them all. */
-		for (ExecutionTask t : this.executionChildren) {
+		for (int i = 0; i < this.executionChildren.size(); i++) {
+			ExecutionTask t = this.executionChildren.get(i);
 			t.addTaskListener(this);
 			t.spawn(this.getContext());
 		}
@@ -141,8 +143,8 @@ public class ExecutionParallel extends ExecutionComposite {
 	 */
 	private void sequencePolicyTerminate() {
 		/* Just terminate all of its children. */
-		for (ExecutionTask t : this.executionChildren) {
-			t.terminate();
+		for (int i = 0; i < this.executionChildren.size(); i++) {
+			this.executionChildren.get(i).terminate();
 		}
 	}
 
@@ -168,8 +170,8 @@ public class ExecutionParallel extends ExecutionComposite {
 		 */
 		boolean oneRunning = false;
 
-		for (ExecutionTask t : this.executionChildren) {
-			Status currentStatus = t.getStatus();
+		for (int i = 0; i < this.executionChildren.size(); i++) {
+			Status currentStatus = this.executionChildren.get(i).getStatus();
 			if (currentStatus == Status.RUNNING) {
 				oneRunning = true;
 			}
@@ -201,8 +203,8 @@ public class ExecutionParallel extends ExecutionComposite {
 		 */
 		boolean oneRunning = false;
 
-		for (ExecutionTask t : this.executionChildren) {
-			Status currentStatus = t.getStatus();
+		for (int i = 0; i < this.executionChildren.size(); i++) {
+			Status currentStatus = this.executionChildren.get(i).getStatus();
 			if (currentStatus == Status.SUCCESS) {
 				sequencePolicyTerminate();
 				return Status.SUCCESS;
@@ -260,4 +262,17 @@ public class ExecutionParallel extends ExecutionComposite {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases all of its children.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		for (int i = 0; i < this.executionChildren.size(); i++) {
+			this.getExecutor().releaseTask(this.executionChildren.get(i));
+		}
+		this.executionChildren.clear();
+		return true;
+	}
 }
@@ -85,9 +85,11 @@ public class ExecutionRandomSelector extends ExecutionComposite {
 		 * First we initialize the list with the order in which the list of
 		 * children will be evaluated.
 		 */
-		this.order = new Vector<Integer>();
-		for (int i = 0; i < this.children.size(); i++) {
-			this.order.add(i);
+		if (this.order == null || this.order.size() != this.children.size()) {
+			this.order = new Vector<Integer>();
+			for (int i = 0; i < this.children.size(); i++) {
+				this.order.add(i);
+			}
 		}
 		Collections.shuffle(this.order);
 
@@ -95,8 +97,8 @@ public class ExecutionRandomSelector extends ExecutionComposite {
 		 * Then we spawn the first child.
 		 */
 		this.activeChildIndex = 0;
-		this.activeChild = this.children.get(this.order.get(this.activeChildIndex)).createExecutor(
-				this.getExecutor(), this);
+		this.activeChild = this.getExecutor().createTask(
+				this.children.get(this.order.get(this.activeChildIndex)), this);
 		this.activeChild.addTaskListener(this);
 		this.activeChild.spawn(this.getContext());
 	}
@@ -135,8 +137,9 @@ public class ExecutionRandomSelector extends ExecutionComposite {
 			}
 
 			this.activeChildIndex++;
-			this.activeChild = this.children.get(this.order.get(this.activeChildIndex))
-					.createExecutor(this.getExecutor(), this);
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = this.getExecutor().createTask(
+					this.children.get(this.order.get(this.activeChildIndex)), this);
 			this.activeChild.addTaskListener(this);
 			this.activeChild.spawn(this.getContext());
 			return Status.RUNNING;
@@ -176,4 +179,17 @@ public class ExecutionRandomSelector extends ExecutionComposite {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the last active child, if there is one.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		return true;
+	}
 }
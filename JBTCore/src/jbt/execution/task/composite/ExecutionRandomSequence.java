@@ -86,9 +86,11 @@ public class ExecutionRandomSequence extends ExecutionComposite {
 		 * First we initialize the list with the order in which the list of
 		 * children will be evaluated.
 		 */
-		this.order = new Vector<Integer>();
-		for (int i = 0; i < this.children.size(); i++) {
-			this.order.add(i);
+		if (this.order == null || this.order.size() != this.children.size()) {
+			this.order = new Vector<Integer>();
+			for (int i = 0; i < this.children.size(); i++) {
+				this.order.add(i);
+			}
 		}
 		Collections.shuffle(this.order);
 
@@ -96,8 +98,8 @@ public class ExecutionRandomSequence extends ExecutionComposite {
 		 * Then we spawn the first child.
 		 */
 		this.activeChildIndex = 0;
-		this.activeChild = this.children.get(this.order.get(this.activeChildIndex)).createExecutor(
-				this.getExecutor(), this);
+		this.activeChild = this.getExecutor().createTask(
+				this.children.get(this.order.get(this.activeChildIndex)), this);
 		this.activeChild.addTaskListener(this);
 		this.activeChild.spawn(this.getContext());
 	}
@@ -133,8 +135,9 @@ public class ExecutionRandomSequence extends ExecutionComposite {
 			}
 
 			this.activeChildIndex++;
-			this.activeChild = this.children.get(this.order.get(this.activeChildIndex))
-					.createExecutor(this.getExecutor(), this);
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = this.getExecutor().createTask(
+					this.children.get(this.order.get(this.activeChildIndex)), this);
 			this.activeChild.addTaskListener(this);
 			this.activeChild.spawn(this.getContext());
 			return Status.RUNNING;
@@ -177,4 +180,17 @@ public class ExecutionRandomSequence extends ExecutionComposite {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the last active child, if there is one.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		return true;
+	}
 }
@@ -67,8 +67,8 @@ public class ExecutionSelector extends ExecutionComposite {
 	protected void internalSpawn() {
 		this.activeChildIndex = 0;
 		this.children = this.getModelTask().getChildren();
-		this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-				this.getExecutor(), this);
+		this.activeChild = this.getExecutor().createTask(
+				this.children.get(this.activeChildIndex), this);
 		this.activeChild.addTaskListener(this);
 		this.activeChild.spawn(this.getContext());
 	}
@@ -118,8 +118,9 @@ public class ExecutionSelector extends ExecutionComposite {
 				 * child.
 				 */
 				this.activeChildIndex++;
-				this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-						this.getExecutor(), this);
+				this.getExecutor().releaseTask(this.activeChild);
+				this.activeChild = this.getExecutor().createTask(
+						this.children.get(this.activeChildIndex), this);
 				this.activeChild.addTaskListener(this);
 				this.activeChild.spawn(this.getContext());
 				return Status.RUNNING;
@@ -160,4 +161,17 @@ public class ExecutionSelector extends ExecutionComposite {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the last active child, if there is one.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		return true;
+	}
 }
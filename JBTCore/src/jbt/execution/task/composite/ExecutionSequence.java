@@ -70,7 +70,7 @@ public class ExecutionSequence extends ExecutionTask {
 		 */
 		this.activeChildIndex = 0;
 		this.children = this.getModelTask().getChildren();
-		this.activeChild = this.children.get(0).createExecutor(this.getExecutor(), this);
+		this.activeChild = this.getExecutor().createTask(this.children.get(0), this);
 		this.activeChild.addTaskListener(this);
 		this.activeChild.spawn(this.getContext());
 	}
@@ -115,8 +115,9 @@ public class ExecutionSequence extends ExecutionTask {
 				 * the last one, spawn the next child.
 				 */
 				this.activeChildIndex++;
-				this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-						this.getExecutor(), this);
+				this.getExecutor().releaseTask(this.activeChild);
+				this.activeChild = this.getExecutor().createTask(
+						this.children.get(this.activeChildIndex), this);
 				this.activeChild.addTaskListener(this);
 				this.activeChild.spawn(this.getContext());
 				return Status.RUNNING;
@@ -158,4 +159,17 @@ public class ExecutionSequence extends ExecutionTask {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the last active child, if there is one.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		return true;
+	}
 }
@@ -17,6 +17,7 @@ package jbt.execution.task.composite;
 
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.BTExecutor.BTExecutorList;
@@ -27,7 +28,8 @@ import jbt.execution.core.ExecutionTask.Status;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
 import jbt.model.task.composite.ModelStaticPriorityList;
-import jbt.util.Pair;
+import jbt.model.task.leaf.condition.IGuardPredicate;
+import jbt.model.task.leaf.condition.IReadOnlyGuardPredicate;
 
 /**
  * ExecutionStaticPriorityList is the ExecutionTask that knows how to run a
@@ -50,8 +52,9 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	/**
 	 * List containing the IBTExecutors in charge of running the guards. The
 	 * i-th element of this list manages the guard of the i-th child (
-	 * {@link #children}). Note that if a guard is null, its corresponding
-	 * IBTExecutor is also null.
+	 * {@link #children}). Note that if a guard is null, or if it is evaluated
+	 * synchronously ({@link #guardsPredicates}), its corresponding IBTExecutor
+	 * is also null.
 	 */
 	private List<BTExecutor> guardsExecutors;
 	/**
@@ -60,6 +63,29 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	 * guards are evaluated to true).
 	 */
 	private List<Status> guardsResults;
+	/**
+	 * The guards that are evaluated synchronously (see {@link IGuardPredicate}). The i-th element
+	 * corresponds to the guard of the i-th child, and it is null unless the guard is an
+	 * IGuardPredicate. Such guards have no BTExecutor in {@link #guardsExecutors}.
+	 */
+	private IGuardPredicate[] guardsPredicates;
+	/**
+	 * The pool where read-only guards are evaluated (see
+	 * {@link BTExecutor#setGuardEvaluationPool(Executor)}), or null.
+	 */
+	private Executor guardsPool;
+	/**
+	 * If there is a pool, the evaluations of read-only guards that have been
+	 * submitted during the current call to {@link #evaluateGuards()} and whose
+	 * result has not been consumed yet. The i-th element corresponds to the
+	 * i-th guard.
+	 */
+	private ConcurrentGuardEvaluation[] guardsEvaluations;
+	/**
+	 * Index of the guard selected by the last call to
+	 * {@link #evaluateGuards()} that returned {@link Status#SUCCESS}.
+	 */
+	private int selectedGuardIndex;
 
 	/**
 	 * Creates an ExecutionStaticPriorityList that is able to run a
@@ -96,22 +122,41 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	protected void internalSpawn() {
 		this.children = this.getModelTask().getChildren();
 
-		/* Initialize guard executors. */
-		this.guardsExecutors = new Vector<BTExecutor>();
-		this.guardsResults = new Vector<Status>();
-		for (ModelTask child : this.children) {
-			if (child.getGuard() != null) {
-				this.guardsExecutors.add(new BTExecutor(child.getGuard(), this.getContext()));
-				this.guardsResults.add(Status.RUNNING);
-			} else {
-				this.guardsExecutors.add(null);
-				this.guardsResults.add(Status.SUCCESS);
+		/*
+		 * Initialize guard executors. If this task has been reset and spawned
+		 * again, the executors built for the previous run are reused.
+		 */
+		if (this.guardsExecutors == null) {
+			this.guardsExecutors = new Vector<BTExecutor>();
+			this.guardsResults = new Vector<Status>();
+			this.guardsPredicates = new IGuardPredicate[this.children.size()];
+			for (int i = 0; i < this.children.size(); i++) {
+				ModelTask child = this.children.get(i);
+				if (child.getGuard() != null) {
+					this.guardsPredicates[i] = getGuardPredicate(child
+							.getGuard());
+					this.guardsExecutors.add(this.guardsPredicates[i] == null
+							? createGuardExecutor(child.getGuard()) : null);
+					this.guardsResults.add(Status.RUNNING);
+				} else {
+					this.guardsExecutors.add(null);
+					this.guardsResults.add(Status.SUCCESS);
+				}
 			}
 		}
 
+		/* Initialize the concurrent evaluation of read-only guards. */
+		this.guardsPool = this.getExecutor().getGuardEvaluationPool();
+		if (this.guardsPool == null) {
+			this.guardsEvaluations = null;
+		} else if (this.guardsEvaluations == null) {
+			this.guardsEvaluations = new ConcurrentGuardEvaluation[this.children
+					.size()];
+		}
+
 		/* Evaluate guards. */
 		resetGuardsEvaluation();
-		Pair<Status, Integer> activeGuard = evaluateGuards();
+		Status activeGuard = evaluateGuards();
 
 		/*
 		 * Flag that tells if the static priority list must be inserted into the
@@ -124,10 +169,10 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 		 * In such a case, the task must be inserted into the list of tickable
 		 * nodes.
 		 */
-		if (activeGuard.getFirst() == Status.FAILURE) {
+		if (activeGuard == Status.FAILURE) {
 			this.spawnFailed = true;
 			insertIntoTickableNodesList = true;
-		} else if (activeGuard.getFirst() == Status.RUNNING) {
+		} else if (activeGuard == Status.RUNNING) {
 			/*
 			 * If not all the guards have been evaluated yet, the spawning
 			 * process is not considered to have started. In such a case, the
@@ -142,9 +187,9 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 			 */
 			this.spawnFailed = false;
 			this.stillNotSpawned = false;
-			this.activeChildIndex = activeGuard.getSecond();
-			this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-					this.getExecutor(), this);
+			this.activeChildIndex = this.selectedGuardIndex;
+			this.activeChild = this.getExecutor().createTask(
+					this.children.get(this.activeChildIndex), this);
 			this.activeChild.addTaskListener(this);
 			this.activeChild.spawn(this.getContext());
 		}
@@ -178,12 +223,12 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 		 */
 		if (this.stillNotSpawned) {
 			/* Evaluate guards. */
-			Pair<Status, Integer> activeGuard = evaluateGuards();
+			Status activeGuard = evaluateGuards();
 
 			/* If all the guards have failed, return failure. */
-			if (activeGuard.getFirst() == Status.FAILURE) {
+			if (activeGuard == Status.FAILURE) {
 				return Status.FAILURE;
-			} else if (activeGuard.getFirst() == Status.RUNNING) {
+			} else if (activeGuard == Status.RUNNING) {
 				/*
 				 * If not all the guards have finished, do no nothing (return
 				 * RUNNING).
@@ -196,9 +241,9 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 				 */
 				this.spawnFailed = false;
 				this.stillNotSpawned = false;
-				this.activeChildIndex = activeGuard.getSecond();
-				this.activeChild = this.children.get(this.activeChildIndex).createExecutor(
-						this.getExecutor(), this);
+				this.activeChildIndex = this.selectedGuardIndex;
+				this.activeChild = this.getExecutor().createTask(
+						this.children.get(this.activeChildIndex), this);
 				this.activeChild.addTaskListener(this);
 				this.activeChild.spawn(this.getContext());
 				
@@ -265,21 +310,22 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	/**
 	 * Resets the evaluation of all the guards. This method leaves all the guard
 	 * executors ({@link #guardsExecutors}) ready to start again the evaluation
-	 * of the guards. It internally terminates the IBTExecutor of each guard,
-	 * creates a new one, and then ticks it.
+	 * of the guards. It internally resets the BTExecutor of each guard (see
+	 * {@link BTExecutor#reset()}), and then ticks it. Guards that are
+	 * evaluated synchronously ({@link #guardsPredicates}) are evaluated by
+	 * {@link #evaluateGuards()}, just like the condition of a BTExecutor is
+	 * not ticked until its second tick.
 	 */
 	private void resetGuardsEvaluation() {
 		for (int i = 0; i < this.guardsExecutors.size(); i++) {
 			BTExecutor guardExecutor = this.guardsExecutors.get(i);
 
 			if (guardExecutor != null) {
-				guardExecutor.terminate();
+				guardExecutor.reset();
+				this.guardsResults.set(i, Status.RUNNING);
+				guardExecutor.tick();
+			} else if (this.guardsPredicates[i] != null) {
 				this.guardsResults.set(i, Status.RUNNING);
-				BTExecutor newExecutor = new BTExecutor(guardExecutor.getBehaviourTree(),
-						this.getContext());
-				newExecutor.copyTasksStates(guardExecutor);
-				newExecutor.tick();
-				this.guardsExecutors.set(i, newExecutor);
 			}
 		}
 	}
@@ -289,23 +335,55 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	 * result in {@link #guardsResults} is {@link Status#RUNNING}, by ticking
 	 * them.
 	 * <p>
-	 * If all the guards have finished in failure, this method returns a Pair
-	 * whose first element is {@link Status#FAILURE}. If there is at least one
-	 * guard still being evaluated, the first element of the Pair contains
-	 * {@link Status#RUNNING}. If all the guards have been evaluated and at
-	 * least one has succeeded, the first element of the Pair is
-	 * {@link Status#SUCCESS}, and the second one is the index, over the list of
-	 * guards ({@link #guardsExecutors}) , of the first guard (that with the
-	 * highest priority) that has succeeded.
+	 * If all the guards have finished in failure, this method returns
+	 * {@link Status#FAILURE}. If there is at least one guard still being
+	 * evaluated, it returns {@link Status#RUNNING}. If all the guards have been
+	 * evaluated and at least one has succeeded, it returns
+	 * {@link Status#SUCCESS}, and {@link #selectedGuardIndex} is set to the
+	 * index, over the list of guards ({@link #guardsExecutors}) , of the first
+	 * guard (that with the highest priority) that has succeeded.
+	 * <p>
+	 * Read-only guards (see {@link IReadOnlyGuardPredicate}) are not evaluated
+	 * once a guard with higher priority has succeeded and all the guards
+	 * before it have finished, since their result cannot change the selected
+	 * guard. If there is a pool for evaluating guards, all the pending
+	 * read-only guards are submitted to it at the beginning, and those that
+	 * are not needed are cancelled.
 	 * 
 	 */
-	private Pair<Status, Integer> evaluateGuards() {
+	private Status evaluateGuards() {
+		if (this.guardsPool == null) {
+			return doEvaluateGuards();
+		}
+
+		submitReadOnlyGuards();
+		try {
+			return doEvaluateGuards();
+		} finally {
+			cancelReadOnlyGuards();
+		}
+	}
+
+	/**
+	 * Does the actual work of {@link #evaluateGuards()}.
+	 */
+	private Status doEvaluateGuards() {
 		boolean oneRunning = false;
+		/*
+		 * Flag that tells if a guard has succeeded and all the guards before it
+		 * have finished.
+		 */
+		boolean decided = false;
 
 		/* First, evaluate all the guards that have not finished yet. */
 		for (int i = 0; i < this.guardsExecutors.size(); i++) {
 			IBTExecutor guardExecutor = this.guardsExecutors.get(i);
-			if (guardExecutor != null) {
+			if (guardExecutor == null && this.guardsPredicates[i] != null) {
+				if (this.guardsResults.get(i) == Status.RUNNING
+						&& !(decided && this.guardsPredicates[i] instanceof IReadOnlyGuardPredicate)) {
+					consumeGuardPredicate(i);
+				}
+			} else if (guardExecutor != null) {
 				if (this.guardsResults.get(i) == Status.RUNNING) {
 					guardExecutor.tick();
 					this.guardsResults.set(i, guardExecutor.getStatus());
@@ -314,22 +392,88 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 					}
 				}
 			}
+
+			if (!oneRunning && this.guardsResults.get(i) == Status.SUCCESS) {
+				decided = true;
+			}
 		}
 
 		/* If there is at least one still running... */
 		if (oneRunning) {
-			return new Pair<Status, Integer>(Status.RUNNING, -1);
+			return Status.RUNNING;
 		}
 
 		/* If all of them have finished we check which one succeeded first. */
 		for (int i = 0; i < this.guardsResults.size(); i++) {
 			if (this.guardsResults.get(i) == Status.SUCCESS) {
-				return new Pair<Status, Integer>(Status.SUCCESS, i);
+				return selectGuard(i);
 			}
 		}
 
 		/* Otherwise, the evaluation has failed. */
-		return new Pair<Status, Integer>(Status.FAILURE, -1);
+		return Status.FAILURE;
+	}
+
+	/**
+	 * Evaluates the <code>index</code>-th guard, which is an IGuardPredicate,
+	 * and stores its result into {@link #guardsResults}. If the evaluation has
+	 * been submitted to {@link #guardsPool}, its result is awaited instead.
+	 */
+	private void consumeGuardPredicate(int index) {
+		if (this.guardsEvaluations != null && this.guardsEvaluations[index] != null) {
+			ConcurrentGuardEvaluation evaluation = this.guardsEvaluations[index];
+			this.guardsEvaluations[index] = null;
+			evaluation.await();
+		} else {
+			this.guardsResults.set(index, evaluateGuardPredicate(this.guardsPredicates[index]));
+		}
+	}
+
+	/**
+	 * Submits to {@link #guardsPool} the evaluation of all the read-only
+	 * guards that are pending.
+	 */
+	private void submitReadOnlyGuards() {
+		for (int i = 0; i < this.guardsExecutors.size(); i++) {
+			if (this.guardsPredicates[i] instanceof IReadOnlyGuardPredicate
+					&& this.guardsResults.get(i) == Status.RUNNING) {
+				final int index = i;
+				this.guardsEvaluations[i] = new ConcurrentGuardEvaluation() {
+					protected void evaluate() {
+						ExecutionStaticPriorityList list = ExecutionStaticPriorityList.this;
+						list.guardsResults.set(index,
+								list.evaluateGuardPredicate(list.guardsPredicates[index]));
+					}
+				};
+				this.guardsEvaluations[i].submit(this.guardsPool);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the evaluations of read-only guards whose result has not been
+	 * consumed.
+	 */
+	private void cancelReadOnlyGuards() {
+		for (int i = 0; i < this.guardsEvaluations.length; i++) {
+			if (this.guardsEvaluations[i] != null) {
+				this.guardsEvaluations[i].cancel();
+				this.guardsEvaluations[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Sets {@link #selectedGuardIndex} to <code>index</code> and returns
+	 * {@link Status#SUCCESS}.
+	 * 
+	 * @param index
+	 *            the index of the selected guard.
+	 * @return {@link Status#SUCCESS}.
+	 */
+	private Status selectGuard(int index) {
+		this.selectedGuardIndex = index;
+		return Status.SUCCESS;
 	}
 
 	/**
@@ -340,4 +484,20 @@ public class ExecutionStaticPriorityList extends ExecutionComposite {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the active child, if there is one. The BTExecutors of the
+	 * guards are kept, and reused the next time the task is spawned.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.activeChild != null) {
+			this.getExecutor().releaseTask(this.activeChild);
+			this.activeChild = null;
+		}
+		this.spawnFailed = false;
+		this.stillNotSpawned = false;
+		return true;
+	}
 }
@@ -75,8 +75,8 @@ public class ExecutionInterrupter extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		this.executionChild = ((ModelInterrupter) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		this.executionChild = this.getExecutor().createTask(
+				((ModelInterrupter) this.getModelTask()).getChild(), this);
 		this.executionChild.addTaskListener(this);
 		/*
 		 * Register the ExecutionInterrupter so that
@@ -59,8 +59,8 @@ public class ExecutionInverter extends ExecutionDecorator {
 	 */
 	protected void internalSpawn() {
 		/* Just spawn the only child. */
-		this.child = ((ModelInverter) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		this.child = this.getExecutor().createTask(
+				((ModelInverter) this.getModelTask()).getChild(), this);
 		this.child.addTaskListener(this);
 		this.child.spawn(this.getContext());
 	}
@@ -129,4 +129,17 @@ public class ExecutionInverter extends ExecutionDecorator {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the child task.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
 }
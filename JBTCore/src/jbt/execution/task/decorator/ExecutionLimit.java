@@ -15,18 +15,15 @@
  */
 package jbt.execution.task.decorator;
 
-import java.util.List;
-import java.util.Vector;
-
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
 import jbt.execution.core.BTExecutor.BTExecutorList;
+import jbt.execution.core.IPrimitiveTaskState;
 import jbt.execution.core.ITaskState;
 import jbt.execution.core.TaskStateFactory;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
 import jbt.model.task.decorator.ModelLimit;
-import jbt.util.Pair;
 
 /**
  * ExecutionLimit is the ExecutionTask that knows how to run a ModelLimit.
@@ -85,8 +82,8 @@ public class ExecutionLimit extends ExecutionDecorator {
 	protected void internalSpawn() {
 		if (this.numRunsSoFar < this.maxNumTimes) {
 			this.numRunsSoFar++;
-			this.child = ((ModelLimit) this.getModelTask()).getChild().createExecutor(
-					this.getExecutor(), this);
+			this.child = this.getExecutor().createTask(
+					((ModelLimit) this.getModelTask()).getChild(), this);
 			this.child.addTaskListener(this);
 			this.child.spawn(this.getContext());
 		}
@@ -124,13 +121,19 @@ public class ExecutionLimit extends ExecutionDecorator {
 	/**
 	 * Restore from the ITaskState the number of times that the child task of
 	 * this decorator has been run so far. It is read from the variable whose
-	 * name is {@link #STATE_VARIABLE_NAME}.
+	 * name is {@link #STATE_VARIABLE_NAME}, without unboxing it if the state is
+	 * an {@link IPrimitiveTaskState}.
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#restoreState(ITaskState)
 	 */
 	protected void restoreState(ITaskState state) {
 		try {
-			this.numRunsSoFar = (Integer) state.getStateVariable(STATE_VARIABLE_NAME);
+			if (state instanceof IPrimitiveTaskState) {
+				this.numRunsSoFar = ((IPrimitiveTaskState) state).getIntStateVariable(
+						STATE_VARIABLE_NAME, this.numRunsSoFar);
+			} else {
+				this.numRunsSoFar = (Integer) state.getStateVariable(STATE_VARIABLE_NAME);
+			}
 		}
 		catch (Exception e) {}
 	}
@@ -152,9 +155,7 @@ public class ExecutionLimit extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#storeState()
 	 */
 	protected ITaskState storeState() {
-		List<Pair<String,Object>> variables=new Vector<Pair<String,Object>>();
-		variables.add(new Pair<String,Object>(STATE_VARIABLE_NAME, this.numRunsSoFar));
-		return TaskStateFactory.createTaskState(variables);
+		return TaskStateFactory.createTaskState(STATE_VARIABLE_NAME, this.numRunsSoFar);
 	}
 
 	/**
@@ -165,8 +166,20 @@ public class ExecutionLimit extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#storeTerminationState()
 	 */
 	protected ITaskState storeTerminationState() {
-		List<Pair<String,Object>> variables=new Vector<Pair<String,Object>>();
-		variables.add(new Pair<String,Object>(STATE_VARIABLE_NAME, this.numRunsSoFar));
-		return TaskStateFactory.createTaskState(variables);
+		return TaskStateFactory.createTaskState(STATE_VARIABLE_NAME, this.numRunsSoFar);
+	}
+
+	/**
+	 * Releases the child task and resets the number of times it has been run.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		this.numRunsSoFar = 0;
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
 	}
 }
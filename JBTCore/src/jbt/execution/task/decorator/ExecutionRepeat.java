@@ -59,8 +59,8 @@ public class ExecutionRepeat extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		this.child = ((ModelRepeat) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		this.child = this.getExecutor().createTask(
+				((ModelRepeat) this.getModelTask()).getChild(), this);
 		this.child.addTaskListener(this);
 		this.child.spawn(this.getContext());
 	}
@@ -87,8 +87,9 @@ public class ExecutionRepeat extends ExecutionDecorator {
 		 * If the child has finished, spawn it again
 		 */
 		if (childStatus != Status.RUNNING) {
-			this.child = ((ModelDecorator) this.getModelTask()).getChild().createExecutor(
-					this.getExecutor(), this);
+			this.getExecutor().releaseTask(this.child);
+			this.child = this.getExecutor().createTask(
+					((ModelDecorator) this.getModelTask()).getChild(), this);
 			this.child.addTaskListener(this);
 			this.child.spawn(this.getContext());
 		}
@@ -129,4 +130,17 @@ public class ExecutionRepeat extends ExecutionDecorator {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the child task.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
 }
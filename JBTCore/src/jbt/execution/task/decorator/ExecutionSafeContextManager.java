@@ -16,8 +16,10 @@
 package jbt.execution.task.decorator;
 
 import jbt.execution.context.SafeContext;
+import jbt.execution.context.ScopeFramePool;
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.IContext;
 import jbt.execution.core.ITaskState;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
@@ -34,6 +36,11 @@ import jbt.model.task.decorator.ModelSafeContextManager;
 public class ExecutionSafeContextManager extends ExecutionDecorator {
 	/** The child task. */
 	private ExecutionTask child;
+	/**
+	 * The context of the child task if it has been taken from the ScopeFramePool
+	 * of the BTExecutor and it has not been released yet, and null otherwise.
+	 */
+	private IContext frame;
 
 	/**
 	 * Constructs an ExecutionSafeContextManager that knows how to run a
@@ -61,33 +68,51 @@ public class ExecutionSafeContextManager extends ExecutionDecorator {
 	 * Spawns the child task. This method creates a new SafeContext, and spawns
 	 * the child task using this SafeContext. The input context of the
 	 * SafeContext is that of this ExecutionSafeContextManager task.
+	 * <p>
+	 * If the pooling of scope frames is enabled (see
+	 * {@link BTExecutor#setScopeFramePooling(boolean)}), the context is taken
+	 * from the ScopeFramePool of the BTExecutor instead of being created.
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		SafeContext newContext = new SafeContext(this.getContext());
-		this.child = ((ModelDecorator) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		ScopeFramePool pool = this.getExecutor().getScopeFramePool();
+		SafeContext newContext;
+		if (pool != null) {
+			newContext = pool.acquireSafeContext(this.getContext());
+			this.frame = newContext;
+		} else {
+			newContext = new SafeContext(this.getContext());
+		}
+		this.child = this.getExecutor().createTask(
+				((ModelDecorator) this.getModelTask()).getChild(), this);
 		this.child.addTaskListener(this);
 		this.child.spawn(newContext);
 	}
 
 	/**
-	 * Just terminates the child task.
+	 * Terminates the child task and releases its context (see
+	 * {@link BTExecutor#releaseScopeFrame(IContext)}).
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalTerminate()
 	 */
 	protected void internalTerminate() {
 		this.child.terminate();
+		releaseFrame();
 	}
 
 	/**
-	 * Returns the current status of the child.
+	 * Returns the current status of the child. If the child has finished, its
+	 * context is released (see {@link BTExecutor#releaseScopeFrame(IContext)}).
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalTick()
 	 */
 	protected Status internalTick() {
-		return this.child.getStatus();
+		Status childStatus = this.child.getStatus();
+		if (childStatus == Status.SUCCESS || childStatus == Status.FAILURE) {
+			releaseFrame();
+		}
+		return childStatus;
 	}
 
 	/**
@@ -124,4 +149,29 @@ public class ExecutionSafeContextManager extends ExecutionDecorator {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the child task and its context.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		releaseFrame();
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Gives the context of the child task back to the BTExecutor if it was
+	 * taken from its ScopeFramePool.
+	 */
+	private void releaseFrame() {
+		if (this.frame != null) {
+			this.getExecutor().releaseScopeFrame(this.frame);
+			this.frame = null;
+		}
+	}
 }
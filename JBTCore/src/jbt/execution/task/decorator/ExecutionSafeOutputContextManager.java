@@ -16,8 +16,10 @@
 package jbt.execution.task.decorator;
 
 import jbt.execution.context.SafeOutputContext;
+import jbt.execution.context.ScopeFramePool;
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.IContext;
 import jbt.execution.core.ITaskState;
 import jbt.execution.core.event.TaskEvent;
 import jbt.model.core.ModelTask;
@@ -34,6 +36,11 @@ import jbt.model.task.decorator.ModelSafeOutputContextManager;
 public class ExecutionSafeOutputContextManager extends ExecutionDecorator {
 	/** The child task. */
 	private ExecutionTask child;
+	/**
+	 * The context of the child task if it has been taken from the ScopeFramePool
+	 * of the BTExecutor and it has not been released yet, and null otherwise.
+	 */
+	private IContext frame;
 
 	/**
 	 * Constructs an ExecutionSafeOutputContextManager that knows how to run a
@@ -63,34 +70,54 @@ public class ExecutionSafeOutputContextManager extends ExecutionDecorator {
 	 * SafeOutputContext is that of this ExecutionSafeOutputContextManager task.
 	 * The list of output variables of the SafeOutputContext is retrieved from
 	 * the ModelSafeOutputContextManager associated to this task.
+	 * <p>
+	 * If the pooling of scope frames is enabled (see
+	 * {@link BTExecutor#setScopeFramePooling(boolean)}), the context is taken
+	 * from the ScopeFramePool of the BTExecutor instead of being created.
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		SafeOutputContext newContext = new SafeOutputContext(this.getContext(),
-				((ModelSafeOutputContextManager) this.getModelTask()).getOutputVariables());
-		this.child = ((ModelDecorator) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		ModelSafeOutputContextManager model = (ModelSafeOutputContextManager) this.getModelTask();
+		ScopeFramePool pool = this.getExecutor().getScopeFramePool();
+		SafeOutputContext newContext;
+		if (pool != null) {
+			newContext = pool.acquireSafeOutputContext(this.getContext(), model.getOutputVariables(),
+					model.getOutputSlots());
+			this.frame = newContext;
+		} else {
+			newContext = new SafeOutputContext(this.getContext(), model.getOutputVariables(),
+					model.getOutputSlots());
+		}
+		this.child = this.getExecutor().createTask(
+				((ModelDecorator) this.getModelTask()).getChild(), this);
 		this.child.addTaskListener(this);
 		this.child.spawn(newContext);
 	}
 
 	/**
-	 * Just terminates the child task.
+	 * Terminates the child task and releases its context (see
+	 * {@link BTExecutor#releaseScopeFrame(IContext)}).
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalTerminate()
 	 */
 	protected void internalTerminate() {
 		this.child.terminate();
+		releaseFrame();
 	}
 
 	/**
-	 * Returns the current status of the child.
+	 * Returns the current status of the child. If the child has finished, its
+	 * context is released (see {@link BTExecutor#releaseScopeFrame(IContext)}).
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalTick()
 	 */
 	protected Status internalTick() {
-		return this.child.getStatus();
+		Status childStatus = this.child.getStatus();
+		if (childStatus == Status.SUCCESS || childStatus == Status.FAILURE) {
+			releaseFrame();
+		}
+		return childStatus;
 	}
 
 	/**
@@ -127,4 +154,29 @@ public class ExecutionSafeOutputContextManager extends ExecutionDecorator {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the child task and its context.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		releaseFrame();
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Gives the context of the child task back to the BTExecutor if it was
+	 * taken from its ScopeFramePool.
+	 */
+	private void releaseFrame() {
+		if (this.frame != null) {
+			this.getExecutor().releaseScopeFrame(this.frame);
+			this.frame = null;
+		}
+	}
 }
@@ -57,8 +57,8 @@ public class ExecutionSucceeder extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		this.child = ((ModelSucceeder) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		this.child = this.getExecutor().createTask(
+				((ModelSucceeder) this.getModelTask()).getChild(), this);
 
 		this.child.addTaskListener(this);
 		this.child.spawn(this.getContext());
@@ -122,4 +122,17 @@ public class ExecutionSucceeder extends ExecutionDecorator {
 	protected void internalTerminate() {
 		this.child.terminate();
 	}
+
+	/**
+	 * Releases the child task.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
 }
@@ -59,8 +59,8 @@ public class ExecutionUntilFail extends ExecutionDecorator {
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		this.child = ((ModelDecorator) this.getModelTask()).getChild().createExecutor(
-				this.getExecutor(), this);
+		this.child = this.getExecutor().createTask(
+				((ModelDecorator) this.getModelTask()).getChild(), this);
 		this.child.addTaskListener(this);
 		this.child.spawn(this.getContext());
 	}
@@ -94,8 +94,9 @@ public class ExecutionUntilFail extends ExecutionDecorator {
 		else {
 			/* If the child has finished successfully, spawn it again. */
 			if (childStatus == Status.SUCCESS) {
-				this.child = ((ModelDecorator) this.getModelTask()).getChild().createExecutor(
-						this.getExecutor(), this);
+				this.getExecutor().releaseTask(this.child);
+				this.child = this.getExecutor().createTask(
+						((ModelDecorator) this.getModelTask()).getChild(), this);
 				this.child.addTaskListener(this);
 				this.child.spawn(this.getContext());
 			}
@@ -141,4 +142,17 @@ public class ExecutionUntilFail extends ExecutionDecorator {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Releases the child task.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		if (this.child != null) {
+			this.getExecutor().releaseTask(this.child);
+			this.child = null;
+		}
+		return true;
+	}
 }
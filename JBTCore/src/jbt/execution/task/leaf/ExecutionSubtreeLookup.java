@@ -92,9 +92,9 @@ public class ExecutionSubtreeLookup extends ExecutionLeaf {
 		else {
 			this.treeRetrieved = true;
 			/* Compute positions for the retrieved tree. */
-			this.treeToRun.computePositions();
+			this.treeToRun.computePositionsIfNeeded();
 
-			this.executionTree = this.treeToRun.createExecutor(this.getExecutor(), this);
+			this.executionTree = this.getExecutor().createTask(this.treeToRun, this);
 			this.executionTree.addTaskListener(this);
 			this.executionTree.spawn(this.getContext());
 		}
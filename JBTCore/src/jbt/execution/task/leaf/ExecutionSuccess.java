@@ -100,4 +100,13 @@ public class ExecutionSuccess extends ExecutionLeaf {
 	 */
 	protected void internalTerminate() {
 	}
+
+	/**
+	 * Returns true, since this task does not keep any state between spawns.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		return true;
+	}
 }
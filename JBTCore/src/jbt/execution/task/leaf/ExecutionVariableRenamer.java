@@ -17,7 +17,9 @@ package jbt.execution.task.leaf;
 
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.IContext;
 import jbt.execution.core.ITaskState;
+import jbt.execution.core.SymbolTable;
 import jbt.execution.core.BTExecutor.BTExecutorList;
 import jbt.model.core.ModelTask;
 import jbt.model.task.leaf.ModelVariableRenamer;
@@ -30,10 +32,10 @@ import jbt.model.task.leaf.ModelVariableRenamer;
  * 
  */
 public class ExecutionVariableRenamer extends ExecutionLeaf {
-	/** The name of the variable that must be renamed. */
-	private String variableName;
-	/** The new name for the variable that must be renamed. */
-	private String newVariableName;
+	/** The slot of the variable that must be renamed. */
+	private int variableSlot;
+	/** The slot of the new name for the variable that must be renamed. */
+	private int newVariableSlot;
 
 	/**
 	 * Constructs an ExecutionVariableRenamer that knows how to run a
@@ -55,20 +57,22 @@ public class ExecutionVariableRenamer extends ExecutionLeaf {
 					+ modelTask.getClass().getCanonicalName());
 		}
 
-		this.variableName = ((ModelVariableRenamer) modelTask).getVariableName();
-		this.newVariableName = ((ModelVariableRenamer) modelTask).getNewVariableName();
+		this.variableSlot = ((ModelVariableRenamer) modelTask).getVariableSlot();
+		this.newVariableSlot = ((ModelVariableRenamer) modelTask).getNewVariableSlot();
 	}
 
 	/**
-	 * Renames the variable in the context.
+	 * Renames the variable in the context. The context is accessed by slot (see
+	 * {@link SymbolTable}).
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
 	    this.getExecutor().requestInsertionIntoList(BTExecutorList.TICKABLE, this);
-		Object variable = this.getContext().getVariable(this.variableName);
-		this.getContext().clearVariable(this.variableName);
-		this.getContext().setVariable(this.newVariableName, variable);
+		IContext context = this.getContext();
+		Object variable = SymbolTable.getVariable(context, this.variableSlot);
+		SymbolTable.clearVariable(context, this.variableSlot);
+		SymbolTable.setVariable(context, this.newVariableSlot, variable);
 	}
 
 	/**
@@ -17,7 +17,6 @@ package jbt.execution.task.leaf;
 
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
-import jbt.execution.core.BTExecutor.BTExecutorList;
 import jbt.execution.core.ITaskState;
 import jbt.model.core.ModelTask;
 import jbt.model.task.leaf.ModelWait;
@@ -62,13 +61,14 @@ public class ExecutionWait extends ExecutionLeaf {
 	}
 
 	/**
-	 * Starts measuring the time interval.
+	 * Starts measuring the time interval, and sleeps until it is over (see
+	 * {@link #sleepUntil(long)}), so the task is not ticked in the meantime.
 	 * 
 	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
 	 */
 	protected void internalSpawn() {
-		this.getExecutor().requestInsertionIntoList(BTExecutorList.TICKABLE, this);
 		this.startTime = System.nanoTime();
+		sleepUntil(this.startTime + this.duration * 1000000);
 	}
 
 	/**
@@ -91,6 +91,7 @@ public class ExecutionWait extends ExecutionLeaf {
 			return Status.SUCCESS;
 		}
 		else {
+			sleepUntil(this.startTime + this.duration * 1000000);
 			return Status.RUNNING;
 		}
 	}
@@ -121,4 +122,13 @@ public class ExecutionWait extends ExecutionLeaf {
 	protected ITaskState storeTerminationState() {
 		return null;
 	}
+
+	/**
+	 * Returns true, since this task does not keep any state between spawns.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalReset()
+	 */
+	protected boolean internalReset() {
+		return true;
+	}
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.task.leaf.action;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+import jbt.exception.IllegalReturnStatusException;
+import jbt.exception.SpawnException;
+import jbt.execution.core.BTExecutor;
+import jbt.execution.core.BTExecutor.BTExecutorList;
+import jbt.execution.core.ExecutionTask;
+import jbt.model.core.ModelTask;
+
+/**
+ * ExecutionAsyncAction is the base class of the actions whose work is carried out asynchronously,
+ * usually by other threads (for instance, a path-finding query or a database lookup).
+ * <p>
+ * Instead of <code>internalSpawn()</code> and <code>internalTick()</code>, subclasses define
+ * {@link #internalAsyncSpawn()}, which starts the work and returns a CompletableFuture that will
+ * be completed with the final status of the action, {@link Status#SUCCESS} or
+ * {@link Status#FAILURE}. If the future completes exceptionally or is cancelled, the action
+ * fails.
+ * <p>
+ * While the future is not completed, the action is not in the list of tickable tasks of the
+ * BTExecutor, so it consumes no CPU time no matter how many game AI cycles it takes. When the
+ * future completes, the thread that completes it hands the action back to the BTExecutor through
+ * {@link BTExecutor#invokeLater(Runnable)}, so the action is only ever accessed by the thread that
+ * ticks the tree. The action is then ticked in the next game AI cycle, and it finishes with the
+ * status of the future.
+ * <p>
+ * When the action is terminated, its future is cancelled (see {@link #internalTerminate()}).
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public abstract class ExecutionAsyncAction extends ExecutionAction {
+	/** The future of the current run of the action, or null if it has not been spawned. */
+	private CompletableFuture<Status> future;
+
+	/**
+	 * Constructs an ExecutionAsyncAction that knows how to run a ModelAction.
+	 * 
+	 * @param modelTask
+	 *            the ModelAction to run.
+	 * @param executor
+	 *            the BTExecutor that will manage this ExecutionAsyncAction.
+	 * @param parent
+	 *            the parent ExecutionTask of this task.
+	 */
+	public ExecutionAsyncAction(ModelTask modelTask, BTExecutor executor, ExecutionTask parent) {
+		super(modelTask, executor, parent);
+	}
+
+	/**
+	 * Starts the work of the action. This method is called from the thread that ticks the tree when
+	 * the action is spawned, so it may access the context of the action (see
+	 * {@link #getContext()}). However, the work that is carried out by other threads must not
+	 * access the context or the action unless the context is thread-safe.
+	 * 
+	 * @return a CompletableFuture that will be completed with {@link Status#SUCCESS} or
+	 *         {@link Status#FAILURE}. It cannot be null.
+	 */
+	protected abstract CompletableFuture<Status> internalAsyncSpawn();
+
+	/**
+	 * Starts the work of the action by calling {@link #internalAsyncSpawn()}, and waits for its
+	 * future to complete without entering the list of tickable tasks.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalSpawn()
+	 */
+	protected final void internalSpawn() {
+		CompletableFuture<Status> newFuture = internalAsyncSpawn();
+		if (newFuture == null) {
+			throw new SpawnException("internalAsyncSpawn() cannot return null");
+		}
+
+		this.future = newFuture;
+		newFuture.whenComplete(new Completion(this, newFuture));
+	}
+
+	/**
+	 * Returns the status the future has been completed with. If the future completed
+	 * exceptionally or was cancelled, {@link Status#FAILURE} is returned. If it is not completed
+	 * yet, {@link Status#RUNNING} is returned.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalTick()
+	 */
+	protected final Status internalTick() {
+		if (!this.future.isDone()) {
+			return Status.RUNNING;
+		}
+
+		Status result;
+		try {
+			result = this.future.getNow(null);
+		} catch (CancellationException e) {
+			return Status.FAILURE;
+		} catch (CompletionException e) {
+			return Status.FAILURE;
+		}
+
+		if (result != Status.SUCCESS && result != Status.FAILURE) {
+			throw new IllegalReturnStatusException(result
+					+ " cannot be the result of the future of an ExecutionAsyncAction");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Cancels the future of the action. Note that cancelling a CompletableFuture does not stop the
+	 * work that is meant to complete it, so subclasses whose work can be stopped should override
+	 * this method (calling the implementation of ExecutionAsyncAction) or check
+	 * {@link CompletableFuture#isCancelled()} on the future from time to time.
+	 * 
+	 * @see jbt.execution.core.ExecutionTask#internalTerminate()
+	 */
+	protected void internalTerminate() {
+		this.future.cancel(true);
+	}
+
+	/**
+	 * Returns the future of the current run of the action, or null if the action has not been
+	 * spawned.
+	 * 
+	 * @return the future of the current run of the action.
+	 */
+	protected final CompletableFuture<Status> getFuture() {
+		return this.future;
+	}
+
+	/**
+	 * Completion is the callback that is run when the future of an ExecutionAsyncAction completes.
+	 * It may be run by any thread, so it just hands itself over to the BTExecutor of the action,
+	 * which later runs it in its own thread to insert the action back into the list of tickable
+	 * tasks.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	private static final class Completion implements BiConsumer<Status, Throwable>, Runnable {
+		/** The action whose future has completed. */
+		private final ExecutionAsyncAction action;
+		/** The future that has completed. */
+		private final CompletableFuture<Status> future;
+
+		private Completion(ExecutionAsyncAction action, CompletableFuture<Status> future) {
+			this.action = action;
+			this.future = future;
+		}
+
+		/**
+		 * Called by the thread that completes the future.
+		 */
+		public void accept(Status result, Throwable failure) {
+			this.action.getExecutor().invokeLater(this);
+		}
+
+		/**
+		 * Called by the thread that ticks the BTExecutor. Nothing is done if the action has been
+		 * terminated or spawned again since the future was created.
+		 */
+		public void run() {
+			if (this.action.future == this.future && this.action.getStatus() == Status.RUNNING) {
+				BTExecutor executor = this.action.getExecutor();
+				executor.cancelRemovalRequest(BTExecutorList.TICKABLE, this.action);
+				executor.requestInsertionIntoList(BTExecutorList.TICKABLE, this.action);
+			}
+		}
+	}
+}
@@ -15,7 +15,7 @@
  */
 package jbt.model.core;
 
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
@@ -65,8 +65,38 @@ import jbt.execution.core.ExecutionTask;
 public abstract class ModelTask {
 	/** List of the children of the ModelTask. */
 	private List<ModelTask> children;
-	/** The position of the ModelTask in the behaviour tree. */
-	private Position position;
+	/**
+	 * The position of the ModelTask in the behaviour tree. It is lazily
+	 * materialized from {@link #path} by {@link #getPosition()}. It is volatile
+	 * so that trees can be safely shared by BTExecutor objects running in
+	 * different threads.
+	 */
+	private volatile Position position;
+	/**
+	 * The sequence of moves that must be performed to go from the root of the
+	 * behaviour tree to this task. The array must not be modified, since it is
+	 * shared by the Position returned by {@link #getPosition()}.
+	 */
+	private int[] path;
+	/** The identifier of the ModelTask in the behaviour tree. */
+	private int id;
+	/**
+	 * The index of this task in the list of children of its parent, or -1 if
+	 * it is the root of the behaviour tree.
+	 */
+	private int childIndex;
+	/** Number of tasks in the subtree whose root is this task. */
+	private int subtreeSize;
+	/**
+	 * The root of the last call to {@link #computePositions()} that computed
+	 * the position of this task, or null if there has been none. The
+	 * positions of the tree whose root is this task are up to date only if
+	 * this field points to the task itself (see
+	 * {@link #computePositionsIfNeeded()}).
+	 */
+	private ModelTask positionsRoot;
+	/** Sequence of moves of the root of a behaviour tree. */
+	private static final int[] EMPTY_PATH = new int[0];
 	/**
 	 * The guard of the ModelTask. It may be null, in which case it will always
 	 * be evaluated to true.
@@ -87,9 +117,17 @@ public abstract class ModelTask {
 	 */
 	public static class Position {
 		/**
-		 * The list of moves that this position represents.
+		 * The moves that this position represents. Only the first
+		 * {@link #numMoves} elements are meaningful.
+		 */
+		private int[] moves;
+		/** Number of moves that this position represents. */
+		private int numMoves;
+		/**
+		 * Cached hash code of this Position, or 0 if it has not been computed
+		 * yet (or if it must be recomputed because the moves have changed).
 		 */
-		private List<Integer> moves;
+		private int hashCode;
 
 		/**
 		 * Constructs an Position that contains the moves specified in its
@@ -97,10 +135,10 @@ public abstract class ModelTask {
 		 * will represent an empty sequence of moves.
 		 */
 		public Position(Integer... moves) {
-			this.moves = new LinkedList<Integer>();
+			this.moves = new int[moves.length];
 
 			for (Integer i : moves) {
-				this.moves.add(i);
+				this.moves[this.numMoves++] = i;
 			}
 		}
 
@@ -115,9 +153,9 @@ public abstract class ModelTask {
 				throw new RuntimeException("The list of moves cannot be null");
 			}
 
-			this.moves = new LinkedList<Integer>();
+			this.moves = new int[moves.size()];
 			for (Integer i : moves) {
-				this.moves.add(i);
+				this.moves[this.numMoves++] = i;
 			}
 		}
 
@@ -128,10 +166,21 @@ public abstract class ModelTask {
 		 *            the Position that is copied.
 		 */
 		public Position(Position pos) {
-			this.moves = new LinkedList<Integer>();
-			for (Integer i : pos.moves) {
-				this.moves.add(i);
-			}
+			this.moves = Arrays.copyOf(pos.moves, pos.numMoves);
+			this.numMoves = pos.numMoves;
+			this.hashCode = pos.hashCode;
+		}
+
+		/**
+		 * Constructs a Position from a packed sequence of moves. The array is
+		 * not copied, so it must not be modified afterwards.
+		 * 
+		 * @param moves
+		 *            the sequence of moves that this Position will represent.
+		 */
+		Position(int[] moves) {
+			this.moves = moves;
+			this.numMoves = moves.length;
 		}
 
 		/**
@@ -140,7 +189,36 @@ public abstract class ModelTask {
 		 * @return the sequence of moves that this Position represents.
 		 */
 		public List<Integer> getMoves() {
-			return new LinkedList<Integer>(this.moves);
+			List<Integer> result = new LinkedList<Integer>();
+			for (int i = 0; i < this.numMoves; i++) {
+				result.add(this.moves[i]);
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the number of moves that this Position represents.
+		 * 
+		 * @return the number of moves that this Position represents.
+		 */
+		public int getNumMoves() {
+			return this.numMoves;
+		}
+
+		/**
+		 * Returns the <code>index</code>-th move of this Position.
+		 * 
+		 * @param index
+		 *            the index of the move, between 0 and
+		 *            {@link #getNumMoves()} - 1.
+		 * @return the <code>index</code>-th move of this Position.
+		 */
+		public int getMove(int index) {
+			if (index < 0 || index >= this.numMoves) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", number of moves: "
+						+ this.numMoves);
+			}
+			return this.moves[index];
 		}
 
 		/**
@@ -152,7 +230,11 @@ public abstract class ModelTask {
 		 * @return this Position.
 		 */
 		public Position addMove(Integer move) {
-			this.moves.add(move);
+			if (this.numMoves == this.moves.length) {
+				this.moves = Arrays.copyOf(this.moves, Math.max(4, this.numMoves * 2));
+			}
+			this.moves[this.numMoves++] = move;
+			this.hashCode = 0;
 			return this;
 		}
 
@@ -166,7 +248,7 @@ public abstract class ModelTask {
 		 */
 		public Position addMoves(List<Integer> moves) {
 			for (Integer i : moves) {
-				this.moves.add(i);
+				addMove(i);
 			}
 			return this;
 		}
@@ -180,7 +262,11 @@ public abstract class ModelTask {
 		 * @return this Position.
 		 */
 		public Position addMoves(Position position) {
-			addMoves(position.getMoves());
+			/* Read the size first, in case "position" is this Position. */
+			int numNewMoves = position.numMoves;
+			for (int i = 0; i < numNewMoves; i++) {
+				addMove(position.moves[i]);
+			}
 			return this;
 		}
 
@@ -234,16 +320,14 @@ public abstract class ModelTask {
 		 * @see java.lang.Object#toString()
 		 */
 		public String toString() {
-			String result = new String();
-			if (this.moves.size() != 0) {
-				for (Integer i : this.moves) {
-					result += i + " ";
+			StringBuilder result = new StringBuilder("[");
+			for (int i = 0; i < this.numMoves; i++) {
+				if (i != 0) {
+					result.append(' ');
 				}
-				return "[" + result.substring(0, result.length() - 1) + "]";
-			}
-			else {
-				return "[]";
+				result.append(this.moves[i]);
 			}
+			return result.append(']').toString();
 		}
 
 		/**
@@ -263,21 +347,18 @@ public abstract class ModelTask {
 
 			Position oPosition = (Position) o;
 
-			List<Integer> thisMoves = this.getMoves();
-			List<Integer> oMoves = oPosition.getMoves();
-
-			if (oMoves.size() != thisMoves.size()) {
+			/*
+			 * Positions are used as keys of hash tables, so comparing the hash
+			 * codes first avoids traversing the moves of most non-matching
+			 * positions. Moves are compared without copying them.
+			 */
+			if (this.numMoves != oPosition.numMoves
+					|| this.hashCode() != oPosition.hashCode()) {
 				return false;
 			}
 
-			Iterator<Integer> thisIt = thisMoves.iterator();
-			Iterator<Integer> oIt = oMoves.iterator();
-
-			while (thisIt.hasNext()) {
-				Integer thisElem = thisIt.next();
-				Integer oElem = oIt.next();
-
-				if (!thisElem.equals(oElem)) {
+			for (int i = 0; i < this.numMoves; i++) {
+				if (this.moves[i] != oPosition.moves[i]) {
 					return false;
 				}
 			}
@@ -290,7 +371,18 @@ public abstract class ModelTask {
 		 * @see java.lang.Object#hashCode()
 		 */
 		public int hashCode() {
-			return this.moves.hashCode();
+			/*
+			 * The hash code is cached, since it is computed from all the moves.
+			 * It is the same as that of the List returned by getMoves().
+			 */
+			if (this.hashCode == 0) {
+				int h = 1;
+				for (int i = 0; i < this.numMoves; i++) {
+					h = 31 * h + this.moves[i];
+				}
+				this.hashCode = h;
+			}
+			return this.hashCode;
 		}
 	}
 
@@ -312,7 +404,10 @@ public abstract class ModelTask {
 			this.children.add(t);
 		}
 
-		this.position = new Position();
+		this.path = EMPTY_PATH;
+		this.id = -1;
+		this.childIndex = -1;
+		this.subtreeSize = -1;
 	}
 
 	/**
@@ -359,7 +454,55 @@ public abstract class ModelTask {
 	 * @return the position that this task occupies in the behaviour tree.
 	 */
 	public Position getPosition() {
-		return this.position;
+		Position result = this.position;
+		if (result == null) {
+			result = new Position(this.path);
+			this.position = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the identifier of this task in the behaviour tree, or -1 if it
+	 * has not been computed yet (see {@link #computePositions()}).
+	 * <p>
+	 * Identifiers are dense: the tasks of a behaviour tree of <i>N</i> tasks
+	 * are numbered from 0 (the root) to <i>N</i>-1 in depth-first order, so
+	 * they can be used as indices of arrays. Since a task is numbered before
+	 * its descendants, the tasks of the subtree whose root is this task are
+	 * those whose identifier is between {@link #getId()} and
+	 * {@link #getId()} + {@link #getSubtreeSize()} - 1.
+	 * <p>
+	 * Note that guards are not considered to be part of the behaviour tree, so
+	 * they are not numbered.
+	 * 
+	 * @return the identifier of this task in the behaviour tree.
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the number of tasks in the subtree whose root is this task
+	 * (including the task itself), or -1 if it has not been computed yet (see
+	 * {@link #computePositions()}).
+	 * 
+	 * @return the number of tasks in the subtree whose root is this task.
+	 */
+	public int getSubtreeSize() {
+		return this.subtreeSize;
+	}
+
+	/**
+	 * Returns the index of this task in the list of children of its parent,
+	 * that is, the last move of its position, or -1 if it is the root of the
+	 * behaviour tree or if positions have not been computed yet (see
+	 * {@link #computePositions()}).
+	 * 
+	 * @return the index of this task in the list of children of its parent.
+	 */
+	public int getChildIndex() {
+		return this.childIndex;
 	}
 
 	/**
@@ -372,21 +515,32 @@ public abstract class ModelTask {
 	 * considered to be the root of the behaviour tree, so its position will be
 	 * set to an empty sequence of moves, with no offset, and the positions of
 	 * the tasks below it will be computed from it.
+	 * <p>
+	 * This method also computes the identifiers of the tasks (see
+	 * {@link #getId()}).
 	 */
 	public void computePositions() {
 		/* Assume this node is the root of the tree. */
-		this.position = new Position(new LinkedList<Integer>());
+		this.childIndex = -1;
+		recursiveComputePositions(this, this, EMPTY_PATH, 0);
+	}
 
-		/*
-		 * Set the position of all of the children of this task and recursively
-		 * compute the position of the rest of the tasks.
-		 */
-		for (int i = 0; i < this.children.size(); i++) {
-			ModelTask currentChild = this.children.get(i);
-			Position currentChildPos = new Position(this.position);
-			currentChildPos.addMove(i);
-			currentChild.position = currentChildPos;
-			recursiveComputePositions(currentChild);
+	/**
+	 * Computes the positions of all the tasks of the behaviour tree whose root
+	 * is this node (see {@link #computePositions()}), unless they have already
+	 * been computed with this node as the root. Therefore, positions are
+	 * computed only once per tree, no matter how many times this method is
+	 * called.
+	 * <p>
+	 * Positions are computed again if, since the last time they were computed
+	 * for this tree, they have been computed for another tree that shares
+	 * tasks with it (for instance, for one of its subtrees). However, changes
+	 * in the structure of the tree are not detected, so if the tree is modified,
+	 * {@link #computePositions()} must be called.
+	 */
+	public void computePositionsIfNeeded() {
+		if (this.positionsRoot != this) {
+			computePositions();
 		}
 	}
 
@@ -406,11 +560,10 @@ public abstract class ModelTask {
 	 *         ModelTask could be found.
 	 */
 	public ModelTask findNode(Position moves) {
-		List<Integer> m = moves.getMoves();
-
 		ModelTask currentTask = this;
 
-		for (Integer currentMove : m) {
+		for (int i = 0; i < moves.getNumMoves(); i++) {
+			int currentMove = moves.getMove(i);
 			List<ModelTask> children = currentTask.getChildren();
 
 			if (currentMove >= children.size()) {
@@ -424,23 +577,53 @@ public abstract class ModelTask {
 	}
 
 	/**
-	 * This method sets the positions of all tasks below <code>t</code> in the
-	 * tree.
+	 * This method sets the position and identifier of <code>t</code> and of
+	 * all tasks below it in the tree.
 	 * 
+	 * @param root
+	 *            the root of the behaviour tree.
 	 * @param t
-	 *            the task whose descendants will be computed their positions.
+	 *            the task whose position and identifier, as well as those of
+	 *            its descendants, will be computed.
+	 * @param path
+	 *            the sequence of moves from the root of the tree to
+	 *            <code>t</code>.
+	 * @param nextId
+	 *            the identifier for <code>t</code>.
+	 * @return the identifier for the task that comes after the subtree whose
+	 *         root is <code>t</code>.
 	 */
-	private void recursiveComputePositions(ModelTask t) {
+	private static int recursiveComputePositions(ModelTask root, ModelTask t, int[] path,
+			int nextId) {
+		t.id = nextId++;
+		t.path = path;
+		t.position = null;
+
+		/*
+		 * If the task belonged to a tree with a different root, the positions
+		 * of that tree are no longer valid.
+		 */
+		ModelTask previousRoot = t.positionsRoot;
+		if (previousRoot != null && previousRoot != root
+				&& previousRoot.positionsRoot == previousRoot) {
+			previousRoot.positionsRoot = null;
+		}
+		t.positionsRoot = root;
+
 		/*
 		 * Set the position of all of the children of this task and recursively
 		 * compute the position of the rest of the tasks.
 		 */
 		for (int i = 0; i < t.children.size(); i++) {
 			ModelTask currentChild = t.children.get(i);
-			Position currentChildPos = new Position(t.getPosition());
-			currentChildPos.addMove(i);
-			currentChild.position = currentChildPos;
-			recursiveComputePositions(currentChild);
+			int[] currentChildPath = Arrays.copyOf(path, path.length + 1);
+			currentChildPath[path.length] = i;
+			currentChild.childIndex = i;
+			nextId = recursiveComputePositions(root, currentChild, currentChildPath,
+					nextId);
 		}
+
+		t.subtreeSize = nextId - t.id;
+		return nextId;
 	}
 }
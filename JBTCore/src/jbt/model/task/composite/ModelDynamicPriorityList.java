@@ -33,11 +33,36 @@ import jbt.model.core.ModelTask;
  * terminated, and the new current active task is set to the former. In case
  * there are several tasks to the left of the current active task whose guards
  * are evaluated to true, the current active task will be the left most one.
+ * <p>
+ * Guards that take several ticks to be evaluated are ticked several times per
+ * tick of the ModelDynamicPriorityList. The work devoted to the guards in each
+ * tick may be limited by a budget, either in number of ticks of the guards (
+ * {@link #setGuardTickBudget(int)}) or in time (
+ * {@link #setGuardTimeBudget(long)}). Guards are evaluated in order of
+ * priority, so when the budget runs out, the evaluations of the guards with the
+ * lowest priority are carried over to the next tick.
+ * <p>
+ * A ModelDynamicPriorityList may also be <i>reactive</i> (see
+ * {@link #setReactive(boolean)}), in which case its guards are only evaluated
+ * again when some variable of the context that they depend on changes.
  * 
  * @author Ricardo Juan Palma Durán
  * 
  */
 public class ModelDynamicPriorityList extends ModelComposite {
+	/**
+	 * Maximum number of ticks of the guards per tick of the task, or 0 if
+	 * there is no limit.
+	 */
+	private int guardTickBudget;
+	/**
+	 * Maximum time spent evaluating the guards per tick of the task, in
+	 * nanoseconds, or 0 if there is no limit.
+	 */
+	private long guardTimeBudget;
+	/** Whether guards are only evaluated when their dependencies change. */
+	private boolean reactive;
+
 	/**
 	 * Creates a ModelDynamicPriorityList task with a guard, and a list of
 	 * children to run. A ModelDynamicPriorityList must have at least one child.
@@ -51,6 +76,99 @@ public class ModelDynamicPriorityList extends ModelComposite {
 		super(guard, children);
 	}
 
+	/**
+	 * Sets the maximum number of times that the guards of the children can be
+	 * ticked, altogether, per tick of the task. When the budget runs out, the
+	 * guards that have not finished are carried over to the next tick. At
+	 * least one guard tick is always performed, so that the evaluation makes
+	 * progress. Regardless of the budget, a guard is never ticked more than 20
+	 * times per tick of the task.
+	 * 
+	 * @param ticks
+	 *            the maximum number of guard ticks per tick of the task, or 0
+	 *            if there is no limit.
+	 */
+	public void setGuardTickBudget(int ticks) {
+		if (ticks < 0) {
+			throw new IllegalArgumentException("The guard tick budget cannot be negative");
+		}
+		this.guardTickBudget = ticks;
+	}
+
+	/**
+	 * Returns the maximum number of guard ticks per tick of the task, or 0 if
+	 * there is no limit.
+	 * 
+	 * @return the maximum number of guard ticks per tick of the task.
+	 */
+	public int getGuardTickBudget() {
+		return this.guardTickBudget;
+	}
+
+	/**
+	 * Sets the maximum time that can be spent evaluating the guards of the
+	 * children per tick of the task. When it has been exceeded, the guards
+	 * that have not finished are carried over to the next tick. Note that
+	 * guards are not interrupted, so a tick may take longer than its budget.
+	 * 
+	 * @param microseconds
+	 *            the maximum time per tick, in microseconds, or 0 if there is
+	 *            no limit.
+	 */
+	public void setGuardTimeBudget(long microseconds) {
+		if (microseconds < 0) {
+			throw new IllegalArgumentException("The guard time budget cannot be negative");
+		}
+		this.guardTimeBudget = microseconds * 1000;
+	}
+
+	/**
+	 * Returns the maximum time spent evaluating the guards per tick of the
+	 * task, in microseconds, or 0 if there is no limit.
+	 * 
+	 * @return the maximum time spent evaluating the guards per tick of the
+	 *         task, in microseconds.
+	 */
+	public long getGuardTimeBudget() {
+		return this.guardTimeBudget / 1000;
+	}
+
+	/**
+	 * Makes the task reactive or not. It is not reactive by default.
+	 * <p>
+	 * A reactive ModelDynamicPriorityList whose context is an
+	 * {@link jbt.execution.core.IVersionedContext} records the variables that
+	 * its guards read, and subscribes to their changes. Once it has selected a
+	 * child, it does not evaluate the guards again until one of the variables
+	 * read by the guards that decided the selection (that of the selected child
+	 * and those before it) changes. Until then, every tick just returns the
+	 * status of the active child. The guards themselves are memoized (see
+	 * {@link BTExecutor#setGuardMemoization(boolean)}), so when a variable
+	 * changes, only the guards that read it are evaluated again.
+	 * <p>
+	 * Therefore, the guards must only depend on the variables of the context.
+	 * If the context is not an IVersionedContext, this setting has no effect.
+	 * In order to observe the changes of the context as well, it must be
+	 * wrapped in a {@link jbt.execution.context.VersionedObservableContext}
+	 * rather than in an {@link jbt.execution.context.ObservableContext}.
+	 * 
+	 * @param reactive
+	 *            true to make the task reactive, and false otherwise.
+	 */
+	public void setReactive(boolean reactive) {
+		this.reactive = reactive;
+	}
+
+	/**
+	 * Returns true if the task is reactive (see {@link #setReactive(boolean)}),
+	 * and false otherwise.
+	 * 
+	 * @return true if the task is reactive, and false otherwise.
+	 */
+	public boolean isReactive() {
+		return this.reactive;
+	}
+
 	/**
 	 * Returns an ExecutionDynamicPriorityList that is able to run this
 	 * ModelDynamicPriorityList.
@@ -39,6 +39,11 @@ public class ModelSafeOutputContextManager extends ModelDecorator {
 	 * The list of output variables of the SafeOutputContext.
 	 */
 	private List<String> outputVariables;
+	/**
+	 * The slots of the output variables, which are interned when the
+	 * ModelSafeOutputContextManager is built.
+	 */
+	private int[] outputSlots;
 
 	/**
 	 * Constructor.
@@ -56,6 +61,7 @@ public class ModelSafeOutputContextManager extends ModelDecorator {
 			ModelTask child) {
 		super(guard, child);
 		this.outputVariables = outputVariables;
+		this.outputSlots = SafeOutputContext.internAll(outputVariables);
 	}
 
 	/**
@@ -78,4 +84,15 @@ public class ModelSafeOutputContextManager extends ModelDecorator {
 	public List<String> getOutputVariables() {
 		return this.outputVariables;
 	}
+
+	/**
+	 * Returns the slots of the output variables of the SafeOutputContext (see
+	 * {@link jbt.execution.core.SymbolTable}), in the same order as
+	 * {@link #getOutputVariables()}. The array must not be modified.
+	 * 
+	 * @return the slots of the output variables of the SafeOutputContext.
+	 */
+	public int[] getOutputSlots() {
+		return this.outputSlots;
+	}
 }
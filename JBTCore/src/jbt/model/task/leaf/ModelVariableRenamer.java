@@ -17,6 +17,7 @@ package jbt.model.task.leaf;
 
 import jbt.execution.core.BTExecutor;
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.SymbolTable;
 import jbt.execution.task.leaf.ExecutionVariableRenamer;
 import jbt.model.core.ModelTask;
 
@@ -32,6 +33,10 @@ public class ModelVariableRenamer extends ModelLeaf {
 	private String variableName;
 	/** The new name for the variable that must be renamed. */
 	private String newVariableName;
+	/** The slot of {@link #variableName}. */
+	private int variableSlot;
+	/** The slot of {@link #newVariableName}. */
+	private int newVariableSlot;
 
 	/**
 	 * Constructor.
@@ -47,6 +52,8 @@ public class ModelVariableRenamer extends ModelLeaf {
 		super(guard);
 		this.variableName = variableName;
 		this.newVariableName = newVariableName;
+		this.variableSlot = SymbolTable.intern(variableName);
+		this.newVariableSlot = SymbolTable.intern(newVariableName);
 	}
 
 	/**
@@ -77,4 +84,23 @@ public class ModelVariableRenamer extends ModelLeaf {
 	public String getNewVariableName() {
 		return this.newVariableName;
 	}
+
+	/**
+	 * Returns the slot of the variable to rename (see {@link SymbolTable}).
+	 * 
+	 * @return the slot of the variable to rename.
+	 */
+	public int getVariableSlot() {
+		return this.variableSlot;
+	}
+
+	/**
+	 * Returns the slot of the new name for the variable that must be renamed
+	 * (see {@link SymbolTable}).
+	 * 
+	 * @return the slot of the new name for the variable that must be renamed.
+	 */
+	public int getNewVariableSlot() {
+		return this.newVariableSlot;
+	}
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.model.task.leaf.condition;
+
+import jbt.execution.core.IContext;
+
+/**
+ * IGuardPredicate is the interface that conditions (subclasses of {@link ModelCondition}) can
+ * implement in order to be evaluated synchronously when they are used as guards.
+ * <p>
+ * Guards are usually evaluated by a BTExecutor of their own, which spawns and ticks the
+ * ExecutionTask of the guard until it finishes. Most guards, however, are just a condition that
+ * can be checked right away. When the guard of a child of a priority list (see
+ * {@link jbt.model.task.composite.ModelStaticPriorityList} and
+ * {@link jbt.model.task.composite.ModelDynamicPriorityList}) implements IGuardPredicate, the list
+ * calls {@link #evaluate(IContext)} instead of creating a BTExecutor for the guard. Guards that
+ * do not implement it, such as composite guards, are still evaluated through a BTExecutor.
+ * <p>
+ * The condition must still provide an ExecutionTask through
+ * {@link jbt.model.core.ModelTask#createExecutor(jbt.execution.core.BTExecutor, jbt.execution.core.ExecutionTask)}
+ * , which is used when it is not a guard. Both ways of evaluating the condition should give the
+ * same result.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IGuardPredicate {
+	/**
+	 * Evaluates the condition. Since a single ModelCondition may be the guard of several tasks
+	 * that run at the same time, this method should not keep any state between calls.
+	 * 
+	 * @param context
+	 *            the context where the condition is evaluated, that is, the context of the
+	 *            priority list.
+	 * @return true if the condition is met, and false otherwise.
+	 */
+	public boolean evaluate(IContext context);
+}
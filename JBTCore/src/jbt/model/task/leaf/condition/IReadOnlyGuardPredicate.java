@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.model.task.leaf.condition;
+
+/**
+ * IReadOnlyGuardPredicate is the interface of the guard predicates (see {@link IGuardPredicate})
+ * that have no side effects, that is, that neither modify the context nor the state of the game.
+ * <p>
+ * If the BTExecutor of a tree has a pool for evaluating guards (see
+ * {@link jbt.execution.core.BTExecutor#setGuardEvaluationPool(java.util.concurrent.Executor)}),
+ * the priority lists of the tree evaluate the guards that implement this interface concurrently.
+ * Therefore, {@link #evaluate(jbt.execution.core.IContext)} may be called from any thread, even
+ * at the same time as other read-only guards of the same list.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public interface IReadOnlyGuardPredicate extends IGuardPredicate {
+}
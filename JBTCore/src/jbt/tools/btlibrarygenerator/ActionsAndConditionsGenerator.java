@@ -67,7 +67,7 @@ import org.jdom.input.SAXBuilder;
  * The syntax of this program is as follows:
  * 
  * <pre>
- * ActionsAndConditionsGenerator -c configurationFile [-r relativePath] [-o]
+ * ActionsAndConditionsGenerator -c configurationFile [-r relativePath] [-o] [-g]
  * </pre>
  * 
  * Where <i>configurationFile</i> is an XML file that contains all the
@@ -115,6 +115,13 @@ import org.jdom.input.SAXBuilder;
  * file will not be produced in case there is a file with the same name in the
  * file system. If the option -o is specified, then generated output files will
  * overwrite any file in the file system whose name matches.
+ * <p>
+ * The -g option (standing for <i>guard predicates</i>) is also optional. If it
+ * is specified, generated model conditions implement
+ * {@link jbt.model.task.leaf.condition.IGuardPredicate}, so that they are
+ * evaluated synchronously when they are used as guards, and generated
+ * execution conditions contain the skeleton of the static method that they
+ * delegate to (see {@link ConditionsGenerator#ConditionsGenerator(boolean)}).
  * 
  * @author Ricardo Juan Palma Durán
  * 
@@ -147,6 +154,8 @@ public class ActionsAndConditionsGenerator {
 		CmdLineParser.Option configurationFileOption = parser.addStringOption('c', "config");
 		CmdLineParser.Option relativePathOption = parser.addStringOption('r', "relativepath");
 		CmdLineParser.Option overwriteOption = parser.addBooleanOption('o', "overwrite");
+		CmdLineParser.Option guardPredicatesOption = parser.addBooleanOption('g',
+				"guardpredicates");
 
 		try {
 			parser.parse(args);
@@ -170,6 +179,10 @@ public class ActionsAndConditionsGenerator {
 			/* Overwrite option. */
 			Boolean overwrite = (Boolean) parser.getOptionValue(overwriteOption, Boolean.FALSE);
 
+			/* Guard predicates option. */
+			Boolean guardPredicates = (Boolean) parser.getOptionValue(guardPredicatesOption,
+					Boolean.FALSE);
+
 			/* Open the configuration file and read file names. */
 			String configurationFileName;
 
@@ -405,7 +418,8 @@ public class ActionsAndConditionsGenerator {
 					}
 
 					/* Create condition classes. */
-					ConditionsGenerator conditionGenerator = new ConditionsGenerator();
+					ConditionsGenerator conditionGenerator = new ConditionsGenerator(
+							guardPredicates);
 
 					for (ParsedMethod currentCondition : conditions) {
 						try {
@@ -520,7 +534,7 @@ public class ActionsAndConditionsGenerator {
 	private static void printUsage() {
 		System.out.println("Syntax error. Usage: \n");
 		System.out
-				.println("ActionsAndConditionsGenerator -c configurationFile [-r relativePath] [-o]\n");
+				.println("ActionsAndConditionsGenerator -c configurationFile [-r relativePath] [-o] [-g]\n");
 		System.out.println("-\"configurationFile\" is the configuration file that includes all");
 		System.out.println("the information required to run the actions and conditions generator.");
 		System.out
@@ -534,6 +548,12 @@ public class ActionsAndConditionsGenerator {
 		System.out
 				.println("system with the same name as those generated by the application, they will not");
 		System.out.println("be overwritten. Otherwise, it will overwrite any existing file.");
+		System.out
+				.println("-\"g\" is an optional option. If specified, generated model conditions implement");
+		System.out
+				.println("IGuardPredicate, so they are evaluated synchronously when used as guards, and");
+		System.out
+				.println("generated execution conditions contain the static method they delegate to.");
 	}
 
 	/**
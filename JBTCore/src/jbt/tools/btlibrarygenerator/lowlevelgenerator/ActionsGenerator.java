@@ -50,9 +50,9 @@ public class ActionsGenerator {
 	 * The output class extends {@link ModelAction}, and it is the conceptual
 	 * representation of <code>action</code>.
 	 * <p>
-	 * The generated class contains two private fields for each parameter of
-	 * <code>action</code>. Given a parameter with name <code>pName</code>, two
-	 * class variables are created in the output class:
+	 * The generated class contains three private fields for each parameter of
+	 * <code>action</code>. Given a parameter with name <code>pName</code>,
+	 * three class variables are created in the output class:
 	 * <ul>
 	 * <li> <code>pName</code>. The type of this variable will be a Java type
 	 * compatible with that of the MMPM definition of <code>pName</code> in
@@ -64,6 +64,10 @@ public class ActionsGenerator {
 	 * variable <code>pName</code> can be located in the context. In case a
 	 * value is not specified for the variable, the task's context must be
 	 * searched for a variable whose name is <code>pNameLoc</code>.
+	 * <li> <code>pNameSlot</code>. This is the slot of <code>pNameLoc</code>
+	 * in the {@link jbt.execution.core.SymbolTable}, which is interned when an
+	 * instance of the output class is constructed, so that the names of the
+	 * variables are interned when the tree is loaded.
 	 * </ul>
 	 * 
 	 * The
@@ -73,15 +77,16 @@ public class ActionsGenerator {
 	 * ExecutionTask's name is <code>action</code>'s name too, and that the
 	 * class is located in the Java package
 	 * <code>executionActionPackageName</code>. The corresponding
-	 * ExecutionAction receives in its constructor all the private class
-	 * variables of the output class, in the same order as they are declared in
-	 * the output class. In a similar way,
+	 * ExecutionAction receives in its constructor <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared in the output class. In a similar way,
 	 * {@link #getExecutionActionClass(ParsedAction)} can be used to construct a
 	 * String expression for <code>action</code>.
 	 * <p>
 	 * The first argument of the constructor of the output class is the guard.
-	 * The rest of them are values for each private class variable of the output
-	 * class, in the same order as they are declared.
+	 * The rest of them are values for <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared.
 	 * 
 	 * @param action
 	 *            the action whose representation as a ModelAction is going to
@@ -133,9 +138,9 @@ public class ActionsGenerator {
 	 * The output class extends {@link ExecutionAction}, and it defines how
 	 * <code>action</code> actually works.
 	 * <p>
-	 * The generated class contains two private fields for each parameter of
-	 * <code>action</code>. Given a parameter with name <code>pName</code>, two
-	 * class variables are created in the output class:
+	 * The generated class contains three private fields for each parameter of
+	 * <code>action</code>. Given a parameter with name <code>pName</code>,
+	 * three class variables are created in the output class:
 	 * <ul>
 	 * <li> <code>pName</code>. The type of this variable will be a Java type
 	 * compatible with that of the MMPM definition of <code>pName</code> in
@@ -147,6 +152,10 @@ public class ActionsGenerator {
 	 * variable <code>pName</code> can be located in the context. In case a
 	 * value is not specified for the variable, the task's context must be
 	 * searched for a variable whose name is <code>pNameLoc</code>.
+	 * <li> <code>pNameSlot</code>. This is the slot of <code>pNameLoc</code>
+	 * in the {@link jbt.execution.core.SymbolTable}, through which the context
+	 * is searched. It is not received in the constructor, but resolved the
+	 * first time that it is needed.
 	 * </ul>
 	 * <p>
 	 * For all of <code>action</code>'s parameters, a <i>getter</i> method is
@@ -163,8 +172,9 @@ public class ActionsGenerator {
 	 * <p>
 	 * The first argument of the constructor of the output class is its
 	 * corresponding ModelAction. The second one is its corresponding
-	 * BTExecutor. The rest of them are values for each private class variable
-	 * of the output class, in the same order as they are declared.
+	 * BTExecutor. The rest of them are values for <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared.
 	 * 
 	 * @param action
 	 *            the action whose representation as an ExecutionAction is going
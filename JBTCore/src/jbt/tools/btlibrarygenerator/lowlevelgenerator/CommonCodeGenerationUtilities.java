@@ -22,6 +22,8 @@ import jbt.execution.core.ExecutionTask;
 import jbt.execution.core.BTExecutor.BTExecutorList;
 import jbt.execution.core.ExecutionTask.Status;
 import jbt.execution.core.ITaskState;
+import jbt.execution.core.PrimitiveVariables;
+import jbt.execution.core.SymbolTable;
 import jbt.execution.task.leaf.action.ExecutionAction;
 import jbt.execution.task.leaf.condition.ExecutionCondition;
 import jbt.model.core.ModelTask;
@@ -51,6 +53,12 @@ public class CommonCodeGenerationUtilities {
 	 * store the location in the context of the original variable.
 	 */
 	static final String PARAM_LOCATION_SUFFIX = "Loc";
+	/**
+	 * Suffix that is placed at the end of the class's variables to represent the variable that will
+	 * store the slot (see {@link SymbolTable}) of the location in the context of the original
+	 * variable.
+	 */
+	static final String PARAM_SLOT_SUFFIX = "Slot";
 
 	/**
 	 * Given a list of class "parameters", this method returns a String representation of the
@@ -78,6 +86,11 @@ public class CommonCodeGenerationUtilities {
 					+ "\" in case its value is not specified at construction time. null otherwise.*/";
 			result += "private " + String.class.getCanonicalName() + " " + currentParam.getSecond()
 					+ PARAM_LOCATION_SUFFIX + ";" + "\n";
+			result += "/**Slot of the location of the parameter \""
+					+ currentParam.getSecond()
+					+ "\" in case its value is not specified at construction time and it has already been resolved. -1 otherwise.*/";
+			result += "private int " + currentParam.getSecond() + PARAM_SLOT_SUFFIX + " = "
+					+ SymbolTable.class.getCanonicalName() + ".NO_SLOT;" + "\n";
 		}
 
 		if (params.size() != 0) {
@@ -100,7 +113,9 @@ public class CommonCodeGenerationUtilities {
 	 * a value is not specified for it.
 	 * <p>
 	 * The constructor assigns the value of every input argument to its corresponding class
-	 * variable.
+	 * variable. It also interns every location in the {@link SymbolTable}, storing its slot in
+	 * <code>pNameSlot</code>, so that the names of the variables are interned when the tree is
+	 * loaded.
 	 * 
 	 * @param modelClassName
 	 *            the name of the ModelAction or ModelCondition class whose constructor is going to
@@ -156,6 +171,11 @@ public class CommonCodeGenerationUtilities {
 			result += "this." + currentParam.getSecond() + " = " + currentParam.getSecond() + ";\n";
 			result += "this." + currentParam.getSecond() + PARAM_LOCATION_SUFFIX + " = "
 					+ currentParam.getSecond() + PARAM_LOCATION_SUFFIX + ";\n";
+			result += "this." + currentParam.getSecond() + PARAM_SLOT_SUFFIX + " = "
+					+ currentParam.getSecond() + PARAM_LOCATION_SUFFIX + " == null ? "
+					+ SymbolTable.class.getCanonicalName() + ".NO_SLOT : "
+					+ SymbolTable.class.getCanonicalName() + ".intern("
+					+ currentParam.getSecond() + PARAM_LOCATION_SUFFIX + ");\n";
 		}
 
 		result += "}";
@@ -176,7 +196,9 @@ public class CommonCodeGenerationUtilities {
 	 * a value is not specified for it.
 	 * <p>
 	 * The constructor assigns the value of every input argument to its corresponding class
-	 * variable.
+	 * variable. The slot of <code>pNameLoc</code> in the {@link SymbolTable} is not received, so
+	 * that the signature of the constructor does not depend on it. Instead, it is resolved by the
+	 * getters of the class the first time that they need it (see {@link #getGetter(Pair)}).
 	 * <p>
 	 * <code>modelClassPackageName</code> is the name of the package that contains the corresponding
 	 * model class (the name of the corresponding model class is assumed to be
@@ -333,8 +355,13 @@ public class CommonCodeGenerationUtilities {
 	 * <p>
 	 * Given a parameter of name <code>pName</code>, the getter function has as a name
 	 * <code>getPName()</code>. If the variable to get is not null, the getter method returns the
-	 * variable. Otherwise, it searches for the variable in the context by using the class private
-	 * variable <code>getPNameLoc</code>.
+	 * variable. Otherwise, it searches for the variable in the context by using the slot of the
+	 * class private variable <code>pNameLoc</code>, which is stored in <code>pNameSlot</code> (see
+	 * {@link SymbolTable#getVariable(jbt.execution.core.IContext, int)}). The slot is interned the
+	 * first time that it is needed (see {@link #getSlotResolution(Pair)}).
+	 * <p>
+	 * Parameters whose class wraps a primitive type also get the getter described in
+	 * {@link #getPrimitiveGetter(Pair)}.
 	 * 
 	 * @param params
 	 *            the set of parameters from which getters are going to be obtained.
@@ -346,6 +373,10 @@ public class CommonCodeGenerationUtilities {
 		for (Pair<Class, String> currentParam : params) {
 			String currentGetter = getGetter(currentParam);
 			result += currentGetter + "\n\n";
+			String currentPrimitiveGetter = getPrimitiveGetter(currentParam);
+			if (currentPrimitiveGetter != null) {
+				result += currentPrimitiveGetter + "\n\n";
+			}
 		}
 
 		if (params.size() != 0) {
@@ -365,8 +396,10 @@ public class CommonCodeGenerationUtilities {
 	 * <p>
 	 * Given a parameter of name <code>pName</code>, the getter function has as a name
 	 * <code>getPName()</code>. If the variable to get is not null, the getter method returns the
-	 * variable. Otherwise, it searches for the variable in the context by using the class private
-	 * variable <code>getPNameLoc</code>.
+	 * variable. Otherwise, it searches for the variable in the context by using the slot of the
+	 * class private variable <code>pNameLoc</code>, which is stored in <code>pNameSlot</code> (see
+	 * {@link SymbolTable#getVariable(jbt.execution.core.IContext, int)}). The slot is interned the
+	 * first time that it is needed (see {@link #getSlotResolution(Pair)}).
 	 * 
 	 * @param param
 	 *            the parameter from which the getter method is obtained.
@@ -386,15 +419,105 @@ public class CommonCodeGenerationUtilities {
 		result += "return this." + param.getSecond() + ";\n";
 		result += "}\n";
 		result += "else{\n";
+		result += getSlotResolution(param);
 		result += "return (" + param.getFirst().getCanonicalName() + ")"
-				+ "this.getContext().getVariable(" + "this." + param.getSecond()
-				+ PARAM_LOCATION_SUFFIX + ");\n";
+				+ SymbolTable.class.getCanonicalName() + ".getVariable(this.getContext(), "
+				+ "this." + param.getSecond() + PARAM_SLOT_SUFFIX + ");\n";
 		result += "}\n";
 		result += "}";
 
 		return result;
 	}
 
+	/**
+	 * Given a parameter whose class wraps a primitive type (Integer, Float, Double or Boolean),
+	 * this method returns a getter method that reads it without boxing. This getter must be used
+	 * by a class extending {@link ExecutionTask}, since the implementation of such getter make use
+	 * of the context of the task.
+	 * <p>
+	 * Given a parameter of name <code>pName</code> and type <code>Integer</code>, the getter
+	 * function is <code>int getPName(int defaultValue)</code>. If the variable to get is not null,
+	 * the getter method returns its value. Otherwise, it reads the variable from the context
+	 * through {@link PrimitiveVariables}, using the slot stored in <code>pNameSlot</code> (see
+	 * {@link #getSlotResolution(Pair)}), and returns <code>defaultValue</code> if it cannot be
+	 * found.
+	 * 
+	 * @param param
+	 *            the parameter from which the getter method is obtained.
+	 * @return a String representation of the getter for the parameter <code>param</code>, or null
+	 *         if its class does not wrap a primitive type.
+	 */
+	static String getPrimitiveGetter(Pair<Class, String> param) {
+		String primitiveType;
+		String accessor;
+
+		if (param.getFirst() == Integer.class) {
+			primitiveType = "int";
+			accessor = "getInt";
+		} else if (param.getFirst() == Float.class) {
+			primitiveType = "float";
+			accessor = "getFloat";
+		} else if (param.getFirst() == Double.class) {
+			primitiveType = "double";
+			accessor = "getDouble";
+		} else if (param.getFirst() == Boolean.class) {
+			primitiveType = "boolean";
+			accessor = "getBoolean";
+		} else {
+			return null;
+		}
+
+		String result = new String();
+
+		result += "/** Returns the value of the parameter \""
+				+ param.getSecond()
+				+ "\" without boxing it, or defaultValue in case it has not been specified or it cannot be found in the context. */";
+
+		result += "public " + primitiveType + " get"
+				+ Character.toUpperCase(param.getSecond().charAt(0))
+				+ param.getSecond().substring(1) + "(" + primitiveType + " defaultValue){\n";
+		result += "if(this." + param.getSecond() + " != null){\n";
+		result += "return this." + param.getSecond() + ";\n";
+		result += "}\n";
+		result += "else{\n";
+		result += getSlotResolution(param);
+		result += "return " + PrimitiveVariables.class.getCanonicalName() + "." + accessor
+				+ "(this.getContext(), this." + param.getSecond() + PARAM_SLOT_SUFFIX
+				+ ", defaultValue);\n";
+		result += "}\n";
+		result += "}";
+
+		return result;
+	}
+
+	/**
+	 * Given a parameter of name <code>pName</code>, this method returns the statement that resolves
+	 * the slot of <code>pNameLoc</code> in the {@link SymbolTable}, storing it in
+	 * <code>pNameSlot</code>, unless it has already been resolved.
+	 * <p>
+	 * Since the constructor of the model class interns <code>pNameLoc</code>, the statement does
+	 * not make the SymbolTable grow. It is only run once per instance of the ExecutionTask, so the
+	 * getters read the variable through its slot afterwards.
+	 * 
+	 * @param param
+	 *            the parameter whose slot is resolved.
+	 * @return a String representation of the statement that resolves the slot of
+	 *         <code>param</code>.
+	 */
+	static String getSlotResolution(Pair<Class, String> param) {
+		String result = new String();
+
+		result += "if(this." + param.getSecond() + PARAM_SLOT_SUFFIX + " == "
+				+ SymbolTable.class.getCanonicalName() + ".NO_SLOT && this." + param.getSecond()
+				+ PARAM_LOCATION_SUFFIX + " != null){\n";
+		result += "this." + param.getSecond() + PARAM_SLOT_SUFFIX + " = "
+				+ SymbolTable.class.getCanonicalName() + ".intern(this." + param.getSecond()
+				+ PARAM_LOCATION_SUFFIX + ");\n";
+		result += "}\n";
+
+		return result;
+	}
+
 	/**
 	 * Returns a String representation of the declaration of the abstract methods of the
 	 * {@link ExecutionTask} class. The String is tabulated one unit.
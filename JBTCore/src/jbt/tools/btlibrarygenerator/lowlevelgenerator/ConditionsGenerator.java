@@ -19,8 +19,11 @@ import java.util.LinkedList;
 import java.util.List;
 
 import jbt.execution.core.ExecutionTask;
+import jbt.execution.core.IContext;
+import jbt.execution.core.SymbolTable;
 import jbt.execution.task.leaf.condition.ExecutionCondition;
 import jbt.model.core.ModelTask;
+import jbt.model.task.leaf.condition.IGuardPredicate;
 import jbt.model.task.leaf.condition.ModelCondition;
 import jbt.tools.btlibrarygenerator.util.Util;
 import jbt.util.Pair;
@@ -36,6 +39,10 @@ import gatech.mmpm.tools.parseddomain.ParsedMethod;
  * reality, this class does not produce instances of ModelCondition and
  * ExecutionCondition, but String representations of the Java implementation of
  * those classes.
+ * <p>
+ * Optionally, the generated ModelCondition may also implement
+ * {@link IGuardPredicate}, so that it is evaluated synchronously when it is
+ * used as a guard (see {@link #ConditionsGenerator(boolean)}).
  * 
  * @see ActionsGenerator
  * 
@@ -43,6 +50,47 @@ import gatech.mmpm.tools.parseddomain.ParsedMethod;
  * 
  */
 public class ConditionsGenerator {
+	/**
+	 * Name of the static method of the generated ExecutionCondition that
+	 * evaluates the condition when it is used as a guard.
+	 */
+	private static final String EVALUATE_METHOD_NAME = "evaluate";
+
+	/**
+	 * Flag indicating whether generated ModelConditions implement
+	 * {@link IGuardPredicate}.
+	 */
+	private final boolean guardPredicates;
+
+	/**
+	 * Creates a ConditionsGenerator whose generated ModelConditions do not
+	 * implement {@link IGuardPredicate}.
+	 */
+	public ConditionsGenerator() {
+		this(false);
+	}
+
+	/**
+	 * Creates a ConditionsGenerator.
+	 * <p>
+	 * If <code>guardPredicates</code> is true, generated ModelConditions
+	 * implement {@link IGuardPredicate}, and generated ExecutionConditions
+	 * contain a static <code>evaluate()</code> method that
+	 * {@link IGuardPredicate#evaluate(IContext)} delegates to. That method
+	 * receives the context and the value of each parameter of the condition, and
+	 * its implementation must be completed so that it gives the same result as
+	 * the ExecutionCondition. Since hand-written ExecutionConditions that were
+	 * generated without this option lack that method, this option should only
+	 * be used when the ExecutionConditions are generated too.
+	 * 
+	 * @param guardPredicates
+	 *            true if generated ModelConditions must implement
+	 *            IGuardPredicate, and false otherwise.
+	 */
+	public ConditionsGenerator(boolean guardPredicates) {
+		this.guardPredicates = guardPredicates;
+	}
+
 	/**
 	 * This method is used for creating a String representation of the
 	 * definition of a Java class for <code>condition</code>.
@@ -50,9 +98,9 @@ public class ConditionsGenerator {
 	 * The output class extends {@link ModelCondition}, and it is the conceptual
 	 * representation of <code>condition</code>.
 	 * <p>
-	 * The generated class contains two private fields for each parameter of
+	 * The generated class contains three private fields for each parameter of
 	 * <code>condition</code>. Given a parameter with name <code>pName</code>,
-	 * two class variables are created in the output class:
+	 * three class variables are created in the output class:
 	 * <ul>
 	 * <li> <code>pName</code>. The type of this variable will be a Java type
 	 * compatible with that of the MMPM definition of <code>pName</code> in
@@ -64,6 +112,10 @@ public class ConditionsGenerator {
 	 * variable <code>pName</code> can be located in the context. In case a
 	 * value is not specified for the variable, the task's context must be
 	 * searched for a variable whose name is <code>pNameLoc</code>.
+	 * <li> <code>pNameSlot</code>. This is the slot of <code>pNameLoc</code>
+	 * in the {@link jbt.execution.core.SymbolTable}, which is interned when an
+	 * instance of the output class is constructed, so that the names of the
+	 * variables are interned when the tree is loaded.
 	 * </ul>
 	 * 
 	 * The
@@ -73,15 +125,21 @@ public class ConditionsGenerator {
 	 * ExecutionCondition's name is <code>condition</code>'s name too, and that
 	 * the class is located in the Java package
 	 * <code>executionConditionPackageName</code>. The corresponding
-	 * ExecutionCondition receives in its constructor all the private class
-	 * variables of the output class, in the same order as they are declared in
-	 * the output class. In a similar way,
+	 * ExecutionCondition receives in its constructor <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared in the output class. In a similar way,
 	 * {@link #getExecutionConditionClass(ParsedMethod)} can be used to
 	 * construct a String expression for <code>condition</code>.
 	 * <p>
 	 * The first argument of the constructor of the output class is the guard.
-	 * The rest of them are values for each private class variable of the output
-	 * class, in the same order as they are declared.
+	 * The rest of them are values for <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared.
+	 * <p>
+	 * If this ConditionsGenerator was created with guard predicates enabled,
+	 * the output class also implements {@link IGuardPredicate}, by calling the
+	 * static <code>evaluate()</code> method of the corresponding
+	 * ExecutionCondition with the value of each parameter.
 	 * 
 	 * @param condition
 	 *            the condition whose representation as a ModelCondition is
@@ -123,6 +181,12 @@ public class ConditionsGenerator {
 		result += CommonCodeGenerationUtilities.getCreateExecutorMethod(condition.getName(),
 				executionConditionPackageName, params) + "\n";
 
+		/* "evaluate()" method. */
+		if (this.guardPredicates) {
+			result += "\n" + getGuardPredicateMethod(condition.getName(),
+					executionConditionPackageName, params) + "\n";
+		}
+
 		result += "}";
 
 		return result;
@@ -135,9 +199,9 @@ public class ConditionsGenerator {
 	 * The output class extends {@link ExecutionCondition}, and it defines how
 	 * <code>condition</code> actually works.
 	 * <p>
-	 * The generated class contains two private fields for each parameter of
+	 * The generated class contains three private fields for each parameter of
 	 * <code>condition</code>. Given a parameter with name <code>pName</code>,
-	 * two class variables are created in the output class:
+	 * three class variables are created in the output class:
 	 * <ul>
 	 * <li> <code>pName</code>. The type of this variable will be a Java type
 	 * compatible with that of the MMPM definition of <code>pName</code> in
@@ -149,6 +213,10 @@ public class ConditionsGenerator {
 	 * variable <code>pName</code> can be located in the context. In case a
 	 * value is not specified for the variable, the task's context must be
 	 * searched for a variable whose name is <code>pNameLoc</code>.
+	 * <li> <code>pNameSlot</code>. This is the slot of <code>pNameLoc</code>
+	 * in the {@link jbt.execution.core.SymbolTable}, through which the context
+	 * is searched. It is not received in the constructor, but resolved the
+	 * first time that it is needed.
 	 * </ul>
 	 * <p>
 	 * For all of <code>condition</code>'s parameters, a <i>getter</i> method is
@@ -162,12 +230,16 @@ public class ConditionsGenerator {
 	 * This method also constructs an empty skeleton for all abstract methods of
 	 * ExecutionCondition. The getter methods can be used in the implementation
 	 * of those abstract methods in order to retrieve the condition's
-	 * parameters.
+	 * parameters. If this ConditionsGenerator was created with guard
+	 * predicates enabled, an empty skeleton of the static
+	 * <code>evaluate()</code> method that the ModelCondition calls when it is
+	 * used as a guard is constructed too.
 	 * <p>
 	 * The first argument of the constructor of the output class is its
 	 * corresponding ModelContion. The second one is its corresponding
-	 * BTExecutor. The rest of them are values for each private class variable
-	 * of the output class, in the same order as they are declared.
+	 * BTExecutor. The rest of them are values for <code>pName</code> and
+	 * <code>pNameLoc</code> for each parameter, in the same order as they are
+	 * declared.
 	 * 
 	 * @param condition
 	 *            the condition whose representation as an ExecutionCondition is
@@ -206,18 +278,93 @@ public class ConditionsGenerator {
 		/* Abstract methods. */
 		result += CommonCodeGenerationUtilities.getAbstractMethods();
 
+		/* Evaluation of the condition as a guard. */
+		if (this.guardPredicates) {
+			result += "\n" + getEvaluateMethod(params) + "\n";
+		}
+
 		result += "}";
 
 		return result;
 	}
 
 	private String getModelConditionClassHeader(ParsedMethod condition) {
-		return "public class " + condition.getName() + " extends "
-				+ ModelCondition.class.getCanonicalName() + "{";
+		String result = "public class " + condition.getName() + " extends "
+				+ ModelCondition.class.getCanonicalName();
+		if (this.guardPredicates) {
+			result += " implements " + IGuardPredicate.class.getCanonicalName();
+		}
+		return result + "{";
 	}
 
 	private String getExecutionConditionClassHeader(ParsedMethod condition) {
 		return "public class " + condition.getName() + " extends "
 				+ ExecutionCondition.class.getCanonicalName() + "{";
 	}
+
+	/**
+	 * Creates a String expression for the
+	 * {@link IGuardPredicate#evaluate(IContext)} method of a ModelCondition.
+	 * The method calls the static <code>evaluate()</code> method of the
+	 * ExecutionCondition <code>executionClassName</code>, placed in the package
+	 * <code>executionClassPackageName</code>, passing it the context and the
+	 * value of each parameter in <code>params</code>. The value of a parameter
+	 * is that specified at construction time, or otherwise the one found in the
+	 * context by means of its slot.
+	 */
+	private static String getGuardPredicateMethod(String executionClassName,
+			String executionClassPackageName, List<Pair<Class, String>> params) {
+		String result = new String();
+
+		result += "/** Evaluates this condition when it is used as a guard, by calling "
+				+ executionClassPackageName + "." + executionClassName + "."
+				+ EVALUATE_METHOD_NAME + "(). */";
+
+		result += "public boolean " + EVALUATE_METHOD_NAME + "("
+				+ IContext.class.getCanonicalName() + " context){\n";
+
+		result += "return " + executionClassPackageName + "." + executionClassName + "."
+				+ EVALUATE_METHOD_NAME + "(context";
+
+		for (Pair<Class, String> currentParam : params) {
+			String type = currentParam.getFirst().getCanonicalName();
+			String name = currentParam.getSecond();
+			result += ", this." + name + " != null ? this." + name + " : (" + type + ")"
+					+ SymbolTable.class.getCanonicalName() + ".getVariable(context, this."
+					+ name + CommonCodeGenerationUtilities.PARAM_SLOT_SUFFIX + ")";
+		}
+
+		result += ");\n";
+		result += "}";
+
+		return result;
+	}
+
+	/**
+	 * Creates a String expression for the skeleton of the static
+	 * <code>evaluate()</code> method of an ExecutionCondition, which receives
+	 * the context and the value of each parameter in <code>params</code>.
+	 */
+	private static String getEvaluateMethod(List<Pair<Class, String>> params) {
+		String result = new String();
+
+		result += "/** Evaluates the condition when it is used as a guard (see "
+				+ IGuardPredicate.class.getCanonicalName()
+				+ "). It receives the value of each parameter, and it must give the same result as this task. */";
+
+		result += "public static boolean " + EVALUATE_METHOD_NAME + "("
+				+ IContext.class.getCanonicalName() + " context";
+
+		for (Pair<Class, String> currentParam : params) {
+			result += ", " + currentParam.getFirst().getCanonicalName() + " "
+					+ currentParam.getSecond();
+		}
+
+		result += "){\n";
+		result += CommonCodeGenerationUtilities.TODO_MESSAGE + "\n";
+		result += "return false;\n";
+		result += "}";
+
+		return result;
+	}
 }
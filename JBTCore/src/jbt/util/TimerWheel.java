@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.util;
+
+/**
+ * TimerWheel is a hierarchical timing wheel: a structure that keeps a set of timers, each one with
+ * a deadline, and that efficiently finds out which of them have expired.
+ * <p>
+ * Time is measured in nanoseconds, as returned by {@link System#nanoTime()}, and divided into
+ * <i>ticks</i> of a fixed resolution. The wheel has several levels of 64 slots each: timers that
+ * expire within the next 64 ticks are kept in the slot of the first level that corresponds to
+ * their tick; timers that expire later are kept in coarser levels, and they are moved down as time
+ * goes by. Therefore, scheduling and cancelling a timer take constant time. Advancing the wheel
+ * jumps straight to the next slot that holds any timer, so it takes time proportional to the
+ * number of non-empty slots visited plus the number of timers that expire, regardless of the
+ * number of ticks elapsed and of the total number of timers. Moreover, the wheel keeps a lower
+ * bound of the earliest deadline, so advancing it before that time does nothing at all. Timers
+ * whose deadline is further than the range of the wheel are kept in the last level until they
+ * get within range.
+ * <p>
+ * Timers are represented by {@link Timer} objects, which can be reused once they have expired or
+ * been cancelled, so using a TimerWheel does not need to allocate any object.
+ * <p>
+ * A TimerWheel is not thread-safe.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class TimerWheel {
+	/** Number of bits of the index of a slot within a level. */
+	private static final int SLOT_BITS = 6;
+	/** Number of slots per level. */
+	private static final int NUM_SLOTS = 1 << SLOT_BITS;
+	/** Mask for the index of a slot within a level. */
+	private static final int SLOT_MASK = NUM_SLOTS - 1;
+	/** Number of levels. */
+	private static final int NUM_LEVELS = 4;
+	/** Number of ticks covered by the wheel. */
+	private static final long RANGE = 1L << (SLOT_BITS * NUM_LEVELS);
+	/** Default resolution, in nanoseconds (one millisecond). */
+	public static final long DEFAULT_RESOLUTION = 1000000;
+
+	/**
+	 * A Timer is an entry of a TimerWheel. Subclasses define what to do when it expires by
+	 * implementing {@link #expired()}.
+	 * 
+	 * @author Ricardo Juan Palma Durán
+	 * 
+	 */
+	public static abstract class Timer {
+		/** Deadline of the timer, in nanoseconds. */
+		private long deadline;
+		/** Tick when the timer expires, relative to the origin of the wheel. */
+		private long tick;
+		/** Previous timer in the same slot. */
+		private Timer previous;
+		/** Next timer in the same slot. */
+		private Timer next;
+		/** Slot where the timer is, or -1 if it is not scheduled. */
+		private int slot = -1;
+		/** The wheel the timer is scheduled in, or null. */
+		private TimerWheel wheel;
+
+		/**
+		 * Returns true if the timer is scheduled, that is, if it has neither expired nor been
+		 * cancelled since it was scheduled.
+		 * 
+		 * @return true if the timer is scheduled, and false otherwise.
+		 */
+		public final boolean isScheduled() {
+			return this.wheel != null;
+		}
+
+		/**
+		 * Returns the deadline of the timer, in nanoseconds.
+		 * 
+		 * @return the deadline of the timer, in nanoseconds.
+		 */
+		public final long getDeadline() {
+			return this.deadline;
+		}
+
+		/**
+		 * Method called by {@link TimerWheel#advance(long)} when the timer expires. By then, the
+		 * timer is no longer scheduled, so it may be scheduled again.
+		 */
+		protected abstract void expired();
+	}
+
+	/** Resolution of the wheel, in nanoseconds per tick. */
+	private final long resolution;
+	/** Time corresponding to tick 0, in nanoseconds. */
+	private final long origin;
+	/**
+	 * Current tick. All the timers of previous ticks have expired, and the slots of the coarser
+	 * levels have been moved down up to this tick.
+	 */
+	private long currentTick;
+	/** First timer of each slot. Slot <i>s</i> of level <i>l</i> is at <i>l</i> * 64 + <i>s</i>. */
+	private final Timer[] slots;
+	/** Bit <i>s</i> of element <i>l</i> is set if slot <i>s</i> of level <i>l</i> is not empty. */
+	private final long[] occupiedSlots;
+	/** Number of scheduled timers. */
+	private int size;
+	/**
+	 * Lower bound of the deadlines of the scheduled timers, or {@link Long#MAX_VALUE} if there is
+	 * no timer. No timer can expire before this time.
+	 */
+	private long nextDeadline;
+	/**
+	 * Flag indicating whether the wheel is notifying expired timers. Timers scheduled meanwhile
+	 * are placed no earlier than the next tick, so that they are not found again by the ongoing
+	 * expiration.
+	 */
+	private boolean expiring;
+
+	/**
+	 * Creates a TimerWheel with the default resolution (one millisecond).
+	 */
+	public TimerWheel() {
+		this(DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * Creates a TimerWheel with a given resolution. Timers never expire before their deadline, but
+	 * they may be detected as expired up to one tick later than it, depending on how often the
+	 * wheel is advanced.
+	 * 
+	 * @param resolution
+	 *            the duration of a tick, in nanoseconds.
+	 */
+	public TimerWheel(long resolution) {
+		if (resolution <= 0) {
+			throw new IllegalArgumentException("The resolution must be positive");
+		}
+
+		this.resolution = resolution;
+		this.origin = System.nanoTime();
+		this.currentTick = 0;
+		this.slots = new Timer[NUM_LEVELS * NUM_SLOTS];
+		this.occupiedSlots = new long[NUM_LEVELS];
+		this.size = 0;
+		this.nextDeadline = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the number of scheduled timers.
+	 * 
+	 * @return the number of scheduled timers.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if there is no scheduled timer.
+	 * 
+	 * @return true if there is no scheduled timer, and false otherwise.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Schedules a timer so that it expires at a given time. If it was already scheduled, it is
+	 * rescheduled. If the timer is scheduled from within {@link Timer#expired()} with a deadline
+	 * that has already passed, it expires in the next tick.
+	 * 
+	 * @param timer
+	 *            the timer to schedule.
+	 * @param deadline
+	 *            the time when the timer expires, in nanoseconds, as returned by
+	 *            {@link System#nanoTime()}.
+	 */
+	public void schedule(Timer timer, long deadline) {
+		if (timer.wheel != null) {
+			timer.wheel.cancel(timer);
+		}
+
+		timer.deadline = deadline;
+		timer.tick = Math.max(toTick(deadline), this.expiring ? this.currentTick + 1
+				: this.currentTick);
+		timer.wheel = this;
+		this.size++;
+		place(timer);
+
+		if (deadline < this.nextDeadline) {
+			this.nextDeadline = deadline;
+		}
+	}
+
+	/**
+	 * Cancels a timer, so that it does not expire. Nothing is done if it is not scheduled.
+	 * 
+	 * @param timer
+	 *            the timer to cancel.
+	 */
+	public void cancel(Timer timer) {
+		if (timer.wheel != this) {
+			return;
+		}
+
+		unlink(timer);
+		timer.wheel = null;
+		this.size--;
+	}
+
+	/**
+	 * Advances the wheel up to time <code>now</code>, calling {@link Timer#expired()} on every timer
+	 * whose deadline is not after <code>now</code>. Timers are unscheduled before being notified,
+	 * so they can be scheduled again from within <code>expired()</code>.
+	 * 
+	 * @param now
+	 *            the current time, in nanoseconds, as returned by {@link System#nanoTime()}.
+	 */
+	public void advance(long now) {
+		if (this.size == 0) {
+			this.currentTick = Math.max(this.currentTick, toTick(now));
+			this.nextDeadline = Long.MAX_VALUE;
+			return;
+		}
+
+		if (now < this.nextDeadline) {
+			return;
+		}
+
+		long nowTick = toTick(now);
+
+		this.expiring = true;
+		try {
+			/*
+			 * All the timers of the ticks before the current one expire. Ticks whose slots are all
+			 * empty are skipped.
+			 */
+			while (this.currentTick < nowTick) {
+				int slot = (int) (this.currentTick & SLOT_MASK);
+				Timer timer;
+				while ((timer = this.slots[slot]) != null) {
+					cancel(timer);
+					timer.expired();
+				}
+
+				this.currentTick = Math.min(nextEventTick(), nowTick);
+				cascade();
+			}
+
+			/*
+			 * Timers of the current tick expire only if their deadline has passed. The earliest
+			 * deadline of those that remain is a bound for the next call.
+			 */
+			long earliest = Long.MAX_VALUE;
+			Timer timer = this.slots[(int) (this.currentTick & SLOT_MASK)];
+			while (timer != null) {
+				Timer next = timer.next;
+				if (timer.deadline <= now) {
+					cancel(timer);
+					timer.expired();
+				} else if (timer.deadline < earliest) {
+					earliest = timer.deadline;
+				}
+				timer = next;
+			}
+
+			/* Timers of later ticks cannot expire before the beginning of their ticks. */
+			long nextTick = nextEventTick();
+			if (nextTick != Long.MAX_VALUE) {
+				earliest = Math.min(earliest, this.origin + nextTick * this.resolution);
+			}
+			this.nextDeadline = this.size == 0 ? Long.MAX_VALUE : earliest;
+		} finally {
+			this.expiring = false;
+		}
+	}
+
+	/**
+	 * Returns the first tick after the current one that needs to be visited, that is, the first
+	 * one whose slot of the first level is not empty, or that starts a non-empty slot of a coarser
+	 * level. Returns {@link Long#MAX_VALUE} if there is no such tick.
+	 */
+	private long nextEventTick() {
+		long result = Long.MAX_VALUE;
+
+		/* The first level holds the timers of the next 64 ticks. */
+		int distance = nextOccupiedSlot(0, (int) ((this.currentTick + 1) & SLOT_MASK));
+		if (distance >= 0) {
+			result = this.currentTick + 1 + distance;
+		}
+
+		/* Each coarser level holds the timers of the next 64 slots of its own size. */
+		for (int level = 1; level < NUM_LEVELS; level++) {
+			int shift = level * SLOT_BITS;
+			long nextSlot = (this.currentTick >>> shift) + 1;
+			distance = nextOccupiedSlot(level, (int) (nextSlot & SLOT_MASK));
+			if (distance >= 0) {
+				result = Math.min(result, (nextSlot + distance) << shift);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns how many slots after <code>slot</code> (included) the first non-empty slot of a level
+	 * is, wrapping around the level, or -1 if all its slots are empty.
+	 */
+	private int nextOccupiedSlot(int level, int slot) {
+		long occupied = Long.rotateRight(this.occupiedSlots[level], slot);
+		return occupied == 0 ? -1 : Long.numberOfTrailingZeros(occupied);
+	}
+
+	/**
+	 * Moves down the timers of the coarser levels whose slot starts at the current tick.
+	 */
+	private void cascade() {
+		for (int level = NUM_LEVELS - 1; level > 0; level--) {
+			int shift = level * SLOT_BITS;
+			if ((this.currentTick & ((1L << shift) - 1)) == 0) {
+				int index = (int) ((this.currentTick >>> shift) & SLOT_MASK);
+				int slot = level * NUM_SLOTS + index;
+				Timer timer = this.slots[slot];
+				if (timer == null) {
+					continue;
+				}
+				this.slots[slot] = null;
+				this.occupiedSlots[level] &= ~(1L << index);
+
+				while (timer != null) {
+					Timer next = timer.next;
+					timer.previous = null;
+					timer.next = null;
+					timer.slot = -1;
+					place(timer);
+					timer = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Puts a timer into the slot that corresponds to its tick.
+	 */
+	private void place(Timer timer) {
+		long delta = timer.tick - this.currentTick;
+		long tick = timer.tick;
+
+		if (delta >= RANGE) {
+			tick = this.currentTick + RANGE - 1;
+			delta = RANGE - 1;
+		}
+
+		int level = 0;
+		while (delta >= (1L << ((level + 1) * SLOT_BITS))) {
+			level++;
+		}
+
+		int slot = level * NUM_SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+		Timer head = this.slots[slot];
+		timer.previous = null;
+		timer.next = head;
+		if (head != null) {
+			head.previous = timer;
+		}
+		this.slots[slot] = timer;
+		this.occupiedSlots[level] |= 1L << (slot & SLOT_MASK);
+		timer.slot = slot;
+	}
+
+	/**
+	 * Removes a timer from its slot.
+	 */
+	private void unlink(Timer timer) {
+		if (timer.previous != null) {
+			timer.previous.next = timer.next;
+		} else {
+			this.slots[timer.slot] = timer.next;
+			if (timer.next == null) {
+				this.occupiedSlots[timer.slot >>> SLOT_BITS] &= ~(1L << (timer.slot & SLOT_MASK));
+			}
+		}
+		if (timer.next != null) {
+			timer.next.previous = timer.previous;
+		}
+		timer.previous = null;
+		timer.next = null;
+		timer.slot = -1;
+	}
+
+	/**
+	 * Converts a time into a tick of this wheel.
+	 */
+	private long toTick(long time) {
+		long elapsed = time - this.origin;
+		return elapsed <= 0 ? 0 : elapsed / this.resolution;
+	}
+}
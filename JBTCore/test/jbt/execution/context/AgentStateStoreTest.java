@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import jbt.execution.context.AgentStateStore.ColumnType;
+
+/**
+ * Checks an {@link AgentStateStore} against a map of variables per agent.
+ * <p>
+ * Agents are allocated and released, and their variables set, cleared and read at random, both
+ * boxed and through the primitive accessors, and every result is compared with that of the maps.
+ * Besides, it is checked that values that a column cannot hold are rejected, that variables must
+ * be declared with a single type, and that the capacity of the store is respected.
+ * <p>
+ * It is run through {@link #main(String[])}, and it exits with status 1 if any check fails.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class AgentStateStoreTest {
+	/** Capacity of the tested stores. */
+	private static final int CAPACITY = 64;
+	/** Number of random operations. */
+	private static final int NUM_OPERATIONS = 500000;
+	/** Type of each variable of the random test. */
+	private static final ColumnType[] TYPES = new ColumnType[] { ColumnType.INT, ColumnType.FLOAT,
+			ColumnType.DOUBLE, ColumnType.BOOLEAN, ColumnType.OBJECT, ColumnType.DOUBLE };
+	/** Whether any check has failed. */
+	private static boolean failed;
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *            ignored.
+	 */
+	public static void main(String[] args) {
+		testRandom(new Random(42));
+		testTypes();
+		testCapacity();
+
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static void testRandom(Random random) {
+		AgentStateStore store = new AgentStateStore(CAPACITY);
+		String[] names = new String[TYPES.length];
+		for (int i = 0; i < TYPES.length; i++) {
+			names[i] = "store.random." + i;
+			store.declareVariable(names[i], TYPES[i]);
+		}
+
+		AgentRowContext[] agents = new AgentRowContext[CAPACITY];
+		@SuppressWarnings("unchecked")
+		Map<String, Object>[] expected = new Map[CAPACITY];
+		int numErrors = 0;
+
+		for (int i = 0; i < NUM_OPERATIONS; i++) {
+			int index = random.nextInt(CAPACITY);
+			AgentRowContext agent = agents[index];
+			if (agent == null) {
+				agents[index] = store.allocateAgent();
+				expected[index] = new HashMap<String, Object>();
+				if (!isEmpty(agents[index], names)) {
+					numErrors++;
+				}
+				continue;
+			}
+
+			int variable = random.nextInt(TYPES.length);
+			String name = names[variable];
+			Map<String, Object> variables = expected[index];
+			boolean existed = variables.containsKey(name);
+			int operation = random.nextInt(100);
+
+			if (operation < 40) {
+				Object value = randomValue(random, TYPES[variable]);
+				Object stored = TYPES[variable] == ColumnType.DOUBLE ? (Object) ((Number) value)
+						.doubleValue() : value;
+				numErrors += agent.setVariable(name, value) == existed ? 0 : 1;
+				variables.put(name, stored);
+			} else if (operation < 55) {
+				if (TYPES[variable] == ColumnType.BOOLEAN) {
+					boolean value = random.nextBoolean();
+					numErrors += agent.setBoolean(name, value) == existed ? 0 : 1;
+					variables.put(name, value);
+				} else {
+					int value = random.nextInt();
+					numErrors += setNumber(agent, name, TYPES[variable], value) == existed ? 0
+							: 1;
+					variables.put(name, TYPES[variable] == ColumnType.INT
+							|| TYPES[variable] == ColumnType.OBJECT ? (Object) value
+							: TYPES[variable] == ColumnType.FLOAT ? (Object) (float) value
+									: (Object) (double) value);
+				}
+			} else if (operation < 70) {
+				numErrors += agent.clearVariable(name) == existed ? 0 : 1;
+				variables.remove(name);
+			} else if (operation < 72) {
+				agent.clear();
+				variables.clear();
+			} else if (operation < 74) {
+				numErrors += store.releaseAgent(agent) ? 0 : 1;
+				numErrors += store.releaseAgent(agent) ? 1 : 0;
+				agents[index] = null;
+				continue;
+			} else if (operation < 85 && variables.get(name) instanceof Number) {
+				Number value = (Number) variables.get(name);
+				numErrors += agent.getDouble(name, Double.NaN) == value.doubleValue() ? 0 : 1;
+				numErrors += agent.getInt(name, 0) == value.intValue() ? 0 : 1;
+			}
+
+			for (String variableName : names) {
+				Object value = variables.get(variableName);
+				Object actual = agent.getVariable(variableName);
+				if (value == null ? actual != null : !value.equals(actual)) {
+					numErrors++;
+				}
+			}
+		}
+
+		check("random operations", numErrors == 0);
+	}
+
+	private static void testTypes() {
+		final AgentStateStore store = new AgentStateStore(CAPACITY);
+		int slot = store.declareVariable("store.types.int", ColumnType.INT);
+		store.declareVariable("store.types.boolean", ColumnType.BOOLEAN);
+		final AgentRowContext agent = store.allocateAgent();
+
+		check("redeclaration with the same type", store.declareVariable("store.types.int",
+				ColumnType.INT) == slot
+				&& store.getColumnType("store.types.int") == ColumnType.INT);
+		check("redeclaration with another type", throwsException(new Runnable() {
+			public void run() {
+				store.declareVariable("store.types.int", ColumnType.DOUBLE);
+			}
+		}, IllegalArgumentException.class));
+		check("undeclared variable", store.getColumnType("store.types.none") == null
+				&& agent.getVariable("store.types.none") == null
+				&& agent.getInt("store.types.none", 7) == 7 && throwsException(new Runnable() {
+					public void run() {
+						agent.setInt("store.types.none", 1);
+					}
+				}, IllegalArgumentException.class));
+		check("boolean in an int column", throwsException(new Runnable() {
+			public void run() {
+				agent.setBoolean("store.types.int", true);
+			}
+		}, ClassCastException.class));
+		check("double in an int column", throwsException(new Runnable() {
+			public void run() {
+				agent.setVariable("store.types.int", 1.5);
+			}
+		}, ClassCastException.class));
+		agent.setBoolean("store.types.boolean", true);
+		check("boolean read as a number", throwsException(new Runnable() {
+			public void run() {
+				agent.getInt("store.types.boolean", 0);
+			}
+		}, ClassCastException.class));
+	}
+
+	private static void testCapacity() {
+		final AgentStateStore store = new AgentStateStore(CAPACITY);
+		store.declareVariable("store.capacity", ColumnType.INT);
+		AgentRowContext[] agents = new AgentRowContext[CAPACITY];
+		for (int i = 0; i < CAPACITY; i++) {
+			agents[i] = store.allocateAgent();
+			agents[i].setInt("store.capacity", i);
+		}
+
+		check("full store", store.getNumAgents() == CAPACITY && throwsException(new Runnable() {
+			public void run() {
+				store.allocateAgent();
+			}
+		}, IllegalStateException.class));
+
+		int row = agents[CAPACITY / 2].getRow();
+		store.releaseAgent(agents[CAPACITY / 2]);
+		AgentRowContext agent = store.allocateAgent();
+		check("reused row", agent.getRow() == row && agent.getVariable("store.capacity") == null
+				&& store.getAgent(row).getRow() == row
+				&& agents[0].getInt("store.capacity", -1) == 0);
+	}
+
+	/**
+	 * Returns a random value that a column of type <code>type</code> can hold, as
+	 * {@link AgentRowContext#setVariable(String, Object)} would receive it.
+	 */
+	private static Object randomValue(Random random, ColumnType type) {
+		switch (type) {
+		case INT:
+			return random.nextInt();
+		case FLOAT:
+			return random.nextFloat();
+		case DOUBLE:
+			switch (random.nextInt(3)) {
+			case 0:
+				return random.nextInt();
+			case 1:
+				return random.nextFloat();
+			default:
+				return random.nextDouble();
+			}
+		case BOOLEAN:
+			return random.nextBoolean();
+		default:
+			return random.nextBoolean() ? (Object) random.nextInt() : "value" + random.nextInt(10);
+		}
+	}
+
+	/**
+	 * Sets an int value through the primitive setter that matches <code>type</code>.
+	 */
+	private static boolean setNumber(AgentRowContext agent, String name, ColumnType type,
+			int value) {
+		switch (type) {
+		case FLOAT:
+			return agent.setFloat(name, value);
+		case DOUBLE:
+			return agent.setDouble(name, value);
+		default:
+			return agent.setInt(name, value);
+		}
+	}
+
+	/**
+	 * Returns true if no variable of <code>names</code> exists in <code>agent</code>.
+	 */
+	private static boolean isEmpty(AgentRowContext agent, String[] names) {
+		for (String name : names) {
+			if (agent.getVariable(name) != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if <code>action</code> throws an exception of class <code>type</code>.
+	 */
+	private static boolean throwsException(Runnable action, Class<? extends Exception> type) {
+		try {
+			action.run();
+		} catch (Exception e) {
+			return type.isInstance(e);
+		}
+		return false;
+	}
+
+	private static void check(String name, boolean passed) {
+		failed |= !passed;
+		System.out.println((passed ? "PASSED " : "FAILED ") + name);
+	}
+}
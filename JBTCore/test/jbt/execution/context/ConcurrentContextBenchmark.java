@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import jbt.execution.core.IContext;
+
+/**
+ * Benchmark that compares the throughput of a {@link ConcurrentContext} with that of a
+ * {@link BasicContext}, whose maps are synchronized, when they are shared by a growing number of
+ * threads.
+ * <p>
+ * Every thread performs the same number of operations on a shared context with
+ * {@value #NUM_VARIABLES} variables, picking a pseudo-random variable each time. One in
+ * {@value #WRITE_PERIOD} operations is a write, and the rest are reads. The context is warmed up
+ * by a first round whose results are discarded.
+ * <p>
+ * It is run through {@link #main(String[])}, which receives the maximum number of threads
+ * (by default, the number of available processors). The benchmark is run for 1, 2, 4... threads
+ * up to that number, and the throughput of each context, in millions of operations per second, is
+ * printed.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ConcurrentContextBenchmark {
+	/** Number of variables of the context. */
+	private static final int NUM_VARIABLES = 64;
+	/** One in this many operations is a write. */
+	private static final int WRITE_PERIOD = 16;
+	/** Number of operations performed by each thread. */
+	private static final int OPERATIONS_PER_THREAD = 2000000;
+
+	/** Names of the variables. */
+	private static final String[] NAMES = new String[NUM_VARIABLES];
+
+	static {
+		for (int i = 0; i < NUM_VARIABLES; i++) {
+			NAMES[i] = "variable" + i;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime()
+				.availableProcessors();
+
+		for (int round = 0; round < 2; round++) {
+			for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+				double basic = run(new BasicContext(), numThreads);
+				double concurrent = run(new ConcurrentContext(), numThreads);
+
+				if (round == 1) {
+					System.out.printf("%2d threads: BasicContext %8.1f Mops/s, "
+							+ "ConcurrentContext %8.1f Mops/s%n", numThreads, basic, concurrent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmark on a context with a number of threads, and returns the throughput, in
+	 * millions of operations per second.
+	 */
+	private static double run(final IContext context, int numThreads)
+			throws InterruptedException {
+		for (String name : NAMES) {
+			context.setVariable(name, 0);
+		}
+
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final int seed = i * 7919 + 1;
+			threads[i] = new Thread() {
+				public void run() {
+					int random = seed;
+					int hits = 0;
+					for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+						random = random * 1103515245 + 12345;
+						String name = NAMES[(random >>> 16) % NUM_VARIABLES];
+						if (j % WRITE_PERIOD == 0) {
+							context.setVariable(name, j);
+						} else if (context.getVariable(name) != null) {
+							hits++;
+						}
+					}
+					if (hits < 0) {
+						System.out.println(hits);
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		return (double) numThreads * OPERATIONS_PER_THREAD / elapsed * 1000;
+	}
+}
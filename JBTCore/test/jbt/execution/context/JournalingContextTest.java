@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.Random;
+
+import jbt.execution.context.ContextDelta.Operation;
+import jbt.execution.core.IContext;
+import jbt.execution.core.SymbolTable;
+
+/**
+ * Checks the deltas exported by a {@link JournalingContext}: that changes are coalesced so that
+ * each variable appears at most once, with its last operation and in the order of its first
+ * change; that a clear drops the changes made before it; that an export fails once the journal
+ * has wrapped around; and that a variable changed both before and after its name is interned gets
+ * a single entry.
+ * <p>
+ * Finally, random changes are made to a JournalingContext, and the deltas exported from time to
+ * time are replayed on a replica, whose variables must then match those of the journaled context.
+ * <p>
+ * It is run through {@link #main(String[])}, and it exits with status 1 if any check fails.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class JournalingContextTest {
+	/** Number of random changes made to the journaled context. */
+	private static final int NUM_CHANGES = 200000;
+	/** Number of variables changed at random. */
+	private static final int NUM_VARIABLES = 32;
+	/** Whether any check has failed. */
+	private static boolean failed;
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *            ignored.
+	 */
+	public static void main(String[] args) {
+		testCoalescing();
+		testClear();
+		testWrapAround();
+		testInterning();
+		testReplica(new Random(42));
+
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static void testCoalescing() {
+		JournalingContext context = new JournalingContext(new BasicContext(), 16);
+		int a = SymbolTable.intern("journaling.coalescing.a");
+		int b = SymbolTable.intern("journaling.coalescing.b");
+		context.setVariable(a, 1);
+		context.setVariable(b, 2);
+		context.setVariable(a, 3);
+		context.clearVariable(b);
+
+		ContextDelta delta = new ContextDelta();
+		boolean exported = context.exportDelta(0, delta);
+		check("coalescing", exported && !delta.isClearAll() && delta.size() == 2
+				&& delta.getSlot(0) == a && Integer.valueOf(3).equals(delta.getValue(0))
+				&& delta.getOperation(0) == Operation.SET && delta.getSlot(1) == b
+				&& delta.getOperation(1) == Operation.CLEAR && delta.getToSequence() == 4);
+
+		context.setVariable(b, 5);
+		exported = context.exportDelta(delta.getToSequence(), delta);
+		check("incremental export", exported && delta.size() == 1 && delta.getSlot(0) == b
+				&& Integer.valueOf(5).equals(delta.getValue(0)) && delta.getFromSequence() == 4);
+	}
+
+	private static void testClear() {
+		JournalingContext context = new JournalingContext(new BasicContext(), 16);
+		context.setVariable("journaling.clear.a", 1);
+		context.clear();
+		context.setVariable("journaling.clear.b", 2);
+
+		ContextDelta delta = new ContextDelta();
+		boolean exported = context.exportDelta(0, delta);
+		check("clear", exported && delta.isClearAll() && delta.size() == 1
+				&& "journaling.clear.b".equals(delta.getName(0)));
+	}
+
+	private static void testWrapAround() {
+		JournalingContext context = new JournalingContext(new BasicContext(), 4);
+		for (int i = 0; i < 5; i++) {
+			context.setVariable("journaling.wrap", i);
+		}
+
+		ContextDelta delta = new ContextDelta();
+		check("wrap around", !context.exportDelta(0, delta) && context.exportDelta(1, delta)
+				&& delta.size() == 1 && Integer.valueOf(4).equals(delta.getValue(0)));
+	}
+
+	private static void testInterning() {
+		String name = "journaling.interning." + System.nanoTime();
+		JournalingContext context = new JournalingContext(new BasicContext(), 16);
+		context.setVariable("journaling.interning.other", 0);
+		context.setVariable(name, 1);
+		int slot = SymbolTable.intern(name);
+		context.setVariable(name, 2);
+
+		ContextDelta delta = new ContextDelta();
+		boolean exported = context.exportDelta(0, delta);
+		check("interning", exported && delta.size() == 2 && delta.getSlot(1) == slot
+				&& name.equals(delta.getName(1)) && Integer.valueOf(2).equals(delta.getValue(1)));
+
+		/* The entry by name must not survive into the next export. */
+		context.setVariable(name, 3);
+		exported = context.exportDelta(delta.getToSequence(), delta);
+		check("interning, next export", exported && delta.size() == 1
+				&& delta.getSlot(0) == slot && Integer.valueOf(3).equals(delta.getValue(0)));
+	}
+
+	private static void testReplica(Random random) {
+		String prefix = "journaling.replica." + System.nanoTime() + ".";
+		String[] names = new String[NUM_VARIABLES];
+		for (int i = 0; i < NUM_VARIABLES; i++) {
+			names[i] = prefix + i;
+		}
+
+		JournalingContext context = new JournalingContext(new BasicContext(), 256);
+		IContext replica = new BasicContext();
+		ContextDelta delta = new ContextDelta();
+		long sequence = 0;
+		int numResyncs = 0;
+		boolean matches = true;
+
+		for (int i = 0; i < NUM_CHANGES && matches; i++) {
+			String name = names[random.nextInt(NUM_VARIABLES)];
+			int operation = random.nextInt(100);
+			if (operation < 60) {
+				context.setVariable(name, random.nextInt(10));
+			} else if (operation < 90) {
+				context.clearVariable(name);
+			} else if (operation < 95) {
+				SymbolTable.intern(name);
+			} else if (operation < 96) {
+				context.clear();
+			}
+
+			if (random.nextInt(64) == 0) {
+				if (context.exportDelta(sequence, delta)) {
+					delta.applyTo(replica);
+					sequence = delta.getToSequence();
+				} else {
+					replica.clear();
+					for (String variable : names) {
+						replica.setVariable(variable, context.getVariable(variable));
+					}
+					sequence = context.getSequence();
+					numResyncs++;
+				}
+				matches = sameVariables(context, replica, names) && hasUniqueEntries(delta);
+			}
+		}
+
+		check("replica (" + numResyncs + " resynchronizations)", matches);
+	}
+
+	/**
+	 * Returns true if <code>a</code> and <code>b</code> have the same value for every variable of
+	 * <code>names</code>.
+	 */
+	private static boolean sameVariables(IContext a, IContext b, String[] names) {
+		for (String name : names) {
+			Object value = a.getVariable(name);
+			if (value == null ? b.getVariable(name) != null : !value.equals(b.getVariable(name))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if no variable has more than one entry in <code>delta</code>.
+	 */
+	private static boolean hasUniqueEntries(ContextDelta delta) {
+		for (int i = 0; i < delta.size(); i++) {
+			for (int j = i + 1; j < delta.size(); j++) {
+				if (delta.getName(i).equals(delta.getName(j))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static void check(String name, boolean passed) {
+		failed |= !passed;
+		System.out.println((passed ? "PASSED " : "FAILED ") + name);
+	}
+}
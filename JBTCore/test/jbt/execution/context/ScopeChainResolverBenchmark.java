@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jbt.execution.core.IContext;
+
+/**
+ * Benchmark that compares reading variables through the {@link ScopeChainResolver} of a chain of
+ * {@link IScopeFrame}s with walking the chain frame by frame, for chains of growing depth.
+ * <p>
+ * Before measuring anything, the resolution of variables is checked against a naive walk of the
+ * chain: random chains of {@link HierarchicalContext}s, {@link SafeContext}s and
+ * {@link SafeOutputContext}s are built, random variables are set, cleared and read through random
+ * frames, and every read must return what the walk returns. The frames are cleared and re-parented
+ * now and then, so that cached resolutions are invalidated.
+ * <p>
+ * The benchmark builds, for each depth in {@link #DEPTHS}, a chain of HierarchicalContexts on top
+ * of a {@link BasicContext}, and reads a variable of the BasicContext through the topmost frame.
+ * A variable of the topmost frame is written once every {@value #WRITE_PERIOD} reads. Every depth
+ * is run {@value #ROUNDS} times, and only the last one is printed.
+ * <p>
+ * Finally, the benchmark is repeated with 1, 2, 4... concurrent agents, each of them with its own
+ * chain of depth {@value #AGENT_DEPTH} on top of a shared BasicContext. Every
+ * {@value #SUBTREE_PERIOD} reads, each agent enters a subtree: it pushes a new frame, defines a
+ * variable in it and reads through it, which changes the scope of its own chain but not that of
+ * the other agents. The average time per read of all the agents is printed.
+ * <p>
+ * It is run through {@link #main(String[])}, which receives the maximum number of agents (by
+ * default, the number of available processors), and it exits with status 1 if any resolution is
+ * wrong.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class ScopeChainResolverBenchmark {
+	/** Depths of the chains of frames that are benchmarked. */
+	private static final int[] DEPTHS = new int[] { 1, 4, 16, 64 };
+	/** Number of reads measured for each depth. */
+	private static final int NUM_READS = 5000000;
+	/** One variable of the topmost frame is written once every this many reads. */
+	private static final int WRITE_PERIOD = 1024;
+	/** Number of times each depth is benchmarked. */
+	private static final int ROUNDS = 3;
+	/** Number of random chains whose resolutions are checked. */
+	private static final int NUM_CHECKED_CHAINS = 300;
+	/** Number of random operations performed on each checked chain. */
+	private static final int OPERATIONS_PER_CHAIN = 2000;
+	/** Depth of the chain of each agent in the concurrent benchmark. */
+	private static final int AGENT_DEPTH = 16;
+	/** Each agent enters a subtree once every this many reads in the concurrent benchmark. */
+	private static final int SUBTREE_PERIOD = 64;
+	/** Names of the variables of the checked chains. */
+	private static final String[] NAMES = new String[] { "a", "b", "c", "d", "e", "f" };
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxAgents = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime()
+				.availableProcessors();
+
+		long errors = check(new Random(42));
+		System.out.println("Wrong resolutions: " + errors);
+		if (errors != 0) {
+			System.exit(1);
+		}
+
+		for (int depth : DEPTHS) {
+			benchmark(depth);
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int numAgents = 1; numAgents <= maxAgents; numAgents *= 2) {
+				double time = benchmarkAgents(numAgents);
+				if (round == ROUNDS - 1) {
+					System.out.printf("%2d agents: %6.1f ns/read%n", numAgents, time);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of the variable <code>name</code> in <code>context</code> by walking the
+	 * chain of frames, without any cache.
+	 */
+	private static Object walk(IContext context, String name) {
+		while (context instanceof IScopeFrame) {
+			IScopeFrame frame = (IScopeFrame) context;
+			if (frame.definesVariable(name)) {
+				return frame.getLocalVariable(name);
+			}
+			context = frame.getEnclosingContext();
+		}
+		return context == null ? null : context.getVariable(name);
+	}
+
+	/**
+	 * Checks the resolutions of random chains of frames against {@link #walk(IContext, String)},
+	 * and returns the number of wrong ones.
+	 */
+	private static long check(Random random) {
+		long errors = 0;
+
+		for (int i = 0; i < NUM_CHECKED_CHAINS; i++) {
+			BasicContext root = new BasicContext();
+			root.setVariable(NAMES[0], 0);
+			List<IContext> chain = new ArrayList<IContext>();
+			chain.add(root);
+
+			IContext top = root;
+			int depth = 2 + random.nextInt(10);
+			for (int j = 0; j < depth; j++) {
+				int kind = random.nextInt(3);
+				if (kind == 0) {
+					HierarchicalContext frame = new HierarchicalContext();
+					frame.setParent(top);
+					top = frame;
+				} else if (kind == 1) {
+					top = new SafeContext(top);
+				} else {
+					top = new SafeOutputContext(top, Arrays.asList(NAMES[random
+							.nextInt(NAMES.length)]));
+				}
+				chain.add(top);
+			}
+
+			for (int j = 0; j < OPERATIONS_PER_CHAIN; j++) {
+				IContext context = chain.get(random.nextInt(chain.size()));
+				String name = NAMES[random.nextInt(NAMES.length)];
+				int operation = random.nextInt(10);
+
+				if (operation < 5) {
+					for (IContext frame : chain) {
+						Object value = frame.getVariable(name);
+						Object expected = walk(frame, name);
+						if (value == null ? expected != null : !value.equals(expected)) {
+							errors++;
+						}
+					}
+				} else if (operation < 8) {
+					context.setVariable(name, random.nextInt(5));
+				} else if (operation < 9) {
+					context.clearVariable(name);
+				} else if (random.nextInt(20) == 0) {
+					context.clear();
+				} else if (context instanceof HierarchicalContext && random.nextInt(3) == 0) {
+					int index = chain.indexOf(context);
+					((HierarchicalContext) context).setParent(chain.get(random.nextInt(index)));
+				}
+			}
+		}
+
+		return errors;
+	}
+
+	/**
+	 * Benchmarks a chain of HierarchicalContexts of depth <code>depth</code>.
+	 */
+	private static void benchmark(int depth) {
+		IContext root = new BasicContext();
+		root.setVariable("global", 1);
+
+		IContext top = root;
+		for (int i = 0; i < depth; i++) {
+			HierarchicalContext frame = new HierarchicalContext();
+			frame.setParent(top);
+			frame.setVariable("local" + i, i);
+			top = frame;
+		}
+		String written = "local" + (depth - 1);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long sum = 0;
+
+			long start = System.nanoTime();
+			for (int i = 0; i < NUM_READS; i++) {
+				sum += (Integer) top.getVariable("global");
+				if (i % WRITE_PERIOD == 0) {
+					top.setVariable(written, i);
+				}
+			}
+			long cached = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < NUM_READS; i++) {
+				sum += (Integer) walk(top, "global");
+			}
+			long uncached = System.nanoTime() - start;
+
+			if (round == ROUNDS - 1) {
+				System.out.printf("depth %2d: cached %6.1f ns/read, uncached walk %6.1f ns/read%n",
+						depth, (double) cached / NUM_READS, (double) uncached / NUM_READS);
+			}
+			if (sum < 0) {
+				System.out.println(sum);
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks <code>numAgents</code> agents that read through their own chains concurrently,
+	 * and returns the average time per read, in nanoseconds.
+	 */
+	private static double benchmarkAgents(int numAgents) throws InterruptedException {
+		final IContext world = new BasicContext();
+		world.setVariable("global", 1);
+
+		Thread[] threads = new Thread[numAgents];
+		final long[] times = new long[numAgents];
+		for (int i = 0; i < numAgents; i++) {
+			final int agent = i;
+			threads[i] = new Thread() {
+				public void run() {
+					IContext top = world;
+					for (int j = 0; j < AGENT_DEPTH; j++) {
+						HierarchicalContext frame = new HierarchicalContext();
+						frame.setParent(top);
+						frame.setVariable("local" + j, j);
+						top = frame;
+					}
+
+					long sum = 0;
+					long start = System.nanoTime();
+					for (int j = 0; j < NUM_READS; j++) {
+						sum += (Integer) top.getVariable("global");
+						if (j % SUBTREE_PERIOD == 0) {
+							HierarchicalContext subtree = new HierarchicalContext();
+							subtree.setParent(top);
+							subtree.setVariable("local", j);
+							sum += (Integer) subtree.getVariable("global");
+						}
+					}
+					times[agent] = System.nanoTime() - start;
+
+					if (sum < 0) {
+						System.out.println(sum);
+					}
+				}
+			};
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long total = 0;
+		for (int i = 0; i < numAgents; i++) {
+			threads[i].join();
+			total += times[i];
+		}
+
+		return (double) total / numAgents / NUM_READS;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.lang.management.ManagementFactory;
+
+import jbt.execution.context.BasicContext;
+import jbt.execution.core.BTExecutor.BTExecutorList;
+import jbt.execution.core.ExecutionTask.Status;
+import jbt.execution.task.leaf.action.ExecutionAction;
+import jbt.execution.task.leaf.condition.ExecutionCondition;
+import jbt.model.core.ModelTask;
+import jbt.model.task.composite.ModelDynamicPriorityList;
+import jbt.model.task.composite.ModelParallel;
+import jbt.model.task.composite.ModelSelector;
+import jbt.model.task.composite.ModelSequence;
+import jbt.model.task.composite.ModelStaticPriorityList;
+import jbt.model.task.decorator.ModelInverter;
+import jbt.model.task.decorator.ModelRepeat;
+import jbt.model.task.leaf.action.ModelAction;
+import jbt.model.task.leaf.condition.IGuardPredicate;
+import jbt.model.task.leaf.condition.ModelCondition;
+
+/**
+ * Checks that a warmed-up BTExecutor running in allocation-free mode with task pooling (see
+ * {@link BTExecutor#setAllocationFree(boolean)} and {@link BTExecutor#setTaskPooling(boolean)})
+ * does not allocate memory when it is ticked.
+ * <p>
+ * The memory allocated by the thread that ticks the trees is measured through
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}, so this test needs a JVM
+ * that supports it. It is run through {@link #main(String[])}, and it exits with status 1 if any
+ * tree allocates memory.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class AllocationFreeTickTest {
+	/** Number of ticks run before measuring, so that pools are filled and code is compiled. */
+	private static final int WARM_UP_TICKS = 20000;
+	/** Number of ticks measured. */
+	private static final int MEASURED_TICKS = 20000;
+
+	/**
+	 * Action that succeeds or fails after being ticked a number of times.
+	 */
+	private static class ModelCountingAction extends ModelAction {
+		final int ticks;
+		final boolean succeed;
+
+		ModelCountingAction(ModelTask guard, int ticks, boolean succeed) {
+			super(guard);
+			this.ticks = ticks;
+			this.succeed = succeed;
+		}
+
+		public ExecutionTask createExecutor(BTExecutor executor, ExecutionTask parent) {
+			return new ExecutionCountingAction(this, executor, parent);
+		}
+	}
+
+	private static class ExecutionCountingAction extends ExecutionAction {
+		private int numTicks;
+
+		ExecutionCountingAction(ModelTask modelTask, BTExecutor executor, ExecutionTask parent) {
+			super(modelTask, executor, parent);
+		}
+
+		protected void internalSpawn() {
+			this.numTicks = 0;
+			this.getExecutor().requestInsertionIntoList(BTExecutorList.TICKABLE, this);
+		}
+
+		protected Status internalTick() {
+			ModelCountingAction model = (ModelCountingAction) this.getModelTask();
+			if (++this.numTicks < model.ticks) {
+				return Status.RUNNING;
+			}
+			return model.succeed ? Status.SUCCESS : Status.FAILURE;
+		}
+
+		protected void internalTerminate() {}
+
+		protected void restoreState(ITaskState state) {}
+
+		protected ITaskState storeState() {
+			return null;
+		}
+
+		protected ITaskState storeTerminationState() {
+			return null;
+		}
+
+		protected boolean internalReset() {
+			return true;
+		}
+	}
+
+	/**
+	 * Condition that alternates between success and failure every <code>period</code> evaluations,
+	 * so that priority lists keep switching children. It is evaluated through a BTExecutor.
+	 */
+	private static class ModelTogglingCondition extends ModelCondition {
+		final int period;
+		int evaluations;
+
+		ModelTogglingCondition(int period) {
+			super(null);
+			this.period = period;
+		}
+
+		boolean next() {
+			return (this.evaluations++ / this.period) % 2 == 0;
+		}
+
+		public ExecutionTask createExecutor(BTExecutor executor, ExecutionTask parent) {
+			return new ExecutionTogglingCondition(this, executor, parent);
+		}
+	}
+
+	private static class ExecutionTogglingCondition extends ExecutionCondition {
+		ExecutionTogglingCondition(ModelTask modelTask, BTExecutor executor, ExecutionTask parent) {
+			super(modelTask, executor, parent);
+		}
+
+		protected void internalSpawn() {
+			this.getExecutor().requestInsertionIntoList(BTExecutorList.TICKABLE, this);
+		}
+
+		protected Status internalTick() {
+			return ((ModelTogglingCondition) this.getModelTask()).next() ? Status.SUCCESS
+					: Status.FAILURE;
+		}
+
+		protected void internalTerminate() {}
+
+		protected void restoreState(ITaskState state) {}
+
+		protected ITaskState storeState() {
+			return null;
+		}
+
+		protected ITaskState storeTerminationState() {
+			return null;
+		}
+
+		protected boolean internalReset() {
+			return true;
+		}
+	}
+
+	/**
+	 * Condition like {@link ModelTogglingCondition} that is evaluated synchronously when it is a
+	 * guard.
+	 */
+	private static class ModelTogglingPredicate extends ModelTogglingCondition implements
+			IGuardPredicate {
+		ModelTogglingPredicate(int period) {
+			super(period);
+		}
+
+		public boolean evaluate(IContext context) {
+			return next();
+		}
+	}
+
+	private static ModelTask action(int ticks) {
+		return new ModelCountingAction(null, ticks, true);
+	}
+
+	private static ModelTask guarded(ModelTask guard, int ticks) {
+		return new ModelCountingAction(guard, ticks, true);
+	}
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *            ignored.
+	 */
+	public static void main(String[] args) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		ModelTask[] trees = new ModelTask[] {
+				new ModelRepeat(null, new ModelSequence(null, action(2), action(1))),
+				new ModelRepeat(null, new ModelSelector(null, new ModelCountingAction(null, 1,
+						false), action(3))),
+				new ModelRepeat(null, new ModelParallel(null,
+						ModelParallel.ParallelPolicy.SEQUENCE_POLICY, action(3), action(1))),
+				new ModelRepeat(null, new ModelInverter(null, new ModelCountingAction(null, 2,
+						false))),
+				new ModelRepeat(null, new ModelStaticPriorityList(null, guarded(
+						new ModelTogglingCondition(3), 2), action(1))),
+				new ModelRepeat(null, new ModelStaticPriorityList(null, guarded(
+						new ModelTogglingPredicate(3), 2), action(1))),
+				new ModelRepeat(null, new ModelDynamicPriorityList(null, guarded(
+						new ModelTogglingCondition(7), 4), action(3))),
+				new ModelRepeat(null, new ModelDynamicPriorityList(null, guarded(
+						new ModelTogglingPredicate(7), 4), action(3))) };
+		String[] names = new String[] { "Repeat(Sequence)", "Repeat(Selector)",
+				"Repeat(Parallel)", "Repeat(Inverter)", "Repeat(StaticPriorityList)",
+				"Repeat(StaticPriorityList) with predicate guard", "Repeat(DynamicPriorityList)",
+				"Repeat(DynamicPriorityList) with predicate guard" };
+
+		boolean failed = false;
+		long threadId = Thread.currentThread().getId();
+
+		for (int i = 0; i < trees.length; i++) {
+			BTExecutor executor = new BTExecutor(trees[i], new BasicContext());
+			executor.setAllocationFree(true);
+			executor.setTaskPooling(true);
+
+			for (int j = 0; j < WARM_UP_TICKS; j++) {
+				executor.tick();
+			}
+
+			long before = threads.getThreadAllocatedBytes(threadId);
+			for (int j = 0; j < MEASURED_TICKS; j++) {
+				executor.tick();
+			}
+			long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+			/*
+			 * Less than a byte per tick on average, which leaves room for the measurement itself
+			 * but not for any object allocated on every tick, or every few ticks.
+			 */
+			boolean passed = allocated < MEASURED_TICKS;
+			failed |= !passed;
+			System.out.println((passed ? "PASSED " : "FAILED ") + names[i] + ": "
+					+ ((double) allocated / MEASURED_TICKS) + " bytes per tick");
+		}
+
+		if (failed) {
+			System.exit(1);
+		}
+	}
+}
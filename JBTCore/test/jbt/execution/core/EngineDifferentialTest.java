@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.execution.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import jbt.execution.core.BTExecutor.BTExecutorList;
+import jbt.execution.core.BTExecutorFactory.Engine;
+import jbt.execution.core.ExecutionTask.Status;
+import jbt.execution.task.leaf.action.ExecutionAction;
+import jbt.model.core.ModelTask;
+import jbt.model.task.composite.ModelParallel;
+import jbt.model.task.composite.ModelParallel.ParallelPolicy;
+import jbt.model.task.composite.ModelSelector;
+import jbt.model.task.composite.ModelSequence;
+import jbt.model.task.decorator.ModelHierarchicalContextManager;
+import jbt.model.task.decorator.ModelInverter;
+import jbt.model.task.decorator.ModelLimit;
+import jbt.model.task.decorator.ModelRepeat;
+import jbt.model.task.decorator.ModelSafeContextManager;
+import jbt.model.task.decorator.ModelSucceeder;
+import jbt.model.task.decorator.ModelUntilFail;
+import jbt.model.task.leaf.ModelFailure;
+import jbt.model.task.leaf.ModelSuccess;
+import jbt.model.task.leaf.action.ModelAction;
+
+/**
+ * Checks that the engines of {@link BTExecutorFactory} run trees the same way. Random trees of
+ * composite tasks, decorators, context managers and actions are run by every engine, and the
+ * status of the tree after each tick must be the same for all of them, as well as the sequence in
+ * which actions are spawned, ticked and terminated.
+ * <p>
+ * Actions are deterministic: the outcome of each tick depends on the action, on the number of
+ * times it has been ticked, and on a variable that actions read from and write to their context,
+ * so context managers affect the outcome too. After a number of ticks, the trees are terminated.
+ * <p>
+ * It is run through {@link #main(String[])}, which receives the number of trees to run with
+ * {@link Engine#COMPILED} and the number of those that are also run with
+ * {@link Engine#GENERATED} (by default, {@value #DEFAULT_NUM_TREES} and
+ * {@value #DEFAULT_NUM_GENERATED_TREES}), and it exits with status 1 if any tree is run
+ * differently.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class EngineDifferentialTest {
+	/** Default number of trees run with {@link Engine#COMPILED}. */
+	private static final int DEFAULT_NUM_TREES = 2000;
+	/** Default number of trees also run with {@link Engine#GENERATED}. */
+	private static final int DEFAULT_NUM_GENERATED_TREES = 300;
+	/** Number of ticks each tree is run. */
+	private static final int NUM_TICKS = 40;
+	/** Maximum depth of the trees. */
+	private static final int MAX_DEPTH = 4;
+	/** Name of the variable that actions read and write. */
+	private static final String VARIABLE = "differential.value";
+
+	/** Trace of the actions in the current tick. */
+	private static final StringBuilder trace = new StringBuilder();
+	/** Number of times each action has been ticked in the current run. */
+	private static final Map<ModelTask, Integer> numTicks =
+			new IdentityHashMap<ModelTask, Integer>();
+
+	/**
+	 * Action whose outcome is a function of its index, of the number of times it has been ticked
+	 * and of a variable of its context.
+	 */
+	private static class ModelTracingAction extends ModelAction {
+		final int index;
+
+		ModelTracingAction(int index) {
+			super(null);
+			this.index = index;
+		}
+
+		public ExecutionTask createExecutor(BTExecutor executor, ExecutionTask parent) {
+			return new ExecutionTracingAction(this, executor, parent);
+		}
+	}
+
+	private static class ExecutionTracingAction extends ExecutionAction {
+		ExecutionTracingAction(ModelTask modelTask, BTExecutor executor, ExecutionTask parent) {
+			super(modelTask, executor, parent);
+		}
+
+		private int index() {
+			return ((ModelTracingAction) this.getModelTask()).index;
+		}
+
+		protected void internalSpawn() {
+			trace.append('S').append(index()).append(' ');
+			this.getExecutor().requestInsertionIntoList(BTExecutorList.TICKABLE, this);
+		}
+
+		protected Status internalTick() {
+			Integer previous = numTicks.get(this.getModelTask());
+			int n = previous == null ? 1 : previous + 1;
+			numTicks.put(this.getModelTask(), n);
+
+			Object value = this.getContext().getVariable(VARIABLE);
+			int read = value == null ? 0 : (Integer) value;
+			this.getContext().setVariable(VARIABLE, index() + n);
+
+			int hash = (index() * 7919 + n * 104729 + read * 31) & 7;
+			Status status = hash < 4 ? Status.RUNNING : hash < 6 ? Status.SUCCESS
+					: Status.FAILURE;
+			trace.append('T').append(index()).append(status.name().charAt(0)).append(' ');
+			return status;
+		}
+
+		protected void internalTerminate() {
+			trace.append('X').append(index()).append(' ');
+		}
+
+		protected void restoreState(ITaskState state) {}
+
+		protected ITaskState storeState() {
+			return null;
+		}
+
+		protected ITaskState storeTerminationState() {
+			return null;
+		}
+	}
+
+	/**
+	 * Generator of random trees.
+	 */
+	private static class TreeGenerator {
+		private final Random random;
+		private int numActions;
+
+		TreeGenerator(long seed) {
+			this.random = new Random(seed);
+		}
+
+		ModelTask generate(int depth) {
+			int kind = depth >= MAX_DEPTH ? 0 : this.random.nextInt(13);
+			switch (kind) {
+			case 0:
+			case 1:
+			case 2:
+				int leaf = this.random.nextInt(10);
+				if (leaf == 0) {
+					return new ModelSuccess(null);
+				}
+				if (leaf == 1) {
+					return new ModelFailure(null);
+				}
+				return new ModelTracingAction(this.numActions++);
+			case 3:
+			case 4:
+				return new ModelSequence(null, children(depth));
+			case 5:
+			case 6:
+				return new ModelSelector(null, children(depth));
+			case 7:
+				ParallelPolicy policy = this.random.nextBoolean() ? ParallelPolicy.SEQUENCE_POLICY
+						: ParallelPolicy.SELECTOR_POLICY;
+				return new ModelParallel(null, policy, children(depth));
+			case 8:
+				return new ModelRepeat(null, generate(depth + 1));
+			case 9:
+				return new ModelUntilFail(null, generate(depth + 1));
+			case 10:
+				return this.random.nextBoolean() ? new ModelInverter(null, generate(depth + 1))
+						: new ModelSucceeder(null, generate(depth + 1));
+			case 11:
+				return this.random.nextBoolean() ? new ModelHierarchicalContextManager(null,
+						generate(depth + 1)) : new ModelSafeContextManager(null,
+						generate(depth + 1));
+			default:
+				return new ModelLimit(null, 1 + this.random.nextInt(3), generate(depth + 1));
+			}
+		}
+
+		private ModelTask[] children(int depth) {
+			ModelTask[] children = new ModelTask[1 + this.random.nextInt(3)];
+			for (int i = 0; i < children.length; i++) {
+				children[i] = generate(depth + 1);
+			}
+			return children;
+		}
+	}
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *            optionally, the number of trees run with {@link Engine#COMPILED}, and the number
+	 *            of them also run with {@link Engine#GENERATED}.
+	 */
+	public static void main(String[] args) {
+		int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_TREES;
+		int numGeneratedTrees = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_NUM_GENERATED_TREES;
+
+		int numCompiledMismatches = 0;
+		int numGeneratedMismatches = 0;
+		for (int seed = 0; seed < numTrees; seed++) {
+			ModelTask tree = new TreeGenerator(seed).generate(0);
+			String[] expected = run(tree, Engine.INTERPRETED);
+
+			if (!same(seed, Engine.COMPILED, expected, run(tree, Engine.COMPILED))) {
+				numCompiledMismatches++;
+			}
+			if (seed < numGeneratedTrees
+					&& !same(seed, Engine.GENERATED, expected, run(tree, Engine.GENERATED))) {
+				numGeneratedMismatches++;
+			}
+		}
+
+		boolean passed = numCompiledMismatches == 0;
+		System.out.println((passed ? "PASSED " : "FAILED ") + Engine.COMPILED + ": "
+				+ numCompiledMismatches + " of " + numTrees + " trees differ");
+		boolean generatedPassed = numGeneratedMismatches == 0;
+		System.out.println((generatedPassed ? "PASSED " : "FAILED ") + Engine.GENERATED + ": "
+				+ numGeneratedMismatches + " of " + Math.min(numTrees, numGeneratedTrees)
+				+ " trees differ");
+
+		if (!passed || !generatedPassed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs a tree with an engine for {@link #NUM_TICKS} ticks and then terminates it, returning
+	 * the trace of the actions and the status of the tree after each tick and after terminating
+	 * it.
+	 */
+	private static String[] run(ModelTask tree, Engine engine) {
+		numTicks.clear();
+		trace.setLength(0);
+		IBTExecutor executor = BTExecutorFactory.createBTExecutor(tree, engine);
+
+		String[] result = new String[NUM_TICKS + 1];
+		for (int i = 0; i < NUM_TICKS; i++) {
+			executor.tick();
+			result[i] = trace + "| " + executor.getStatus();
+			trace.setLength(0);
+		}
+		executor.terminate();
+		result[NUM_TICKS] = trace + "| " + executor.getStatus();
+		trace.setLength(0);
+
+		return result;
+	}
+
+	/**
+	 * Returns true if <code>actual</code> equals <code>expected</code>, and prints the first
+	 * difference otherwise.
+	 */
+	private static boolean same(int seed, Engine engine, String[] expected, String[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			if (!expected[i].equals(actual[i])) {
+				System.out.println(engine + ", tree " + seed + ", tick " + i + ":\n  expected "
+						+ expected[i] + "\n  actual   " + actual[i]);
+				return false;
+			}
+		}
+		return true;
+	}
+}
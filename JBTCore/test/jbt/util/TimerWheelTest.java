@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2012 Ricardo Juan Palma Durán
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jbt.util;
+
+import java.util.Random;
+
+/**
+ * Checks that a {@link TimerWheel} expires each timer exactly once, in the first call to
+ * {@link TimerWheel#advance(long)} whose time is not before its deadline, and never earlier.
+ * <p>
+ * Timers are scheduled, rescheduled and cancelled at random while the wheel is advanced by random
+ * steps, and the wheel is compared with a plain array of deadlines. Deadlines range from a few
+ * nanoseconds to far beyond the range of the wheel, so timers go through every level, and the
+ * steps range from less than a tick to millions of ticks. Besides, it is checked that a timer
+ * rescheduled from within {@link TimerWheel.Timer#expired()} with a deadline that has already
+ * passed expires again in the next tick, and not again in the tick that is being expired.
+ * <p>
+ * It is run through {@link #main(String[])}, and it exits with status 1 if any check fails.
+ * 
+ * @author Ricardo Juan Palma Durán
+ * 
+ */
+public class TimerWheelTest {
+	/** Resolution of the tested wheel, in nanoseconds. */
+	private static final long RESOLUTION = 1000;
+	/** Number of timers of the random test. */
+	private static final int NUM_TIMERS = 2000;
+	/** Number of times the wheel is advanced in the random test. */
+	private static final int NUM_STEPS = 200000;
+	/** Whether any check has failed. */
+	private static boolean failed;
+
+	/**
+	 * Timer that records when it expires.
+	 */
+	private static class TestTimer extends TimerWheel.Timer {
+		/** Number of times the timer has expired since it was last checked. */
+		int numExpirations;
+
+		protected void expired() {
+			this.numExpirations++;
+		}
+	}
+
+	/**
+	 * Timer that reschedules itself a number of times with a deadline that has already passed,
+	 * recording the step in which it expires each time.
+	 */
+	private static class RepeatingTimer extends TimerWheel.Timer {
+		final TimerWheel wheel;
+		final int[] expirationSteps = new int[3];
+		int numExpirations;
+		int step;
+		long now;
+
+		RepeatingTimer(TimerWheel wheel) {
+			this.wheel = wheel;
+		}
+
+		protected void expired() {
+			this.expirationSteps[this.numExpirations++] = this.step;
+			if (this.numExpirations < this.expirationSteps.length) {
+				this.wheel.schedule(this, this.now - RESOLUTION * 5);
+			}
+		}
+	}
+
+	/**
+	 * Runs the test.
+	 * 
+	 * @param args
+	 *            ignored.
+	 */
+	public static void main(String[] args) {
+		testRandom(new Random(42));
+		testRescheduleFromExpired();
+
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static void testRandom(Random random) {
+		TimerWheel wheel = new TimerWheel(RESOLUTION);
+		long now = System.nanoTime();
+		TestTimer[] timers = new TestTimer[NUM_TIMERS];
+		/* The deadline of each scheduled timer, or Long.MIN_VALUE. */
+		long[] deadlines = new long[NUM_TIMERS];
+
+		for (int i = 0; i < NUM_TIMERS; i++) {
+			timers[i] = new TestTimer();
+			deadlines[i] = now + randomDelay(random, 11);
+			wheel.schedule(timers[i], deadlines[i]);
+		}
+
+		int numExpirations = 0;
+		int numErrors = 0;
+		for (int step = 0; step < NUM_STEPS; step++) {
+			now += randomDelay(random, 7);
+			wheel.advance(now);
+
+			int numScheduled = 0;
+			for (int i = 0; i < NUM_TIMERS; i++) {
+				TestTimer timer = timers[i];
+				boolean scheduled = deadlines[i] != Long.MIN_VALUE;
+				boolean due = scheduled && deadlines[i] <= now;
+				if (timer.numExpirations != (due ? 1 : 0)
+						|| timer.isScheduled() != (scheduled && !due)) {
+					numErrors++;
+				}
+				numExpirations += timer.numExpirations;
+				timer.numExpirations = 0;
+				if (due) {
+					deadlines[i] = Long.MIN_VALUE;
+				} else if (scheduled) {
+					numScheduled++;
+				}
+			}
+			if (wheel.size() != numScheduled) {
+				numErrors++;
+			}
+
+			for (int j = random.nextInt(8); j > 0; j--) {
+				int i = random.nextInt(NUM_TIMERS);
+				if (random.nextInt(4) == 0) {
+					wheel.cancel(timers[i]);
+					deadlines[i] = Long.MIN_VALUE;
+				} else {
+					deadlines[i] = now + randomDelay(random, 11);
+					wheel.schedule(timers[i], deadlines[i]);
+				}
+			}
+		}
+
+		check("random (" + numExpirations + " expirations)", numErrors == 0);
+	}
+
+	private static void testRescheduleFromExpired() {
+		TimerWheel wheel = new TimerWheel(RESOLUTION);
+		RepeatingTimer timer = new RepeatingTimer(wheel);
+		long now = System.nanoTime();
+		wheel.schedule(timer, now + RESOLUTION * 10);
+
+		/*
+		 * The wheel is advanced by half a tick each step, so expirations in consecutive ticks are
+		 * one or two steps apart.
+		 */
+		for (int step = 0; step < 100; step++) {
+			now += RESOLUTION / 2;
+			timer.now = now;
+			timer.step = step;
+			wheel.advance(now);
+		}
+
+		boolean passed = timer.numExpirations == 3 && !timer.isScheduled() && wheel.isEmpty();
+		for (int i = 1; i < timer.numExpirations; i++) {
+			int distance = timer.expirationSteps[i] - timer.expirationSteps[i - 1];
+			passed &= distance >= 1 && distance <= 2;
+		}
+
+		check("reschedule from expired", passed);
+	}
+
+	/**
+	 * Returns a delay between 1 nanosecond and 10^<code>maxExponent</code> nanoseconds, with a
+	 * uniformly distributed logarithm.
+	 */
+	private static long randomDelay(Random random, int maxExponent) {
+		return (long) Math.pow(10, random.nextDouble() * maxExponent);
+	}
+
+	private static void check(String name, boolean passed) {
+		failed |= !passed;
+		System.out.println((passed ? "PASSED " : "FAILED ") + name);
+	}
+}